@@ -0,0 +1,204 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.benchmarks;
+
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.instrument.CoberturaInstrumenter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of the code generated by Cobertura: the same {@link Workload} is executed as it was compiled
+ * ({@code none}) and instrumented by every {@link net.sourceforge.cobertura.instrument.pass3.CodeProvider}.
+ * <p/>
+ * The state is shared by all the threads, so {@link #contendedTightLoop()} shows the cost of the threads
+ * incrementing the same counters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class HotPathBenchmark {
+
+	/**
+	 * How the workload is instrumented: not at all, or by FastArrayCodeProvider, AtomicArrayCodeProvider,
+	 * StripedArrayCodeProvider or BooleanArrayCodeProvider. 'basicBlocks' is FastArrayCodeProvider with
+	 * a counter per basic block instead of per line, 'splitJumpEdges' is FastArrayCodeProvider counting
+	 * the taken branches of jumps on the jumps themselves and 'long' is LongArrayCodeProvider.
+	 */
+	@Param({"none", "fast", "atomic", "striped", "probeOnly", "basicBlocks",
+			"splitJumpEdges", "long"})
+	public String codeProvider;
+
+	/**
+	 * Not final, so that the JIT cannot treat the arguments as constants.
+	 */
+	private int iterations = 1000;
+	private int key;
+	private Workload workload;
+
+	@Setup
+	public void setUp() throws Exception {
+		// the counters are never saved
+		ProjectData.getGlobalProjectData();
+		ProjectData.turnOffAutoSave();
+		workload = createWorkload(codeProvider);
+	}
+
+	@Benchmark
+	public int tightLoop() {
+		return workload.tightLoop(iterations);
+	}
+
+	@Benchmark
+	public int nestedBranches() {
+		int k = key++;
+		return workload.nestedBranches((k & 3) - 1, (k & 5) - 2,
+				(k & 7) - 3);
+	}
+
+	@Benchmark
+	public int largeSwitch() {
+		return workload.largeSwitch(key++);
+	}
+
+	@Benchmark
+	public int exceptions() {
+		return workload.exceptions(iterations);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public int contendedTightLoop() {
+		return workload.tightLoop(iterations);
+	}
+
+	/**
+	 * Loads a new copy of {@link WorkloadImpl}, instrumented according to the given
+	 * {@link #codeProvider}.
+	 */
+	static Workload createWorkload(String codeProvider) throws Exception {
+		CoberturaInstrumenter instrumenter = null;
+		if ("fast".equals(codeProvider)) {
+			instrumenter = new CoberturaInstrumenter();
+		} else if ("atomic".equals(codeProvider)) {
+			instrumenter = new CoberturaInstrumenter();
+			instrumenter.setThreadsafeRigorous(true);
+		} else if ("striped".equals(codeProvider)) {
+			instrumenter = new CoberturaInstrumenter();
+			instrumenter.setThreadsafeStriped(true);
+		} else if ("probeOnly".equals(codeProvider)) {
+			instrumenter = new CoberturaInstrumenter();
+			instrumenter.setProbeOnly(true);
+		} else if ("basicBlocks".equals(codeProvider)) {
+			instrumenter = new CoberturaInstrumenter();
+			instrumenter.setBasicBlockCounters(true);
+		} else if ("splitJumpEdges".equals(codeProvider)) {
+			instrumenter = new CoberturaInstrumenter();
+			instrumenter.setSplitJumpEdges(true);
+		} else if ("long".equals(codeProvider)) {
+			instrumenter = new CoberturaInstrumenter();
+			instrumenter.setLongCounters(true);
+		} else if (!"none".equals(codeProvider)) {
+			throw new IllegalArgumentException("Unknown code provider: "
+					+ codeProvider);
+		}
+		if (instrumenter != null) {
+			instrumenter.setProjectData(new ProjectData());
+		}
+
+		WorkloadClassLoader loader = new WorkloadClassLoader(instrumenter);
+		return (Workload) loader.loadClass(WorkloadImpl.class.getName())
+				.newInstance();
+	}
+
+	/**
+	 * Defines {@link WorkloadImpl} (and its nested classes) itself, instead of asking the parent, so every loader
+	 * has its own copy of them, instrumented or not.
+	 */
+	static class WorkloadClassLoader extends ClassLoader {
+		private final CoberturaInstrumenter instrumenter;
+		private final Map<String, Class<?>> classes = new HashMap<String, Class<?>>();
+
+		WorkloadClassLoader(CoberturaInstrumenter instrumenter) {
+			super(WorkloadClassLoader.class.getClassLoader());
+			this.instrumenter = instrumenter;
+		}
+
+		protected synchronized Class<?> loadClass(String name, boolean resolve)
+				throws ClassNotFoundException {
+			if (!name.startsWith(WorkloadImpl.class.getName())) {
+				return super.loadClass(name, resolve);
+			}
+			Class<?> c = classes.get(name);
+			if (c == null) {
+				byte[] bytes;
+				try {
+					bytes = instrument(read(name));
+				} catch (IOException e) {
+					throw new ClassNotFoundException(name, e);
+				}
+				c = defineClass(name, bytes, 0, bytes.length);
+				classes.put(name, c);
+			}
+			if (resolve) {
+				resolveClass(c);
+			}
+			return c;
+		}
+
+		private byte[] instrument(byte[] bytes) throws IOException {
+			if (instrumenter == null) {
+				return bytes;
+			}
+			CoberturaInstrumenter.InstrumentationResult result = instrumenter
+					.instrumentClass(new ByteArrayInputStream(bytes), getParent());
+			return result == null ? bytes : result.getContent();
+		}
+
+		private byte[] read(String name) throws IOException {
+			InputStream in = getParent().getResourceAsStream(
+					name.replace('.', '/') + ".class");
+			if (in == null) {
+				throw new IOException("Class not found: " + name);
+			}
+			return InstrumentationBenchmark.read(in);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.benchmarks;
+
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.instrument.CoberturaClassWriter;
+import net.sourceforge.cobertura.instrument.CoberturaInstrumenter;
+import net.sourceforge.cobertura.instrument.pass1.DetectDuplicatedCodeClassVisitor;
+import net.sourceforge.cobertura.instrument.pass1.DetectIgnoredCodeClassVisitor;
+import net.sourceforge.cobertura.instrument.pass2.BuildClassMapClassVisitor;
+import net.sourceforge.cobertura.instrument.pass3.FastArrayCodeProvider;
+import net.sourceforge.cobertura.instrument.pass3.InjectCodeClassInstrumenter;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.util.CheckClassAdapter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Throughput of the instrumentation of a single class (classes of Cobertura itself are instrumented one by one).
+ * <p/>
+ * {@link #instrumentClass()} is the current {@link CoberturaInstrumenter}, {@link #legacyThreePasses()} repeats
+ * what it used to do before the passes shared a single {@link ClassReader}: every pass parsed the class again,
+ * the analysis passes wrote copies of it and every instrumented class was verified.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InstrumentationBenchmark {
+
+	/**
+	 * Whether the current instrumenter verifies the instrumented classes.
+	 */
+	@Param({"false", "true"})
+	public boolean verifyInstrumentation;
+
+	/**
+	 * Whether the current instrumenter generates AtomicIntegerArray counters instead of int[].
+	 */
+	@Param({"false", "true"})
+	public boolean threadsafeRigorous;
+
+	private List<byte[]> classes;
+	private int next;
+	private CoberturaInstrumenter instrumenter;
+
+	@Setup
+	public void setUp() throws IOException {
+		classes = loadCoberturaClasses();
+		instrumenter = new CoberturaInstrumenter();
+		instrumenter.setVerifyInstrumentation(verifyInstrumentation);
+		instrumenter.setThreadsafeRigorous(threadsafeRigorous);
+		instrumenter.setProjectData(new ProjectData());
+	}
+
+	@Benchmark
+	public Object instrumentClass() throws IOException {
+		return instrumenter.instrumentClass(new ByteArrayInputStream(
+				nextClass()));
+	}
+
+	@Benchmark
+	public Object legacyThreePasses() {
+		return instrumentLegacy(nextClass());
+	}
+
+	private byte[] nextClass() {
+		byte[] bytes = classes.get(next);
+		next = (next + 1) % classes.size();
+		return bytes;
+	}
+
+	/**
+	 * The pipeline of {@link CoberturaInstrumenter} before the passes were collapsed.
+	 */
+	private static byte[] instrumentLegacy(byte[] classBytes) {
+		Collection<Pattern> ignoreRegexes = Collections.emptyList();
+		ClassReader cr0 = new ClassReader(classBytes);
+		ClassWriter cw0 = new ClassWriter(0);
+		DetectIgnoredCodeClassVisitor detectIgnoredCv = new DetectIgnoredCodeClassVisitor(
+				cw0, false, new HashSet<String>());
+		DetectDuplicatedCodeClassVisitor cv0 = new DetectDuplicatedCodeClassVisitor(
+				detectIgnoredCv);
+		cr0.accept(cv0, 0);
+
+		ClassReader cr = new ClassReader(cw0.toByteArray());
+		ClassWriter cw = new ClassWriter(0);
+		BuildClassMapClassVisitor cv = new BuildClassMapClassVisitor(cw,
+				ignoreRegexes, cv0.getDuplicatesLinesCollector(),
+				detectIgnoredCv.getIgnoredMethodNamesAndSignatures());
+		cr.accept(cv, ClassReader.EXPAND_FRAMES);
+		cv.getClassMap().applyOnProjectData(new ProjectData(),
+				cv.shouldBeInstrumented());
+		if (!cv.shouldBeInstrumented()) {
+			return null;
+		}
+
+		ClassReader cr2 = new ClassReader(cw0.toByteArray());
+		ClassWriter cw2 = new CoberturaClassWriter(ClassWriter.COMPUTE_FRAMES);
+		cv.getClassMap().assignCounterIds();
+		InjectCodeClassInstrumenter cv2 = new InjectCodeClassInstrumenter(cw2,
+				ignoreRegexes, new FastArrayCodeProvider(), cv.getClassMap(),
+				cv0.getDuplicatesLinesCollector(), detectIgnoredCv
+						.getIgnoredMethodNamesAndSignatures());
+		cr2.accept(new CheckClassAdapter(cv2), ClassReader.SKIP_FRAMES);
+		StringWriter sw = new StringWriter();
+		CheckClassAdapter.verify(new ClassReader(cw2.toByteArray()), false,
+				new PrintWriter(sw));
+		return cw2.toByteArray();
+	}
+
+	/**
+	 * Reads the classes of Cobertura (from the jar or the directory it was loaded from).
+	 */
+	static List<byte[]> loadCoberturaClasses() throws IOException {
+		File location;
+		try {
+			location = new File(CoberturaInstrumenter.class
+					.getProtectionDomain().getCodeSource().getLocation().toURI());
+		} catch (Exception e) {
+			throw new IOException("Unable to locate Cobertura classes: " + e);
+		}
+
+		List<byte[]> classes = new ArrayList<byte[]>();
+		if (location.isDirectory()) {
+			loadClasses(location, classes);
+		} else {
+			ZipFile jar = new ZipFile(location);
+			try {
+				for (Enumeration<? extends ZipEntry> entries = jar.entries(); entries
+						.hasMoreElements();) {
+					ZipEntry entry = entries.nextElement();
+					if (isCoberturaClass(entry.getName())) {
+						classes.add(read(jar.getInputStream(entry)));
+					}
+				}
+			} finally {
+				jar.close();
+			}
+		}
+		if (classes.isEmpty()) {
+			throw new IOException("No classes found in " + location);
+		}
+		return classes;
+	}
+
+	private static void loadClasses(File dir, List<byte[]> classes)
+			throws IOException {
+		File[] files = dir.listFiles();
+		for (File file : files) {
+			if (file.isDirectory()) {
+				loadClasses(file, classes);
+			} else if (isCoberturaClass(file.getPath().replace(
+					File.separatorChar, '/'))) {
+				classes.add(read(new FileInputStream(file)));
+			}
+		}
+	}
+
+	private static boolean isCoberturaClass(String path) {
+		return path.endsWith(".class")
+				&& path.contains("net/sourceforge/cobertura/")
+				&& !path.contains("net/sourceforge/cobertura/benchmarks/");
+	}
+
+	static byte[] read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+
+package net.sourceforge.cobertura.benchmarks;
+
+import net.sourceforge.cobertura.coveragedata.ClassData;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory and time spent on the lines of a large project held by {@link ClassData}.
+ * <p/>
+ * Run with the GC profiler ({@code -prof gc}): {@code gc.alloc.rate.norm} of {@link #buildProject()} and
+ * {@link #readProject()} is the number of bytes allocated for a whole project, which is (apart from the garbage
+ * of growing the arrays) what the project keeps on the heap. {@link #lookupLines()} shows the cost of
+ * {@link ClassData#getLineData(int)}, as used by the touch collector and the reports.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LineStorageBenchmark {
+
+	/**
+	 * Number of classes in the project.
+	 */
+	@Param({"1000", "10000"})
+	public int classes;
+
+	/**
+	 * Number of lines in every class (every fifth line has a jump).
+	 */
+	@Param({"200"})
+	public int lines;
+
+	private ProjectData project;
+	private byte[] serialized;
+
+	@Setup
+	public void setUp() throws IOException {
+		project = buildProject();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(project);
+		out.close();
+		serialized = bytes.toByteArray();
+	}
+
+	/**
+	 * Registers the lines and jumps like the instrumentation does and touches all of them.
+	 */
+	@Benchmark
+	public ProjectData buildProject() {
+		ProjectData projectData = new ProjectData();
+		for (int c = 0; c < classes; c++) {
+			ClassData classData = projectData
+					.getOrCreateClassData(className(c));
+			for (int line = 1; line <= lines; line++) {
+				classData.addLine(line, "method" + (line / 20), "()V");
+				if (line % 5 == 0) {
+					classData.addLineJump(line, 0);
+				}
+			}
+			for (int line = 1; line <= lines; line++) {
+				classData.touch(line, 1);
+				if (line % 5 == 0) {
+					classData.touchJump(line, 0, true, 1);
+				}
+			}
+		}
+		return projectData;
+	}
+
+	@Benchmark
+	public Object readProject() throws IOException, ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				serialized));
+		try {
+			return in.readObject();
+		} finally {
+			in.close();
+		}
+	}
+
+	@Benchmark
+	public long lookupLines() {
+		long hits = 0;
+		for (int c = 0; c < classes; c++) {
+			ClassData classData = project.getClassData(className(c));
+			for (int line = 1; line <= lines; line++) {
+				hits += classData.getLineData(line).getHits();
+			}
+		}
+		return hits;
+	}
+
+	private static String className(int c) {
+		return "com.example.p" + (c % 100) + ".Class" + c;
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.benchmarks;
+
+/**
+ * Representative shapes of hot code. The implementation ({@link WorkloadImpl}) is loaded both as it was
+ * compiled and instrumented by Cobertura, while the benchmarks call it through this (not instrumented)
+ * interface.
+ */
+public interface Workload {
+
+	/**
+	 * Single counted loop with a simple body, where the touch-points of the loop dominate.
+	 */
+	int tightLoop(int iterations);
+
+	/**
+	 * Several levels of conditions, every one of them is a pair of branches.
+	 */
+	int nestedBranches(int a, int b, int c);
+
+	/**
+	 * Dense (tableswitch) and sparse (lookupswitch) switches with many cases.
+	 */
+	int largeSwitch(int key);
+
+	/**
+	 * Loop throwing and catching an exception in every other iteration.
+	 */
+	int exceptions(int iterations);
+}
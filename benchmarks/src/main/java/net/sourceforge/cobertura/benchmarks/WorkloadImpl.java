@@ -0,0 +1,178 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.benchmarks;
+
+/**
+ * Code measured by {@link HotPathBenchmark}. It is never used directly, the benchmark loads it (instrumented or
+ * not) by {@link HotPathBenchmark.WorkloadClassLoader}.
+ */
+public class WorkloadImpl implements Workload {
+
+	public int tightLoop(int iterations) {
+		int sum = 0;
+		for (int i = 0; i < iterations; i++) {
+			sum += i * i;
+		}
+		return sum;
+	}
+
+	public int nestedBranches(int a, int b, int c) {
+		if (a > 0) {
+			if (b > 0) {
+				return c > 0 ? a + b + c : a + b - c;
+			} else if (c > 0) {
+				return a - b + c;
+			} else {
+				return a - b - c;
+			}
+		} else if (b > a && c > a) {
+			return b + c;
+		} else if (b == c || a == c) {
+			return a;
+		}
+		return -a;
+	}
+
+	public int largeSwitch(int key) {
+		int result;
+		switch (key & 31) {
+			case 0 :
+				result = 3;
+				break;
+			case 1 :
+				result = 5;
+				break;
+			case 2 :
+				result = 7;
+				break;
+			case 3 :
+				result = 11;
+				break;
+			case 4 :
+				result = 13;
+				break;
+			case 5 :
+				result = 17;
+				break;
+			case 6 :
+				result = 19;
+				break;
+			case 7 :
+				result = 23;
+				break;
+			case 8 :
+				result = 29;
+				break;
+			case 9 :
+				result = 31;
+				break;
+			case 10 :
+				result = 37;
+				break;
+			case 11 :
+				result = 41;
+				break;
+			case 12 :
+				result = 43;
+				break;
+			case 13 :
+				result = 47;
+				break;
+			case 14 :
+				result = 53;
+				break;
+			case 15 :
+				result = 59;
+				break;
+			case 16 :
+				result = 61;
+				break;
+			case 17 :
+				result = 67;
+				break;
+			case 18 :
+				result = 71;
+				break;
+			case 19 :
+				result = 73;
+				break;
+			case 20 :
+				result = 79;
+				break;
+			case 21 :
+				result = 83;
+				break;
+			case 22 :
+				result = 89;
+				break;
+			case 23 :
+				result = 97;
+				break;
+			default :
+				result = 1;
+		}
+		switch (key) {
+			case -1000000 :
+				return result - 1;
+			case -1000 :
+				return result - 2;
+			case 10 :
+				return result + 1;
+			case 1000 :
+				return result + 2;
+			case 100000 :
+				return result + 3;
+			case 1000000 :
+				return result + 4;
+			default :
+				return result;
+		}
+	}
+
+	public int exceptions(int iterations) {
+		int caught = 0;
+		for (int i = 0; i < iterations; i++) {
+			try {
+				if ((i & 1) == 0) {
+					throw WorkloadException.INSTANCE;
+				}
+				caught--;
+			} catch (WorkloadException e) {
+				caught += 2;
+			} finally {
+				caught++;
+			}
+		}
+		return caught;
+	}
+
+	/**
+	 * Exception without stack trace, so the benchmark measures throwing and catching and not
+	 * filling in the trace.
+	 */
+	private static class WorkloadException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		static final WorkloadException INSTANCE = new WorkloadException();
+
+		public Throwable fillInStackTrace() {
+			return this;
+		}
+	}
+}
@@ -105,6 +105,24 @@ public class InstrumentTask extends CommonMatchingTask {
 
 	boolean threadsafeRigorous = false;
 
+	boolean threadsafeStriped = false;
+
+	boolean probeOnly = false;
+
+	boolean verifyInstrumentation = false;
+
+	boolean lazyCounters = false;
+
+	boolean basicBlockCounters = false;
+
+	boolean splitJumpEdges = false;
+
+	boolean longCounters = false;
+
+	Integer threads = null;
+
+	File cacheDirectory = null;
+
 	final private HashMap<String, FileSet> fileSetMap = new HashMap<String, FileSet>();
 
 	public InstrumentTask() {
@@ -212,6 +230,43 @@ public class InstrumentTask extends CommonMatchingTask {
 				builder.addArg("--threadsafeRigorous");
 			}
 
+			if (threadsafeStriped) {
+				builder.addArg("--threadsafeStriped");
+			}
+
+			if (probeOnly) {
+				builder.addArg("--probeOnly");
+			}
+
+			if (verifyInstrumentation) {
+				builder.addArg("--verifyInstrumentation");
+			}
+
+			if (lazyCounters) {
+				builder.addArg("--lazyCounters");
+			}
+
+			if (basicBlockCounters) {
+				builder.addArg("--basicBlockCounters");
+			}
+
+			if (splitJumpEdges) {
+				builder.addArg("--splitJumpEdges");
+			}
+
+			if (longCounters) {
+				builder.addArg("--longCounters");
+			}
+
+			if (threads != null) {
+				builder.addArg("--threads", threads.toString());
+			}
+
+			if (cacheDirectory != null) {
+				builder.addArg("--cacheDirectory", cacheDirectory
+						.getAbsolutePath());
+			}
+
 			if (failOnError) {
 				builder.addArg("--failOnError");
 			}
@@ -333,6 +388,67 @@ public class InstrumentTask extends CommonMatchingTask {
 		this.threadsafeRigorous = threadsafeRigorous;
 	}
 
+	public void setThreadsafeStriped(boolean threadsafeStriped) {
+		this.threadsafeStriped = threadsafeStriped;
+	}
+
+	public void setProbeOnly(boolean probeOnly) {
+		this.probeOnly = probeOnly;
+	}
+
+	/**
+	 * Verify every instrumented class and log the problems found (slow, meant for looking for bugs in Cobertura).
+	 */
+	public void setVerifyInstrumentation(boolean verifyInstrumentation) {
+		this.verifyInstrumentation = verifyInstrumentation;
+	}
+
+	/**
+	 * Allocate the counters and register the class when it is executed for the first time, so classes that
+	 * are loaded but never executed cost nothing at runtime.
+	 */
+	public void setLazyCounters(boolean lazyCounters) {
+		this.lazyCounters = lazyCounters;
+	}
+
+	/**
+	 * Count executions of whole basic blocks instead of single lines, so less counters are incremented
+	 * in straight-line code.
+	 */
+	public void setBasicBlockCounters(boolean basicBlockCounters) {
+		this.basicBlockCounters = basicBlockCounters;
+	}
+
+	/**
+	 * Increment the counter of a taken branch on the jump itself, instead of passing the counter id
+	 * through a local variable to the destination of the jump.
+	 */
+	public void setSplitJumpEdges(boolean splitJumpEdges) {
+		this.splitJumpEdges = splitJumpEdges;
+	}
+
+	/**
+	 * Keep long counters, so the number of hits of hot lines does not overflow in long running processes.
+	 */
+	public void setLongCounters(boolean longCounters) {
+		this.longCounters = longCounters;
+	}
+
+	/**
+	 * Number of threads used to instrument the classes (1 by default).
+	 */
+	public void setThreads(Integer threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Directory where instrumented classes are cached between builds.
+	 * Classes that did not change since the last build are not instrumented again.
+	 */
+	public void setCacheDirectory(File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
 	public void setForkedJVMDebugPort(Integer forkedJVMDebugPort) {
 		this.forkedJVMDebugPort = forkedJVMDebugPort;
 	}
@@ -69,6 +69,10 @@ public class MergeTask extends CommonMatchingTask {
 
 	private String dataFile = null;
 
+	private Integer threads = null;
+
+	private boolean streaming = false;
+
 	public MergeTask() {
 		super(MergeMain.class.getCanonicalName());
 	}
@@ -79,6 +83,10 @@ public class MergeTask extends CommonMatchingTask {
 			builder = new CommandLineBuilder();
 			if (dataFile != null)
 				builder.addArg("--datafile", dataFile);
+			if (threads != null)
+				builder.addArg("--threads", threads.toString());
+			if (streaming)
+				builder.addArg("--streaming");
 
 			createArgumentsForFilesets(builder);
 
@@ -104,4 +112,19 @@ public class MergeTask extends CommonMatchingTask {
 		this.dataFile = dataFile;
 	}
 
+	/**
+	 * Number of threads used to load and merge the files (1 by default).
+	 */
+	public void setThreads(Integer threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * Merge the files class by class, without loading them into memory.
+	 * The data file is written in the compact format.
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+
 }
@@ -84,7 +84,7 @@ public class CheckCoverageMain {
 		Arguments arguments = builder.build();
 
 		CoverageThresholdsReport coverageThresholdsReport = (CoverageThresholdsReport) new Cobertura(
-				arguments).checkThresholds().report().getByName(
+				arguments).freezeProjectData().checkThresholds().report().getByName(
 				ReportName.THRESHOLDS_REPORT);
 
 		List<CoverageResultEntry> coverageResultEntries = coverageThresholdsReport
@@ -0,0 +1,95 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.convert;
+
+import net.sourceforge.cobertura.coveragedata.CoverageDataFileHandler;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.util.CommandLineBuilder;
+import net.sourceforge.cobertura.util.Header;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Converts a data file into another format (see {@link CoverageDataFileHandler#FORMAT_SERIALIZED}
+ * and {@link CoverageDataFileHandler#FORMAT_COMPACT}). The format of the source file is
+ * detected automatically.
+ * <p/>
+ * Usage: ConvertMain [--datafile file] [--destination file] [--format ser|compact]
+ */
+public class ConvertMain {
+
+	public ConvertMain(String[] args) {
+		File dataFile = CoverageDataFileHandler.getDefaultDataFile();
+		File destination = null;
+		String format = CoverageDataFileHandler.FORMAT_COMPACT;
+
+		// Go through all the parameters
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("--datafile")) {
+				dataFile = new File(args[++i]);
+			} else if (args[i].equals("--destination")) {
+				destination = new File(args[++i]);
+			} else if (args[i].equals("--format")) {
+				format = args[++i];
+			}
+		}
+
+		if (!format.equals(CoverageDataFileHandler.FORMAT_SERIALIZED)
+				&& !format.equals(CoverageDataFileHandler.FORMAT_COMPACT)) {
+			System.err.println("Error: Unknown format " + format);
+			System.exit(1);
+		}
+
+		ProjectData projectData = CoverageDataFileHandler
+				.loadCoverageData(dataFile);
+		if (projectData == null) {
+			System.err.println("Error: Unable to read from data file "
+					+ dataFile.getAbsolutePath());
+			System.exit(1);
+		}
+
+		// by default the source file is replaced, it stays intact if the conversion fails
+		if (destination == null) {
+			destination = dataFile;
+		}
+		try {
+			CoverageDataFileHandler.writeCoverageData(projectData,
+					destination, format);
+		} catch (IOException e) {
+			System.err.println("Error: Unable to write to data file "
+					+ destination.getAbsolutePath() + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	public static void main(String[] args) {
+		Header.print(System.out);
+
+		try {
+			args = CommandLineBuilder.preprocessCommandLineArguments(args);
+		} catch (Exception ex) {
+			System.err.println("Error: Cannot process arguments: "
+					+ ex.getMessage());
+			System.exit(1);
+		}
+		new ConvertMain(args);
+	}
+}
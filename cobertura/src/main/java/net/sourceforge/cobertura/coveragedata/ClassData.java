@@ -25,6 +25,10 @@ package net.sourceforge.cobertura.coveragedata;
 
 import net.sourceforge.cobertura.CoverageIgnore;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.*;
 
 /**
@@ -41,15 +45,49 @@ public class ClassData extends CoverageDataContainer
 			Comparable<ClassData> {
 	private static final long serialVersionUID = 5;
 
+	private static final int[] NO_LINES = new int[0];
+
+	private static final int[] NO_AGGREGATES = new int[4];
+
+	/**
+	 * The fields written by the serialization.  The lines used to be kept
+	 * in maps keyed by Integer objects ({@link #children} and "branches"),
+	 * so the maps are still written and read to keep the serialized form.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("branches", Map.class),
+			new ObjectStreamField("containsInstrumentationInfo", boolean.class),
+			new ObjectStreamField("methodNamesAndDescriptors", Set.class),
+			new ObjectStreamField("name", String.class),
+			new ObjectStreamField("sourceFileName", String.class)};
+
 	/**
-	 * Each key is a line number in this class, stored as an Integer object.
-	 * Each value is information about the line, stored as a LineData object.
+	 * The lines of this class, sorted by the line number.  The lines are not
+	 * kept in {@link #children}, to avoid boxing the line numbers and a map
+	 * entry per line.
 	 */
-	private Map<Integer, LineData> branches = new HashMap<Integer, LineData>();
+	private transient LineStore lineStore = new LineStore();
 
 	private boolean containsInstrumentationInfo = false;
 
-	private Set<String> methodNamesAndDescriptors = new HashSet<String>();
+	/**
+	 * The methods of this class, referenced by the lines.
+	 */
+	private transient MethodTable methods = new MethodTable();
+
+	/**
+	 * Positions (in {@link #lineStore}) of the lines of every method, indexed
+	 * by the method id.  Null when it has to be built again, see
+	 * {@link #getLinesByMethod()}.
+	 */
+	private transient int[][] linesByMethod;
+
+	/**
+	 * The metrics of every method (indexed by the method id, then like the
+	 * metrics of the class), computed with them by
+	 * {@link #computeAggregates(int[])}.
+	 */
+	private transient int[][] methodAggregates;
 
 	private String name = null;
 
@@ -71,19 +109,23 @@ public class ClassData extends CoverageDataContainer
 			String methodDescriptor) {
 		lock.lock();
 		try {
-			LineData lineData = getLineData(lineNumber);
+			checkNotFrozen();
+			LineData lineData = lineStore.get(lineNumber);
 			if (lineData == null) {
 				lineData = new LineData(lineNumber);
-				// Each key is a line number in this class, stored as an Integer object.
-				// Each value is information about the line, stored as a LineData object.
-				children.put(new Integer(lineNumber), lineData);
+				lineStore.put(lineData);
+				linesByMethod = null;
+				modified();
 			}
-			lineData.setMethodNameAndDescriptor(methodName, methodDescriptor);
-
 			// methodName and methodDescriptor can be null when cobertura.ser with
 			// no line information was loaded (or was not loaded at all).
-			if (methodName != null && methodDescriptor != null)
-				methodNamesAndDescriptors.add(methodName + methodDescriptor);
+			MethodTable.Method method = methods.intern(methodName,
+					methodDescriptor);
+			if (lineData.getMethod() != method) {
+				lineData.setMethod(method);
+				linesByMethod = null;
+				modified();
+			}
 			return lineData;
 		} finally {
 			lock.unlock();
@@ -94,7 +136,7 @@ public class ClassData extends CoverageDataContainer
 	 * This is required because we implement Comparable.
 	 */
 	public int compareTo(ClassData o) {
-		if (!o.getClass().equals(ClassData.class))
+		if (!(o instanceof ClassData))
 			return Integer.MAX_VALUE;
 		return this.name.compareTo(((ClassData) o).name);
 	}
@@ -116,6 +158,8 @@ public class ClassData extends CoverageDataContainer
 	public boolean equals(Object obj) {
 		if (this == obj)
 			return true;
+		if (obj instanceof MappedClassData)
+			obj = ((MappedClassData) obj).decoded();
 		if ((obj == null) || !(obj.getClass().equals(this.getClass())))
 			return false;
 
@@ -123,9 +167,9 @@ public class ClassData extends CoverageDataContainer
 		getBothLocks(classData);
 		try {
 			return super.equals(obj)
-					&& this.branches.equals(classData.branches)
-					&& this.methodNamesAndDescriptors
-							.equals(classData.methodNamesAndDescriptors)
+					&& this.lineStore.equals(classData.lineStore)
+					&& this.methods.getNamesAndDescriptors().equals(
+							classData.methods.getNamesAndDescriptors())
 					&& this.name.equals(classData.name)
 					&& this.sourceFileName.equals(classData.sourceFileName);
 		} finally {
@@ -146,32 +190,17 @@ public class ClassData extends CoverageDataContainer
 	 * @return The branch coverage rate for a particular method.
 	 */
 	public double getBranchCoverageRate(String methodNameAndDescriptor) {
-		int total = 0;
-		int covered = 0;
-
-		lock.lock();
-		try {
-			for (Iterator<LineData> iter = branches.values().iterator(); iter
-					.hasNext();) {
-				LineData next = (LineData) iter.next();
-				if (methodNameAndDescriptor.equals(next.getMethodName()
-						+ next.getMethodDescriptor())) {
-					total += next.getNumberOfValidBranches();
-					covered += next.getNumberOfCoveredBranches();
-				}
-			}
-			if (total == 0)
-				return 1.0;
-			return (double) covered / total;
-		} finally {
-			lock.unlock();
-		}
+		int[] sums = getMethodAggregates(methodNameAndDescriptor);
+		if (sums[VALID_BRANCHES] == 0)
+			return 1.0;
+		return (double) sums[COVERED_BRANCHES] / sums[VALID_BRANCHES];
 	}
 
 	public Collection<Integer> getBranches() {
 		lock.lock();
 		try {
-			return Collections.unmodifiableCollection(branches.keySet());
+			return Collections.unmodifiableCollection(lineStore
+					.getBranchLineNumbers());
 		} finally {
 			lock.unlock();
 		}
@@ -183,14 +212,9 @@ public class ClassData extends CoverageDataContainer
 	 * @return The coverage of the line
 	 */
 	public LineData getLineCoverage(int lineNumber) {
-		Integer lineObject = new Integer(lineNumber);
 		lock.lock();
 		try {
-			if (!children.containsKey(lineObject)) {
-				return null;
-			}
-
-			return (LineData) children.get(lineObject);
+			return lineStore.get(lineNumber);
 		} finally {
 			lock.unlock();
 		}
@@ -200,34 +224,16 @@ public class ClassData extends CoverageDataContainer
 	 * @return The line coverage rate for particular method
 	 */
 	public double getLineCoverageRate(String methodNameAndDescriptor) {
-		int total = 0;
-		int hits = 0;
-
-		lock.lock();
-		try {
-			Iterator<CoverageData> iter = children.values().iterator();
-			while (iter.hasNext()) {
-				LineData next = (LineData) iter.next();
-				if (methodNameAndDescriptor.equals(next.getMethodName()
-						+ next.getMethodDescriptor())) {
-					total++;
-					if (next.getHits() > 0) {
-						hits++;
-					}
-				}
-			}
-			if (total == 0)
-				return 1d;
-			return (double) hits / total;
-		} finally {
-			lock.unlock();
-		}
+		int[] sums = getMethodAggregates(methodNameAndDescriptor);
+		if (sums[VALID_LINES] == 0)
+			return 1d;
+		return (double) sums[COVERED_LINES] / sums[VALID_LINES];
 	}
 
 	public LineData getLineData(int lineNumber) {
 		lock.lock();
 		try {
-			return (LineData) children.get(Integer.valueOf(lineNumber));
+			return lineStore.get(lineNumber);
 		} finally {
 			lock.unlock();
 		}
@@ -236,23 +242,23 @@ public class ClassData extends CoverageDataContainer
 	public SortedSet<CoverageData> getLines() {
 		lock.lock();
 		try {
-			return new TreeSet<CoverageData>(this.children.values());
+			return new TreeSet<CoverageData>(lineStore.asList());
 		} finally {
 			lock.unlock();
 		}
 	}
 
+	/**
+	 * @return The lines of a particular method, sorted by the line number.
+	 */
 	public Collection<CoverageData> getLines(String methodNameAndDescriptor) {
-		Collection<CoverageData> lines = new HashSet<CoverageData>();
 		lock.lock();
 		try {
-			Iterator<CoverageData> iter = children.values().iterator();
-			while (iter.hasNext()) {
-				LineData next = (LineData) iter.next();
-				if (methodNameAndDescriptor.equals(next.getMethodName()
-						+ next.getMethodDescriptor())) {
-					lines.add(next);
-				}
+			int[] positions = getLinesOfMethod(methodNameAndDescriptor);
+			List<CoverageData> lines = new ArrayList<CoverageData>(
+					positions.length);
+			for (int i : positions) {
+				lines.add(lineStore.lineAt(i));
 			}
 			return lines;
 		} finally {
@@ -262,53 +268,120 @@ public class ClassData extends CoverageDataContainer
 
 	/**
 	 * @return The method name and descriptor of each method found in the
-	 *         class represented by this instrumentation.
+	 *         class represented by this instrumentation (a read-only view).
 	 */
 	public Set<String> getMethodNamesAndDescriptors() {
 		lock.lock();
 		try {
-			return methodNamesAndDescriptors;
+			return methods.getNamesAndDescriptors();
 		} finally {
 			lock.unlock();
 		}
 	}
 
-	public String getName() {
-		return name;
-	}
-
 	/**
-	 * @return The number of branches in this class.
+	 * Adds a method that may have no lines.
 	 */
-	public int getNumberOfValidBranches() {
-		int number = 0;
+	void addMethodNameAndDescriptor(String methodNameAndDescriptor) {
 		lock.lock();
 		try {
-			for (Iterator<LineData> i = branches.values().iterator(); i
-					.hasNext(); number += ((LineData) i.next())
-					.getNumberOfValidBranches());
-			return number;
+			checkNotFrozen();
+			methods.intern(methodNameAndDescriptor);
 		} finally {
 			lock.unlock();
 		}
 	}
 
 	/**
-	 * @see net.sourceforge.cobertura.coveragedata.CoverageData#getNumberOfCoveredBranches()
+	 * @return The number of lines of a particular method.
 	 */
-	public int getNumberOfCoveredBranches() {
-		int number = 0;
+	public int getNumberOfValidLines(String methodNameAndDescriptor) {
+		return getMethodAggregates(methodNameAndDescriptor)[VALID_LINES];
+	}
+
+	/**
+	 * @return The number of lines of a particular method that were executed.
+	 */
+	public int getNumberOfCoveredLines(String methodNameAndDescriptor) {
+		return getMethodAggregates(methodNameAndDescriptor)[COVERED_LINES];
+	}
+
+	/**
+	 * @return The number of branches of a particular method.
+	 */
+	public int getNumberOfValidBranches(String methodNameAndDescriptor) {
+		return getMethodAggregates(methodNameAndDescriptor)[VALID_BRANCHES];
+	}
+
+	/**
+	 * @return The number of branches of a particular method that were taken.
+	 */
+	public int getNumberOfCoveredBranches(String methodNameAndDescriptor) {
+		return getMethodAggregates(methodNameAndDescriptor)[COVERED_BRANCHES];
+	}
+
+	/**
+	 * @return The cached metrics of the method, see {@link #methodAggregates}.
+	 *         The returned array must not be modified.
+	 */
+	private int[] getMethodAggregates(String methodNameAndDescriptor) {
 		lock.lock();
 		try {
-			for (Iterator<LineData> i = branches.values().iterator(); i
-					.hasNext(); number += ((LineData) i.next())
-					.getNumberOfCoveredBranches());
-			return number;
+			// computes the metrics of the methods too, if they are stale
+			getAggregates();
+			MethodTable.Method method = methods.get(methodNameAndDescriptor);
+			// a method added after the metrics were computed has no lines
+			if ((method == null) || (method.id >= methodAggregates.length))
+				return NO_AGGREGATES;
+			return methodAggregates[method.id];
 		} finally {
 			lock.unlock();
 		}
 	}
 
+	/**
+	 * @return Positions of the lines of the method in {@link #lineStore}.
+	 *         The caller holds the lock.
+	 */
+	private int[] getLinesOfMethod(String methodNameAndDescriptor) {
+		MethodTable.Method method = methods.get(methodNameAndDescriptor);
+		return (method == null) ? NO_LINES : getLinesByMethod()[method.id];
+	}
+
+	/**
+	 * Builds the index of the lines of the methods, if the lines or their
+	 * methods have changed since it was built.  The caller holds the lock.
+	 */
+	private int[][] getLinesByMethod() {
+		int[][] index = linesByMethod;
+		if ((index == null) || (index.length != methods.size())) {
+			int[] ids = new int[lineStore.size()];
+			int[] counts = new int[methods.size()];
+			for (int i = 0; i < ids.length; i++) {
+				MethodTable.Method method = methods.resolve(lineStore
+						.lineAt(i).getMethod());
+				ids[i] = (method == null) ? -1 : method.id;
+				if (method != null)
+					counts[method.id]++;
+			}
+			index = new int[counts.length][];
+			for (int id = 0; id < counts.length; id++) {
+				index[id] = (counts[id] == 0) ? NO_LINES : new int[counts[id]];
+				counts[id] = 0;
+			}
+			for (int i = 0; i < ids.length; i++) {
+				if (ids[i] != -1)
+					index[ids[i]][counts[ids[i]]++] = i;
+			}
+			linesByMethod = index;
+		}
+		return index;
+	}
+
+	public String getName() {
+		return name;
+	}
+
 	public String getPackageName() {
 		int lastDot = this.name.lastIndexOf('.');
 		if (lastDot == -1) {
@@ -360,7 +433,7 @@ public class ClassData extends CoverageDataContainer
 	public boolean hasBranch(int lineNumber) {
 		lock.lock();
 		try {
-			return branches.containsKey(Integer.valueOf(lineNumber));
+			return lineStore.hasBranch(lineNumber);
 		} finally {
 			lock.unlock();
 		}
@@ -375,7 +448,7 @@ public class ClassData extends CoverageDataContainer
 	public boolean isValidSourceLineNumber(int lineNumber) {
 		lock.lock();
 		try {
-			return children.containsKey(Integer.valueOf(lineNumber));
+			return lineStore.contains(lineNumber);
 		} finally {
 			lock.unlock();
 		}
@@ -384,10 +457,12 @@ public class ClassData extends CoverageDataContainer
 	public void addLineJump(int lineNumber, int branchNumber) {
 		lock.lock();
 		try {
+			checkNotFrozen();
 			LineData lineData = getLineData(lineNumber);
 			if (lineData != null) {
 				lineData.addJump(branchNumber);
-				this.branches.put(Integer.valueOf(lineNumber), lineData);
+				lineStore.addBranch(lineNumber);
+				modified();
 			}
 		} finally {
 			lock.unlock();
@@ -398,10 +473,12 @@ public class ClassData extends CoverageDataContainer
 			int max, int maxBranches) {
 		lock.lock();
 		try {
+			checkNotFrozen();
 			LineData lineData = getLineData(lineNumber);
 			if (lineData != null) {
 				lineData.addSwitch(switchNumber, min, max, maxBranches);
-				this.branches.put(Integer.valueOf(lineNumber), lineData);
+				lineStore.addBranch(lineNumber);
+				modified();
 			}
 		} finally {
 			lock.unlock();
@@ -415,6 +492,10 @@ public class ClassData extends CoverageDataContainer
 	 */
 	public void merge(CoverageData coverageData) {
 		ClassData classData = (ClassData) coverageData;
+		if (classData instanceof MappedClassData) {
+			// the view has no lines of its own
+			classData = ((MappedClassData) classData).decoded();
+		}
 
 		// If objects contain data for different classes then don't merge
 		if (!this.getName().equals(classData.getName()))
@@ -422,27 +503,31 @@ public class ClassData extends CoverageDataContainer
 
 		getBothLocks(classData);
 		try {
-			super.merge(coverageData);
-
-			// We can't just call this.branches.putAll(classData.branches);
-			// Why not?  If we did a putAll, then the LineData objects from
-			// the coverageData class would overwrite the LineData objects
-			// that are already in "this.branches"  And we don't need to
-			// update the LineData objects that are already in this.branches
-			// because they are shared between this.branches and this.children,
-			// so the object hit counts will be moved when we called
-			// super.merge() above.
-			for (Iterator<Integer> iter = classData.branches.keySet()
-					.iterator(); iter.hasNext();) {
-				Integer key = iter.next();
-				if (!this.branches.containsKey(key)) {
-					this.branches.put(key, classData.branches.get(key));
+			super.merge(classData);
+
+			// The lines are not in the children, so super.merge() above
+			// doesn't see them.  The LineData objects of this class are
+			// kept, only the ones missing here are taken from the other class.
+			for (int i = 0; i < classData.lineStore.size(); i++) {
+				LineData lineData = classData.lineStore.lineAt(i);
+				int lineNumber = lineData.getLineNumber();
+				LineData existing = this.lineStore.get(lineNumber);
+				if (existing != null) {
+					existing.merge(lineData);
+				} else {
+					this.lineStore.put(lineData);
+				}
+				if (classData.lineStore.isBranchAt(i)) {
+					this.lineStore.addBranch(lineNumber);
 				}
 			}
+			linesByMethod = null;
+			modified();
 
 			this.containsInstrumentationInfo |= classData.containsInstrumentationInfo;
-			this.methodNamesAndDescriptors.addAll(classData
-					.getMethodNamesAndDescriptors());
+			for (String method : classData.methods.getNamesAndDescriptors()) {
+				this.methods.intern(method);
+			}
 			if (classData.sourceFileName != null)
 				this.sourceFileName = classData.sourceFileName;
 		} finally {
@@ -452,11 +537,12 @@ public class ClassData extends CoverageDataContainer
 	}
 
 	public void removeLine(int lineNumber) {
-		Integer lineObject = Integer.valueOf(lineNumber);
 		lock.lock();
 		try {
-			children.remove(lineObject);
-			branches.remove(lineObject);
+			checkNotFrozen();
+			lineStore.remove(lineNumber);
+			linesByMethod = null;
+			modified();
 		} finally {
 			lock.unlock();
 		}
@@ -465,21 +551,173 @@ public class ClassData extends CoverageDataContainer
 	public void setContainsInstrumentationInfo() {
 		lock.lock();
 		try {
+			checkNotFrozen();
 			this.containsInstrumentationInfo = true;
 		} finally {
 			lock.unlock();
 		}
 	}
 
+	/**
+	 * @return the source file name exactly as it was set by {@link #setSourceFileName(String)},
+	 *         or null if it was not set
+	 */
+	String getRawSourceFileName() {
+		lock.lock();
+		try {
+			return sourceFileName;
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	public void setSourceFileName(String sourceFileName) {
 		lock.lock();
 		try {
+			checkNotFrozen();
 			this.sourceFileName = sourceFileName;
 		} finally {
 			lock.unlock();
 		}
 	}
 
+	/**
+	 * Like {@link #addLineSwitch(int, int, int, int, int)}, but for a switch with
+	 * non-contiguous keys (used when the data is read back from a data file).
+	 */
+	void addLineSwitch(int lineNumber, int switchNumber, int[] keys,
+			int maxBranches) {
+		lock.lock();
+		try {
+			checkNotFrozen();
+			LineData lineData = getLineData(lineNumber);
+			if (lineData != null) {
+				lineData.addSwitch(switchNumber, keys, maxBranches);
+				lineStore.addBranch(lineNumber);
+				modified();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	Collection<CoverageData> getChildrenValues() {
+		return lineStore.asList();
+	}
+
+	void freezeChildren() {
+		for (int i = 0; i < lineStore.size(); i++) {
+			lineStore.lineAt(i).freeze();
+		}
+		// frozen classes don't lock, the index is built while they still do
+		getLinesByMethod();
+	}
+
+	/**
+	 * Only the branches of the lines added by {@link #addLineJump(int, int)}
+	 * or {@link #addLineSwitch(int, int, int, int, int)} are counted.  The
+	 * metrics of the methods are summed in the same pass over the lines.
+	 */
+	void computeAggregates(int[] sums) {
+		int[][] byMethod = getLinesByMethod();
+		int[][] perMethod = new int[byMethod.length][];
+		int[] methodOf = new int[lineStore.size()];
+		Arrays.fill(methodOf, -1);
+		for (int id = 0; id < byMethod.length; id++) {
+			perMethod[id] = (byMethod[id].length == 0) ? NO_AGGREGATES
+					: new int[4];
+			for (int i : byMethod[id]) {
+				methodOf[i] = id;
+			}
+		}
+		for (int i = 0; i < lineStore.size(); i++) {
+			LineData lineData = lineStore.lineAt(i);
+			int validLines = lineData.getNumberOfValidLines();
+			int coveredLines = lineData.getNumberOfCoveredLines();
+			int validBranches = 0;
+			int coveredBranches = 0;
+			if (lineStore.isBranchAt(i)) {
+				validBranches = lineData.getNumberOfValidBranches();
+				coveredBranches = lineData.getNumberOfCoveredBranches();
+			}
+			sums[VALID_LINES] += validLines;
+			sums[COVERED_LINES] += coveredLines;
+			sums[VALID_BRANCHES] += validBranches;
+			sums[COVERED_BRANCHES] += coveredBranches;
+			if (methodOf[i] != -1) {
+				int[] methodSums = perMethod[methodOf[i]];
+				methodSums[VALID_LINES] += validLines;
+				methodSums[COVERED_LINES] += coveredLines;
+				methodSums[VALID_BRANCHES] += validBranches;
+				methodSums[COVERED_BRANCHES] += coveredBranches;
+			}
+		}
+		methodAggregates = perMethod;
+	}
+
+	Map<Object, CoverageData> getSerializedChildren() {
+		lock.lock();
+		try {
+			return lineStore.toMap(false);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		lock.lock();
+		try {
+			ObjectOutputStream.PutField fields = out.putFields();
+			// the same LineData objects as in the children
+			fields.put("branches", lineStore.toMap(true));
+			fields.put("containsInstrumentationInfo",
+					containsInstrumentationInfo);
+			fields.put("methodNamesAndDescriptors", new HashSet<String>(
+					methods.getNamesAndDescriptors()));
+			fields.put("name", name);
+			fields.put("sourceFileName", sourceFileName);
+			out.writeFields();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		containsInstrumentationInfo = fields.get(
+				"containsInstrumentationInfo", false);
+		methods = new MethodTable();
+		Set<String> methodNamesAndDescriptors = (Set<String>) fields.get(
+				"methodNamesAndDescriptors", null);
+		if (methodNamesAndDescriptors != null) {
+			for (String method : methodNamesAndDescriptors) {
+				methods.intern(method);
+			}
+		}
+		name = (String) fields.get("name", null);
+		sourceFileName = (String) fields.get("sourceFileName", null);
+
+		// the lines were read into the children by CoverageDataContainer
+		lineStore = new LineStore();
+		for (CoverageData coverageData : children.values()) {
+			LineData lineData = (LineData) coverageData;
+			lineData.setMethod(methods.intern(lineData.getMethodName(),
+					lineData.getMethodDescriptor()));
+			lineStore.put(lineData);
+		}
+		children.clear();
+		Map<Integer, LineData> branches = (Map<Integer, LineData>) fields
+				.get("branches", null);
+		if (branches != null) {
+			for (Integer lineNumber : branches.keySet()) {
+				lineStore.addBranch(lineNumber.intValue());
+			}
+		}
+		lineStore.trimToSize();
+	}
+
 	/**
 	 * Increment the number of hits for a particular line of code.
 	 *
@@ -489,6 +727,7 @@ public class ClassData extends CoverageDataContainer
 	public void touch(int lineNumber, int hits) {
 		lock.lock();
 		try {
+			checkNotFrozen();
 			LineData lineData = getLineData(lineNumber);
 			if (lineData == null)
 				lineData = addLine(lineNumber, null, null);
@@ -510,6 +749,7 @@ public class ClassData extends CoverageDataContainer
 			int hits) {
 		lock.lock();
 		try {
+			checkNotFrozen();
 			LineData lineData = getLineData(lineNumber);
 			if (lineData == null)
 				lineData = addLine(lineNumber, null, null);
@@ -531,6 +771,7 @@ public class ClassData extends CoverageDataContainer
 			int hits) {
 		lock.lock();
 		try {
+			checkNotFrozen();
 			LineData lineData = getLineData(lineNumber);
 			if (lineData == null)
 				lineData = addLine(lineNumber, null, null);
@@ -0,0 +1,132 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * <p>Constants and primitives of the compact (binary) data file format.</p>
+ * <p/>
+ * <p>The file consists of:</p>
+ * <pre>
+ * header:     magic ("CBDF"), format version (byte)
+ * strings:    count, strings (modified UTF-8) - class names, source file names,
+ *             method names and descriptors, each of them stored only once
+ * directory:  count, then for every class (sorted by name):
+ *             name, source file name (+1, 0 means none), flags,
+ *             number of valid/covered lines, number of valid/covered branches,
+ *             length of the class block
+ * blocks:     one block per class (in the directory order):
+ *             method names and descriptors of the class,
+ *             count of lines, line numbers (as deltas), method names (+1),
+ *             method descriptors (+1), hits,
+ *             count of lines with branches, for every such line: index of the line,
+ *             jumps (number, true hits, false hits) and switches
+ *             (number, keys, max branches, default hits, hits of every branch)
+ * </pre>
+ * <p>Strings are referenced by indexes into the string table. All the integers (except
+ * the magic) are variable length, so the small numbers (most of line deltas and hits)
+ * take a single byte. Lines of a class are stored column by column, so that similar
+ * values are next to each other.</p>
+ * <p/>
+ * <p>Thanks to the directory and the per-class summaries a reader can skip classes it
+ * doesn't need (or load them later).</p>
+ *
+ * @see CompactCoverageDataWriter
+ * @see CompactCoverageDataReader
+ */
+@CoverageIgnore
+final class CompactCoverageDataFormat {
+	static final byte[] MAGIC = {'C', 'B', 'D', 'F'};
+
+	static final int VERSION = 1;
+
+	/**
+	 * Class flag: {@link ClassData#containsInstrumentationInfo()}
+	 */
+	static final int FLAG_INSTRUMENTED = 1;
+
+	private CompactCoverageDataFormat() {
+	}
+
+	/**
+	 * @return true if the header (the first bytes of a file) is the header of the compact format
+	 */
+	static boolean isCompactHeader(byte[] header, int length) {
+		if (length < MAGIC.length) {
+			return false;
+		}
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (header[i] != MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	static void writeVarInt(DataOutput out, int value) throws IOException {
+		writeVarLong(out, value & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Writes the value in zig-zag encoding, so that small negative numbers are short too.
+	 */
+	static void writeSignedVarInt(DataOutput out, int value)
+			throws IOException {
+		writeVarInt(out, (value << 1) ^ (value >> 31));
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable length number");
+	}
+
+	static int readVarInt(DataInput in) throws IOException {
+		return (int) readVarLong(in);
+	}
+
+	static int readSignedVarInt(DataInput in) throws IOException {
+		int value = readVarInt(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static net.sourceforge.cobertura.coveragedata.CompactCoverageDataFormat.*;
+
+/**
+ * Reads {@link ProjectData} written by {@link CompactCoverageDataWriter}.
+ * <p/>
+ * Besides reading the whole file by {@link #read(InputStream)}, the classes can be read
+ * one by one (in the order of their names), so that only a single class is in memory:
+ * <pre>
+ * CompactCoverageDataReader reader = new CompactCoverageDataReader(is);
+ * while (reader.hasNextClass()) {
+ *     ClassData classData = reader.readNextClass();
+ * }
+ * </pre>
+ */
+@CoverageIgnore
+public class CompactCoverageDataReader {
+	private final DataInputStream in;
+
+	private final String[] strings;
+
+	private final ClassEntry[] entries;
+
+	private int nextClass;
+
+	/**
+	 * Reads the header and the directory of the file.
+	 */
+	public CompactCoverageDataReader(InputStream is) throws IOException {
+		in = new DataInputStream(is);
+		strings = readHeader(in);
+
+		entries = new ClassEntry[readVarInt(in)];
+		for (int i = 0; i < entries.length; i++) {
+			entries[i] = readClassEntry(in, strings);
+		}
+	}
+
+	public static ProjectData read(InputStream is) throws IOException {
+		CompactCoverageDataReader reader = new CompactCoverageDataReader(is);
+		ProjectData projectData = new ProjectData();
+		while (reader.hasNextClass()) {
+			projectData.addClassData(reader.readNextClass());
+		}
+		return projectData;
+	}
+
+	public int getNumberOfClasses() {
+		return entries.length;
+	}
+
+	public boolean hasNextClass() {
+		return nextClass < entries.length;
+	}
+
+	/**
+	 * @return name of the class that will be returned by {@link #readNextClass()}
+	 */
+	public String getNextClassName() {
+		return entries[nextClass].name;
+	}
+
+	public ClassData readNextClass() throws IOException {
+		return readClassBlock(in, strings, entries[nextClass++]);
+	}
+
+	/**
+	 * Maps the file into memory and reads only its string table and class directory.
+	 * Classes of the returned project are read-only views ({@link MappedClassData}),
+	 * that decode their lines only when they are needed.
+	 */
+	public static ProjectData map(File file) throws IOException {
+		ByteBuffer buffer;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("File " + file.getAbsolutePath()
+						+ " is too large to be mapped");
+			}
+			// the mapping stays valid after the file is closed
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel
+					.size());
+		} finally {
+			raf.close();
+		}
+
+		ByteBuffer header = buffer.duplicate();
+		DataInputStream in = new DataInputStream(new ByteBufferInputStream(
+				header));
+		String[] strings = readHeader(in);
+
+		int classesCount = readVarInt(in);
+		ClassEntry[] entries = new ClassEntry[classesCount];
+		for (int i = 0; i < classesCount; i++) {
+			entries[i] = readClassEntry(in, strings);
+		}
+
+		ProjectData projectData = new ProjectData();
+		int offset = header.position();
+		for (ClassEntry entry : entries) {
+			projectData.addClassData(new MappedClassData(buffer, strings,
+					entry, offset));
+			offset += entry.blockLength;
+		}
+		return projectData;
+	}
+
+	/**
+	 * Decodes a class block, the buffer has to be positioned at its beginning.
+	 */
+	static ClassData readClassBlock(ByteBuffer block, String[] strings,
+			ClassEntry entry) throws IOException {
+		return readClassBlock(new DataInputStream(new ByteBufferInputStream(
+				block)), strings, entry);
+	}
+
+	/**
+	 * Reads the magic, the version and the string table.
+	 *
+	 * @return the string table
+	 */
+	static String[] readHeader(DataInput in) throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+		in.readFully(magic);
+		if (!isCompactHeader(magic, magic.length)) {
+			throw new IOException("Not a compact Cobertura data file");
+		}
+		int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException(
+					"Unsupported version of compact Cobertura data file: "
+							+ version);
+		}
+
+		String[] strings = new String[readVarInt(in)];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = in.readUTF();
+		}
+		return strings;
+	}
+
+	static ClassEntry readClassEntry(DataInput in, String[] strings)
+			throws IOException {
+		ClassEntry entry = new ClassEntry();
+		entry.name = strings[readVarInt(in)];
+		entry.sourceFileName = nullableString(strings, readVarInt(in));
+		entry.flags = readVarInt(in);
+		entry.numberOfValidLines = readVarInt(in);
+		entry.numberOfCoveredLines = readVarInt(in);
+		entry.numberOfValidBranches = readVarInt(in);
+		entry.numberOfCoveredBranches = readVarInt(in);
+		entry.blockLength = readVarInt(in);
+		return entry;
+	}
+
+	static ClassData readClassBlock(DataInput in, String[] strings,
+			ClassEntry entry) throws IOException {
+		ClassData classData = new ClassData(entry.name);
+		if (entry.sourceFileName != null) {
+			classData.setSourceFileName(entry.sourceFileName);
+		}
+		if ((entry.flags & FLAG_INSTRUMENTED) != 0) {
+			classData.setContainsInstrumentationInfo();
+		}
+
+		int methodsCount = readVarInt(in);
+		for (int i = 0; i < methodsCount; i++) {
+			classData.addMethodNameAndDescriptor(strings[readVarInt(in)]);
+		}
+
+		int linesCount = readVarInt(in);
+		int[] lineNumbers = new int[linesCount];
+		int lineNumber = 0;
+		for (int i = 0; i < linesCount; i++) {
+			lineNumber += readSignedVarInt(in);
+			lineNumbers[i] = lineNumber;
+		}
+		String[] methodNames = new String[linesCount];
+		for (int i = 0; i < linesCount; i++) {
+			methodNames[i] = nullableString(strings, readVarInt(in));
+		}
+		LineData[] lines = new LineData[linesCount];
+		for (int i = 0; i < linesCount; i++) {
+			lines[i] = classData.addLine(lineNumbers[i], methodNames[i],
+					nullableString(strings, readVarInt(in)));
+		}
+		for (int i = 0; i < linesCount; i++) {
+			lines[i].touch(readVarLong(in));
+		}
+
+		int linesWithBranches = readVarInt(in);
+		for (int i = 0; i < linesWithBranches; i++) {
+			int index = readVarInt(in);
+			readConditions(in, classData, lines[index]);
+		}
+		return classData;
+	}
+
+	private static void readConditions(DataInput in, ClassData classData,
+			LineData line) throws IOException {
+		int jumpsCount = readVarInt(in);
+		for (int i = 0; i < jumpsCount; i++) {
+			int jumpNumber = readVarInt(in);
+			classData.addLineJump(line.getLineNumber(), jumpNumber);
+			line.touchJump(jumpNumber, true, readVarLong(in));
+			line.touchJump(jumpNumber, false, readVarLong(in));
+		}
+
+		int switchesCount = readVarInt(in);
+		for (int i = 0; i < switchesCount; i++) {
+			int switchNumber = readVarInt(in);
+			int[] keys = new int[readVarInt(in)];
+			int key = 0;
+			for (int k = 0; k < keys.length; k++) {
+				key += readSignedVarInt(in);
+				keys[k] = key;
+			}
+			int maxBranches = readVarInt(in);
+			classData.addLineSwitch(line.getLineNumber(), switchNumber, keys,
+					maxBranches);
+			line.touchSwitch(switchNumber, -1, readVarLong(in));
+			int branches = readVarInt(in);
+			for (int b = 0; b < branches; b++) {
+				line.touchSwitch(switchNumber, b, readVarLong(in));
+			}
+		}
+	}
+
+	private static String nullableString(String[] strings, int index) {
+		return (index == 0) ? null : strings[index - 1];
+	}
+
+	/**
+	 * {@link InputStream} reading from a {@link ByteBuffer}, it moves the position of the buffer.
+	 */
+	@CoverageIgnore
+	private static class ByteBufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public int read() {
+			return buffer.hasRemaining() ? (buffer.get() & 0xFF) : -1;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if (len == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+	}
+
+	/**
+	 * Entry of the class directory.
+	 */
+	@CoverageIgnore
+	static class ClassEntry {
+		String name;
+		String sourceFileName;
+		int flags;
+		int numberOfValidLines;
+		int numberOfCoveredLines;
+		int numberOfValidBranches;
+		int numberOfCoveredBranches;
+		int blockLength;
+	}
+}
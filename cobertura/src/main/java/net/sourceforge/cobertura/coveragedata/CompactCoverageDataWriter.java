@@ -0,0 +1,246 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static net.sourceforge.cobertura.coveragedata.CompactCoverageDataFormat.*;
+
+/**
+ * Writes {@link ProjectData} in the compact format described in
+ * {@link CompactCoverageDataFormat}.
+ * <p/>
+ * Besides {@link #write(ProjectData, OutputStream)} the data can be written one class
+ * at a time (so that they don't have to be all in memory): blocks of the classes are written
+ * by {@link #writeClass(ClassData)} into a separate stream, then the header is written by
+ * {@link #writeHeader(OutputStream)} and the blocks have to be copied after it.
+ *
+ * @see CompactCoverageDataReader
+ */
+@CoverageIgnore
+public class CompactCoverageDataWriter {
+	private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+
+	private final List<String> strings = new ArrayList<String>();
+
+	/**
+	 * Directory entries of the written classes: indexes of the name and of the source file name,
+	 * flags, summary numbers and the length of the block.
+	 */
+	private final List<int[]> directory = new ArrayList<int[]>();
+
+	private final DataOutputStream blocksOut;
+
+	private String lastClassName;
+
+	/**
+	 * @param blocks - the stream to write the blocks of classes into
+	 */
+	public CompactCoverageDataWriter(OutputStream blocks) {
+		this.blocksOut = new DataOutputStream(blocks);
+	}
+
+	public static void write(ProjectData projectData, OutputStream os)
+			throws IOException {
+		List<ClassData> classes = new ArrayList<ClassData>();
+		for (Iterator it = projectData.getClasses().iterator(); it.hasNext();) {
+			classes.add((ClassData) it.next());
+		}
+		Collections.sort(classes);
+
+		/* Blocks are encoded first, because the string table has to precede them. */
+		ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+		CompactCoverageDataWriter writer = new CompactCoverageDataWriter(blocks);
+		for (ClassData classData : classes) {
+			writer.writeClass(classData);
+		}
+		writer.writeHeader(os);
+		blocks.writeTo(os);
+		os.flush();
+	}
+
+	/**
+	 * Writes the block of the class. Classes have to be written in the order of their names.
+	 */
+	public void writeClass(ClassData classData) throws IOException {
+		if (lastClassName != null
+				&& lastClassName.compareTo(classData.getName()) >= 0) {
+			throw new IllegalArgumentException("Class " + classData.getName()
+					+ " is not written in order (after " + lastClassName + ")");
+		}
+		lastClassName = classData.getName();
+
+		int start = blocksOut.size();
+		writeClassBlock(blocksOut, classData);
+		blocksOut.flush();
+
+		directory.add(new int[]{
+				intern(classData.getName()),
+				internNullable(classData.getRawSourceFileName()),
+				classData.containsInstrumentationInfo() ? FLAG_INSTRUMENTED : 0,
+				classData.getNumberOfValidLines(),
+				classData.getNumberOfCoveredLines(),
+				classData.getNumberOfValidBranches(),
+				classData.getNumberOfCoveredBranches(),
+				blocksOut.size() - start});
+	}
+
+	/**
+	 * Writes the header, the string table and the directory of all the classes written so far.
+	 * The blocks of the classes have to follow.
+	 */
+	public void writeHeader(OutputStream os) throws IOException {
+		DataOutputStream out = new DataOutputStream(os);
+		out.write(MAGIC);
+		out.writeByte(VERSION);
+
+		writeVarInt(out, strings.size());
+		for (String s : strings) {
+			out.writeUTF(s);
+		}
+
+		writeVarInt(out, directory.size());
+		for (int[] entry : directory) {
+			for (int value : entry) {
+				writeVarInt(out, value);
+			}
+		}
+		out.flush();
+	}
+
+	private void writeClassBlock(DataOutputStream out, ClassData classData)
+			throws IOException {
+		List<String> methods = new ArrayList<String>(classData
+				.getMethodNamesAndDescriptors());
+		Collections.sort(methods);
+		writeVarInt(out, methods.size());
+		for (String method : methods) {
+			writeVarInt(out, intern(method));
+		}
+
+		List<LineData> lines = new ArrayList<LineData>();
+		for (Iterator it = classData.getLines().iterator(); it.hasNext();) {
+			lines.add((LineData) it.next());
+		}
+		writeVarInt(out, lines.size());
+
+		int previousLine = 0;
+		for (LineData line : lines) {
+			writeSignedVarInt(out, line.getLineNumber() - previousLine);
+			previousLine = line.getLineNumber();
+		}
+		for (LineData line : lines) {
+			writeVarInt(out, internNullable(line.getMethodName()));
+		}
+		for (LineData line : lines) {
+			writeVarInt(out, internNullable(line.getMethodDescriptor()));
+		}
+		for (LineData line : lines) {
+			writeVarLong(out, line.getHits());
+		}
+
+		int linesWithBranches = 0;
+		for (LineData line : lines) {
+			if (line.getConditionSize() > 0) {
+				linesWithBranches++;
+			}
+		}
+		writeVarInt(out, linesWithBranches);
+		for (int i = 0; i < lines.size(); i++) {
+			LineData line = lines.get(i);
+			if (line.getConditionSize() > 0) {
+				writeVarInt(out, i);
+				writeConditions(out, line);
+			}
+		}
+	}
+
+	private void writeConditions(DataOutputStream out, LineData line)
+			throws IOException {
+		List<JumpData> jumps = new ArrayList<JumpData>();
+		List<SwitchData> switches = new ArrayList<SwitchData>();
+		for (int i = 0; i < line.getConditionSize(); i++) {
+			Object condition = line.getConditionData(i);
+			if (condition instanceof JumpData) {
+				jumps.add((JumpData) condition);
+			} else {
+				switches.add((SwitchData) condition);
+			}
+		}
+
+		writeVarInt(out, jumps.size());
+		for (JumpData jump : jumps) {
+			writeVarInt(out, jump.getConditionNumber());
+			writeVarLong(out, jump.getTrueHits());
+			writeVarLong(out, jump.getFalseHits());
+		}
+
+		writeVarInt(out, switches.size());
+		for (SwitchData switchData : switches) {
+			writeVarInt(out, switchData.getSwitchNumber());
+			int[] keys = switchData.getKeys();
+			writeVarInt(out, keys.length);
+			int previousKey = 0;
+			for (int key : keys) {
+				writeSignedVarInt(out, key - previousKey);
+				previousKey = key;
+			}
+			writeVarInt(out, switchData.getMaxBranches());
+			writeVarLong(out, switchData.getDefaultHits());
+			long[] hits = switchData.getBranchHits();
+			writeVarInt(out, hits.length);
+			for (long hit : hits) {
+				writeVarLong(out, hit);
+			}
+		}
+	}
+
+	private int intern(String s) {
+		Integer index = stringIndexes.get(s);
+		if (index == null) {
+			index = Integer.valueOf(strings.size());
+			strings.add(s);
+			stringIndexes.put(s, index);
+		}
+		return index.intValue();
+	}
+
+	/**
+	 * @return index of the string + 1, or 0 for null
+	 */
+	private int internNullable(String s) {
+		return (s == null) ? 0 : intern(s) + 1;
+	}
+}
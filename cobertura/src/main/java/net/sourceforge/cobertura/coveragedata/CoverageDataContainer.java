@@ -28,10 +28,13 @@ import net.sourceforge.cobertura.CoverageIgnore;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -48,8 +51,41 @@ public abstract class CoverageDataContainer
 
 	private static final long serialVersionUID = 2;
 
+	/**
+	 * Incremented by every change of any coverage data, see {@link #modified()}.
+	 */
+	private static final AtomicLong modifications = new AtomicLong();
+
+	static final int VALID_LINES = 0;
+	static final int COVERED_LINES = 1;
+	static final int VALID_BRANCHES = 2;
+	static final int COVERED_BRANCHES = 3;
+
 	protected transient Lock lock;
 
+	/**
+	 * The metrics summed over the children, indexed by {@link #VALID_LINES},
+	 * {@link #COVERED_LINES}, {@link #VALID_BRANCHES} and {@link #COVERED_BRANCHES}.
+	 * Null until they are needed for the first time.
+	 */
+	private transient int[] aggregates;
+
+	/**
+	 * Value of {@link #modifications} when {@link #aggregates} were computed.
+	 */
+	private transient long aggregatesModification;
+
+	/**
+	 * Set by {@link #freeze()}, the data cannot be modified any more.
+	 */
+	private transient volatile boolean frozen;
+
+	/**
+	 * The message of the exception thrown when frozen data (of a container,
+	 * a line or a branch) are modified.
+	 */
+	static final String FROZEN = "The coverage data are frozen and cannot be modified";
+
 	/**
 	 * Each key is the name of a child, usually stored as a String or
 	 * an Integer object.  Each value is information about the child,
@@ -96,20 +132,9 @@ public abstract class CoverageDataContainer
 	 *         in this container.
 	 */
 	public double getBranchCoverageRate() {
-		synchronizeState();
-		int number = 0;
-		int numberCovered = 0;
-		lock.lock();
-		try {
-			Iterator<CoverageData> iter = this.children.values().iterator();
-			while (iter.hasNext()) {
-				CoverageData coverageContainer = (CoverageData) iter.next();
-				number += coverageContainer.getNumberOfValidBranches();
-				numberCovered += coverageContainer.getNumberOfCoveredBranches();
-			}
-		} finally {
-			lock.unlock();
-		}
+		int[] metrics = getAggregates();
+		int number = metrics[VALID_BRANCHES];
+		int numberCovered = metrics[COVERED_BRANCHES];
 		if (number == 0) {
 			// no branches, therefore 100% branch coverage.
 			return 1d;
@@ -141,20 +166,9 @@ public abstract class CoverageDataContainer
 	 *         between 0 and 1, inclusive.
 	 */
 	public double getLineCoverageRate() {
-		synchronizeState();
-		int number = 0;
-		int numberCovered = 0;
-		lock.lock();
-		try {
-			Iterator<CoverageData> iter = this.children.values().iterator();
-			while (iter.hasNext()) {
-				CoverageData coverageContainer = (CoverageData) iter.next();
-				number += coverageContainer.getNumberOfValidLines();
-				numberCovered += coverageContainer.getNumberOfCoveredLines();
-			}
-		} finally {
-			lock.unlock();
-		}
+		int[] metrics = getAggregates();
+		int number = metrics[VALID_LINES];
+		int numberCovered = metrics[COVERED_LINES];
 		if (number == 0) {
 			// no lines, therefore 100% line coverage.
 			return 1d;
@@ -169,74 +183,26 @@ public abstract class CoverageDataContainer
 		synchronizeState();
 		lock.lock();
 		try {
-			return this.children.size();
+			return getChildrenValues().size();
 		} finally {
 			lock.unlock();
 		}
 	}
 
 	public int getNumberOfCoveredBranches() {
-		synchronizeState();
-		int number = 0;
-		lock.lock();
-		try {
-			Iterator<CoverageData> iter = this.children.values().iterator();
-			while (iter.hasNext()) {
-				CoverageData coverageContainer = (CoverageData) iter.next();
-				number += coverageContainer.getNumberOfCoveredBranches();
-			}
-		} finally {
-			lock.unlock();
-		}
-		return number;
+		return getAggregates()[COVERED_BRANCHES];
 	}
 
 	public int getNumberOfCoveredLines() {
-		synchronizeState();
-		int number = 0;
-		lock.lock();
-		try {
-			Iterator<CoverageData> iter = this.children.values().iterator();
-			while (iter.hasNext()) {
-				CoverageData coverageContainer = (CoverageData) iter.next();
-				number += coverageContainer.getNumberOfCoveredLines();
-			}
-		} finally {
-			lock.unlock();
-		}
-		return number;
+		return getAggregates()[COVERED_LINES];
 	}
 
 	public int getNumberOfValidBranches() {
-		synchronizeState();
-		int number = 0;
-		lock.lock();
-		try {
-			Iterator<CoverageData> iter = this.children.values().iterator();
-			while (iter.hasNext()) {
-				CoverageData coverageContainer = (CoverageData) iter.next();
-				number += coverageContainer.getNumberOfValidBranches();
-			}
-		} finally {
-			lock.unlock();
-		}
-		return number;
+		return getAggregates()[VALID_BRANCHES];
 	}
 
 	public int getNumberOfValidLines() {
-		synchronizeState();
-		int number = 0;
-		lock.lock();
-		try {
-			Iterator<CoverageData> iter = this.children.values().iterator();
-			while (iter.hasNext()) {
-				CoverageData coverageContainer = (CoverageData) iter.next();
-				number += coverageContainer.getNumberOfValidLines();
-			}
-		} finally {
-			lock.unlock();
-		}
-		return number;
+		return getAggregates()[VALID_LINES];
 	}
 
 	/**
@@ -265,6 +231,7 @@ public abstract class CoverageDataContainer
 		container.synchronizeState();
 		getBothLocks(container);
 		try {
+			checkNotFrozen();
 			Iterator<Object> iter = container.children.keySet().iterator();
 			while (iter.hasNext()) {
 				Object key = iter.next();
@@ -281,6 +248,7 @@ public abstract class CoverageDataContainer
 					this.children.put(key, newChild);
 				}
 			}
+			modified();
 		} finally {
 			lock.unlock();
 			container.lock.unlock();
@@ -316,6 +284,148 @@ public abstract class CoverageDataContainer
 		}
 	}
 
+	/**
+	 * Invalidates the cached metrics of all the containers.  It must be
+	 * called by everything changing the coverage data (adding children
+	 * or lines, touching lines, merging).
+	 */
+	static void modified() {
+		modifications.incrementAndGet();
+	}
+
+	/**
+	 * Makes this container and all its children read-only.  The data can be
+	 * then read by any number of threads without taking any lock (the lock
+	 * is replaced by {@link FrozenLock}) and the metrics are computed only
+	 * once, here.  Methods modifying frozen data throw
+	 * {@link IllegalStateException}.  Freezing cannot be undone.
+	 */
+	public void freeze() {
+		synchronizeState();
+		Lock unfrozenLock = lock;
+		unfrozenLock.lock();
+		try {
+			if (frozen)
+				return;
+			freezeChildren();
+			int[] computed = new int[4];
+			computeAggregates(computed);
+			aggregates = computed;
+			// the writers waiting for the old lock see the flag
+			frozen = true;
+			lock = FrozenLock.INSTANCE;
+		} finally {
+			unfrozenLock.unlock();
+		}
+	}
+
+	/**
+	 * @return True if the data have been frozen by {@link #freeze()}.
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Called by the methods modifying the data, with the lock held.
+	 *
+	 * @throws IllegalStateException if the data have been frozen
+	 */
+	void checkNotFrozen() {
+		if (frozen)
+			throw new IllegalStateException(FROZEN);
+	}
+
+	/**
+	 * Freezes the children of this container.  The caller holds the lock.
+	 */
+	void freezeChildren() {
+		Iterator<CoverageData> iter = getChildrenValues().iterator();
+		while (iter.hasNext()) {
+			CoverageData child = iter.next();
+			if (child instanceof CoverageDataContainer)
+				((CoverageDataContainer) child).freeze();
+		}
+	}
+
+	/**
+	 * Invalidates the cached metrics of this container only, for a change
+	 * that cannot affect any other container.  The caller holds the lock.
+	 */
+	void invalidateAggregates() {
+		aggregates = null;
+	}
+
+	/**
+	 * The metrics are computed only once and kept until any coverage data
+	 * is modified, so asking a container (and its parents) for them again,
+	 * as the reports do, doesn't go through all the children again.
+	 *
+	 * @return The cached metrics of this container, see {@link #aggregates}.
+	 *         The returned array must not be modified.
+	 */
+	int[] getAggregates() {
+		if (frozen) {
+			// computed by freeze()
+			return aggregates;
+		}
+		synchronizeState();
+		lock.lock();
+		try {
+			// read before computing, a concurrent change is seen next time
+			long modification = modifications.get();
+			if ((aggregates == null)
+					|| (aggregatesModification != modification)) {
+				int[] computed = new int[4];
+				computeAggregates(computed);
+				aggregates = computed;
+				aggregatesModification = modification;
+			}
+			return aggregates;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Sums the metrics of the children into the given array (indexed by
+	 * {@link #VALID_LINES} etc.).  The caller holds the lock.
+	 */
+	void computeAggregates(int[] sums) {
+		Iterator<CoverageData> iter = getChildrenValues().iterator();
+		while (iter.hasNext()) {
+			CoverageData child = iter.next();
+			sums[VALID_LINES] += child.getNumberOfValidLines();
+			sums[COVERED_LINES] += child.getNumberOfCoveredLines();
+			sums[VALID_BRANCHES] += child.getNumberOfValidBranches();
+			sums[COVERED_BRANCHES] += child.getNumberOfCoveredBranches();
+		}
+	}
+
+	/**
+	 * @return The children the metrics of this container are computed from.
+	 *         Subclasses not keeping their children in {@link #children}
+	 *         override this.  The caller must hold the lock.
+	 */
+	Collection<CoverageData> getChildrenValues() {
+		return children.values();
+	}
+
+	/**
+	 * @return The children as they are written by the serialization.
+	 *         Subclasses not keeping their children in {@link #children}
+	 *         override this, so that the serialized form doesn't change.
+	 */
+	Map<Object, CoverageData> getSerializedChildren() {
+		return children;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("children", getSerializedChildren());
+		out.writeFields();
+	}
+
 	private void readObject(ObjectInputStream in) throws IOException,
 			ClassNotFoundException {
 		in.defaultReadObject();
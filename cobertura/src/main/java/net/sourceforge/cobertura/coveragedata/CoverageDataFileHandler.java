@@ -35,12 +35,22 @@ import java.util.logging.Logger;
 /**
  * This contains methods used for reading and writing the
  * "cobertura.ser" file.
+ * <p/>
+ * The file is written either with java serialization ({@link #FORMAT_SERIALIZED}),
+ * or in the compact format ({@link #FORMAT_COMPACT}, see {@link CompactCoverageDataFormat}).
+ * The format is chosen by the "net.sourceforge.cobertura.datafile.format" property and
+ * it is detected automatically when the file is loaded.
  */
 @CoverageIgnore
 public abstract class CoverageDataFileHandler {
 	private static Logger logger = Logger
 			.getLogger(CoverageDataFileHandler.class.getCanonicalName());
 	private static File defaultFile = null;
+	private static String defaultFormat = null;
+
+	public static final String FORMAT_SERIALIZED = "ser";
+
+	public static final String FORMAT_COMPACT = "compact";
 
 	public static File getDefaultDataFile() {
 		// return cached defaultFile
@@ -55,6 +65,23 @@ public abstract class CoverageDataFileHandler {
 		return defaultFile;
 	}
 
+	public static String getDefaultDataFormat() {
+		if (defaultFormat != null) {
+			return defaultFormat;
+		}
+
+		ConfigurationUtil config = new ConfigurationUtil();
+		String format = config.getDatafileFormat().trim();
+		if (!format.equals(FORMAT_SERIALIZED) && !format.equals(FORMAT_COMPACT)) {
+			logger.log(Level.WARNING, "Cobertura: Unknown data file format "
+					+ format + ", using " + FORMAT_SERIALIZED);
+			format = FORMAT_SERIALIZED;
+		}
+		defaultFormat = format;
+
+		return defaultFormat;
+	}
+
 	public static ProjectData loadCoverageData(File dataFile) {
 		InputStream is = null;
 		try {
@@ -76,8 +103,51 @@ public abstract class CoverageDataFileHandler {
 				}
 		}
 	}
+	/**
+	 * Loads the data file for reading only (for example to create a report).
+	 * <p/>
+	 * A file in the compact format is mapped into memory and its classes are
+	 * read-only views decoding their lines only when they are needed
+	 * (see {@link CompactCoverageDataReader#map(File)}), so even a huge file
+	 * can be processed with bounded heap. The returned data must not be modified.
+	 * Files in other formats are loaded by {@link #loadCoverageData(File)}.
+	 */
+	public static ProjectData mapCoverageData(File dataFile) {
+		boolean compact;
+		try {
+			compact = isCompactDataFile(dataFile);
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Cobertura: Error reading file "
+					+ dataFile.getAbsolutePath() + ": "
+					+ e.getLocalizedMessage(), e);
+			return null;
+		}
+		if (!compact) {
+			return loadCoverageData(dataFile);
+		}
+
+		try {
+			ProjectData projectData = CompactCoverageDataReader.map(dataFile);
+			logger.log(Level.INFO, "Cobertura: Mapped information on "
+					+ projectData.getNumberOfClasses() + " classes.");
+			return projectData;
+		} catch (IOException e) {
+			logger.log(Level.SEVERE, "Cobertura: Error mapping file "
+					+ dataFile.getAbsolutePath() + ": "
+					+ e.getLocalizedMessage(), e);
+			return null;
+		}
+	}
+
 	private static ProjectData loadCoverageData(InputStream dataFile)
 			throws IOException {
+		if (isCompact(dataFile)) {
+			ProjectData projectData = CompactCoverageDataReader.read(dataFile);
+			logger.log(Level.INFO, "Cobertura: Loaded information on "
+					+ projectData.getNumberOfClasses() + " classes.");
+			return projectData;
+		}
+
 		ObjectInputStream objects = null;
 
 		try {
@@ -105,52 +175,110 @@ public abstract class CoverageDataFileHandler {
 		}
 	}
 
-	public static void saveCoverageData(ProjectData projectData, File dataFile) {
-		FileOutputStream os = null;
+	/**
+	 * @return true if the file is in the compact format ({@link #FORMAT_COMPACT})
+	 */
+	public static boolean isCompactDataFile(File dataFile) throws IOException {
+		InputStream is = new BufferedInputStream(new FileInputStream(dataFile));
+		try {
+			return isCompact(is);
+		} finally {
+			is.close();
+		}
+	}
 
+	/**
+	 * Peeks at the first bytes of the stream (it has to support marks).
+	 */
+	private static boolean isCompact(InputStream dataFile) throws IOException {
+		byte[] header = new byte[CompactCoverageDataFormat.MAGIC.length];
+		dataFile.mark(header.length);
 		try {
-			File dataDir = dataFile.getParentFile();
-			if ((dataDir != null) && !dataDir.exists()) {
-				dataDir.mkdirs();
+			int length = 0;
+			while (length < header.length) {
+				int read = dataFile.read(header, length, header.length - length);
+				if (read == -1) {
+					break;
+				}
+				length += read;
 			}
-			os = new FileOutputStream(dataFile);
-			saveCoverageData(projectData, os);
+			return CompactCoverageDataFormat.isCompactHeader(header, length);
+		} finally {
+			dataFile.reset();
+		}
+	}
+
+	public static void saveCoverageData(ProjectData projectData, File dataFile) {
+		saveCoverageData(projectData, dataFile, getDefaultDataFormat());
+	}
+
+	/**
+	 * @param format {@link #FORMAT_SERIALIZED} or {@link #FORMAT_COMPACT}
+	 * @see #writeCoverageData(ProjectData, File, String)
+	 */
+	public static void saveCoverageData(ProjectData projectData,
+			File dataFile, String format) {
+		try {
+			writeCoverageData(projectData, dataFile, format);
 		} catch (IOException e) {
 			logger.log(Level.SEVERE, "Cobertura: Error writing file "
 					+ dataFile.getAbsolutePath(), e);
-		} finally {
-			if (os != null) {
-				try {
-					os.close();
-				} catch (IOException e) {
-					logger.log(Level.SEVERE, "Cobertura: Error closing file "
-							+ dataFile.getAbsolutePath(), e);
-				}
-			}
 		}
 	}
 
-	private static void saveCoverageData(ProjectData projectData,
-			OutputStream dataFile) {
-		ObjectOutputStream objects = null;
-
+	/**
+	 * The same as {@link #saveCoverageData(ProjectData, File, String)}, but a failure is thrown instead of
+	 * being logged.
+	 * <p/>
+	 * The data is written into a temporary file in the directory of the data file, which then replaces the
+	 * data file. So the previous data file stays intact when the write fails, or when the JVM is stopped
+	 * in the middle of it.
+	 *
+	 * @param format {@link #FORMAT_SERIALIZED} or {@link #FORMAT_COMPACT}
+	 */
+	public static void writeCoverageData(ProjectData projectData,
+			File dataFile, String format) throws IOException {
+		File dataDir = dataFile.getAbsoluteFile().getParentFile();
+		if (!dataDir.exists()) {
+			dataDir.mkdirs();
+		}
+		File tempFile = File.createTempFile(dataFile.getName() + ".", ".tmp",
+				dataDir);
 		try {
-			objects = new ObjectOutputStream(dataFile);
-			objects.writeObject(projectData);
+			OutputStream os = new BufferedOutputStream(new FileOutputStream(
+					tempFile), 16384);
+			try {
+				if (FORMAT_COMPACT.equals(format)) {
+					CompactCoverageDataWriter.write(projectData, os);
+				} else {
+					ObjectOutputStream objects = new ObjectOutputStream(os);
+					objects.writeObject(projectData);
+					objects.flush();
+				}
+			} finally {
+				os.close();
+			}
+			replace(tempFile, dataFile);
 			logger.info("Cobertura: Saved information on "
 					+ projectData.getNumberOfClasses() + " classes.");
-		} catch (IOException e) {
-			logger.log(Level.SEVERE,
-					"Cobertura: Error writing to object stream.", e);
 		} finally {
-			if (objects != null) {
-				try {
-					objects.close();
-				} catch (IOException e) {
-					logger.log(Level.SEVERE,
-							"Cobertura: Error closing object stream.", e);
-				}
-			}
+			// not there any more when it has replaced the data file
+			tempFile.delete();
+		}
+	}
+
+	/**
+	 * Renames the file over the target. Where a rename cannot replace an existing file (on Windows), the target
+	 * is deleted first.
+	 */
+	private static void replace(File file, File target) throws IOException {
+		if (file.renameTo(target)) {
+			return;
+		}
+		target.delete();
+		if (!file.renameTo(target)) {
+			throw new IOException("Cannot rename " + file.getAbsolutePath()
+					+ " to " + target.getAbsolutePath());
 		}
 	}
 }
@@ -0,0 +1,67 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * <p>The lock of the coverage data that have been frozen (see {@link ProjectData#freeze()}).</p>
+ * <p/>
+ * <p>Frozen data are never modified, so the readers don't need to exclude each other and
+ * locking does nothing. Keeping a lock object (instead of testing a flag before every locking)
+ * leaves all the getters as they are.</p>
+ */
+@CoverageIgnore
+final class FrozenLock implements Lock {
+	static final FrozenLock INSTANCE = new FrozenLock();
+
+	private FrozenLock() {
+	}
+
+	public void lock() {
+	}
+
+	public void lockInterruptibly() {
+	}
+
+	public boolean tryLock() {
+		return true;
+	}
+
+	public boolean tryLock(long time, TimeUnit unit) {
+		return true;
+	}
+
+	public void unlock() {
+	}
+
+	public Condition newCondition() {
+		throw new UnsupportedOperationException(
+				"Frozen coverage data have no conditions");
+	}
+}
@@ -65,7 +65,24 @@ public class JumpData
 		return this.conditionNumber - ((JumpData) o).conditionNumber;
 	}
 
-	void touchBranch(boolean branch, int new_hits) {
+	/**
+	 * The data are not modified any more (see {@link CoverageDataContainer#freeze()}),
+	 * so the readers don't need to lock.
+	 */
+	void freeze() {
+		lock = FrozenLock.INSTANCE;
+	}
+
+	/**
+	 * @throws IllegalStateException if the data have been frozen
+	 */
+	private void checkNotFrozen() {
+		if (lock == FrozenLock.INSTANCE)
+			throw new IllegalStateException(CoverageDataContainer.FROZEN);
+	}
+
+	void touchBranch(boolean branch, long new_hits) {
+		checkNotFrozen();
 		lock.lock();
 		try {
 			if (branch) {
@@ -147,10 +164,12 @@ public class JumpData
 
 	public void merge(BranchCoverageData coverageData) {
 		JumpData jumpData = (JumpData) coverageData;
+		checkNotFrozen();
 		getBothLocks(jumpData);
 		try {
 			this.trueHits += jumpData.trueHits;
 			this.falseHits += jumpData.falseHits;
+			CoverageDataContainer.modified();
 		} finally {
 			lock.unlock();
 			jumpData.lock.unlock();
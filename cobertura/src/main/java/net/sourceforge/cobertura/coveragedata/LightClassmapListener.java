@@ -38,6 +38,13 @@ public interface LightClassmapListener {
 	public void putJumpTouchPoint(int classLine, int trueCounterId,
 			int falseCounterId);
 
+	/**
+	 * Jump without a counter of the 'false' branch, that ends a basic block. The 'false' branch is taken
+	 * every time the block (counted by blockCounterId) is executed and the jump is not.
+	 */
+	public void putBlockJumpTouchPoint(int classLine, int trueCounterId,
+			int blockCounterId);
+
 	public void putSwitchTouchPoint(int classLine, int maxBranches,
 			int... counterIds);
 }
@@ -27,6 +27,10 @@ package net.sourceforge.cobertura.coveragedata;
 import net.sourceforge.cobertura.CoverageIgnore;
 import net.sourceforge.cobertura.util.StringUtil;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
@@ -35,12 +39,32 @@ import java.util.List;
 public class LineData implements Comparable<Object>, CoverageData, Serializable {
 	private static final long serialVersionUID = 4;
 
+	/**
+	 * The method is written as its name and descriptor, as it used to be
+	 * stored in the line.
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("hits", long.class),
+			new ObjectStreamField("jumps", List.class),
+			new ObjectStreamField("switches", List.class),
+			new ObjectStreamField("lineNumber", int.class),
+			new ObjectStreamField("methodDescriptor", String.class),
+			new ObjectStreamField("methodName", String.class)};
+
 	private long hits;
 	private List<JumpData> jumps;
 	private List<SwitchData> switches;
-	private final int lineNumber;
-	private String methodDescriptor;
-	private String methodName;
+	private int lineNumber;
+
+	/**
+	 * Usually the method from the table of the class (see {@link MethodTable}).
+	 */
+	private MethodTable.Method method;
+
+	/**
+	 * Set by {@link #freeze()}, the line cannot be modified any more.
+	 */
+	private transient volatile boolean frozen;
 
 	LineData(int lineNumber) {
 		this(lineNumber, null, null);
@@ -50,8 +74,7 @@ public class LineData implements Comparable<Object>, CoverageData, Serializable
 		this.hits = 0;
 		this.jumps = null;
 		this.lineNumber = lineNumber;
-		this.methodName = methodName;
-		this.methodDescriptor = methodDescriptor;
+		this.method = MethodTable.unregistered(methodName, methodDescriptor);
 	}
 
 	/**
@@ -76,8 +99,9 @@ public class LineData implements Comparable<Object>, CoverageData, Serializable
 				&& ((this.switches == lineData.switches) || ((this.switches != null) && (this.switches
 						.equals(lineData.switches))))
 				&& (this.lineNumber == lineData.lineNumber)
-				&& (this.methodDescriptor.equals(lineData.methodDescriptor))
-				&& (this.methodName.equals(lineData.methodName));
+				&& (this.getMethodDescriptor().equals(lineData
+						.getMethodDescriptor()))
+				&& (this.getMethodName().equals(lineData.getMethodName()));
 	}
 
 	public double getBranchCoverageRate() {
@@ -117,11 +141,15 @@ public class LineData implements Comparable<Object>, CoverageData, Serializable
 	}
 
 	public String getMethodDescriptor() {
-		return methodDescriptor;
+		return (method == null) ? null : method.descriptor;
 	}
 
 	public String getMethodName() {
-		return methodName;
+		return (method == null) ? null : method.name;
+	}
+
+	MethodTable.Method getMethod() {
+		return method;
 	}
 
 	public int getNumberOfCoveredLines() {
@@ -165,6 +193,7 @@ public class LineData implements Comparable<Object>, CoverageData, Serializable
 	}
 
 	synchronized public void merge(CoverageData coverageData) {
+		checkNotFrozen();
 		LineData lineData = (LineData) coverageData;
 		this.hits += lineData.hits;
 		if (lineData.jumps != null)
@@ -190,17 +219,25 @@ public class LineData implements Comparable<Object>, CoverageData, Serializable
 						.size()); i < lineData.switches.size(); i++)
 					this.switches.add(lineData.switches.get(i));
 			}
-		if (lineData.methodName != null)
-			this.methodName = lineData.methodName;
-		if (lineData.methodDescriptor != null)
-			this.methodDescriptor = lineData.methodDescriptor;
+		if ((lineData.getMethodName() != null)
+				&& (lineData.getMethodDescriptor() != null))
+			this.method = lineData.method;
+		else if (lineData.method != null)
+			this.method = MethodTable.unregistered(
+					(lineData.getMethodName() != null) ? lineData
+							.getMethodName() : getMethodName(), (lineData
+							.getMethodDescriptor() != null) ? lineData
+							.getMethodDescriptor() : getMethodDescriptor());
+		CoverageDataContainer.modified();
 	}
 
 	void addJump(int jumpNumber) {
+		checkNotFrozen();
 		getJumpData(jumpNumber);
 	}
 
 	void addSwitch(int switchNumber, int min, int max, int maxBranches) {
+		checkNotFrozen();
 		SwitchData sd = getSwitchData(switchNumber, new SwitchData(
 				switchNumber, min, max, maxBranches));
 		if (sd.getMaxBranches() > maxBranches) {
@@ -208,21 +245,64 @@ public class LineData implements Comparable<Object>, CoverageData, Serializable
 		}
 	}
 
+	void addSwitch(int switchNumber, int[] keys, int maxBranches) {
+		checkNotFrozen();
+		SwitchData sd = getSwitchData(switchNumber, new SwitchData(
+				switchNumber, keys, maxBranches));
+		if (sd.getMaxBranches() > maxBranches) {
+			sd.setMaxBranches(maxBranches);
+		}
+	}
+
 	void setMethodNameAndDescriptor(String name, String descriptor) {
-		this.methodName = name;
-		this.methodDescriptor = descriptor;
+		checkNotFrozen();
+		this.method = MethodTable.unregistered(name, descriptor);
 	}
 
-	void touch(int new_hits) {
+	void setMethod(MethodTable.Method method) {
+		checkNotFrozen();
+		this.method = method;
+	}
+
+	/**
+	 * Called when the class is frozen (see {@link CoverageDataContainer#freeze()}),
+	 * the jumps stop locking.  The line and its branches cannot be modified
+	 * afterwards.
+	 */
+	synchronized void freeze() {
+		if (jumps != null)
+			for (int i = jumps.size() - 1; i >= 0; i--)
+				jumps.get(i).freeze();
+		if (switches != null)
+			for (int i = switches.size() - 1; i >= 0; i--)
+				switches.get(i).freeze();
+		frozen = true;
+	}
+
+	/**
+	 * @throws IllegalStateException if the line has been frozen
+	 */
+	private void checkNotFrozen() {
+		if (frozen)
+			throw new IllegalStateException(CoverageDataContainer.FROZEN);
+	}
+
+	void touch(long new_hits) {
+		checkNotFrozen();
 		this.hits += new_hits;
+		CoverageDataContainer.modified();
 	}
 
-	void touchJump(int jumpNumber, boolean branch, int hits) {
+	void touchJump(int jumpNumber, boolean branch, long hits) {
+		checkNotFrozen();
 		getJumpData(jumpNumber).touchBranch(branch, hits);
+		CoverageDataContainer.modified();
 	}
 
-	void touchSwitch(int switchNumber, int branch, int hits) {
+	void touchSwitch(int switchNumber, int branch, long hits) {
+		checkNotFrozen();
 		getSwitchData(switchNumber, null).touchBranch(branch, hits);
+		CoverageDataContainer.modified();
 	}
 
 	public int getConditionSize() {
@@ -258,6 +338,9 @@ public class LineData implements Comparable<Object>, CoverageData, Serializable
 	}
 
 	synchronized JumpData getJumpData(int jumpNumber) {
+		if ((jumps == null) || (jumps.size() <= jumpNumber)) {
+			checkNotFrozen();
+		}
 		if (jumps == null) {
 			jumps = new ArrayList<JumpData>();
 		}
@@ -269,6 +352,9 @@ public class LineData implements Comparable<Object>, CoverageData, Serializable
 	}
 
 	synchronized SwitchData getSwitchData(int switchNumber, SwitchData data) {
+		if ((switches == null) || (switches.size() <= switchNumber)) {
+			checkNotFrozen();
+		}
 		if (switches == null) {
 			switches = new ArrayList<SwitchData>();
 		}
@@ -286,4 +372,31 @@ public class LineData implements Comparable<Object>, CoverageData, Serializable
 		return (SwitchData) switches.get(switchNumber);
 	}
 
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("hits", hits);
+		fields.put("jumps", jumps);
+		fields.put("switches", switches);
+		fields.put("lineNumber", lineNumber);
+		fields.put("methodDescriptor", getMethodDescriptor());
+		fields.put("methodName", getMethodName());
+		out.writeFields();
+	}
+
+	/**
+	 * The method is not in any table yet, the class puts it there
+	 * when it's read.
+	 */
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		hits = fields.get("hits", 0L);
+		jumps = (List<JumpData>) fields.get("jumps", null);
+		switches = (List<SwitchData>) fields.get("switches", null);
+		lineNumber = fields.get("lineNumber", 0);
+		method = MethodTable.unregistered((String) fields.get("methodName",
+				null), (String) fields.get("methodDescriptor", null));
+	}
+
 }
@@ -0,0 +1,283 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Lines of a {@link ClassData}, kept sorted by the line number.</p>
+ * <p/>
+ * <p>The line numbers are stored in an int[] with the {@link LineData} objects in a parallel array,
+ * so looking up a line is a binary search without boxing the line number and there is no map entry
+ * per line. The lines containing a branch are flagged in a boolean[] that is allocated only when
+ * the first branch is added.</p>
+ * <p/>
+ * <p>The lines are mostly added in ascending order (that is how they are found in the bytecode),
+ * which just appends them to the arrays. The store is not thread-safe, it's guarded by the lock
+ * of the class.</p>
+ */
+@CoverageIgnore
+class LineStore {
+	private static final int[] NO_LINE_NUMBERS = new int[0];
+
+	private static final LineData[] NO_LINES = new LineData[0];
+
+	private int[] lineNumbers = NO_LINE_NUMBERS;
+
+	private LineData[] lines = NO_LINES;
+
+	/**
+	 * Null until a branch is added.
+	 */
+	private boolean[] branches;
+
+	private int size;
+
+	int size() {
+		return size;
+	}
+
+	LineData get(int lineNumber) {
+		int index = indexOf(lineNumber);
+		return (index < 0) ? null : lines[index];
+	}
+
+	boolean contains(int lineNumber) {
+		return indexOf(lineNumber) >= 0;
+	}
+
+	/**
+	 * Adds the line, replacing the line with the same number (if there is any).
+	 */
+	void put(LineData lineData) {
+		int index = indexOf(lineData.getLineNumber());
+		if (index >= 0) {
+			lines[index] = lineData;
+			return;
+		}
+		index = -(index + 1);
+		if (size == lineNumbers.length) {
+			grow();
+		}
+		if (index < size) {
+			System.arraycopy(lineNumbers, index, lineNumbers, index + 1, size
+					- index);
+			System.arraycopy(lines, index, lines, index + 1, size - index);
+			if (branches != null) {
+				System.arraycopy(branches, index, branches, index + 1, size
+						- index);
+				branches[index] = false;
+			}
+		}
+		lineNumbers[index] = lineData.getLineNumber();
+		lines[index] = lineData;
+		size++;
+	}
+
+	void remove(int lineNumber) {
+		int index = indexOf(lineNumber);
+		if (index < 0) {
+			return;
+		}
+		int moved = size - index - 1;
+		System.arraycopy(lineNumbers, index + 1, lineNumbers, index, moved);
+		System.arraycopy(lines, index + 1, lines, index, moved);
+		if (branches != null) {
+			System.arraycopy(branches, index + 1, branches, index, moved);
+			branches[size - 1] = false;
+		}
+		size--;
+		lines[size] = null;
+	}
+
+	/**
+	 * Flags the line as containing a branch. Nothing happens if the line is not in the store.
+	 */
+	void addBranch(int lineNumber) {
+		int index = indexOf(lineNumber);
+		if (index < 0) {
+			return;
+		}
+		if (branches == null) {
+			branches = new boolean[lineNumbers.length];
+		}
+		branches[index] = true;
+	}
+
+	boolean hasBranch(int lineNumber) {
+		if (branches == null) {
+			return false;
+		}
+		int index = indexOf(lineNumber);
+		return (index >= 0) && branches[index];
+	}
+
+	/**
+	 * @return the line at the given position (the lines are sorted by the line number)
+	 */
+	LineData lineAt(int index) {
+		return lines[index];
+	}
+
+	/**
+	 * @return true if the line at the given position contains a branch
+	 */
+	boolean isBranchAt(int index) {
+		return (branches != null) && branches[index];
+	}
+
+	/**
+	 * @return a copy of the numbers of the lines containing a branch
+	 */
+	Collection<Integer> getBranchLineNumbers() {
+		List<Integer> result = new ArrayList<Integer>();
+		for (int i = 0; i < size; i++) {
+			if (isBranchAt(i)) {
+				result.add(Integer.valueOf(lineNumbers[i]));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return a view of the lines, sorted by the line number
+	 */
+	List<CoverageData> asList() {
+		return new AbstractList<CoverageData>() {
+			public CoverageData get(int index) {
+				if (index >= size) {
+					throw new IndexOutOfBoundsException(String.valueOf(index));
+				}
+				return lines[index];
+			}
+
+			public int size() {
+				return size;
+			}
+		};
+	}
+
+	/**
+	 * @param branchesOnly - whether only the lines containing a branch are returned
+	 *
+	 * @return the lines keyed by boxed line numbers (the layout of the serialized {@link ClassData})
+	 */
+	Map<Object, CoverageData> toMap(boolean branchesOnly) {
+		Map<Object, CoverageData> map = new HashMap<Object, CoverageData>();
+		for (int i = 0; i < size; i++) {
+			if (!branchesOnly || isBranchAt(i)) {
+				map.put(Integer.valueOf(lineNumbers[i]), lines[i]);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * Shrinks the arrays to the number of lines.
+	 */
+	void trimToSize() {
+		if (size == lineNumbers.length) {
+			return;
+		}
+		lineNumbers = copy(lineNumbers, size);
+		LineData[] newLines = new LineData[size];
+		System.arraycopy(lines, 0, newLines, 0, size);
+		lines = newLines;
+		if (branches != null) {
+			boolean[] newBranches = new boolean[size];
+			System.arraycopy(branches, 0, newBranches, 0, size);
+			branches = newBranches;
+		}
+	}
+
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof LineStore))
+			return false;
+
+		LineStore other = (LineStore) obj;
+		if (this.size != other.size)
+			return false;
+		for (int i = 0; i < size; i++) {
+			if ((this.lineNumbers[i] != other.lineNumbers[i])
+					|| (this.isBranchAt(i) != other.isBranchAt(i))
+					|| !this.lines[i].equals(other.lines[i]))
+				return false;
+		}
+		return true;
+	}
+
+	public int hashCode() {
+		return size;
+	}
+
+	private int indexOf(int lineNumber) {
+		// fast path for the lines added in ascending order
+		if ((size == 0) || (lineNumber > lineNumbers[size - 1])) {
+			return -(size + 1);
+		}
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int midNumber = lineNumbers[mid];
+			if (midNumber < lineNumber) {
+				low = mid + 1;
+			} else if (midNumber > lineNumber) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private void grow() {
+		int capacity = Math.max(4, lineNumbers.length
+				+ (lineNumbers.length >> 1));
+		lineNumbers = copy(lineNumbers, capacity);
+		LineData[] newLines = new LineData[capacity];
+		System.arraycopy(lines, 0, newLines, 0, size);
+		lines = newLines;
+		if (branches != null) {
+			boolean[] newBranches = new boolean[capacity];
+			System.arraycopy(branches, 0, newBranches, 0, size);
+			branches = newBranches;
+		}
+	}
+
+	private static int[] copy(int[] array, int length) {
+		int[] result = new int[length];
+		System.arraycopy(array, 0, result, 0, Math.min(array.length, length));
+		return result;
+	}
+}
@@ -0,0 +1,288 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+import net.sourceforge.cobertura.coveragedata.CompactCoverageDataReader.ClassEntry;
+
+import java.io.IOException;
+import java.io.ObjectStreamException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Set;
+import java.util.SortedSet;
+
+/**
+ * <p>Read-only view of a class stored in a memory-mapped compact data file
+ * (see {@link CompactCoverageDataReader#map(java.io.File)}).</p>
+ * <p/>
+ * <p>Summary metrics (number of valid/covered lines and branches) are taken from the class directory
+ * of the file, so computing coverage rates of packages and of the whole project doesn't decode any line.
+ * Lines are decoded when they are needed for the first time and they are kept only softly reachable,
+ * so the garbage collector can drop them (they will be decoded again if needed). Thanks to that
+ * a report can go through a huge project with bounded heap.</p>
+ * <p/>
+ * <p>All the methods modifying the data throw {@link UnsupportedOperationException}.</p>
+ */
+@CoverageIgnore
+class MappedClassData extends ClassData {
+	private static final long serialVersionUID = 1;
+
+	private final transient ByteBuffer buffer;
+
+	private final transient String[] strings;
+
+	private final transient ClassEntry entry;
+
+	private final transient int offset;
+
+	private transient SoftReference<ClassData> decoded;
+
+	/**
+	 * @param buffer  - the whole mapped file (shared, it's never modified)
+	 * @param strings - the string table of the file
+	 * @param entry   - directory entry of the class
+	 * @param offset  - position of the class block in the buffer
+	 */
+	MappedClassData(ByteBuffer buffer, String[] strings, ClassEntry entry,
+			int offset) {
+		super(entry.name);
+		this.buffer = buffer;
+		this.strings = strings;
+		this.entry = entry;
+		this.offset = offset;
+		if (entry.sourceFileName != null) {
+			super.setSourceFileName(entry.sourceFileName);
+		}
+		if ((entry.flags & CompactCoverageDataFormat.FLAG_INSTRUMENTED) != 0) {
+			super.setContainsInstrumentationInfo();
+		}
+	}
+
+	/**
+	 * @return the decoded class (from the cache, if it has not been collected yet)
+	 */
+	ClassData decoded() {
+		lock.lock();
+		try {
+			ClassData classData = (decoded == null) ? null : decoded.get();
+			if (classData == null) {
+				ByteBuffer block = buffer.duplicate();
+				block.limit(offset + entry.blockLength);
+				block.position(offset);
+				try {
+					classData = CompactCoverageDataReader.readClassBlock(block,
+							strings, entry);
+				} catch (IOException e) {
+					throw new IllegalStateException("Cannot decode class "
+							+ entry.name + ": " + e.getMessage(), e);
+				}
+				if (isFrozen()) {
+					classData.freeze();
+				}
+				decoded = new SoftReference<ClassData>(classData);
+			}
+			return classData;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The view is replaced by the decoded class during serialization.
+	 */
+	private Object writeReplace() throws ObjectStreamException {
+		return decoded();
+	}
+
+	public boolean equals(Object obj) {
+		if (obj instanceof MappedClassData) {
+			obj = ((MappedClassData) obj).decoded();
+		}
+		return decoded().equals(obj);
+	}
+
+	public int hashCode() {
+		return getName().hashCode();
+	}
+
+	/* Summary metrics, taken from the directory. */
+
+	public int getNumberOfValidLines() {
+		return entry.numberOfValidLines;
+	}
+
+	public int getNumberOfCoveredLines() {
+		return entry.numberOfCoveredLines;
+	}
+
+	public int getNumberOfValidBranches() {
+		return entry.numberOfValidBranches;
+	}
+
+	public int getNumberOfCoveredBranches() {
+		return entry.numberOfCoveredBranches;
+	}
+
+	public int getNumberOfChildren() {
+		return entry.numberOfValidLines;
+	}
+
+	public double getLineCoverageRate() {
+		if (entry.numberOfValidLines == 0) {
+			// no lines, therefore 100% line coverage.
+			return 1d;
+		}
+		return (double) entry.numberOfCoveredLines / entry.numberOfValidLines;
+	}
+
+	public double getBranchCoverageRate() {
+		if (entry.numberOfValidBranches == 0) {
+			// no branches, therefore 100% branch coverage.
+			return 1d;
+		}
+		return (double) entry.numberOfCoveredBranches
+				/ entry.numberOfValidBranches;
+	}
+
+	/* Line level data, decoded on demand. */
+
+	public double getBranchCoverageRate(String methodNameAndDescriptor) {
+		return decoded().getBranchCoverageRate(methodNameAndDescriptor);
+	}
+
+	public Collection<Integer> getBranches() {
+		return decoded().getBranches();
+	}
+
+	public CoverageData getChild(String name) {
+		return decoded().getChild(name);
+	}
+
+	public LineData getLineCoverage(int lineNumber) {
+		return decoded().getLineCoverage(lineNumber);
+	}
+
+	public double getLineCoverageRate(String methodNameAndDescriptor) {
+		return decoded().getLineCoverageRate(methodNameAndDescriptor);
+	}
+
+	public LineData getLineData(int lineNumber) {
+		return decoded().getLineData(lineNumber);
+	}
+
+	public SortedSet<CoverageData> getLines() {
+		return decoded().getLines();
+	}
+
+	public Collection<CoverageData> getLines(String methodNameAndDescriptor) {
+		return decoded().getLines(methodNameAndDescriptor);
+	}
+
+	public Set<String> getMethodNamesAndDescriptors() {
+		return decoded().getMethodNamesAndDescriptors();
+	}
+
+	public int getNumberOfCoveredBranches(String methodNameAndDescriptor) {
+		return decoded().getNumberOfCoveredBranches(methodNameAndDescriptor);
+	}
+
+	public int getNumberOfCoveredLines(String methodNameAndDescriptor) {
+		return decoded().getNumberOfCoveredLines(methodNameAndDescriptor);
+	}
+
+	public int getNumberOfValidBranches(String methodNameAndDescriptor) {
+		return decoded().getNumberOfValidBranches(methodNameAndDescriptor);
+	}
+
+	public int getNumberOfValidLines(String methodNameAndDescriptor) {
+		return decoded().getNumberOfValidLines(methodNameAndDescriptor);
+	}
+
+	public boolean hasBranch(int lineNumber) {
+		return decoded().hasBranch(lineNumber);
+	}
+
+	public boolean isValidSourceLineNumber(int lineNumber) {
+		return decoded().isValidSourceLineNumber(lineNumber);
+	}
+
+	/* The view is read-only. */
+
+	public LineData addLine(int lineNumber, String methodName,
+			String methodDescriptor) {
+		throw readOnly();
+	}
+
+	public void addLineJump(int lineNumber, int branchNumber) {
+		throw readOnly();
+	}
+
+	public void addLineSwitch(int lineNumber, int switchNumber, int min,
+			int max, int maxBranches) {
+		throw readOnly();
+	}
+
+	void addLineSwitch(int lineNumber, int switchNumber, int[] keys,
+			int maxBranches) {
+		throw readOnly();
+	}
+
+	public void merge(CoverageData coverageData) {
+		throw readOnly();
+	}
+
+	public void removeLine(int lineNumber) {
+		throw readOnly();
+	}
+
+	public void setContainsInstrumentationInfo() {
+		throw readOnly();
+	}
+
+	public void setSourceFileName(String sourceFileName) {
+		throw readOnly();
+	}
+
+	public void touch(int lineNumber, int hits) {
+		throw readOnly();
+	}
+
+	public void touchJump(int lineNumber, int branchNumber, boolean branch,
+			int hits) {
+		throw readOnly();
+	}
+
+	public void touchSwitch(int lineNumber, int switchNumber, int branch,
+			int hits) {
+		throw readOnly();
+	}
+
+	private UnsupportedOperationException readOnly() {
+		return new UnsupportedOperationException(
+				"Coverage data of class " + getName()
+						+ " is a read-only view of a mapped data file");
+	}
+}
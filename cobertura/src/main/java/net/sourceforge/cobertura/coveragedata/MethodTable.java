@@ -0,0 +1,174 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Methods of a {@link ClassData}. Every method gets an id (its index in the table) when it's
+ * added and every {@link LineData} of the class references its method, so the lines don't keep
+ * their own copies of the name and the descriptor, and the lines of a method can be found
+ * without building "name + descriptor" for every line.</p>
+ * <p/>
+ * <p>Looking up a method by its name and descriptor doesn't concatenate them either: the methods
+ * with the same name (overloads) are chained. The table is not thread-safe, it's guarded by
+ * the lock of the class.</p>
+ */
+@CoverageIgnore
+class MethodTable {
+
+	/**
+	 * A method of the class, or the method of a line that is not in any table (see
+	 * {@link MethodTable#unregistered(String, String)}).
+	 */
+	@CoverageIgnore
+	static final class Method {
+		/**
+		 * Index in the table, -1 if the method is not in any table
+		 */
+		final int id;
+
+		final String name;
+
+		final String descriptor;
+
+		/**
+		 * Null if the name or the descriptor is unknown
+		 */
+		final String nameAndDescriptor;
+
+		/**
+		 * The next method with the same name
+		 */
+		private Method overload;
+
+		Method(int id, String name, String descriptor) {
+			this.id = id;
+			this.name = name;
+			this.descriptor = descriptor;
+			this.nameAndDescriptor = ((name != null) && (descriptor != null))
+					? name + descriptor
+					: null;
+		}
+	}
+
+	private final List<Method> methods = new ArrayList<Method>();
+
+	private final Map<String, Method> byName = new HashMap<String, Method>();
+
+	private final Map<String, Method> byNameAndDescriptor = new HashMap<String, Method>();
+
+	/**
+	 * @return the method of a line that doesn't belong to any class, or null if both the name and
+	 *         the descriptor are null
+	 */
+	static Method unregistered(String name, String descriptor) {
+		if ((name == null) && (descriptor == null)) {
+			return null;
+		}
+		return new Method(-1, name, descriptor);
+	}
+
+	/**
+	 * Adds the method, unless it's in the table already.
+	 *
+	 * @return the method from the table, or an unregistered method if the name or the descriptor
+	 *         is null (they can be null when a data file with no line information was loaded)
+	 */
+	Method intern(String name, String descriptor) {
+		if ((name == null) || (descriptor == null)) {
+			return unregistered(name, descriptor);
+		}
+		Method first = byName.get(name);
+		for (Method method = first; method != null; method = method.overload) {
+			if (method.descriptor.equals(descriptor)) {
+				return method;
+			}
+		}
+		Method method = new Method(methods.size(), name, descriptor);
+		method.overload = first;
+		methods.add(method);
+		byName.put(name, method);
+		byNameAndDescriptor.put(method.nameAndDescriptor, method);
+		return method;
+	}
+
+	/**
+	 * @param nameAndDescriptor - for example "main([Ljava/lang/String;)V"
+	 */
+	Method intern(String nameAndDescriptor) {
+		Method method = byNameAndDescriptor.get(nameAndDescriptor);
+		if (method != null) {
+			return method;
+		}
+		int descriptorStart = nameAndDescriptor.indexOf('(');
+		if (descriptorStart == -1) {
+			descriptorStart = nameAndDescriptor.length();
+		}
+		return intern(nameAndDescriptor.substring(0, descriptorStart),
+				nameAndDescriptor.substring(descriptorStart));
+	}
+
+	/**
+	 * @return the method, or null if it's not in the table
+	 */
+	Method get(String nameAndDescriptor) {
+		return byNameAndDescriptor.get(nameAndDescriptor);
+	}
+
+	/**
+	 * @return the method from this table that is the given method (possibly
+	 *         coming from another table), or null if there is no such method
+	 */
+	Method resolve(Method method) {
+		if (method == null) {
+			return null;
+		}
+		if ((method.id >= 0) && (method.id < methods.size())
+				&& (methods.get(method.id) == method)) {
+			return method;
+		}
+		return (method.nameAndDescriptor == null)
+				? null
+				: byNameAndDescriptor.get(method.nameAndDescriptor);
+	}
+
+	int size() {
+		return methods.size();
+	}
+
+	/**
+	 * @return a read-only view of the names and descriptors of the methods
+	 */
+	Set<String> getNamesAndDescriptors() {
+		return Collections.unmodifiableSet(byNameAndDescriptor.keySet());
+	}
+}
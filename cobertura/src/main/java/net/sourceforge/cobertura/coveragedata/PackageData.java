@@ -46,6 +46,7 @@ public class PackageData extends CoverageDataContainer
 	public void addClassData(ClassData classData) {
 		lock.lock();
 		try {
+			checkNotFrozen();
 			if (children.containsKey(classData.getBaseName()))
 				throw new IllegalArgumentException("Package " + this.name
 						+ " already contains a class with the name "
@@ -54,6 +55,7 @@ public class PackageData extends CoverageDataContainer
 			// Each key is a class basename, stored as an String object.
 			// Each value is information about the class, stored as a ClassData object.
 			children.put(classData.getBaseName(), classData);
+			modified();
 		} finally {
 			lock.unlock();
 		}
@@ -135,6 +137,12 @@ public class PackageData extends CoverageDataContainer
 		} finally {
 			lock.unlock();
 		}
+		if (isFrozen()) {
+			for (Iterator iter = sourceFileDatas.values().iterator(); iter
+					.hasNext();) {
+				((SourceFileData) iter.next()).freeze();
+			}
+		}
 		return sourceFileDatas.values();
 	}
 
@@ -31,6 +31,7 @@ package net.sourceforge.cobertura.coveragedata;
 
 import net.sourceforge.cobertura.CoverageIgnore;
 import net.sourceforge.cobertura.util.FileLocker;
+import net.sourceforge.cobertura.util.ConfigurationUtil;
 import net.sourceforge.cobertura.util.ShutdownHooks;
 
 import java.io.File;
@@ -48,6 +49,13 @@ public class ProjectData extends CoverageDataContainer {
 	private static ProjectData globalProjectData = null;
 
 	private static Thread shutdownHook;
+	private static Timer flushTimer;
+	/**
+	 * Held by the periodic saves, so that the save on exit waits for them. The flag it guards stops the
+	 * periodic saves (a cancelled {@link Timer} doesn't stop a task that is already running).
+	 */
+	private static final Lock flushLock = new ReentrantLock();
+	private static boolean flushStopped;
 	private static final transient Lock globalProjectDataLock = new ReentrantLock();
 
 	/**
@@ -58,6 +66,7 @@ public class ProjectData extends CoverageDataContainer {
 	public void addClassData(ClassData classData) {
 		lock.lock();
 		try {
+			checkNotFrozen();
 			String packageName = classData.getPackageName();
 			PackageData packageData = (PackageData) children.get(packageName);
 			if (packageData == null) {
@@ -235,11 +244,53 @@ public class ProjectData extends CoverageDataContainer {
 		}
 
 		// Add a hook to save the data when the JVM exits
-		shutdownHook = new Thread(new SaveTimer());
+		shutdownHook = new Thread(new ExitSaver());
 		Runtime.getRuntime().addShutdownHook(shutdownHook);
-		// Possibly also save the coverage data every x seconds?
-		//Timer timer = new Timer(true);
-		//timer.schedule(saveTimer, 100);
+
+		// Possibly also save the coverage data every x seconds. Counters are reset on every save,
+		// so each save merges only the hits collected since the previous one into the datafile.
+		long flushInterval = new ConfigurationUtil().getFlushInterval();
+		if (flushInterval > 0) {
+			startFlushTimer(flushInterval);
+		}
+	}
+
+	/**
+	 * Saves the coverage data every flushInterval milliseconds, until {@link #turnOffAutoSave()} is called.
+	 */
+	static void startFlushTimer(long flushInterval) {
+		flushLock.lock();
+		try {
+			flushStopped = false;
+			flushTimer = new Timer("Cobertura flush", true);
+			flushTimer.schedule(new FlushTask(), flushInterval, flushInterval);
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Cancels the periodic saves, and waits for a periodic save that is running.
+	 */
+	private static void stopFlushTimer() {
+		flushLock.lock();
+		try {
+			flushStopped = true;
+			if (flushTimer != null) {
+				flushTimer.cancel();
+			}
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * Saves the coverage data when the JVM exits. No periodic save can run during or after this save, so
+	 * none of them can be interrupted by the end of the JVM.
+	 */
+	static void saveGlobalProjectDataOnExit() {
+		stopFlushTimer();
+		saveGlobalProjectData();
 	}
 
 	public static void saveGlobalProjectData() {
@@ -250,9 +301,8 @@ public class ProjectData extends CoverageDataContainer {
 			projectDataToSave = getGlobalProjectData();
 
 			/*
-			 * The next statement is not necessary at the moment, because this method is only called
-			 * either at the very beginning or at the very end of a test.  If the code is changed
-			 * to save more frequently, then this will become important.
+			 * Start a new epoch: everything collected from now on belongs to the next save.
+			 * This is important when the data is saved periodically (see ConfigurationUtil#getFlushInterval()).
 			 */
 			globalProjectData = new ProjectData();
 		} finally {
@@ -260,15 +310,14 @@ public class ProjectData extends CoverageDataContainer {
 		}
 
 		/*
-		 * Now sleep a bit in case there is a thread still holding a reference to the "old"
-		 * globalProjectData (now referenced with projectDataToSave).  
-		 * We want it to finish its updates.  I assume 1 second is plenty of time.
+		 * There is no need to wait for threads that are still running instrumented code. The instrumented
+		 * classes don't update the "old" globalProjectData (now referenced with projectDataToSave) - they
+		 * keep hits in their own counters. With the thread-safe code providers (threadsafeRigorous and
+		 * threadsafeStriped) TouchCollector reads and resets every counter in one atomic step, so a hit recorded
+		 * during the harvest is either included in this save or left for the next one. The default counters and
+		 * the probes are read and then reset, so such a hit can be lost (as hits of threads racing on the same
+		 * counter already are).
 		 */
-		try {
-			Thread.sleep(1000);
-		} catch (InterruptedException e) {
-		}
-
 		TouchCollector.applyTouchesOnProjectData(projectDataToSave);
 
 		// Get a file lock
@@ -318,6 +367,7 @@ public class ProjectData extends CoverageDataContainer {
 		if (shutdownHook != null) {
 			Runtime.getRuntime().removeShutdownHook(shutdownHook);
 		}
+		stopFlushTimer();
 	}
 
 	private static ProjectData loadCoverageDataFromDatafile(File dataFile) {
@@ -339,4 +389,24 @@ public class ProjectData extends CoverageDataContainer {
 		return projectData;
 	}
 
+	@CoverageIgnore
+	private static class FlushTask extends TimerTask {
+		public void run() {
+			flushLock.lock();
+			try {
+				if (!flushStopped) {
+					saveGlobalProjectData();
+				}
+			} finally {
+				flushLock.unlock();
+			}
+		}
+	}
+
+	@CoverageIgnore
+	private static class ExitSaver implements Runnable {
+		public void run() {
+			saveGlobalProjectDataOnExit();
+		}
+	}
 }
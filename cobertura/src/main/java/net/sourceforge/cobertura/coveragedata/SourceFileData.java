@@ -53,6 +53,7 @@ public class SourceFileData extends CoverageDataContainer
 	public void addClassData(ClassData classData) {
 		lock.lock();
 		try {
+			checkNotFrozen();
 			if (children.containsKey(classData.getBaseName()))
 				throw new IllegalArgumentException("Source file " + this.name
 						+ " already contains a class with the name "
@@ -61,6 +62,8 @@ public class SourceFileData extends CoverageDataContainer
 			// Each key is a class basename, stored as an String object.
 			// Each value is information about the class, stored as a ClassData object.
 			children.put(classData.getBaseName(), classData);
+			// nothing contains a source file, the other metrics stay valid
+			invalidateAggregates();
 		} finally {
 			lock.unlock();
 		}
@@ -0,0 +1,126 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.CoverageIgnore;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>Counters of a single instrumented class, split into several independent stripes.</p>
+ * <p/>
+ * <p>Every thread increments counters in the stripe chosen by its id, so threads running
+ * the same code mostly write into different arrays and don't fight for the same cache lines
+ * (as they do with a single {@link AtomicIntegerArray}). Stripes are allocated on first use,
+ * so a class touched by a single thread pays for a single array only.</p>
+ * <p/>
+ * <p>Increments are atomic, so the number of hits is as precise as with a single
+ * {@link AtomicIntegerArray}. {@link #getAndReset()} sums all the stripes. The stripes keep
+ * long counters, so they don't overflow in long running processes.</p>
+ *
+ * @see net.sourceforge.cobertura.instrument.pass3.StripedArrayCodeProvider
+ */
+@CoverageIgnore
+public class StripedCounters {
+	/**
+	 * Upper bound of the stripes count, to keep memory used by a class touched by many threads reasonable.
+	 */
+	private static final int MAX_STRIPES = 64;
+
+	private static final int STRIPES = stripesCount(2 * Runtime.getRuntime()
+			.availableProcessors());
+
+	private final int length;
+
+	private final AtomicReferenceArray<AtomicLongArray> stripes;
+
+	public StripedCounters(int length) {
+		this(length, STRIPES);
+	}
+
+	/**
+	 * @param length  - number of counters
+	 * @param stripes - number of stripes, rounded up to the nearest power of two
+	 */
+	public StripedCounters(int length, int stripes) {
+		this.length = length;
+		this.stripes = new AtomicReferenceArray<AtomicLongArray>(
+				stripesCount(stripes));
+	}
+
+	/**
+	 * @return the smallest power of two, that is not smaller then the given number
+	 *         (but not bigger then {@link #MAX_STRIPES})
+	 */
+	static int stripesCount(int requested) {
+		int count = 1;
+		while (count < requested && count < MAX_STRIPES) {
+			count <<= 1;
+		}
+		return count;
+	}
+
+	public void increment(int counterId) {
+		stripe().incrementAndGet(counterId);
+	}
+
+	private AtomicLongArray stripe() {
+		int index = (int) Thread.currentThread().getId()
+				& (stripes.length() - 1);
+		AtomicLongArray stripe = stripes.get(index);
+		if (stripe == null) {
+			stripes.compareAndSet(index, null, new AtomicLongArray(length));
+			stripe = stripes.get(index);
+		}
+		return stripe;
+	}
+
+	/**
+	 * Sums values of all the stripes and sets all counters to zero.
+	 *
+	 * @return the number of hits of every counter since the last call
+	 */
+	public long[] getAndReset() {
+		long[] res = new long[length];
+		for (int s = 0; s < stripes.length(); s++) {
+			AtomicLongArray stripe = stripes.get(s);
+			if (stripe != null) {
+				for (int i = 0; i < length; i++) {
+					res[i] += stripe.getAndSet(i, 0);
+				}
+			}
+		}
+		return res;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	int stripesLength() {
+		return stripes.length();
+	}
+}
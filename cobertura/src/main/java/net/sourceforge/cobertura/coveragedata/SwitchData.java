@@ -44,6 +44,11 @@ public class SwitchData
 
 	private int maxBranches;
 
+	/**
+	 * Set by {@link #freeze()}, the switch cannot be modified any more.
+	 */
+	private transient volatile boolean frozen;
+
 	public SwitchData(int switchNumber, int[] keys, int maxBranches) {
 		this.switchNumber = switchNumber;
 		defaultHits = 0;
@@ -74,7 +79,24 @@ public class SwitchData
 		return this.switchNumber - ((SwitchData) o).switchNumber;
 	}
 
-	void touchBranch(int branch, int new_hits) {
+	/**
+	 * Called when the line is frozen (see {@link CoverageDataContainer#freeze()}),
+	 * the switch cannot be modified afterwards.
+	 */
+	void freeze() {
+		frozen = true;
+	}
+
+	/**
+	 * @throws IllegalStateException if the switch has been frozen
+	 */
+	private void checkNotFrozen() {
+		if (frozen)
+			throw new IllegalStateException(CoverageDataContainer.FROZEN);
+	}
+
+	void touchBranch(int branch, long new_hits) {
+		checkNotFrozen();
 		if (branch == -1) {
 			defaultHits += new_hits;
 		} else {
@@ -96,6 +118,20 @@ public class SwitchData
 		return (hits.length > branch) ? hits[branch] : -1;
 	}
 
+	/**
+	 * @return the keys of the switch (shared, don't modify)
+	 */
+	int[] getKeys() {
+		return keys;
+	}
+
+	/**
+	 * @return the number of hits of every branch (shared, don't modify)
+	 */
+	long[] getBranchHits() {
+		return hits;
+	}
+
 	public long getDefaultHits() {
 		return defaultHits;
 	}
@@ -137,6 +173,7 @@ public class SwitchData
 	}
 
 	public void merge(BranchCoverageData coverageData) {
+		checkNotFrozen();
 		SwitchData switchData = (SwitchData) coverageData;
 		defaultHits += switchData.defaultHits;
 		for (int i = Math.min(hits.length, switchData.hits.length) - 1; i >= 0; i--)
@@ -151,6 +188,7 @@ public class SwitchData
 		if ((this.keys.length == 0) && (switchData.keys.length > 0))
 			this.keys = switchData.keys;
 		maxBranches = Math.min(maxBranches, switchData.getMaxBranches());
+		CoverageDataContainer.modified();
 	}
 
 	public int getMaxBranches() {
@@ -158,6 +196,8 @@ public class SwitchData
 	}
 
 	public void setMaxBranches(int maxBranches) {
+		checkNotFrozen();
 		this.maxBranches = maxBranches;
+		CoverageDataContainer.modified();
 	}
 }
@@ -29,9 +29,12 @@ import net.sourceforge.cobertura.CoverageIgnore;
 import net.sourceforge.cobertura.instrument.pass3.AbstractCodeProvider;
 
 import java.lang.reflect.Method;
-import java.util.Arrays;
-import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -39,15 +42,160 @@ import java.util.logging.Logger;
 public class TouchCollector {
 	private static final Logger logger = Logger.getLogger(TouchCollector.class
 			.getCanonicalName());
-	/*In fact - concurrentHashset*/
-	private static Map<Class<?>, Integer> registeredClasses = new ConcurrentHashMap<Class<?>, Integer>();
+	/**
+	 * Instrumented classes, together with accessors to their counters.
+	 * <p/>
+	 * Registration is called from static initializers of instrumented classes, so it must not
+	 * take any global lock: classes are often loaded by many threads at the same time.
+	 */
+	private static ConcurrentMap<Class<?>, RegisteredClass> registeredClasses = new ConcurrentHashMap<Class<?>, RegisteredClass>();
+
+	/**
+	 * Classes registered by name ({@link #registerClass(String)}). They are resolved to {@link Class} objects
+	 * during harvest, to keep Class.forName out of the static initializers of instrumented classes.
+	 */
+	private static Queue<PendingClass> pendingClasses = new ConcurrentLinkedQueue<PendingClass>();
 
 	static {
 		ProjectData.getGlobalProjectData(); // To call ProjectData.initialize();
 	}
 
-	public static synchronized void registerClass(Class<?> classa) {
-		registeredClasses.put(classa, 0);
+	/**
+	 * Registers the class, whose counters will be acquired by calling the generated
+	 * {@link AbstractCodeProvider#COBERTURA_GET_AND_RESET_COUNTERS_METHOD_NAME} method.
+	 * <p/>
+	 * Used by classes instrumented by older versions of cobertura.
+	 */
+	public static void registerClass(Class<?> classa) {
+		if (!registeredClasses.containsKey(classa)) {
+			registeredClasses.putIfAbsent(classa, new ReflectiveRegisteredClass(
+					classa));
+		}
+	}
+
+	/**
+	 * Registers class instrumented with {@link net.sourceforge.cobertura.instrument.pass3.FastArrayCodeProvider}.
+	 * The counters are read directly from the given array during harvest.
+	 */
+	public static void registerClass(Class<?> classa, int[] counters) {
+		registeredClasses.put(classa, new IntArrayRegisteredClass(classa,
+				counters));
+	}
+
+	/**
+	 * Registers class instrumented with {@link net.sourceforge.cobertura.instrument.pass3.AtomicArrayCodeProvider}.
+	 */
+	public static void registerClass(Class<?> classa,
+			AtomicIntegerArray counters) {
+		registeredClasses.put(classa, new AtomicArrayRegisteredClass(classa,
+				counters));
+	}
+
+	/**
+	 * Registers class instrumented with {@link net.sourceforge.cobertura.instrument.pass3.LongArrayCodeProvider}.
+	 */
+	public static void registerClass(Class<?> classa, long[] counters) {
+		registeredClasses.put(classa, new LongArrayRegisteredClass(classa,
+				counters));
+	}
+
+	/**
+	 * Registers class instrumented with {@link net.sourceforge.cobertura.instrument.pass3.AtomicLongArrayCodeProvider}.
+	 */
+	public static void registerClass(Class<?> classa, AtomicLongArray counters) {
+		registeredClasses.put(classa, new AtomicLongArrayRegisteredClass(
+				classa, counters));
+	}
+
+	/**
+	 * Registers class instrumented with {@link net.sourceforge.cobertura.instrument.pass3.StripedArrayCodeProvider}.
+	 */
+	public static void registerClass(Class<?> classa,
+			StripedCounters counters) {
+		registeredClasses.put(classa, new StripedRegisteredClass(classa,
+				counters));
+	}
+
+	/**
+	 * Registers class instrumented with {@link net.sourceforge.cobertura.instrument.pass3.BooleanArrayCodeProvider}.
+	 */
+	public static void registerClass(Class<?> classa, boolean[] probes) {
+		registeredClasses.put(classa, new BooleanArrayRegisteredClass(classa,
+				probes));
+	}
+
+	/**
+	 * Registers class instrumented with lazy counters (see
+	 * {@link net.sourceforge.cobertura.instrument.pass3.AbstractCodeProvider#setLazyCounters(boolean)}), when its
+	 * counters are touched for the first time.
+	 *
+	 * @return the counters registered for the class, that are the given counters unless another thread has
+	 *         registered the class first
+	 */
+	public static int[] registerLazily(Class<?> classa, int[] counters) {
+		RegisteredClass registered = registeredClasses.putIfAbsent(classa,
+				new IntArrayRegisteredClass(classa, counters));
+		return registered == null
+				? counters
+				: ((IntArrayRegisteredClass) registered).counters;
+	}
+
+	/**
+	 * @see #registerLazily(Class, int[])
+	 */
+	public static AtomicIntegerArray registerLazily(Class<?> classa,
+			AtomicIntegerArray counters) {
+		RegisteredClass registered = registeredClasses.putIfAbsent(classa,
+				new AtomicArrayRegisteredClass(classa, counters));
+		return registered == null
+				? counters
+				: ((AtomicArrayRegisteredClass) registered).counters;
+	}
+
+	/**
+	 * @see #registerLazily(Class, int[])
+	 */
+	public static long[] registerLazily(Class<?> classa, long[] counters) {
+		RegisteredClass registered = registeredClasses.putIfAbsent(classa,
+				new LongArrayRegisteredClass(classa, counters));
+		return registered == null
+				? counters
+				: ((LongArrayRegisteredClass) registered).counters;
+	}
+
+	/**
+	 * @see #registerLazily(Class, int[])
+	 */
+	public static AtomicLongArray registerLazily(Class<?> classa,
+			AtomicLongArray counters) {
+		RegisteredClass registered = registeredClasses.putIfAbsent(classa,
+				new AtomicLongArrayRegisteredClass(classa, counters));
+		return registered == null
+				? counters
+				: ((AtomicLongArrayRegisteredClass) registered).counters;
+	}
+
+	/**
+	 * @see #registerLazily(Class, int[])
+	 */
+	public static StripedCounters registerLazily(Class<?> classa,
+			StripedCounters counters) {
+		RegisteredClass registered = registeredClasses.putIfAbsent(classa,
+				new StripedRegisteredClass(classa, counters));
+		return registered == null
+				? counters
+				: ((StripedRegisteredClass) registered).counters;
+	}
+
+	/**
+	 * @see #registerLazily(Class, int[])
+	 */
+	public static boolean[] registerLazily(Class<?> classa, boolean[] probes) {
+		RegisteredClass registered = registeredClasses.putIfAbsent(classa,
+				new BooleanArrayRegisteredClass(classa, probes));
+		return registered == null
+				? probes
+				: ((BooleanArrayRegisteredClass) registered).probes;
 	}
 
 	/**
@@ -60,40 +208,63 @@ public class TouchCollector {
 	 * search for the class in the classpath helped resolve the issue.
 	 * Also as a side note: The replace parameters might enter as "java/lang/String" and
 	 * need to be translated to "java.lang.String" so the forName method can understand it.
+	 * <p/>
+	 * The class is only remembered here (together with the current context classloader) and is looked up
+	 * during the next harvest, so the registration is cheap and does not load anything.
 	 * 
 	 * @param classa Class that needs to be registered.
 	 * @throws ClassNotFoundException 
 	 */
-	public static synchronized void registerClass(String classa)
+	public static void registerClass(String classa)
 			throws ClassNotFoundException {
-		try {
-			// If it's not in the system jvm, then search the current thread for the class.
-			// This is a dirty hack to guarantee that multiple classloaders can invoke cobertura code.
-
-			// We try 2 methods to register the classes
-			// First method we try to call the invoker classloader. If the invoker causes an exception (NoClassDefFound) it
-			// will then call Thread.currentThread.getContextClassLoader() which gets the current threads classloader and
-			// checks to see if cobertura code is in there. This is here because there are situations where multiple
-			// classloaders might be invoked and it requires the check of multiple classloaders.
-
-			boolean found = false;
-			Class<?> clazz = Class.forName(classa.replace("/", "."), false,
-					Thread.currentThread().getContextClassLoader());
-			for (Method meth : clazz.getMethods()) {
-				if (meth.toString().contains("net.sourceforge.cobertura")) {
-					registerClass(clazz);
-					found = true;
-				}
-			}
+		pendingClasses.add(new PendingClass(classa, Thread.currentThread()
+				.getContextClassLoader()));
+	}
+
+	private static void resolvePendingClasses() {
+		PendingClass pending;
+		while ((pending = pendingClasses.poll()) != null) {
+			try {
+				// If it's not in the system jvm, then search the registering thread's classloader for the class.
+				// This is a dirty hack to guarantee that multiple classloaders can invoke cobertura code.
 
-			if (!found) {
-				clazz = Class.forName(classa.replace("/", "."));
+				// We try 2 methods to register the classes
+				// First method we try to call the invoker classloader. If the class found there is not
+				// the instrumented one (has no counters field) we fall back to Class.forName. This is here because
+				// there are situations where multiple classloaders might be invoked and it requires the check of
+				// multiple classloaders.
+
+				String className = pending.className.replace("/", ".");
+				Class<?> clazz = findClass(className, pending.classLoader);
+				if (clazz == null || !isInstrumented(clazz)) {
+					clazz = Class.forName(className);
+				}
 				registerClass(clazz);
+			} catch (ClassNotFoundException e) {
+				logger.log(Level.SEVERE, "Exception when registering class: "
+						+ pending.className, e);
 			}
+		}
+	}
+
+	private static Class<?> findClass(String className, ClassLoader classLoader) {
+		if (classLoader == null) {
+			return null;
+		}
+		try {
+			return Class.forName(className, false, classLoader);
 		} catch (ClassNotFoundException e) {
-			logger.log(Level.SEVERE, "Exception when registering class: "
-					+ classa, e);
-			throw e;
+			return null;
+		}
+	}
+
+	private static boolean isInstrumented(Class<?> clazz) {
+		try {
+			clazz
+					.getDeclaredField(AbstractCodeProvider.COBERTURA_COUNTERS_FIELD_NAME);
+			return true;
+		} catch (NoSuchFieldException e) {
+			return false;
 		}
 	}
 
@@ -101,44 +272,290 @@ public class TouchCollector {
 			ProjectData projectData) {
 		logger
 				.fine("=================== START OF REPORT ======================== ");
-		for (Class<?> c : registeredClasses.keySet()) {
-			logger.fine("Report: " + c.getName());
-			ClassData cd = projectData.getOrCreateClassData(c.getName());
-			applyTouchesToSingleClassOnProjectData(cd, c);
+		resolvePendingClasses();
+		for (RegisteredClass rc : registeredClasses.values()) {
+			logger.fine("Report: " + rc.clazz.getName());
+			applyTouchesToSingleClassOnProjectData(projectData, rc);
 		}
 		logger
 				.fine("===================  END OF REPORT  ======================== ");
 	}
 
 	private static void applyTouchesToSingleClassOnProjectData(
-			final ClassData classData, final Class<?> c) {
-		logger.finer("----------- " + c.getCanonicalName()
+			final ProjectData projectData, final RegisteredClass rc) {
+		logger.finer("----------- " + rc.clazz.getCanonicalName()
 				+ " ---------------- ");
 		try {
-			Method m0 = c
-					.getDeclaredMethod(AbstractCodeProvider.COBERTURA_GET_AND_RESET_COUNTERS_METHOD_NAME);
-			m0.setAccessible(true);
-			final int[] res = (int[]) m0.invoke(null, new Object[]{});
+			final long[] res = rc.getAndResetCounters();
+			if (res == null) {
+				// lazy counters that have not been allocated yet
+				logger.finer("No counters: " + rc.clazz.getName());
+				return;
+			}
 
+			ClassData classData = projectData.getOrCreateClassData(rc.clazz
+					.getName());
 			LightClassmapListener lightClassmap = new ApplyToClassDataLightClassmapListener(
 					classData, res);
-			Method m = c.getDeclaredMethod(
-					AbstractCodeProvider.COBERTURA_CLASSMAP_METHOD_NAME,
-					LightClassmapListener.class);
-			m.setAccessible(true);
-			m.invoke(null, lightClassmap);
+			rc.applyClassmap(lightClassmap);
 		} catch (Exception e) {
 			logger.log(Level.SEVERE, "Cannot apply touches", e);
 		}
 	}
 
+	/**
+	 * Reads and resets the counters of a class instrumented with {@link net.sourceforge.cobertura.instrument.pass3.FastArrayCodeProvider}.
+	 * <p/>
+	 * The counters are reset in place (the array kept by the class is never replaced), so the array
+	 * registered in the collector stays valid. A counter is read and then reset, so a hit recorded by
+	 * another thread in between is lost.
+	 */
+	public static int[] getAndResetCounters(int[] counters) {
+		if (counters == null) {
+			return null;
+		}
+		int[] res = new int[counters.length];
+		for (int i = 0; i < counters.length; i++) {
+			res[i] = counters[i];
+			counters[i] = 0;
+		}
+		return res;
+	}
+
+	/**
+	 * Reads and resets the counters of a class instrumented with {@link net.sourceforge.cobertura.instrument.pass3.LongArrayCodeProvider}.
+	 *
+	 * @see #getAndResetCounters(int[])
+	 */
+	public static long[] getAndResetCounters(long[] counters) {
+		if (counters == null) {
+			return null;
+		}
+		long[] res = new long[counters.length];
+		for (int i = 0; i < counters.length; i++) {
+			res[i] = counters[i];
+			counters[i] = 0;
+		}
+		return res;
+	}
+
+	/**
+	 * Reads and resets the counters of a class instrumented with {@link net.sourceforge.cobertura.instrument.pass3.AtomicLongArrayCodeProvider}.
+	 */
+	public static long[] getAndResetCounters(AtomicLongArray counters) {
+		if (counters == null) {
+			return null;
+		}
+		long[] res = new long[counters.length()];
+		for (int i = 0; i < res.length; i++) {
+			res[i] = counters.getAndSet(i, 0);
+		}
+		return res;
+	}
+
+	/**
+	 * Reads and resets the probes of a class instrumented with {@link net.sourceforge.cobertura.instrument.pass3.BooleanArrayCodeProvider}.
+	 */
+	public static boolean[] getAndResetProbes(boolean[] probes) {
+		if (probes == null) {
+			return null;
+		}
+		boolean[] res = new boolean[probes.length];
+		for (int i = 0; i < probes.length; i++) {
+			res[i] = probes[i];
+			probes[i] = false;
+		}
+		return res;
+	}
+
+	/**
+	 * Translates counters of any kind into hit counts. Classes instrumented in 'probe only' mode keep
+	 * boolean[] instead of counters. Such a probe is translated into a hit count of 0 or 1.
+	 */
+	private static long[] toHits(Object counters) {
+		if (counters instanceof boolean[]) {
+			boolean[] probes = (boolean[]) counters;
+			long[] res = new long[probes.length];
+			for (int i = 0; i < probes.length; i++) {
+				res[i] = probes[i] ? 1 : 0;
+			}
+			return res;
+		}
+		if (counters instanceof int[]) {
+			int[] intCounters = (int[]) counters;
+			long[] res = new long[intCounters.length];
+			for (int i = 0; i < intCounters.length; i++) {
+				res[i] = unsigned(intCounters[i]);
+			}
+			return res;
+		}
+		return (long[]) counters;
+	}
+
+	/**
+	 * The counters only grow from zero (until they are reset), so an int counter that has been incremented
+	 * more then {@link Integer#MAX_VALUE} times is negative. Reading it as unsigned doubles the number of hits
+	 * that can be counted between two harvests. Use long counters if that is not enough.
+	 */
+	private static long unsigned(int counter) {
+		return counter & 0xFFFFFFFFL;
+	}
+
+	@CoverageIgnore
+	private static class PendingClass {
+		final String className;
+		final ClassLoader classLoader;
+
+		PendingClass(String className, ClassLoader classLoader) {
+			this.className = className;
+			this.classLoader = classLoader;
+		}
+	}
+
+	/**
+	 * Registered instrumented class together with an accessor to its counters.
+	 * <p/>
+	 * The counters are acquired by a direct call. The generated classmap method is still called by reflection
+	 * (calling it directly would need a generated accessor class per instrumented class), but it is looked up
+	 * only once.
+	 */
+	@CoverageIgnore
+	private static abstract class RegisteredClass {
+		final Class<?> clazz;
+		private Method classmapMethod;
+
+		RegisteredClass(Class<?> clazz) {
+			this.clazz = clazz;
+		}
+
+		abstract long[] getAndResetCounters() throws Exception;
+
+		void applyClassmap(LightClassmapListener listener) throws Exception {
+			if (classmapMethod == null) {
+				Method m = clazz.getDeclaredMethod(
+						AbstractCodeProvider.COBERTURA_CLASSMAP_METHOD_NAME,
+						LightClassmapListener.class);
+				m.setAccessible(true);
+				classmapMethod = m;
+			}
+			classmapMethod.invoke(null, listener);
+		}
+	}
+
+	@CoverageIgnore
+	private static class ReflectiveRegisteredClass extends RegisteredClass {
+		private Method getAndResetMethod;
+
+		ReflectiveRegisteredClass(Class<?> clazz) {
+			super(clazz);
+		}
+
+		long[] getAndResetCounters() throws Exception {
+			if (getAndResetMethod == null) {
+				Method m = clazz
+						.getDeclaredMethod(AbstractCodeProvider.COBERTURA_GET_AND_RESET_COUNTERS_METHOD_NAME);
+				m.setAccessible(true);
+				getAndResetMethod = m;
+			}
+			return toHits(getAndResetMethod.invoke(null, new Object[]{}));
+		}
+	}
+
+	@CoverageIgnore
+	private static class IntArrayRegisteredClass extends RegisteredClass {
+		private final int[] counters;
+
+		IntArrayRegisteredClass(Class<?> clazz, int[] counters) {
+			super(clazz);
+			this.counters = counters;
+		}
+
+		long[] getAndResetCounters() {
+			return toHits(TouchCollector.getAndResetCounters(counters));
+		}
+	}
+
+	@CoverageIgnore
+	private static class LongArrayRegisteredClass extends RegisteredClass {
+		private final long[] counters;
+
+		LongArrayRegisteredClass(Class<?> clazz, long[] counters) {
+			super(clazz);
+			this.counters = counters;
+		}
+
+		long[] getAndResetCounters() {
+			return TouchCollector.getAndResetCounters(counters);
+		}
+	}
+
+	@CoverageIgnore
+	private static class AtomicArrayRegisteredClass extends RegisteredClass {
+		private final AtomicIntegerArray counters;
+
+		AtomicArrayRegisteredClass(Class<?> clazz, AtomicIntegerArray counters) {
+			super(clazz);
+			this.counters = counters;
+		}
+
+		long[] getAndResetCounters() {
+			long[] res = new long[counters.length()];
+			for (int i = 0; i < res.length; i++) {
+				res[i] = unsigned(counters.getAndSet(i, 0));
+			}
+			return res;
+		}
+	}
+
+	@CoverageIgnore
+	private static class AtomicLongArrayRegisteredClass extends RegisteredClass {
+		private final AtomicLongArray counters;
+
+		AtomicLongArrayRegisteredClass(Class<?> clazz, AtomicLongArray counters) {
+			super(clazz);
+			this.counters = counters;
+		}
+
+		long[] getAndResetCounters() {
+			return TouchCollector.getAndResetCounters(counters);
+		}
+	}
+
+	@CoverageIgnore
+	private static class StripedRegisteredClass extends RegisteredClass {
+		private final StripedCounters counters;
+
+		StripedRegisteredClass(Class<?> clazz, StripedCounters counters) {
+			super(clazz);
+			this.counters = counters;
+		}
+
+		long[] getAndResetCounters() {
+			return counters.getAndReset();
+		}
+	}
+
+	@CoverageIgnore
+	private static class BooleanArrayRegisteredClass extends RegisteredClass {
+		private final boolean[] probes;
+
+		BooleanArrayRegisteredClass(Class<?> clazz, boolean[] probes) {
+			super(clazz);
+			this.probes = probes;
+		}
+
+		long[] getAndResetCounters() {
+			return toHits(getAndResetProbes(probes));
+		}
+	}
+
 	@CoverageIgnore
 	private static class ApplyToClassDataLightClassmapListener
 			implements
 				LightClassmapListener {
 		//private AtomicInteger idProvider=new AtomicInteger(0);
 		private final ClassData classData;
-		private final int[] res;
+		private final long[] res;
 
 		private int currentLine = 0;
 		private int jumpsInLine = 0;
@@ -152,7 +569,7 @@ public class TouchCollector {
 			}
 		}
 
-		public ApplyToClassDataLightClassmapListener(ClassData cd, int[] res) {
+		public ApplyToClassDataLightClassmapListener(ClassData cd, long[] res) {
 			classData = cd;
 			this.res = res;
 		}
@@ -199,6 +616,18 @@ public class TouchCollector {
 			ld.touchJump(branchId, false, res[falseCounterId]);
 		}
 
+		public void putBlockJumpTouchPoint(int classLine, int trueCounterId,
+				int blockCounterId) {
+			updateLine(classLine);
+			LineData ld = getOrCreateLine(classLine);
+			int branchId = jumpsInLine++;
+			classData.addLineJump(classLine, branchId);
+			ld.touchJump(branchId, true, res[trueCounterId]);
+			// an exception thrown inside of the block could make it negative
+			ld.touchJump(branchId, false, Math.max(res[blockCounterId]
+					- res[trueCounterId], 0));
+		}
+
 		private LineData getOrCreateLine(int classLine) {
 			LineData ld = classData.getLineData(classLine);
 			if (ld == null) {
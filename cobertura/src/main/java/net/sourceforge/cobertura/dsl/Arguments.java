@@ -37,6 +37,7 @@ public class Arguments {
 	private File dataFile;
 	private File destinationDirectory;
 	private File commandsFile;
+	private File cacheDirectory;
 	private FileFinder sources;
 
 	private Collection ignoreRegexes;
@@ -46,6 +47,15 @@ public class Arguments {
 	private boolean failOnError;
 	private boolean ignoreTrivial;
 	private boolean threadsafeRigorous;
+	private boolean threadsafeStriped;
+	private boolean probeOnly;
+	private boolean verifyInstrumentation;
+	private boolean lazyCounters;
+	private boolean basicBlockCounters;
+	private boolean splitJumpEdges;
+	private boolean longCounters;
+	private int threads;
+	private boolean streamingMerge;
 
 	private String encoding;
 
@@ -62,12 +72,16 @@ public class Arguments {
 	private Set<String> ignoreMethodAnnotations;
 
 	Arguments(File baseDirectory, File dataFile, File destinationDirectory,
-			File commandsFile, Collection ignoreRegexes,
+			File commandsFile, File cacheDirectory, Collection ignoreRegexes,
 			Collection<Pattern> ignoreBranchesRegexes,
 			Collection<Pattern> classPatternIncludeClassesRegexes,
 			Collection<Pattern> classPatternExcludeClassesRegexes,
 			boolean failOnError, boolean ignoreTrivial,
-			boolean threadsafeRigorous, String encoding,
+			boolean threadsafeRigorous, boolean threadsafeStriped,
+			boolean probeOnly, boolean verifyInstrumentation,
+			boolean lazyCounters, boolean basicBlockCounters,
+			boolean splitJumpEdges, boolean longCounters, int threads,
+			boolean streamingMerge, String encoding,
 			Set<CoverageThreshold> minimumCoverageThresholds,
 			double classLineThreshold, double classBranchThreshold,
 			double packageLineThreshold, double packageBranchThreshold,
@@ -78,6 +92,7 @@ public class Arguments {
 		this.dataFile = dataFile;
 		this.destinationDirectory = destinationDirectory;
 		this.commandsFile = commandsFile;
+		this.cacheDirectory = cacheDirectory;
 		this.ignoreRegexes = ignoreRegexes;
 		this.sources = sources;
 		this.ignoreBranchesRegexes = Collections
@@ -89,6 +104,15 @@ public class Arguments {
 		this.failOnError = failOnError;
 		this.ignoreTrivial = ignoreTrivial;
 		this.threadsafeRigorous = threadsafeRigorous;
+		this.threadsafeStriped = threadsafeStriped;
+		this.probeOnly = probeOnly;
+		this.verifyInstrumentation = verifyInstrumentation;
+		this.lazyCounters = lazyCounters;
+		this.basicBlockCounters = basicBlockCounters;
+		this.splitJumpEdges = splitJumpEdges;
+		this.longCounters = longCounters;
+		this.threads = threads;
+		this.streamingMerge = streamingMerge;
 		this.encoding = encoding;
 		this.minimumCoverageThresholds = Collections
 				.unmodifiableSet(minimumCoverageThresholds);
@@ -120,6 +144,10 @@ public class Arguments {
 		return commandsFile;
 	}
 
+	public File getCacheDirectory() {
+		return cacheDirectory;
+	}
+
 	public Collection getIgnoreRegexes() {
 		return ignoreRegexes;
 	}
@@ -148,6 +176,42 @@ public class Arguments {
 		return threadsafeRigorous;
 	}
 
+	public boolean isThreadsafeStriped() {
+		return threadsafeStriped;
+	}
+
+	public boolean isProbeOnly() {
+		return probeOnly;
+	}
+
+	public boolean isVerifyInstrumentation() {
+		return verifyInstrumentation;
+	}
+
+	public boolean isLazyCounters() {
+		return lazyCounters;
+	}
+
+	public boolean isBasicBlockCounters() {
+		return basicBlockCounters;
+	}
+
+	public boolean isSplitJumpEdges() {
+		return splitJumpEdges;
+	}
+
+	public boolean isLongCounters() {
+		return longCounters;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public boolean isStreamingMerge() {
+		return streamingMerge;
+	}
+
 	public String getEncoding() {
 		return encoding;
 	}
@@ -39,6 +39,15 @@ public class ArgumentsBuilder {
 	static final boolean DEFAULT_FAIL_ON_ERROR = false;
 	static final boolean DEFAULT_IGNORE_TRIVIAL = false;
 	static final boolean DEFAULT_THREADSAFE_RIGOROUS = false;
+	static final boolean DEFAULT_THREADSAFE_STRIPED = false;
+	static final boolean DEFAULT_PROBE_ONLY = false;
+	static final boolean DEFAULT_VERIFY_INSTRUMENTATION = false;
+	static final boolean DEFAULT_LAZY_COUNTERS = false;
+	static final boolean DEFAULT_BASIC_BLOCK_COUNTERS = false;
+	static final boolean DEFAULT_SPLIT_JUMP_EDGES = false;
+	static final boolean DEFAULT_LONG_COUNTERS = false;
+	static final int DEFAULT_THREADS = 1;
+	static final boolean DEFAULT_STREAMING_MERGE = false;
 
 	private Arguments arguments;
 
@@ -46,6 +55,7 @@ public class ArgumentsBuilder {
 	private File dataFile;
 	private File destinationDirectory;
 	private File commandsFile;
+	private File cacheDirectory;
 	private List<CodeSource> sources;
 
 	private Collection ignoreRegexes;
@@ -55,6 +65,15 @@ public class ArgumentsBuilder {
 	private boolean failOnError;
 	private boolean ignoreTrivial;
 	private boolean threadsafeRigorous;
+	private boolean threadsafeStriped;
+	private boolean probeOnly;
+	private boolean verifyInstrumentation;
+	private boolean lazyCounters;
+	private boolean basicBlockCounters;
+	private boolean splitJumpEdges;
+	private boolean longCounters;
+	private int threads;
+	private boolean streamingMerge;
 
 	private String encoding;
 
@@ -94,6 +113,11 @@ public class ArgumentsBuilder {
 		return this;
 	}
 
+	public ArgumentsBuilder setCacheDirectory(String cacheDirectory) {
+		this.cacheDirectory = new File(cacheDirectory);
+		return this;
+	}
+
 	public ArgumentsBuilder addIgnoreRegex(String regex) {
 		RegexUtil.addRegex(ignoreRegexes, regex);;
 		return this;
@@ -135,6 +159,57 @@ public class ArgumentsBuilder {
 		return this;
 	}
 
+	public ArgumentsBuilder threadsafeStriped(boolean threadsafeStriped) {
+		this.threadsafeStriped = threadsafeStriped;
+		return this;
+	}
+
+	public ArgumentsBuilder probeOnly(boolean probeOnly) {
+		this.probeOnly = probeOnly;
+		return this;
+	}
+
+	public ArgumentsBuilder verifyInstrumentation(
+			boolean verifyInstrumentation) {
+		this.verifyInstrumentation = verifyInstrumentation;
+		return this;
+	}
+
+	public ArgumentsBuilder lazyCounters(boolean lazyCounters) {
+		this.lazyCounters = lazyCounters;
+		return this;
+	}
+
+	public ArgumentsBuilder basicBlockCounters(boolean basicBlockCounters) {
+		this.basicBlockCounters = basicBlockCounters;
+		return this;
+	}
+
+	public ArgumentsBuilder splitJumpEdges(boolean splitJumpEdges) {
+		this.splitJumpEdges = splitJumpEdges;
+		return this;
+	}
+
+	public ArgumentsBuilder longCounters(boolean longCounters) {
+		this.longCounters = longCounters;
+		return this;
+	}
+
+	public ArgumentsBuilder setThreads(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException(String.format(
+					"The value %s is invalid.  Number of threads must be positive",
+					threads));
+		}
+		this.threads = threads;
+		return this;
+	}
+
+	public ArgumentsBuilder streamingMerge(boolean streamingMerge) {
+		this.streamingMerge = streamingMerge;
+		return this;
+	}
+
 	public ArgumentsBuilder setEncoding(String encoding) {
 		this.encoding = encoding;
 		return this;
@@ -220,10 +295,12 @@ public class ArgumentsBuilder {
 		}
 
 		return new Arguments(baseDirectory, dataFile, destinationDirectory,
-				commandsFile, ignoreRegexes, ignoreBranchesRegexes,
+				commandsFile, cacheDirectory, ignoreRegexes, ignoreBranchesRegexes,
 				classPatternIncludeClassesRegexes,
 				classPatternExcludeClassesRegexes, failOnError, ignoreTrivial,
-				threadsafeRigorous, encoding, minimumCoverageThresholds,
+				threadsafeRigorous, threadsafeStriped, probeOnly,
+				verifyInstrumentation, lazyCounters, basicBlockCounters,
+				splitJumpEdges, longCounters, threads, streamingMerge, encoding, minimumCoverageThresholds,
 				classLineThreshold, classBranchThreshold, packageLineThreshold,
 				packageBranchThreshold, totalLineThreshold,
 				totalBranchThreshold, filesToInstrument, filesToMerge,
@@ -263,6 +340,15 @@ public class ArgumentsBuilder {
 		failOnError = DEFAULT_FAIL_ON_ERROR;
 		ignoreTrivial = DEFAULT_IGNORE_TRIVIAL;
 		threadsafeRigorous = DEFAULT_THREADSAFE_RIGOROUS;
+		threadsafeStriped = DEFAULT_THREADSAFE_STRIPED;
+		probeOnly = DEFAULT_PROBE_ONLY;
+		verifyInstrumentation = DEFAULT_VERIFY_INSTRUMENTATION;
+		lazyCounters = DEFAULT_LAZY_COUNTERS;
+		basicBlockCounters = DEFAULT_BASIC_BLOCK_COUNTERS;
+		splitJumpEdges = DEFAULT_SPLIT_JUMP_EDGES;
+		longCounters = DEFAULT_LONG_COUNTERS;
+		threads = DEFAULT_THREADS;
+		streamingMerge = DEFAULT_STREAMING_MERGE;
 		encoding = DEFAULT_ENCODING;
 	}
 
@@ -44,6 +44,8 @@ public class Cobertura {
 
 	private AtomicBoolean didApplyInstrumentationResults;
 
+	private boolean freezeProjectData;
+
 	private CompositeReport report;
 
 	/*
@@ -86,7 +88,22 @@ public class Cobertura {
 	}
 
 	/**
-	 * Checks metrics values against thresholds
+	 * Freezes the project data (see {@link ProjectData#freeze()}) as soon as they are
+	 * loaded, so that the reports and the checks read them without locking. Frozen
+	 * data cannot be modified: instrumenting, merging or calculating the coverage
+	 * afterwards throws an IllegalStateException.
+	 * @return this Cobertura instance
+	 */
+	public Cobertura freezeProjectData() {
+		freezeProjectData = true;
+		if (projectData != null) {
+			projectData.freeze();
+		}
+		return this;
+	}
+
+	/**
+	 * Checks metrics values against thresholds.
 	 * @return this Cobertura instance
 	 */
 	public Cobertura checkThresholds() {
@@ -106,7 +123,19 @@ public class Cobertura {
 	}
 
 	/**
-	 * Creates a report with coverage and metrics data
+	 * Merges specified project data files directly into the data file, class by class,
+	 * so that files in the compact format are never loaded into memory (files in other
+	 * formats are loaded and converted one at a time, before the merge).
+	 * The data file is written in the compact format and the project data of this instance are not used.
+	 * @return this Cobertura instance
+	 */
+	public Cobertura mergeStreaming() {
+		mergeProjectDataFilesTask.mergeProjectDataFilesStreaming(args);
+		return this;
+	}
+
+	/**
+	 * Creates a report with coverage and metrics data.
 	 * @return Report instance, never <code>null</code>
 	 */
 	public Report report() {
@@ -118,7 +147,7 @@ public class Cobertura {
 				args.getSources());
 		complexityCalculator.setEncoding(args.getEncoding());
 
-		report.addReport(new NativeReport(getProjectDataInstance(), args
+		report.addReport(new NativeReport(getProjectDataForReading(), args
 				.getDestinationDirectory(), args.getSources(),
 				complexityCalculator, args.getEncoding()));
 
@@ -136,6 +165,27 @@ public class Cobertura {
 	}
 
 	/*  Aux methods  */
+
+	/**
+	 * Project data that are only read (by reports). If the data have not been loaded
+	 * yet (by an operation that modifies them), the data file is mapped instead of
+	 * being loaded, see {@link CoverageDataFileHandler#mapCoverageData(java.io.File)}.
+	 * The mapped data are not kept, so that the file can be overwritten later.
+	 */
+	private ProjectData getProjectDataForReading() {
+		if (projectData == null && args.getDataFile().isFile()) {
+			ProjectData mapped = CoverageDataFileHandler.mapCoverageData(args
+					.getDataFile());
+			if (mapped != null) {
+				if (freezeProjectData) {
+					mapped.freeze();
+				}
+				return mapped;
+			}
+		}
+		return getProjectDataInstance();
+	}
+
 	private ProjectData getProjectDataInstance() {
 		// Load project data; see notes at the beginning of CodeInstrumentationTask class
 		if (projectData != null) {
@@ -146,6 +196,8 @@ public class Cobertura {
 					.getDataFile());
 		if (projectData == null)
 			projectData = new ProjectData();
+		if (freezeProjectData)
+			projectData.freeze();
 
 		return projectData;
 	}
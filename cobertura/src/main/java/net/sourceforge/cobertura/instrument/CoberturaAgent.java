@@ -0,0 +1,112 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.CoverageDataFileHandler;
+import net.sourceforge.cobertura.dsl.Arguments;
+import net.sourceforge.cobertura.util.CommandLineBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.instrument.Instrumentation;
+
+/**
+ * Java agent that instruments the classes when they are loaded, so they don't have to be
+ * instrumented on the disk by {@link InstrumentMain}:
+ * <pre>
+ * java -javaagent:cobertura.jar="--datafile cobertura.ser --includeClasses com\.example\..*" ...
+ * </pre>
+ * The options are separated by white spaces and they are the same as the options of
+ * {@link InstrumentMain} (the files to instrument and the destination are ignored). The options
+ * can be also read from a file: <code>-javaagent:cobertura.jar="--commandsfile options.txt"</code>.
+ * The dependencies of Cobertura (ASM, ORO, SLF4J) have to be on the classpath of the application.
+ * <p/>
+ * Only the classes that are loaded are instrumented, see {@link CoberturaClassFileTransformer}.
+ * When a cache directory is specified, the instrumented classes are also reused by the next runs.
+ * The coverage data are saved to the data file when the JVM exits, as with the classes
+ * instrumented on the disk.
+ */
+public class CoberturaAgent {
+	private static final Logger logger = LoggerFactory
+			.getLogger(CoberturaAgent.class);
+
+	private static final String DATAFILE_PROPERTY = "net.sourceforge.cobertura.datafile";
+
+	public static void premain(String agentArgs, Instrumentation instrumentation)
+			throws IOException {
+		instrumentation.addTransformer(createTransformer(agentArgs));
+	}
+
+	static CoberturaClassFileTransformer createTransformer(String agentArgs)
+			throws IOException {
+		String[] args = CommandLineBuilder
+				.preprocessCommandLineArguments(splitArguments(agentArgs));
+		// the instrumented classes save their data to the default data file
+		for (int i = 0; i < args.length - 1; i++) {
+			if (args[i].equals("--datafile")) {
+				System.setProperty(DATAFILE_PROPERTY, args[i + 1]);
+			}
+		}
+		Arguments arguments = InstrumentMain.createArgumentsFromCMDParams(args)
+				.build();
+
+		ClassPattern classPattern = new ClassPattern();
+		classPattern.addIncludeClassesRegex(arguments
+				.getClassPatternIncludeClassesRegexes());
+		classPattern.addExcludeClassesRegex(arguments
+				.getClassPatternExcludeClassesRegexes());
+
+		CoberturaInstrumenter instrumenter = new CoberturaInstrumenter();
+		instrumenter.setIgnoreRegexes(arguments.getIgnoreRegexes());
+		instrumenter.setIgnoreTrivial(arguments.isIgnoreTrivial());
+		instrumenter.setIgnoreMethodAnnotations(arguments
+				.getIgnoreMethodAnnotations());
+		instrumenter.setThreadsafeRigorous(arguments.isThreadsafeRigorous());
+		instrumenter.setThreadsafeStriped(arguments.isThreadsafeStriped());
+		instrumenter.setProbeOnly(arguments.isProbeOnly());
+		instrumenter.setVerifyInstrumentation(arguments
+				.isVerifyInstrumentation());
+		instrumenter.setLazyCounters(arguments.isLazyCounters());
+		instrumenter.setBasicBlockCounters(arguments.isBasicBlockCounters());
+		instrumenter.setSplitJumpEdges(arguments.isSplitJumpEdges());
+		instrumenter.setLongCounters(arguments.isLongCounters());
+		// No project data: the touch-points are recreated from the classes when the data is saved
+		if (arguments.getCacheDirectory() != null) {
+			instrumenter.setInstrumentationCache(new InstrumentationCache(
+					arguments.getCacheDirectory()));
+		}
+
+		logger.debug("Instrumenting loaded classes, coverage data file: "
+				+ CoverageDataFileHandler.getDefaultDataFile());
+		return new CoberturaClassFileTransformer(instrumenter, classPattern);
+	}
+
+	private static String[] splitArguments(String agentArgs) {
+		if (agentArgs == null || agentArgs.trim().length() == 0) {
+			return new String[0];
+		}
+		return agentArgs.trim().split("\\s+");
+	}
+}
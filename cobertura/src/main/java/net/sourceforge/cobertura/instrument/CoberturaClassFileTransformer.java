@@ -0,0 +1,133 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Instruments the classes when they are loaded (see {@link CoberturaAgent}).
+ * <p/>
+ * Only the classes matching the {@link ClassPattern} are instrumented. The instrumented
+ * classes are kept in memory, so a class that is loaded again (by another class loader)
+ * is not instrumented again. The classes loaded by the bootstrap class loader, the classes
+ * of the JVM and of Cobertura and redefined classes are never instrumented.
+ * <p/>
+ * A class that can't be instrumented is loaded as it is and a warning is logged.
+ */
+public class CoberturaClassFileTransformer implements ClassFileTransformer {
+	private static final Logger logger = LoggerFactory
+			.getLogger(CoberturaClassFileTransformer.class);
+
+	/**
+	 * Cached result of a class that should not be instrumented.
+	 */
+	private static final byte[] NOT_INSTRUMENTED = new byte[0];
+
+	/**
+	 * Classes of Cobertura (and its dependencies) and classes of the JVM (some of them, like the generated
+	 * reflection accessors, are not loaded by the bootstrap class loader).
+	 */
+	private static final String[] EXCLUDED_PACKAGES = {
+			"net/sourceforge/cobertura/", "org/objectweb/asm/",
+			"org/apache/oro/", "org/slf4j/", "java/", "javax/", "sun/",
+			"com/sun/", "jdk/"};
+
+	private final CoberturaInstrumenter instrumenter;
+	private final ClassPattern classPattern;
+
+	/**
+	 * Instrumented classes by the digest of their original bytecode.
+	 */
+	private final ConcurrentMap<String, byte[]> instrumentedClasses = new ConcurrentHashMap<String, byte[]>();
+
+	/**
+	 * @param instrumenter - configured instrumenter (with no project data to fill)
+	 * @param classPattern - classes to instrument
+	 */
+	CoberturaClassFileTransformer(CoberturaInstrumenter instrumenter,
+			ClassPattern classPattern) {
+		this.instrumenter = instrumenter;
+		this.classPattern = classPattern;
+	}
+
+	public byte[] transform(ClassLoader loader, String className,
+			Class<?> classBeingRedefined, ProtectionDomain protectionDomain,
+			byte[] classfileBuffer) {
+		/*
+		 * Instrumented code calls TouchCollector, so it must be visible to the class.
+		 * A redefined class can't get the new fields and methods of the instrumentation.
+		 */
+		if (loader == null || className == null || classBeingRedefined != null
+				|| isExcluded(className) || !classPattern.matches(className)) {
+			return null;
+		}
+
+		String key = InstrumentationCache.getKey(className, classfileBuffer);
+		byte[] instrumented = instrumentedClasses.get(key);
+		if (instrumented == null) {
+			instrumented = instrument(loader, className, classfileBuffer);
+			instrumentedClasses.putIfAbsent(key, instrumented);
+		}
+		return instrumented == NOT_INSTRUMENTED ? null : instrumented;
+	}
+
+	private byte[] instrument(ClassLoader loader, String className,
+			byte[] classfileBuffer) {
+		try {
+			CoberturaInstrumenter.InstrumentationResult result = instrumenter
+					.instrumentClass(new ByteArrayInputStream(classfileBuffer),
+							loader);
+			if (result != null) {
+				logger.debug("Instrumented class: " + className);
+				return result.getContent();
+			}
+		} catch (Throwable t) {
+			logger.warn("Unable to instrument class " + className, t);
+		}
+		return NOT_INSTRUMENTED;
+	}
+
+	private static boolean isExcluded(String className) {
+		for (String excludedPackage : EXCLUDED_PACKAGES) {
+			if (className.startsWith(excludedPackage)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return number of the different classes that were transformed (or found not to be instrumented)
+	 */
+	public int getTransformedClassesCount() {
+		return instrumentedClasses.size();
+	}
+}
@@ -3,19 +3,60 @@
  */
 package net.sourceforge.cobertura.instrument;
 
+import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author schristou88
  *
  */
 public class CoberturaClassWriter extends ClassWriter {
+	/**
+	 * Class loader defining the instrumented class (used to compute frames), null if unknown.
+	 */
+	private final ClassLoader classLoader;
+
+	/**
+	 * The types read from the class files of {@link #classLoader}, by their internal names.
+	 */
+	private final Map<String, TypeInfo> types = new HashMap<String, TypeInfo>();
+
 	public CoberturaClassWriter(final int flags) {
+		this(flags, null);
+	}
+
+	/**
+	 * @param classLoader - class loader defining the instrumented class, or null. When it is given, the
+	 *                    types are never loaded to compute the frames, because loading them from inside
+	 *                    of a class loader (or a {@link java.lang.instrument.ClassFileTransformer}) would load
+	 *                    other classes, or the instrumented class itself, while it is being defined. Their
+	 *                    class files are read from the resources of the class loader instead.
+	 */
+	public CoberturaClassWriter(final int flags, final ClassLoader classLoader) {
 		super(flags);
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * Adds the instrumented class to the types known without reading any class file (it doesn't need to
+	 * have one, when it is generated at run time).
+	 */
+	void addType(ClassReader cr) {
+		types.put(cr.getClassName(), readTypeInfo(cr));
 	}
 
 	@Override
 	protected String getCommonSuperClass(final String type1, final String type2) {
+		if (classLoader != null) {
+			return getCommonSuperClassFromClassFiles(type1, type2);
+		}
+
 		try {
 			return super.getCommonSuperClass(type1, type2);
 		} catch (RuntimeException e) {
@@ -23,10 +64,9 @@ public class CoberturaClassWriter extends ClassWriter {
 		}
 
 		Class<?> c, d;
-		// If system class fails to load, then let's use the auxClasspath url instead.
+		// If the class fails to load, then let's use the auxClasspath url instead.
 		try {
-			c = Class.forName(type1.replace('/', '.'), false, ClassLoader
-					.getSystemClassLoader());
+			c = loadClass(type1);
 		} catch (Exception e) {
 			try {
 				c = Class.forName(type1.replace('/', '.'), false,
@@ -36,10 +76,9 @@ public class CoberturaClassWriter extends ClassWriter {
 			}
 		}
 
-		// If system class fails to load, then let's use the auxClasspath url instead.
+		// If the class fails to load, then let's use the auxClasspath url instead.
 		try {
-			d = Class.forName(type2.replace('/', '.'), false, ClassLoader
-					.getSystemClassLoader());
+			d = loadClass(type2);
 		} catch (Exception e) {
 			try {
 				d = Class.forName(type2.replace('/', '.'), false,
@@ -64,4 +103,105 @@ public class CoberturaClassWriter extends ClassWriter {
 			return c.getName().replace('.', '/');
 		}
 	}
+
+	/**
+	 * Loads the class by the system class loader.
+	 */
+	private Class<?> loadClass(String type) throws ClassNotFoundException {
+		return Class.forName(type.replace('/', '.'), false, ClassLoader
+				.getSystemClassLoader());
+	}
+
+	/**
+	 * The same as {@link #getCommonSuperClass(String, String)}, but the types are read from the class files.
+	 */
+	private String getCommonSuperClassFromClassFiles(String type1, String type2) {
+		if (isAssignableFrom(type1, type2)) {
+			return type1;
+		}
+		if (isAssignableFrom(type2, type1)) {
+			return type2;
+		}
+		if (getTypeInfo(type1).isInterface || getTypeInfo(type2).isInterface) {
+			return "java/lang/Object";
+		}
+		String type = type1;
+		do {
+			type = getTypeInfo(type).superName;
+		} while (!isAssignableFrom(type, type2));
+		return type;
+	}
+
+	/**
+	 * @return true if the type is the other type, one of its superclasses or one of its interfaces
+	 */
+	private boolean isAssignableFrom(String type, String other) {
+		if (type.equals(other)) {
+			return true;
+		}
+		TypeInfo info = getTypeInfo(other);
+		if ((info.superName != null) && isAssignableFrom(type, info.superName)) {
+			return true;
+		}
+		for (String anInterface : info.interfaces) {
+			if (isAssignableFrom(type, anInterface)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private TypeInfo getTypeInfo(String type) {
+		TypeInfo info = types.get(type);
+		if (info == null) {
+			info = readTypeInfo(type);
+			types.put(type, info);
+		}
+		return info;
+	}
+
+	private TypeInfo readTypeInfo(String type) {
+		String resource = type + ".class";
+		InputStream in = classLoader.getResourceAsStream(resource);
+		if (in == null) {
+			// the classes of the JVM are not always visible as resources of the class loader
+			in = ClassLoader.getSystemResourceAsStream(resource);
+		}
+		if (in == null) {
+			throw new RuntimeException("Class file of " + type
+					+ " not found by " + classLoader);
+		}
+		try {
+			return readTypeInfo(new ClassReader(in));
+		} catch (IOException e) {
+			throw new RuntimeException("Cannot read the class file of "
+					+ type, e);
+		} finally {
+			try {
+				in.close();
+			} catch (IOException e) {
+				// only read
+			}
+		}
+	}
+
+	private static TypeInfo readTypeInfo(ClassReader cr) {
+		return new TypeInfo(cr.getSuperName(), cr.getInterfaces(), (cr
+				.getAccess() & Opcodes.ACC_INTERFACE) != 0);
+	}
+
+	/**
+	 * The part of a class file needed to compute the frames.
+	 */
+	private static class TypeInfo {
+		final String superName;
+		final String[] interfaces;
+		final boolean isInterface;
+
+		TypeInfo(String superName, String[] interfaces, boolean isInterface) {
+			this.superName = superName;
+			this.interfaces = interfaces;
+			this.isInterface = isInterface;
+		}
+	}
 }
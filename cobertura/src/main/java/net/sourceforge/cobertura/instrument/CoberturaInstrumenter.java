@@ -25,11 +25,23 @@
 
 package net.sourceforge.cobertura.instrument;
 
+import net.sourceforge.cobertura.coveragedata.ClassData;
 import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.coveragedata.StripedCounters;
 import net.sourceforge.cobertura.instrument.pass1.DetectDuplicatedCodeClassVisitor;
 import net.sourceforge.cobertura.instrument.pass1.DetectIgnoredCodeClassVisitor;
 import net.sourceforge.cobertura.instrument.pass2.BuildClassMapClassVisitor;
+import net.sourceforge.cobertura.instrument.pass3.AbstractCodeProvider;
+import net.sourceforge.cobertura.instrument.pass3.AtomicArrayCodeProvider;
+import net.sourceforge.cobertura.instrument.pass3.AtomicLongArrayCodeProvider;
+import net.sourceforge.cobertura.instrument.pass3.BooleanArrayCodeProvider;
+import net.sourceforge.cobertura.instrument.pass3.CodeProvider;
+import net.sourceforge.cobertura.instrument.pass3.FastArrayCodeProvider;
 import net.sourceforge.cobertura.instrument.pass3.InjectCodeClassInstrumenter;
+import net.sourceforge.cobertura.instrument.pass3.LongArrayCodeProvider;
+import net.sourceforge.cobertura.instrument.pass3.SplitJumpEdgesMethodVisitor;
+import net.sourceforge.cobertura.instrument.pass3.StripedArrayCodeProvider;
+import net.sourceforge.cobertura.instrument.tp.ClassMap;
 import net.sourceforge.cobertura.util.IOUtil;
 
 import org.objectweb.asm.ClassReader;
@@ -45,7 +57,7 @@ import java.util.regex.Pattern;
 /**
  * Class that is responsible for the whole process of instrumentation of a single class.
  * <p/>
- * The class is instrumented in tree passes:
+ * The class is parsed once and instrumented in tree passes:
  * <ol>
  * <li>Read only: {@link DetectDuplicatedCodeClassVisitor} - we look for the same ASM code snippets
  * rendered in different places of destination code</li>
@@ -54,6 +66,9 @@ import java.util.regex.Pattern;
  * <li>Real instrumentation: {@link InjectCodeClassInstrumenter}. Uses {#link ClassMap} to inject
  * code into the class</li>
  * </ol>
+ * <p/>
+ * Once configured, the instrumenter can be used by many threads at once: every class is
+ * instrumented with its own visitors, and {@link ProjectData} is filled under its lock.
  *
  * @author piotr.tabor@gmail.com
  */
@@ -106,6 +121,73 @@ public class CoberturaInstrumenter {
 	 */
 	private boolean threadsafeRigorous;
 
+	/**
+	 * Setting to true causes cobertura to keep counters in per-thread stripes. Like {@link #threadsafeRigorous} the number
+	 * of hits counted for each line is precise, but the instrumented code scales much better when many threads execute
+	 * the same code.
+	 * <p/>
+	 * The option does not change measured coverage. It takes precedence over {@link #threadsafeRigorous}.
+	 * <p/>
+	 * In implementation it means that {@link StripedCounters} will be used instead of int[].
+	 */
+	private boolean threadsafeStriped;
+
+	/**
+	 * Setting to true causes cobertura to record only the fact that a line or branch was executed, not the number of hits.
+	 * Every touch-point is a single store into boolean[], that is the cheapest possible instrumentation.
+	 * <p/>
+	 * The option does not change measured coverage, but every hit line is reported as hit at most once per save.
+	 * It takes precedence over {@link #threadsafeRigorous} and {@link #threadsafeStriped}.
+	 */
+	private boolean probeOnly;
+
+	/**
+	 * Setting to true causes cobertura to allocate the counters and register the class when the class is
+	 * touched for the first time, instead of in the static initializer. Classes that are loaded but never
+	 * executed cost nothing and are skipped when the coverage data is saved.
+	 * <p/>
+	 * The price is a null check of the counters field on every touch-point.
+	 */
+	private boolean lazyCounters;
+
+	/**
+	 * Setting to true causes cobertura to increment a single counter for all the lines of a basic block, and to
+	 * compute hits of the 'false' branch of a jump ending the block from the counter of the block, instead of
+	 * incrementing a counter of its own. It cuts the number of counters incremented in straight-line code.
+	 * <p/>
+	 * Blocks end after method calls, but a line following another instruction that throws an exception (like
+	 * NullPointerException) might be reported as executed. See {@link ClassMap#setBasicBlockCounters(boolean)}.
+	 */
+	private boolean basicBlockCounters;
+
+	/**
+	 * Setting to true causes cobertura to increment the counter of the 'true' branch of a jump on the jump
+	 * itself (see {@link SplitJumpEdgesMethodVisitor}), instead of storing the counterId into a local variable
+	 * before the jump and incrementing the counter pointed by the variable at the destination of the jump.
+	 * <p/>
+	 * The option does not change measured coverage.
+	 */
+	private boolean splitJumpEdges;
+
+	/**
+	 * Setting to true causes cobertura to keep the counters in long[] (or AtomicLongArray with {@link #threadsafeRigorous}),
+	 * so they don't overflow when a line is executed more then 2^32 times between two saves of the coverage data.
+	 * <p/>
+	 * The option does not change measured coverage. {@link StripedCounters} are always long.
+	 */
+	private boolean longCounters;
+
+	/**
+	 * If true: Every instrumented class is verified ({@link CheckClassAdapter}) and the problems found are logged.
+	 * It is meant for looking for bugs in the instrumentation and it makes the instrumentation several times slower.
+	 */
+	private boolean verifyInstrumentation;
+
+	/**
+	 * Cache of already instrumented classes, or null if every class should be instrumented again.
+	 */
+	private InstrumentationCache instrumentationCache;
+
 	/**
 	 * Analyzes and instruments class given by path.
 	 * <p/>
@@ -146,19 +228,70 @@ public class CoberturaInstrumenter {
 	 */
 	public InstrumentationResult instrumentClass(InputStream inputStream)
 			throws IOException {
-		ClassReader cr0 = new ClassReader(inputStream);
-		ClassWriter cw0 = new ClassWriter(0);
+		return instrumentClass(inputStream, null);
+	}
+
+	/**
+	 * Analyzes and instruments class given by inputStream
+	 * <p/>
+	 * <p>Also the {@link #projectData} structure is filled with information about the found touch-points</p>
+	 *
+	 * @param inputStream - source of class to instrument
+	 * @param classLoader - class loader that is defining the class, or null. The classes it refers to are not
+	 *                    loaded by it (they could be being defined too), their class files are read from its
+	 *                    resources instead, see {@link CoberturaClassWriter}. When it is null, the classes are
+	 *                    loaded by the system class loader.
+	 *
+	 * @return instrumentation result structure or null in case of problems
+	 */
+	public InstrumentationResult instrumentClass(InputStream inputStream,
+			ClassLoader classLoader) throws IOException {
+		if (instrumentationCache == null) {
+			return instrumentClass(new ClassReader(inputStream), classLoader,
+					null);
+		}
+
+		byte[] classBytes = IOUtil.createByteArrayFromInputStream(inputStream);
+		String cacheKey = InstrumentationCache.getKey(describeSettings(),
+				classBytes);
+		InstrumentationCache.Entry cached = instrumentationCache.get(cacheKey);
+		if (cached != null) {
+			logger.debug("Using cached instrumentation of class: "
+					+ cached.getClassData().getName());
+			if (projectData != null) {
+				projectData.getOrCreateClassData(
+						cached.getClassData().getName()).merge(
+						cached.getClassData());
+			}
+			return cached.getResult();
+		}
+		return instrumentClass(new ClassReader(classBytes), classLoader,
+				cacheKey);
+	}
+
+	/**
+	 * @param classLoader - class loader of the class, or null
+	 * @param cacheKey - key of the class in {@link #instrumentationCache}, or null if the result should not be cached
+	 */
+	private InstrumentationResult instrumentClass(ClassReader cr,
+			ClassLoader classLoader, String cacheKey) throws IOException {
+		/*
+		 * The first two passes only analyze the class, so they don't need any writer, and all
+		 * the passes read the same (parsed only once) class.
+		 */
 		DetectIgnoredCodeClassVisitor detectIgnoredCv = new DetectIgnoredCodeClassVisitor(
-				cw0, ignoreTrivial, ignoreMethodAnnotations);
+				null, ignoreTrivial, ignoreMethodAnnotations);
 		DetectDuplicatedCodeClassVisitor cv0 = new DetectDuplicatedCodeClassVisitor(
 				detectIgnoredCv);
-		cr0.accept(cv0, 0);
+		cr.accept(cv0, 0);
 
-		ClassReader cr = new ClassReader(cw0.toByteArray());
-		ClassWriter cw = new ClassWriter(0);
-		BuildClassMapClassVisitor cv = new BuildClassMapClassVisitor(cw,
+		BuildClassMapClassVisitor cv = new BuildClassMapClassVisitor(null,
 				ignoreRegexes, cv0.getDuplicatesLinesCollector(),
 				detectIgnoredCv.getIgnoredMethodNamesAndSignatures());
+		cv.getClassMap().setBasicBlockCounters(basicBlockCounters);
+		// probes cannot be subtracted
+		cv.getClassMap().setDerivedJumpCounters(
+				basicBlockCounters && !probeOnly);
 
 		cr.accept(cv, ClassReader.EXPAND_FRAMES);
 
@@ -186,38 +319,110 @@ public class CoberturaInstrumenter {
 				.debug("Migrating classmap in projectData to store in *.ser file: "
 						+ cv.getClassMap().getClassName());
 
-		cv.getClassMap().applyOnProjectData(projectData,
-				cv.shouldBeInstrumented());
+		if (projectData != null) {
+			cv.getClassMap().applyOnProjectData(projectData,
+					cv.shouldBeInstrumented());
+		}
 
+		InstrumentationResult result = null;
 		if (cv.shouldBeInstrumented()) {
-			/*
-			 *  BuildClassMapClassInstrumenter and DetectDuplicatedCodeClassVisitor has not modificated bytecode, 
-			 *  so we can use any bytecode representation of that class. 
-			 */
-			ClassReader cr2 = new ClassReader(cw0.toByteArray());
-			ClassWriter cw2 = new CoberturaClassWriter(
-					ClassWriter.COMPUTE_FRAMES);
+			CoberturaClassWriter cw2 = new CoberturaClassWriter(
+					ClassWriter.COMPUTE_FRAMES, classLoader);
+			cw2.addType(cr);
 			cv.getClassMap().assignCounterIds();
 			logger.debug("Assigned " + cv.getClassMap().getMaxCounterId()
 					+ " counters for class:" + cv.getClassMap().getClassName());
 			InjectCodeClassInstrumenter cv2 = new InjectCodeClassInstrumenter(
-					cw2, ignoreRegexes, threadsafeRigorous, cv.getClassMap(),
+					cw2, ignoreRegexes, createCodeProvider(), cv.getClassMap(),
 					cv0.getDuplicatesLinesCollector(), detectIgnoredCv
 							.getIgnoredMethodNamesAndSignatures());
-			cr2.accept(new CheckClassAdapter(cv2), ClassReader.SKIP_FRAMES);
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw);
-			CheckClassAdapter.verify(new ClassReader(cw2.toByteArray()), false,
-					pw);
-			logger.debug(sw.toString());
-
-			return new InstrumentationResult(cv.getClassMap().getClassName(),
+			cv2.setSplitJumpEdges(splitJumpEdges);
+			if (verifyInstrumentation) {
+				cr.accept(new CheckClassAdapter(cv2), ClassReader.SKIP_FRAMES);
+				verify(cv.getClassMap().getClassName(), cw2.toByteArray());
+			} else {
+				cr.accept(cv2, ClassReader.SKIP_FRAMES);
+			}
+
+			result = new InstrumentationResult(cv.getClassMap().getClassName(),
 					cw2.toByteArray());
 		} else {
 			logger.debug("Class shouldn't be instrumented: "
 					+ cv.getClassMap().getClassName());
-			return null;
 		}
+
+		if (cacheKey != null) {
+			// The touch-points alone, without the hits that might be already stored in projectData
+			ClassData classData = cv.getClassMap().applyOnProjectData(
+					new ProjectData(), cv.shouldBeInstrumented());
+			instrumentationCache.put(cacheKey, classData, cv.getClassMap()
+					.getClassName(), result == null ? null : result
+					.getContent());
+		}
+		return result;
+	}
+
+	/**
+	 * Verifies the instrumented class and logs the problems found.
+	 */
+	private void verify(String className, byte[] instrumentedClass) {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		CheckClassAdapter.verify(new ClassReader(instrumentedClass), false, pw);
+		pw.flush();
+		if (sw.getBuffer().length() > 0) {
+			logger.warn("Verification of instrumented class " + className
+					+ " failed:\n" + sw);
+		}
+	}
+
+	/**
+	 * Describes all the settings that have influence on the instrumentation of a class,
+	 * to distinguish entries of the {@link #instrumentationCache}.
+	 */
+	private String describeSettings() {
+		List<String> ignores = new ArrayList<String>();
+		for (Object regex : ignoreRegexes) {
+			// the regexes built from Arguments are ORO patterns (see RegexUtil)
+			ignores.add(regex instanceof org.apache.oro.text.regex.Pattern
+					? ((org.apache.oro.text.regex.Pattern) regex).getPattern()
+					: regex.toString());
+		}
+		Collections.sort(ignores);
+		List<String> annotations = new ArrayList<String>(
+				ignoreMethodAnnotations);
+		Collections.sort(annotations);
+
+		return "ignoreRegexes=" + ignores + ";ignoreMethodAnnotations="
+				+ annotations + ";ignoreTrivial=" + ignoreTrivial
+				+ ";threadsafeRigorous=" + threadsafeRigorous
+				+ ";threadsafeStriped=" + threadsafeStriped + ";probeOnly="
+				+ probeOnly + ";lazyCounters=" + lazyCounters
+				+ ";basicBlockCounters=" + basicBlockCounters
+				+ ";splitJumpEdges=" + splitJumpEdges + ";longCounters="
+				+ longCounters;
+	}
+
+	/**
+	 * Chooses {@link CodeProvider} that generates code keeping the counters, according to the thread-safety settings.
+	 */
+	private CodeProvider createCodeProvider() {
+		AbstractCodeProvider codeProvider;
+		if (probeOnly) {
+			codeProvider = new BooleanArrayCodeProvider();
+		} else if (threadsafeStriped) {
+			codeProvider = new StripedArrayCodeProvider();
+		} else if (threadsafeRigorous) {
+			codeProvider = longCounters
+					? new AtomicLongArrayCodeProvider()
+					: new AtomicArrayCodeProvider();
+		} else if (longCounters) {
+			codeProvider = new LongArrayCodeProvider();
+		} else {
+			codeProvider = new FastArrayCodeProvider();
+		}
+		codeProvider.setLazyCounters(lazyCounters);
+		return codeProvider;
 	}
 
 	/**
@@ -307,6 +512,42 @@ public class CoberturaInstrumenter {
 		this.threadsafeRigorous = threadsafeRigorous;
 	}
 
+	public void setThreadsafeStriped(boolean threadsafeStriped) {
+		this.threadsafeStriped = threadsafeStriped;
+	}
+
+	public void setProbeOnly(boolean probeOnly) {
+		this.probeOnly = probeOnly;
+	}
+
+	public void setLazyCounters(boolean lazyCounters) {
+		this.lazyCounters = lazyCounters;
+	}
+
+	public void setBasicBlockCounters(boolean basicBlockCounters) {
+		this.basicBlockCounters = basicBlockCounters;
+	}
+
+	public void setSplitJumpEdges(boolean splitJumpEdges) {
+		this.splitJumpEdges = splitJumpEdges;
+	}
+
+	public void setLongCounters(boolean longCounters) {
+		this.longCounters = longCounters;
+	}
+
+	/**
+	 * Sets cache of already instrumented classes. If it is null (default), every class is instrumented again.
+	 */
+	public void setInstrumentationCache(
+			InstrumentationCache instrumentationCache) {
+		this.instrumentationCache = instrumentationCache;
+	}
+
+	public void setVerifyInstrumentation(boolean verifyInstrumentation) {
+		this.verifyInstrumentation = verifyInstrumentation;
+	}
+
 	public void setFailOnError(boolean failOnError) {
 		this.failOnError = failOnError;
 	}
@@ -314,7 +555,8 @@ public class CoberturaInstrumenter {
 	/**
 	 * Sets {@link ProjectData} that will be filled with information about touch points inside instrumented classes
 	 *
-	 * @param projectData
+	 * @param projectData - the data to fill, or null if the touch points are not kept (as by {@link CoberturaAgent},
+	 *                    the instrumented classes register them when their coverage is saved)
 	 */
 	public void setProjectData(ProjectData projectData) {
 		this.projectData = projectData;
@@ -7,7 +7,14 @@ import net.sourceforge.cobertura.util.*;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -41,13 +48,50 @@ import org.slf4j.LoggerFactory;
  * determine whether a class has been instrumented or not, so
  * as not to instrument the same class twice.
  * </p>
+ * <p/>
+ * <p>
+ * When more than one thread is requested (see {@link Arguments#getThreads()}),
+ * the classes are instrumented on a pool of threads. Idle threads take the next
+ * class from the common queue, so a few big classes do not hold up the others.
+ * The entries of an instrumented archive are still written in their original
+ * order, so the output does not depend on the number of threads.
+ * </p>
+ * <p>
+ * Archives are read with {@link RawZipFile}: the entries that are not instrumented are
+ * copied to the output archive still compressed and only the instrumented classes (and
+ * the modified nested archives) are deflated again. Archives that {@link RawZipFile}
+ * cannot read (ZIP64 archives for example) are instrumented as a stream.
+ * </p>
  */
 public class CodeInstrumentationTask {
 	private static final LoggerWrapper logger = new LoggerWrapper();
+
+	/**
+	 * Number of archive entries (per thread) that can wait for their instrumentation to
+	 * finish before the oldest one is written to the output archive.
+	 */
+	private static final int PENDING_ENTRIES_PER_THREAD = 16;
+
 	private CoberturaInstrumenter coberturaInstrumenter;
 	private File destinationDirectory;
 	private ClassPattern classPattern;
 
+	/**
+	 * Cache of instrumented classes, null if the classes are always instrumented.
+	 */
+	private InstrumentationCache instrumentationCache;
+
+	/**
+	 * Pool used to instrument classes, null if the classes are instrumented by the calling thread.
+	 */
+	private ExecutorService executor;
+	private int maxPendingEntries = 1;
+
+	/**
+	 * Instrumentation of single class files submitted to the {@link #executor}, in order of submission.
+	 */
+	private final List<Future<?>> submittedClasses = new ArrayList<Future<?>>();
+
 	public CodeInstrumentationTask instrument(Arguments arguments,
 			ProjectData projectData) throws Throwable {
 		destinationDirectory = arguments.getDestinationDirectory();
@@ -70,8 +114,23 @@ public class CodeInstrumentationTask {
 				.getIgnoreMethodAnnotations());
 		coberturaInstrumenter.setThreadsafeRigorous(arguments
 				.isThreadsafeRigorous());
+		coberturaInstrumenter.setThreadsafeStriped(arguments
+				.isThreadsafeStriped());
+		coberturaInstrumenter.setProbeOnly(arguments.isProbeOnly());
+		coberturaInstrumenter.setVerifyInstrumentation(arguments
+				.isVerifyInstrumentation());
+		coberturaInstrumenter.setLazyCounters(arguments.isLazyCounters());
+		coberturaInstrumenter.setBasicBlockCounters(arguments
+				.isBasicBlockCounters());
+		coberturaInstrumenter.setSplitJumpEdges(arguments.isSplitJumpEdges());
+		coberturaInstrumenter.setLongCounters(arguments.isLongCounters());
 		coberturaInstrumenter.setFailOnError(arguments.isFailOnError());
 		coberturaInstrumenter.setProjectData(projectData);
+		if (arguments.getCacheDirectory() != null) {
+			instrumentationCache = new InstrumentationCache(arguments
+					.getCacheDirectory());
+			coberturaInstrumenter.setInstrumentationCache(instrumentationCache);
+		}
 
 		// Instrument classes
 		logger.info(String.format("Instrumenting %s %s %s", filePaths.size(),
@@ -79,14 +138,32 @@ public class CodeInstrumentationTask {
 				(destinationDirectory != null ? " to "
 						+ destinationDirectory.getAbsoluteFile() : "")));
 
-		Iterator<CoberturaFile> iter = filePaths.iterator();
-		while (iter.hasNext()) {
-			CoberturaFile coberturaFile = iter.next();
-			if (coberturaFile.isArchive()) {
-				addInstrumentationToArchive(coberturaFile);
-			} else {
-				addInstrumentation(coberturaFile);
+		int threads = arguments.getThreads();
+		if (threads > 1) {
+			logger.debug("Instrumenting using " + threads + " threads");
+			executor = Executors.newFixedThreadPool(threads);
+			maxPendingEntries = threads * PENDING_ENTRIES_PER_THREAD;
+		}
+		try {
+			Iterator<CoberturaFile> iter = filePaths.iterator();
+			while (iter.hasNext()) {
+				CoberturaFile coberturaFile = iter.next();
+				if (coberturaFile.isArchive()) {
+					addInstrumentationToArchive(coberturaFile);
+				} else {
+					addInstrumentation(coberturaFile);
+				}
 			}
+			waitForSubmittedClasses();
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow();
+				executor = null;
+			}
+			submittedClasses.clear();
+		}
+		if (instrumentationCache != null) {
+			instrumentationCache.logStatistics();
 		}
 
 		// Save coverage data (ser file with list of touch points, but not hits registered).
@@ -94,6 +171,14 @@ public class CodeInstrumentationTask {
 		return this;
 	}
 
+	/**
+	 * @return cache of the instrumented classes used by the last {@link #instrument(Arguments, ProjectData)},
+	 *         or null if no cache directory was specified
+	 */
+	public InstrumentationCache getInstrumentationCache() {
+		return instrumentationCache;
+	}
+
 	/**
 	 * @param entry A zip entry.
 	 *
@@ -104,6 +189,90 @@ public class CodeInstrumentationTask {
 		return entry.getName().endsWith(".class");
 	}
 
+	private boolean addInstrumentationToArchive(CoberturaFile file,
+			RawZipFile archive, RawZipOutputStream output) throws Exception {
+		/*
+		 * "modified" is returned and indicates that something was instrumented.
+		 * If nothing is instrumented, the original archive will be used by the
+		 * caller of this method.
+		 */
+		boolean modified = false;
+		LinkedList<PendingRawEntry> pending = new LinkedList<PendingRawEntry>();
+		for (RawZipFile.Entry entry : archive.getEntries()) {
+			try {
+				String entryName = entry.getName();
+
+				/*
+				 * If this is a signature file then don't copy it,
+				 * but don't set modified to true.  If the only
+				 * thing we do is strip the signature, just use
+				 * the original entry.
+				 */
+				if (ArchiveUtil.isSignatureFile(entryName)) {
+					continue;
+				}
+				PendingRawEntry pendingEntry = new PendingRawEntry(entry);
+
+				// Instrument embedded archives if a classPattern has been specified
+				if ((classPattern.isSpecified())
+						&& ArchiveUtil.isArchive(entryName)) {
+					pendingEntry.modifiedBytes = addInstrumentationToNestedArchive(
+							file, archive.readContent(entry));
+				} else if (entryName.endsWith(".class")
+						&& classPattern.matches(entryName)) {
+					pendingEntry.result = instrumentClass(archive, entry);
+				}
+				pending.add(pendingEntry);
+			} catch (Exception e) {
+				logger.warn("Problems with archive entry: " + entry.getName(),
+						e);
+			} catch (Throwable t) {
+				logger.warn("Problems with archive entry: " + entry.getName(),
+						t);
+			}
+
+			while (pending.size() >= maxPendingEntries) {
+				modified |= writeEntry(archive, pending.removeFirst(), output);
+			}
+		}
+		while (!pending.isEmpty()) {
+			modified |= writeEntry(archive, pending.removeFirst(), output);
+		}
+		output.setComment(archive.getComment());
+		return modified;
+	}
+
+	/**
+	 * Instruments the archive that is an entry of another archive.
+	 *
+	 * @return the instrumented archive, or null if nothing was instrumented
+	 */
+	private byte[] addInstrumentationToNestedArchive(CoberturaFile file,
+			byte[] bytes) throws Exception {
+		RawZipFile archive;
+		try {
+			archive = new RawZipFile(bytes);
+		} catch (ZipException e) {
+			logger.debug("Instrumenting nested archive as a stream: "
+					+ e.getMessage());
+			Archive archiveObj = new Archive(file, bytes);
+			addInstrumentationToArchive(archiveObj);
+			return archiveObj.isModified() ? archiveObj.getBytes() : null;
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+		RawZipOutputStream output = new RawZipOutputStream(out);
+		try {
+			if (!addInstrumentationToArchive(file, archive, output)) {
+				return null;
+			}
+			output.finish();
+			return out.toByteArray();
+		} finally {
+			archive.close();
+		}
+	}
+
 	private boolean addInstrumentationToArchive(CoberturaFile file,
 			InputStream archive, OutputStream output) throws Exception {
 		ZipInputStream zis = null;
@@ -127,6 +296,7 @@ public class CodeInstrumentationTask {
 		 * caller of this method.
 		 */
 		boolean modified = false;
+		LinkedList<PendingEntry> pending = new LinkedList<PendingEntry>();
 		ZipEntry entry;
 		while ((entry = archive.getNextEntry()) != null) {
 			try {
@@ -145,52 +315,26 @@ public class CodeInstrumentationTask {
 				outputEntry.setComment(entry.getComment());
 				outputEntry.setExtra(entry.getExtra());
 				outputEntry.setTime(entry.getTime());
-				output.putNextEntry(outputEntry);
 
 				// Read current entry
-				byte[] entryBytes = IOUtil
-						.createByteArrayFromInputStream(archive);
+				PendingEntry pendingEntry = new PendingEntry(outputEntry, IOUtil
+						.createByteArrayFromInputStream(archive));
+				archive.closeEntry();
 
 				// Instrument embedded archives if a classPattern has been specified
 				if ((classPattern.isSpecified())
 						&& ArchiveUtil.isArchive(entryName)) {
-					Archive archiveObj = new Archive(file, entryBytes);
+					Archive archiveObj = new Archive(file, pendingEntry.bytes);
 					addInstrumentationToArchive(archiveObj);
 					if (archiveObj.isModified()) {
 						modified = true;
-						entryBytes = archiveObj.getBytes();
+						pendingEntry.bytes = archiveObj.getBytes();
 						outputEntry.setTime(System.currentTimeMillis());
 					}
 				} else if (isClass(entry) && classPattern.matches(entryName)) {
-					try {
-						CoberturaInstrumenter.InstrumentationResult res = coberturaInstrumenter
-								.instrumentClass(new ByteArrayInputStream(
-										entryBytes));
-						if (res != null) {
-							logger.debug("Putting instrumented entry: "
-									+ entry.getName());
-							entryBytes = res.getContent();
-							modified = true;
-							outputEntry.setTime(System.currentTimeMillis());
-						}
-					} catch (Throwable t) {
-						if (entry.getName().endsWith("_Stub.class")) {
-							//no big deal - it is probably an RMI stub, and they don't need to be instrumented
-							logger.debug(
-									"Problems instrumenting archive entry: "
-											+ entry.getName(), t);
-						} else {
-							logger.warn(
-									"Problems instrumenting archive entry: "
-											+ entry.getName(), t);
-						}
-					}
+					pendingEntry.result = instrumentClass(pendingEntry.bytes);
 				}
-
-				// Add entry to the output
-				output.write(entryBytes);
-				output.closeEntry();
-				archive.closeEntry();
+				pending.add(pendingEntry);
 			} catch (Exception e) {
 				logger.warn("Problems with archive entry: " + entry.getName(),
 						e);
@@ -198,11 +342,170 @@ public class CodeInstrumentationTask {
 				logger.warn("Problems with archive entry: " + entry.getName(),
 						t);
 			}
+
+			while (pending.size() >= maxPendingEntries) {
+				modified |= writeEntry(pending.removeFirst(), output);
+			}
+		}
+		while (!pending.isEmpty()) {
+			modified |= writeEntry(pending.removeFirst(), output);
+		}
+		return modified;
+	}
+
+	/**
+	 * Waits for the instrumentation of the entry (if any) and adds the entry to the output.
+	 *
+	 * @return true if the entry was instrumented
+	 */
+	private boolean writeEntry(PendingEntry pendingEntry, ZipOutputStream output) {
+		String entryName = pendingEntry.outputEntry.getName();
+		boolean modified = false;
+		try {
+			if (pendingEntry.result != null) {
+				byte[] instrumented = getInstrumentedClass(entryName,
+						pendingEntry.result);
+				if (instrumented != null) {
+					pendingEntry.bytes = instrumented;
+					modified = true;
+					pendingEntry.outputEntry.setTime(System.currentTimeMillis());
+				}
+			}
+
+			// Add entry to the output
+			output.putNextEntry(pendingEntry.outputEntry);
+			output.write(pendingEntry.bytes);
+			output.closeEntry();
 			output.flush();
+		} catch (Exception e) {
+			logger.warn("Problems with archive entry: " + entryName, e);
+		} catch (Throwable t) {
+			logger.warn("Problems with archive entry: " + entryName, t);
 		}
 		return modified;
 	}
 
+	/**
+	 * Waits for the instrumentation of the entry (if any) and adds the entry to the output,
+	 * either instrumented or copied as it is.
+	 *
+	 * @return true if the entry was instrumented
+	 */
+	private boolean writeEntry(RawZipFile archive, PendingRawEntry pendingEntry,
+			RawZipOutputStream output) {
+		String entryName = pendingEntry.entry.getName();
+		try {
+			if (pendingEntry.result != null) {
+				byte[] instrumented = getInstrumentedClass(entryName,
+						pendingEntry.result);
+				if (instrumented != null) {
+					output.putEntry(archive, pendingEntry.entry, instrumented,
+							System.currentTimeMillis());
+					return true;
+				}
+			} else if (pendingEntry.modifiedBytes != null) {
+				output.putEntry(archive, pendingEntry.entry,
+						pendingEntry.modifiedBytes, System.currentTimeMillis());
+				return true;
+			}
+			output.putRawEntry(archive, pendingEntry.entry);
+		} catch (Exception e) {
+			logger.warn("Problems with archive entry: " + entryName, e);
+		} catch (Throwable t) {
+			logger.warn("Problems with archive entry: " + entryName, t);
+		}
+		return false;
+	}
+
+	/**
+	 * Waits for the instrumentation of the class entry.
+	 *
+	 * @return the instrumented class, or null if the class was not instrumented
+	 */
+	private byte[] getInstrumentedClass(String entryName,
+			Future<CoberturaInstrumenter.InstrumentationResult> result) {
+		try {
+			CoberturaInstrumenter.InstrumentationResult res = getResult(result);
+			if (res != null) {
+				logger.debug("Putting instrumented entry: " + entryName);
+				return res.getContent();
+			}
+		} catch (Throwable t) {
+			if (entryName.endsWith("_Stub.class")) {
+				//no big deal - it is probably an RMI stub, and they don't need to be instrumented
+				logger.debug("Problems instrumenting archive entry: "
+						+ entryName, t);
+			} else {
+				logger.warn("Problems instrumenting archive entry: "
+						+ entryName, t);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Instruments the class on the {@link #executor}, or right away if there is no executor.
+	 */
+	private Future<CoberturaInstrumenter.InstrumentationResult> instrumentClass(
+			final byte[] classBytes) {
+		return instrumentClass(new Callable<CoberturaInstrumenter.InstrumentationResult>() {
+			public CoberturaInstrumenter.InstrumentationResult call()
+					throws Exception {
+				return coberturaInstrumenter
+						.instrumentClass(new ByteArrayInputStream(classBytes));
+			}
+		});
+	}
+
+	/**
+	 * Reads (inflates) and instruments the class entry on the {@link #executor}, or right away
+	 * if there is no executor.
+	 */
+	private Future<CoberturaInstrumenter.InstrumentationResult> instrumentClass(
+			final RawZipFile archive, final RawZipFile.Entry entry) {
+		return instrumentClass(new Callable<CoberturaInstrumenter.InstrumentationResult>() {
+			public CoberturaInstrumenter.InstrumentationResult call()
+					throws Exception {
+				return coberturaInstrumenter
+						.instrumentClass(new ByteArrayInputStream(archive
+								.readContent(entry)));
+			}
+		});
+	}
+
+	private Future<CoberturaInstrumenter.InstrumentationResult> instrumentClass(
+			Callable<CoberturaInstrumenter.InstrumentationResult> task) {
+		if (executor != null) {
+			return executor.submit(task);
+		}
+		FutureTask<CoberturaInstrumenter.InstrumentationResult> result = new FutureTask<CoberturaInstrumenter.InstrumentationResult>(
+				task);
+		result.run();
+		return result;
+	}
+
+	/**
+	 * Waits for the instrumentation of all the class files submitted to the {@link #executor}.
+	 * The first failure (in order of submission) is rethrown.
+	 */
+	private void waitForSubmittedClasses() throws Throwable {
+		for (Future<?> submitted : submittedClasses) {
+			getResult(submitted);
+		}
+		submittedClasses.clear();
+	}
+
+	private static <T> T getResult(Future<T> future) throws Throwable {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Instrumentation was interrupted", e);
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+
 	private void addInstrumentationToArchive(Archive archive) throws Exception {
 		InputStream in = null;
 		ByteArrayOutputStream out = null;
@@ -226,6 +529,55 @@ public class CodeInstrumentationTask {
 	private void addInstrumentationToArchive(CoberturaFile archive) {
 		logger.debug("Instrumenting archive " + archive.getAbsolutePath());
 
+		File outputFile = null;
+		RawZipFile input = null;
+		RawZipOutputStream output = null;
+		boolean modified = false;
+		try {
+			// Open archive
+			try {
+				input = new RawZipFile(archive);
+			} catch (FileNotFoundException e) {
+				logger.warn("Cannot open archive file: "
+						+ archive.getAbsolutePath(), e);
+				return;
+			} catch (IOException e) {
+				logger.debug("Instrumenting archive " + archive.getAbsolutePath()
+						+ " as a stream: " + e.getMessage());
+				addInstrumentationToArchiveStream(archive);
+				return;
+			}
+
+			// Open output archive
+			try {
+				outputFile = createOutputFile(archive);
+				output = new RawZipOutputStream(new FileOutputStream(outputFile));
+			} catch (IOException e) {
+				logger.warn("Cannot open file for instrumented archive: "
+						+ archive.getAbsolutePath(), e);
+				return;
+			}
+
+			// Instrument classes in archive
+			try {
+				modified = addInstrumentationToArchive(archive, input, output);
+				output.finish();
+			} catch (Throwable e) {
+				logger.warn("Cannot instrument archive: "
+						+ archive.getAbsolutePath(), e);
+				return;
+			}
+		} finally {
+			close(input);
+			close(output);
+		}
+		replaceArchive(archive, outputFile, modified);
+	}
+
+	/**
+	 * Instruments the archive read by {@link ZipInputStream} (every entry is inflated and deflated again).
+	 */
+	private void addInstrumentationToArchiveStream(CoberturaFile archive) {
 		File outputFile = null;
 		ZipInputStream input = null;
 		ZipOutputStream output = null;
@@ -242,17 +594,7 @@ public class CodeInstrumentationTask {
 
 			// Open output archive
 			try {
-				// check if destination folder is set
-				if (destinationDirectory != null) {
-					// if so, create output file in it
-					outputFile = new File(destinationDirectory, archive
-							.getPathname());
-				} else {
-					// otherwise create output file in temporary location
-					outputFile = File.createTempFile(
-							"CoberturaInstrumentedArchive", "jar");
-					outputFile.deleteOnExit();
-				}
+				outputFile = createOutputFile(archive);
 				output = new ZipOutputStream(new FileOutputStream(outputFile));
 			} catch (IOException e) {
 				logger.warn("Cannot open file for instrumented archive: "
@@ -272,7 +614,24 @@ public class CodeInstrumentationTask {
 			input = (ZipInputStream) IOUtil.closeInputStream(input);
 			output = (ZipOutputStream) IOUtil.closeOutputStream(output);
 		}
+		replaceArchive(archive, outputFile, modified);
+	}
 
+	private File createOutputFile(CoberturaFile archive) throws IOException {
+		// check if destination folder is set
+		if (destinationDirectory != null) {
+			// if so, create output file in it
+			return new File(destinationDirectory, archive.getPathname());
+		}
+		// otherwise create output file in temporary location
+		File outputFile = File.createTempFile("CoberturaInstrumentedArchive",
+				"jar");
+		outputFile.deleteOnExit();
+		return outputFile;
+	}
+
+	private void replaceArchive(CoberturaFile archive, File outputFile,
+			boolean modified) {
 		// If destination folder was not set, overwrite orginal archive with
 		// instrumented one
 		if (modified && (destinationDirectory == null)) {
@@ -291,7 +650,39 @@ public class CodeInstrumentationTask {
 		}
 	}
 
-	private void addInstrumentationToSingleClass(File file) {
+	private static void close(RawZipFile archive) {
+		if (archive != null) {
+			try {
+				archive.close();
+			} catch (IOException e) {
+				logger.debug("Cannot close archive", e);
+			}
+		}
+	}
+
+	private static void close(RawZipOutputStream archive) {
+		if (archive != null) {
+			try {
+				archive.close();
+			} catch (IOException e) {
+				logger.debug("Cannot close archive", e);
+			}
+		}
+	}
+
+	private void addInstrumentationToSingleClass(final File file) {
+		if (executor == null) {
+			instrumentSingleClass(file);
+			return;
+		}
+		submittedClasses.add(executor.submit(new Runnable() {
+			public void run() {
+				instrumentSingleClass(file);
+			}
+		}));
+	}
+
+	private void instrumentSingleClass(File file) {
 		logger.info("Instrumenting: " + file.getAbsolutePath() + " to "
 				+ destinationDirectory);
 		coberturaInstrumenter.addInstrumentationToSingleClass(file);
@@ -317,6 +708,45 @@ public class CodeInstrumentationTask {
 		}
 	}
 
+	/**
+	 * Entry of an archive that waits to be written to the output archive.
+	 */
+	private static class PendingEntry {
+		final ZipEntry outputEntry;
+		byte[] bytes;
+
+		/**
+		 * Instrumentation of the entry, null if the entry is copied as it is.
+		 */
+		Future<CoberturaInstrumenter.InstrumentationResult> result;
+
+		PendingEntry(ZipEntry outputEntry, byte[] bytes) {
+			this.outputEntry = outputEntry;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * Entry of a {@link RawZipFile} that waits to be written to the output archive.
+	 */
+	private static class PendingRawEntry {
+		final RawZipFile.Entry entry;
+
+		/**
+		 * Instrumentation of the class entry, null if the entry is not a class to instrument.
+		 */
+		Future<CoberturaInstrumenter.InstrumentationResult> result;
+
+		/**
+		 * Content of the instrumented nested archive, null if the entry is copied as it is.
+		 */
+		byte[] modifiedBytes;
+
+		PendingRawEntry(RawZipFile.Entry entry) {
+			this.entry = entry;
+		}
+	}
+
 	// TODO: Preserved current behaviour, but this code is failing on WARN, not error
 	private static class LoggerWrapper {
 		private final Logger logger = LoggerFactory
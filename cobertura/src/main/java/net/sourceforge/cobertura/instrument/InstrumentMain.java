@@ -92,7 +92,7 @@ public class InstrumentMain {
 		logger.info("Instrument time: " + (stopTime - startTime) + "ms");
 	}
 
-	private static ArgumentsBuilder createArgumentsFromCMDParams(String[] args) {
+	static ArgumentsBuilder createArgumentsFromCMDParams(String[] args) {
 		ArgumentsBuilder builder = new ArgumentsBuilder();
 
 		// Parse parameters
@@ -119,6 +119,24 @@ public class InstrumentMain {
 				logger.setFailOnError(true);
 			} else if (args[i].equals("--threadsafeRigorous")) {
 				builder.threadsafeRigorous(true);
+			} else if (args[i].equals("--threadsafeStriped")) {
+				builder.threadsafeStriped(true);
+			} else if (args[i].equals("--probeOnly")) {
+				builder.probeOnly(true);
+			} else if (args[i].equals("--verifyInstrumentation")) {
+				builder.verifyInstrumentation(true);
+			} else if (args[i].equals("--lazyCounters")) {
+				builder.lazyCounters(true);
+			} else if (args[i].equals("--basicBlockCounters")) {
+				builder.basicBlockCounters(true);
+			} else if (args[i].equals("--splitJumpEdges")) {
+				builder.splitJumpEdges(true);
+			} else if (args[i].equals("--longCounters")) {
+				builder.longCounters(true);
+			} else if (args[i].equals("--threads")) {
+				builder.setThreads(Integer.parseInt(args[++i]));
+			} else if (args[i].equals("--cacheDirectory")) {
+				builder.setCacheDirectory(args[++i]);
 			} else if (args[i].equals("--auxClasspath")) {
 				addElementsToJVM(args[++i]);
 			} else {
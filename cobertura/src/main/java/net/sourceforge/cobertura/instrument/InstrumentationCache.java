@@ -0,0 +1,303 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.ClassData;
+import net.sourceforge.cobertura.coveragedata.CompactCoverageDataReader;
+import net.sourceforge.cobertura.coveragedata.CompactCoverageDataWriter;
+import net.sourceforge.cobertura.util.Header;
+import net.sourceforge.cobertura.util.IOUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>On-disk cache of instrumented classes.</p>
+ * <p/>
+ * <p>Every entry is keyed by a digest of the original bytecode of a class, of the settings of
+ * {@link CoberturaInstrumenter} that have influence on the instrumentation and of the implementation of
+ * Cobertura itself. The entry keeps the instrumented
+ * bytecode (if the class should be instrumented at all) and the touch-points found in the class, in form of
+ * a {@link ClassData} with no hits (stored in the compact format, see {@link CompactCoverageDataWriter}).
+ * So an unchanged class does not have to be analyzed nor instrumented again.</p>
+ * <p/>
+ * <p>The cache can be used by many threads at once. Broken or unreadable entries are treated as missing.</p>
+ */
+public class InstrumentationCache {
+	private static final Logger logger = LoggerFactory
+			.getLogger(InstrumentationCache.class);
+
+	/**
+	 * Version of the format of the entries. It has to be changed whenever the format changes, so the entries
+	 * written in an older format are not read.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The implementation of Cobertura creating the entries, see {@link #findImplementation()}. It is a part of
+	 * the key, so the entries created by another implementation are not used.
+	 */
+	private static final String IMPLEMENTATION = findImplementation();
+
+	private static final String ENTRY_SUFFIX = ".class.cache";
+
+	private final File directory;
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+
+	/**
+	 * @param directory - directory where the entries are stored; it is created if it does not exist
+	 */
+	public InstrumentationCache(File directory) {
+		this.directory = directory;
+		directory.mkdirs();
+	}
+
+	/**
+	 * The instrumented classes call the runtime of the Cobertura that instrumented them (TouchCollector and
+	 * the counters), so they cannot be used with another implementation. It is told by the version from the
+	 * manifest of the jar (see {@link Header#version()}), and by the size and the time of the jar, as a
+	 * snapshot keeps its version from build to build. When the classes are not packaged, the class file of
+	 * this class is used instead of the jar.
+	 *
+	 * @return description of the implementation of Cobertura that is running
+	 */
+	static String findImplementation() {
+		StringBuilder implementation = new StringBuilder(String.valueOf(Header
+				.version()));
+		CodeSource codeSource = InstrumentationCache.class
+				.getProtectionDomain().getCodeSource();
+		if ((codeSource != null) && (codeSource.getLocation() != null)) {
+			try {
+				File file = new File(codeSource.getLocation().toURI());
+				if (file.isDirectory()) {
+					file = new File(file, InstrumentationCache.class.getName()
+							.replace('.', '/')
+							+ ".class");
+				}
+				implementation.append(';').append(file.length()).append(';')
+						.append(file.lastModified());
+			} catch (Exception e) {
+				logger.debug("Cannot find the location of Cobertura "
+						+ codeSource.getLocation(), e);
+			}
+		}
+		return implementation.toString();
+	}
+
+	/**
+	 * @param settings    - description of all the settings that have influence on the instrumentation
+	 * @param classBytes  - original bytecode of the class
+	 *
+	 * @return key of the entry for the class
+	 */
+	static String getKey(String settings, byte[] classBytes) {
+		return getKey(IMPLEMENTATION, settings, classBytes);
+	}
+
+	/**
+	 * @param implementation - description of the implementation of Cobertura, see {@link #findImplementation()}
+	 * @param settings       - description of all the settings that have influence on the instrumentation
+	 * @param classBytes     - original bytecode of the class
+	 *
+	 * @return key of the entry for the class
+	 */
+	static String getKey(String implementation, String settings,
+			byte[] classBytes) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+		try {
+			digest.update((VERSION + ";" + implementation + ";" + settings)
+					.getBytes("UTF-8"));
+		} catch (IOException e) {
+			throw new IllegalStateException("UTF-8 is not available", e);
+		}
+		digest.update(classBytes);
+
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 0xF, 16));
+			key.append(Character.forDigit(b & 0xF, 16));
+		}
+		return key.toString();
+	}
+
+	/**
+	 * @return the cached entry, or null if there is no (valid) entry for the key
+	 */
+	Entry get(String key) {
+		File file = new File(directory, key + ENTRY_SUFFIX);
+		if (!file.isFile()) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			if (in.readInt() != VERSION) {
+				throw new IOException("Unsupported version of the entry");
+			}
+			String className = in.readUTF();
+			byte[] content = null;
+			int length = in.readInt();
+			if (length >= 0) {
+				content = new byte[length];
+				in.readFully(content);
+			}
+			ClassData classData = new CompactCoverageDataReader(in)
+					.readNextClass();
+			hits.incrementAndGet();
+			return new Entry(classData, className, content);
+		} catch (Exception e) {
+			logger.debug("Ignoring broken cache entry " + file.getAbsolutePath(),
+					e);
+			misses.incrementAndGet();
+			return null;
+		} finally {
+			IOUtil.closeInputStream(in);
+		}
+	}
+
+	/**
+	 * Stores the entry. Failures are only logged, because the cache is just an optimization.
+	 *
+	 * @param classData - touch-points of the class (without any hits)
+	 * @param className - name of the class, as returned in {@link CoberturaInstrumenter.InstrumentationResult}
+	 * @param content   - instrumented bytecode of the class, or null if the class should not be instrumented
+	 */
+	void put(String key, ClassData classData, String className,
+			byte[] content) {
+		File file = new File(directory, key + ENTRY_SUFFIX);
+		File tmpFile = null;
+		DataOutputStream out = null;
+		try {
+			ByteArrayOutputStream block = new ByteArrayOutputStream();
+			CompactCoverageDataWriter writer = new CompactCoverageDataWriter(
+					block);
+			writer.writeClass(classData);
+
+			// Written into a temporary file first, so other threads (or processes) never read a partial entry
+			tmpFile = File.createTempFile(key, ".tmp", directory);
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmpFile)));
+			out.writeInt(VERSION);
+			out.writeUTF(className);
+			if (content == null) {
+				out.writeInt(-1);
+			} else {
+				out.writeInt(content.length);
+				out.write(content);
+			}
+			writer.writeHeader(out);
+			block.writeTo(out);
+			out.close();
+			out = null;
+			if (!tmpFile.renameTo(file) && !file.isFile()) {
+				throw new IOException("Unable to rename "
+						+ tmpFile.getAbsolutePath() + " to "
+						+ file.getAbsolutePath());
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to write cache entry " + file.getAbsolutePath(),
+					e);
+		} finally {
+			IOUtil.closeOutputStream(out);
+			if (tmpFile != null) {
+				tmpFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * @return number of classes found in the cache
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of classes that had to be instrumented
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+
+	public void logStatistics() {
+		logger.info(String.format(
+				"Instrumentation cache %s: %d hits, %d misses", directory
+						.getAbsolutePath(), getHits(), getMisses()));
+	}
+
+	/**
+	 * Cached result of the instrumentation of a single class.
+	 */
+	static class Entry {
+		private final ClassData classData;
+		private final String className;
+		private final byte[] content;
+
+		Entry(ClassData classData, String className, byte[] content) {
+			this.classData = classData;
+			this.className = className;
+			this.content = content;
+		}
+
+		/**
+		 * @return touch-points of the class, without any hits
+		 */
+		ClassData getClassData() {
+			return classData;
+		}
+
+		/**
+		 * @return the instrumented class, or null if the class should not be instrumented
+		 */
+		CoberturaInstrumenter.InstrumentationResult getResult() {
+			if (content == null) {
+				return null;
+			}
+			return new CoberturaInstrumenter.InstrumentationResult(className,
+					content);
+		}
+	}
+}
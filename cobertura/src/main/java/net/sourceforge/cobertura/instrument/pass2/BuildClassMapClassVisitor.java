@@ -129,6 +129,9 @@ public class BuildClassMapClassVisitor
 		if (ignoredMethods.contains(name + desc)) {
 			return mv;
 		}
+		if (classMap.isBasicBlockCounters()) {
+			mv = new DetectBasicBlocksMethodVisitor(mv, classMap);
+		}
 		FindTouchPointsMethodAdapter instrumenter = new FindTouchPointsMethodAdapter(
 				new HistoryMethodAdapter(mv, 4), classMap.getClassName(), name,
 				desc, eventIdGenerator, duplicatedLinesMap, lineIdGenerator);
@@ -0,0 +1,122 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument.pass2;
+
+import net.sourceforge.cobertura.instrument.tp.ClassMap;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * Finds the bounds of basic blocks in the analyzed method and reports them into {@link #classMap}
+ * (see {@link ClassMap#setBasicBlockCounters(boolean)}).
+ * <p/>
+ * <p>A block starts at every label that is a target of a jump, switch or exception handler, and ends after every
+ * jump, switch, return, throw and method call (a method can throw an exception, so the next line doesn't have to be
+ * executed).</p>
+ */
+public class DetectBasicBlocksMethodVisitor extends MethodVisitor {
+	private final ClassMap classMap;
+
+	public DetectBasicBlocksMethodVisitor(MethodVisitor mv, ClassMap classMap) {
+		super(Opcodes.ASM4, mv);
+		this.classMap = classMap;
+	}
+
+	@Override
+	public void visitCode() {
+		// blocks never continue from the previous method
+		classMap.registerBlockEnd();
+		super.visitCode();
+	}
+
+	@Override
+	public void visitTryCatchBlock(Label start, Label end, Label handler,
+			String type) {
+		classMap.registerBlockStart(start);
+		classMap.registerBlockStart(end);
+		classMap.registerBlockStart(handler);
+		super.visitTryCatchBlock(start, end, handler, type);
+	}
+
+	@Override
+	public void visitJumpInsn(int opcode, Label label) {
+		super.visitJumpInsn(opcode, label);
+		classMap.registerBlockStart(label);
+		classMap.registerBlockEnd();
+	}
+
+	@Override
+	public void visitTableSwitchInsn(int min, int max, Label dflt,
+			Label[] labels) {
+		super.visitTableSwitchInsn(min, max, dflt, labels);
+		registerSwitch(dflt, labels);
+	}
+
+	@Override
+	public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+		super.visitLookupSwitchInsn(dflt, keys, labels);
+		registerSwitch(dflt, labels);
+	}
+
+	private void registerSwitch(Label dflt, Label[] labels) {
+		classMap.registerBlockStart(dflt);
+		for (Label label : labels) {
+			classMap.registerBlockStart(label);
+		}
+		classMap.registerBlockEnd();
+	}
+
+	@Override
+	public void visitInsn(int opcode) {
+		super.visitInsn(opcode);
+		if ((opcode >= Opcodes.IRETURN && opcode <= Opcodes.RETURN)
+				|| opcode == Opcodes.ATHROW) {
+			classMap.registerBlockEnd();
+		}
+	}
+
+	@Override
+	public void visitVarInsn(int opcode, int var) {
+		super.visitVarInsn(opcode, var);
+		if (opcode == Opcodes.RET) {
+			classMap.registerBlockEnd();
+		}
+	}
+
+	@Override
+	public void visitMethodInsn(int opcode, String owner, String name,
+			String desc) {
+		super.visitMethodInsn(opcode, owner, name, desc);
+		classMap.registerBlockEnd();
+	}
+
+	@Override
+	public void visitInvokeDynamicInsn(String name, String desc, Handle bsm,
+			Object... bsmArgs) {
+		super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+		classMap.registerBlockEnd();
+	}
+}
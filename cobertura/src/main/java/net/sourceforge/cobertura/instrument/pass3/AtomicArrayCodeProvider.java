@@ -45,39 +45,24 @@ public class AtomicArrayCodeProvider extends AbstractCodeProvider
 	static final String COBERTURA_COUNTERS_FIELD_TYPE = Type.getType(
 			AtomicIntegerArray.class).toString();
 
-	public void generateCountersField(ClassVisitor cv) {
-		FieldVisitor fv = cv.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_PUBLIC
-				| Opcodes.ACC_FINAL | Opcodes.ACC_TRANSIENT,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE,
-				null, null);
-		fv.visitEnd();
+	protected String getCountersFieldType() {
+		return COBERTURA_COUNTERS_FIELD_TYPE;
 	}
 
-	public void generateCINITmethod(MethodVisitor mv, String className,
-			int counters_cnt) {
-		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
-		Label l1 = new Label();
-		mv.visitJumpInsn(Opcodes.IFNONNULL, l1);
-
+	protected void generateNewCounters(MethodVisitor mv, int counters_cnt) {
 		mv.visitTypeInsn(Opcodes.NEW, Type
 				.getInternalName(AtomicIntegerArray.class));
 		mv.visitInsn(Opcodes.DUP);
 		mv.visitLdcInsn(counters_cnt);
 		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, Type
 				.getInternalName(AtomicIntegerArray.class), "<init>", "(I)V");
-		mv.visitFieldInsn(Opcodes.PUTSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
-		generateRegisterClass(mv, className);
-		mv.visitLabel(l1);
 	}
 
 	public void generateCodeThatIncrementsCoberturaCounter(
 			MethodVisitor nextMethodVisitor, Integer counterId, String className) {
 		/*cobertura_counters.incrementAndGet(i);*/
 		/*cobertura_counters.*/
-		nextMethodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		generateLoadCounters(nextMethodVisitor, className);
 		/*index:*/
 		nextMethodVisitor.visitLdcInsn((int) counterId);
 		nextMethodVisitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type
@@ -91,8 +76,7 @@ public class AtomicArrayCodeProvider extends AbstractCodeProvider
 			String className) {
 		/*cobertura_counters.incrementAndGet(value('lastJumpIdVariableIndex'));*/
 		/*cobertura_counters.*/
-		nextMethodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		generateLoadCounters(nextMethodVisitor, className);
 		/*index:*/
 		nextMethodVisitor.visitVarInsn(Opcodes.ILOAD, lastJumpIdVariableIndex);
 		nextMethodVisitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL, Type
@@ -0,0 +1,109 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+package net.sourceforge.cobertura.instrument.pass3;
+
+import net.sourceforge.cobertura.coveragedata.TouchCollector;
+import org.objectweb.asm.*;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>The {@link CodeProvider} uses {@link AtomicLongArray} to store counters.</p>
+ * <p/>
+ * It is the same as {@link AtomicArrayCodeProvider}, but the counters cannot overflow in long running processes.
+ */
+public class AtomicLongArrayCodeProvider extends AbstractCodeProvider
+		implements
+			CodeProvider {
+	/**
+	 * Type of the generated field, that is used to store counters
+	 */
+	static final String COBERTURA_COUNTERS_FIELD_TYPE = Type.getType(
+			AtomicLongArray.class).toString();
+
+	static final String ATOMIC_LONG_ARRAY_INTERNALNAME = Type
+			.getInternalName(AtomicLongArray.class);
+
+	protected String getCountersFieldType() {
+		return COBERTURA_COUNTERS_FIELD_TYPE;
+	}
+
+	protected void generateNewCounters(MethodVisitor mv, int counters_cnt) {
+		mv.visitTypeInsn(Opcodes.NEW, ATOMIC_LONG_ARRAY_INTERNALNAME);
+		mv.visitInsn(Opcodes.DUP);
+		mv.visitLdcInsn(counters_cnt);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL,
+				ATOMIC_LONG_ARRAY_INTERNALNAME, "<init>", "(I)V");
+	}
+
+	public void generateCodeThatIncrementsCoberturaCounter(
+			MethodVisitor nextMethodVisitor, Integer counterId, String className) {
+		/*cobertura_counters.incrementAndGet(i);*/
+		/*cobertura_counters.*/
+		generateLoadCounters(nextMethodVisitor, className);
+		/*index:*/
+		nextMethodVisitor.visitLdcInsn((int) counterId);
+		nextMethodVisitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL,
+				ATOMIC_LONG_ARRAY_INTERNALNAME, "incrementAndGet", "(I)J");
+		nextMethodVisitor.visitInsn(Opcodes.POP2);
+	}
+
+	public void generateCodeThatIncrementsCoberturaCounterFromInternalVariable(
+			MethodVisitor nextMethodVisitor, int lastJumpIdVariableIndex,
+			String className) {
+		/*cobertura_counters.incrementAndGet(value('lastJumpIdVariableIndex'));*/
+		/*cobertura_counters.*/
+		generateLoadCounters(nextMethodVisitor, className);
+		/*index:*/
+		nextMethodVisitor.visitVarInsn(Opcodes.ILOAD, lastJumpIdVariableIndex);
+		nextMethodVisitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL,
+				ATOMIC_LONG_ARRAY_INTERNALNAME, "incrementAndGet", "(I)J");
+		nextMethodVisitor.visitInsn(Opcodes.POP2);
+	}
+
+	/**
+	 * <pre>
+	 * long[] __cobertura_get_and_reset_counters() {
+	 * return TouchCollector.getAndResetCounters(counters);
+	 * }
+	 * </pre>
+	 */
+	public void generateCoberturaGetAndResetCountersMethod(ClassVisitor cv,
+			String className) {
+		MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC,
+				COBERTURA_GET_AND_RESET_COUNTERS_METHOD_NAME, "()[J", null,
+				null);
+		mv.visitCode();
+		/*cobertura_counters.*/
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type
+				.getInternalName(TouchCollector.class), "getAndResetCounters",
+				"(" + COBERTURA_COUNTERS_FIELD_TYPE + ")[J");
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(0, 0);//will be recalculated by writer
+		mv.visitEnd();
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument.pass3;
+
+import net.sourceforge.cobertura.coveragedata.TouchCollector;
+import org.objectweb.asm.*;
+
+/**
+ * <p>The {@link CodeProvider} uses boolean[] to store probes.</p>
+ * <p/>
+ * <p>Instead of counting hits, every touch-point just stores 'true' into its probe
+ * (__cobertura_counters[counter_id] = true). There is no read-modify-write, so
+ * the code is cheaper then {@link FastArrayCodeProvider} in tight loops and there is nothing to
+ * lose in case of race condition.</p>
+ * <p/>
+ * <p>The price is that only the fact of being hit is recorded: every line and branch
+ * is reported as hit once or not hit at all. Measured coverage is the same as with
+ * other providers.</p>
+ */
+public class BooleanArrayCodeProvider extends AbstractCodeProvider
+		implements
+			CodeProvider {
+
+	/**
+	 * Type of the generated field, that is used to store probes
+	 */
+	static final String COBERTURA_COUNTERS_FIELD_TYPE = "[Z";
+
+	public void generateCodeThatIncrementsCoberturaCounterFromInternalVariable(
+			MethodVisitor nextMethodVisitor, int lastJumpIdVariableIndex,
+			String className) {
+		/*cobertura_counters[value('lastJumpIdVariableIndex')]=true;*/
+		/*cobertura_counters.*/
+		generateLoadCounters(nextMethodVisitor, className);
+		/*index:*/
+		nextMethodVisitor.visitVarInsn(Opcodes.ILOAD, lastJumpIdVariableIndex);
+		nextMethodVisitor.visitInsn(Opcodes.ICONST_1);
+		nextMethodVisitor.visitInsn(Opcodes.BASTORE);
+	}
+
+	public void generateCodeThatIncrementsCoberturaCounter(
+			MethodVisitor nextMethodVisitor, Integer counterId, String className) {
+		/*cobertura_counters[counterId]=true;*/
+		/*cobertura_counters.*/
+		generateLoadCounters(nextMethodVisitor, className);
+		/*index:*/
+		nextMethodVisitor.visitLdcInsn((int) counterId);
+		nextMethodVisitor.visitInsn(Opcodes.ICONST_1);
+		nextMethodVisitor.visitInsn(Opcodes.BASTORE);
+	}
+
+	protected String getCountersFieldType() {
+		return COBERTURA_COUNTERS_FIELD_TYPE;
+	}
+
+	protected void generateNewCounters(MethodVisitor mv, int counters_cnt) {
+		mv.visitLdcInsn(counters_cnt);
+		mv.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_BOOLEAN);
+	}
+
+	/**
+	 * <pre>
+	 * boolean[] __cobertura_get_and_reset_counters() {
+	 * return TouchCollector.getAndResetProbes(counters);
+	 * }
+	 * </pre>
+	 * The probes are reset in place, because the array is also registered in {@link TouchCollector}.
+	 * The returned probes are translated into hit counts (0 or 1) by {@link TouchCollector}.
+	 */
+	public void generateCoberturaGetAndResetCountersMethod(ClassVisitor cv,
+			String className) {
+		MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC,
+				COBERTURA_GET_AND_RESET_COUNTERS_METHOD_NAME, "()[Z", null,
+				null);
+		mv.visitCode();
+		/*cobertura_counters.*/
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type
+				.getInternalName(TouchCollector.class), "getAndResetProbes",
+				"([Z)[Z");
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(0, 0);//will be recalculated by writer
+		mv.visitEnd();
+	}
+
+}
@@ -55,6 +55,11 @@ public interface CodeProvider {
 	 */
 	public static final String COBERTURA_INIT_METHOD_NAME = "__cobertura_init";
 
+	/**
+	 * Name of method that allocates the counters on the first touch, when the counters are allocated lazily.
+	 */
+	public static final String COBERTURA_LAZY_INIT_METHOD_NAME = "__cobertura_lazy_init";
+
 	/**
 	 * Name of a method that have to be injected into instrumented class that is responsible for reading
 	 * value of given counter.
@@ -63,6 +68,14 @@ public interface CodeProvider {
 	 */
 	public static final String COBERTURA_GET_AND_RESET_COUNTERS_METHOD_NAME = "__cobertura_get_and_reset_counters";
 
+	/**
+	 * Informs the provider about class file version of the instrumented class. Must be called before
+	 * any code is generated.
+	 *
+	 * @param classVersion - version of the class, as given to {@link ClassVisitor#visit(int, int, String, String, String, String[])}
+	 */
+	public void setClassVersion(int classVersion);
+
 	/**
 	 * Generates fields injected into  instrumented class  by cobertura.
 	 *
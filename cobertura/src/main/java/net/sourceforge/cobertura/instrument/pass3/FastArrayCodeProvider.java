@@ -25,6 +25,7 @@
 
 package net.sourceforge.cobertura.instrument.pass3;
 
+import net.sourceforge.cobertura.coveragedata.TouchCollector;
 import org.objectweb.asm.*;
 
 /**
@@ -67,8 +68,7 @@ public class FastArrayCodeProvider extends AbstractCodeProvider
 			String className) {
 		/*cobertura_counters[value('lastJumpIdVariableIndex')]++;*/
 		/*cobertura_counters.*/
-		nextMethodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		generateLoadCounters(nextMethodVisitor, className);
 		/*index:*/
 		nextMethodVisitor.visitVarInsn(Opcodes.ILOAD, lastJumpIdVariableIndex);
 		nextMethodVisitor.visitInsn(Opcodes.DUP2);
@@ -82,8 +82,7 @@ public class FastArrayCodeProvider extends AbstractCodeProvider
 			MethodVisitor nextMethodVisitor, Integer counterId, String className) {
 		/*cobertura_counters[value('lastJumpIdVariableIndex')]++;*/
 		/*cobertura_counters.*/
-		nextMethodVisitor.visitFieldInsn(Opcodes.GETSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		generateLoadCounters(nextMethodVisitor, className);
 		/*index:*/
 		nextMethodVisitor.visitLdcInsn((int) counterId);
 		nextMethodVisitor.visitInsn(Opcodes.DUP2);
@@ -93,13 +92,8 @@ public class FastArrayCodeProvider extends AbstractCodeProvider
 		nextMethodVisitor.visitInsn(Opcodes.IASTORE);
 	}
 
-	public void generateCountersField(ClassVisitor cv) {
-		/*final tooks 270ms, no-modifier 310ms, volatile 500ms*/
-		FieldVisitor fv = cv.visitField(Opcodes.ACC_STATIC | Opcodes.ACC_PUBLIC
-				| Opcodes.ACC_FINAL | Opcodes.ACC_TRANSIENT,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE,
-				null, null);
-		fv.visitEnd();
+	protected String getCountersFieldType() {
+		return COBERTURA_COUNTERS_FIELD_TYPE;
 	}
 
 	//	static int x[];
@@ -110,20 +104,19 @@ public class FastArrayCodeProvider extends AbstractCodeProvider
 	//		}
 	//	}
 
-	public void generateCINITmethod(MethodVisitor mv, String className,
-			int counters_cnt) {
-		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
-		Label l1 = new Label();
-		mv.visitJumpInsn(Opcodes.IFNONNULL, l1);
+	protected void generateNewCounters(MethodVisitor mv, int counters_cnt) {
 		mv.visitLdcInsn(counters_cnt);
 		mv.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_INT);
-		mv.visitFieldInsn(Opcodes.PUTSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
-		generateRegisterClass(mv, className);
-		mv.visitLabel(l1);
 	}
 
+	/**
+	 * <pre>
+	 * int[] __cobertura_get_and_reset_counters() {
+	 * return TouchCollector.getAndResetCounters(counters);
+	 * }
+	 * </pre>
+	 * The counters are reset in place, because the array is also registered in {@link TouchCollector}.
+	 */
 	public void generateCoberturaGetAndResetCountersMethod(ClassVisitor cv,
 			String className) {
 		MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC
@@ -134,16 +127,9 @@ public class FastArrayCodeProvider extends AbstractCodeProvider
 		/*cobertura_counters.*/
 		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
 				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
-		mv.visitVarInsn(Opcodes.ASTORE, 0);
-		/*cobertura_counters.*/
-		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
-		mv.visitInsn(Opcodes.ARRAYLENGTH);
-
-		mv.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_INT);
-		mv.visitFieldInsn(Opcodes.PUTSTATIC, className,
-				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
-		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type
+				.getInternalName(TouchCollector.class), "getAndResetCounters",
+				"([I)[I");
 		mv.visitInsn(Opcodes.ARETURN);
 		mv.visitMaxs(0, 0);//will be recalculated by writer
 		mv.visitEnd();
@@ -66,7 +66,8 @@ public class InjectCodeClassInstrumenter
 	 * {@link CodeProvider} used to generate pieces of asm code that is injected into instrumented class.
 	 * <p/>
 	 * We are strictly recommending here using {@link FastArrayCodeProvider} instead of {@link AtomicArrayCodeProvider} because
-	 * of performance.
+	 * of performance. If precise hit counts are needed in a multithreaded environment, {@link StripedArrayCodeProvider} scales
+	 * better then {@link AtomicArrayCodeProvider}.
 	 */
 	private final CodeProvider codeProvider;
 
@@ -79,24 +80,29 @@ public class InjectCodeClassInstrumenter
 
 	private final Set<String> ignoredMethods;
 
+	/**
+	 * If true, the 'true' branches of jumps are counted by {@link SplitJumpEdgesMethodVisitor}
+	 */
+	private boolean splitJumpEdges;
+
 	/**
 	 * @param cv                 - a listener for code-instrumentation events
 	 * @param ignoreRegexes       - list of patters of method calls that should be ignored from line-coverage-measurement
+	 * @param codeProvider       - provider of code snippets that keep the counters (see {@link FastArrayCodeProvider},
+	 *                           {@link AtomicArrayCodeProvider}, {@link StripedArrayCodeProvider})
 	 * @param classMap           - map of all interesting places in the class. You should acquire it by {@link BuildClassMapClassVisitor} and remember to
 	 *                           prepare it using {@link ClassMap#assignCounterIds()} before using it with {@link InjectCodeClassInstrumenter}
 	 * @param duplicatedLinesMap - map of found duplicates in the class. You should use {@link DetectDuplicatedCodeClassVisitor} to find the duplicated lines.
 	 */
 	public InjectCodeClassInstrumenter(ClassVisitor cv,
-			Collection<Pattern> ignoreRegexes, boolean threadsafeRigorous,
+			Collection<Pattern> ignoreRegexes, CodeProvider codeProvider,
 			ClassMap classMap,
 			Map<Integer, Map<Integer, Integer>> duplicatedLinesMap,
 			Set<String> ignoredMethods) {
 		super(cv, ignoreRegexes, duplicatedLinesMap);
 		this.classMap = classMap;
 		this.ignoredMethods = ignoredMethods;
-		codeProvider = threadsafeRigorous
-				? new AtomicArrayCodeProvider()
-				: new FastArrayCodeProvider();
+		this.codeProvider = codeProvider;
 		touchPointListener = new InjectCodeTouchPointListener(classMap,
 				codeProvider);
 	}
@@ -109,6 +115,7 @@ public class InjectCodeClassInstrumenter
 			String supertype, String[] interfaces) {
 
 		super.visit(version, access, name, signature, supertype, interfaces);
+		codeProvider.setClassVersion(version);
 		codeProvider.generateCountersField(cv);
 	}
 
@@ -134,6 +141,13 @@ public class InjectCodeClassInstrumenter
 				wasStaticInitMethodVisited = true;
 			}
 		}
+		SplitJumpEdgesMethodVisitor jumpEdgesSplitter = null;
+		if (splitJumpEdges) {
+			jumpEdgesSplitter = new SplitJumpEdgesMethodVisitor(mv,
+					codeProvider, classMap.getClassName());
+			mv = jumpEdgesSplitter;
+		}
+		touchPointListener.setJumpEdgesSplitter(jumpEdgesSplitter);
 		FindTouchPointsMethodAdapter instrumenter = new FindTouchPointsMethodAdapter(
 				mv, classMap.getClassName(), name, desc, eventIdGenerator,
 				duplicatedLinesMap, lineIdGenerator);
@@ -147,6 +161,10 @@ public class InjectCodeClassInstrumenter
 		//return new ShiftVariableMethodAdapter(instrumenter, access, desc, 1);
 	}
 
+	public void setSplitJumpEdges(boolean splitJumpEdges) {
+		this.splitJumpEdges = splitJumpEdges;
+	}
+
 	/**
 	 * Method instrumenter that injects {@link CodeProvider#generateCINITmethod(MethodVisitor, String, int)} code, and
 	 * then forwards the whole previous content of the method.
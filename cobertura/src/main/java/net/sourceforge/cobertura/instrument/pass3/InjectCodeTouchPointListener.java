@@ -56,6 +56,12 @@ public class InjectCodeTouchPointListener implements TouchPointListener {
 
 	private int lastJumpIdVariableIndex;
 
+	/**
+	 * Splitter of the jumps of the currently instrumented method, or null if the 'true' branches of jumps are counted
+	 * by the 'internal variable'.
+	 */
+	private SplitJumpEdgesMethodVisitor jumpEdgesSplitter;
+
 	public InjectCodeTouchPointListener(ClassMap classMap,
 			CodeProvider codeProvider) {
 		this.classMap = classMap;
@@ -63,33 +69,44 @@ public class InjectCodeTouchPointListener implements TouchPointListener {
 	}
 
 	/**
-	 * Before jump we will store into 'internal variable' the counterId of a 'true' branch of the JUMP
+	 * Before jump we will store into 'internal variable' the counterId of a 'true' branch of the JUMP (or let the
+	 * {@link #jumpEdgesSplitter} increment the counter when the jump is taken)
 	 */
 	public void beforeJump(int eventId, Label label, int currentLine,
 			MethodVisitor nextMethodVisitor) {
 		Integer jumpTrueCounterId = classMap.getCounterIdForJumpTrue(eventId);
 		if (jumpTrueCounterId != null) {
-			codeProvider.generateCodeThatSetsJumpCounterIdVariable(
-					nextMethodVisitor, jumpTrueCounterId,
-					lastJumpIdVariableIndex);
+			if (jumpEdgesSplitter != null) {
+				jumpEdgesSplitter.splitNextJump(jumpTrueCounterId);
+			} else {
+				codeProvider.generateCodeThatSetsJumpCounterIdVariable(
+						nextMethodVisitor, jumpTrueCounterId,
+						lastJumpIdVariableIndex);
+			}
 		}
 	}
 
 	/**
-	 * After jump we will increment counterId for the 'false' branch of the JUMP.
+	 * After jump we will increment counterId for the 'false' branch of the JUMP (unless the jump has no such a counter,
+	 * see {@link ClassMap#setDerivedJumpCounters(boolean)}).
 	 * Then we set internal variable to ZERO to avoid fake interpretation (another one incrementation)
 	 */
 	public void afterJump(int eventId, Label label, int currentLine,
 			MethodVisitor nextMethodVisitor) {
 		logger.debug("After jump:" + currentLine + "(" + eventId + ") to :"
 				+ label);
-		Integer jumpFalseCounterId = classMap.getCounterIdForJumpFalse(eventId);
-		if (jumpFalseCounterId != null) {
-			codeProvider.generateCodeThatIncrementsCoberturaCounter(
-					nextMethodVisitor, jumpFalseCounterId, classMap
-							.getClassName());
-			codeProvider.generateCodeThatZeroJumpCounterIdVariable(
-					nextMethodVisitor, lastJumpIdVariableIndex);
+		if (classMap.getCounterIdForJumpTrue(eventId) != null) {
+			Integer jumpFalseCounterId = classMap
+					.getCounterIdForJumpFalse(eventId);
+			if (jumpFalseCounterId != null) {
+				codeProvider.generateCodeThatIncrementsCoberturaCounter(
+						nextMethodVisitor, jumpFalseCounterId, classMap
+								.getClassName());
+			}
+			if (jumpEdgesSplitter == null) {
+				codeProvider.generateCodeThatZeroJumpCounterIdVariable(
+						nextMethodVisitor, lastJumpIdVariableIndex);
+			}
 		}
 	}
 
@@ -108,7 +125,7 @@ public class InjectCodeTouchPointListener implements TouchPointListener {
 
 	/**
 	 * <p>If the label is JUMP destination, we will increment the counter stored inside the 'internal variable'. This way we are
-	 * incrementing the 'true' branch of the condition. </p>
+	 * incrementing the 'true' branch of the condition (unless the jumps are split, then it has been already incremented). </p>
 	 * <p/>
 	 * <p>If the label is SWITCH destination, we check all switch instructions that have targets in the label we generate
 	 * code that checks if the 'internal variable' is equal to id of considered switch and if so increments counterId connected to the switch.
@@ -117,7 +134,9 @@ public class InjectCodeTouchPointListener implements TouchPointListener {
 			MethodVisitor mv) {
 		logger.debug("Looking for jumps going to event(" + eventId + "):"
 				+ label + " ");
-		if (classMap.isJumpDestinationLabel(eventId)) {
+		boolean jumpDestination = jumpEdgesSplitter == null
+				&& classMap.isJumpDestinationLabel(eventId);
+		if (jumpDestination) {
 			codeProvider
 					.generateCodeThatIncrementsCoberturaCounterFromInternalVariable(
 							mv, lastJumpIdVariableIndex, classMap
@@ -138,7 +157,7 @@ public class InjectCodeTouchPointListener implements TouchPointListener {
 			}
 		}
 
-		if (classMap.isJumpDestinationLabel(eventId)) {
+		if (jumpDestination) {
 			codeProvider.generateCodeThatZeroJumpCounterIdVariable(mv,
 					lastJumpIdVariableIndex);
 		}
@@ -183,4 +202,13 @@ public class InjectCodeTouchPointListener implements TouchPointListener {
 		this.lastJumpIdVariableIndex = lastJumpIdVariableIndex;
 	}
 
+	/**
+	 * Splitter of the jumps of the method being instrumented (it has to be the sink for instrumented code),
+	 * or null if jumps should not be split.
+	 */
+	public void setJumpEdgesSplitter(
+			SplitJumpEdgesMethodVisitor jumpEdgesSplitter) {
+		this.jumpEdgesSplitter = jumpEdgesSplitter;
+	}
+
 }
@@ -0,0 +1,111 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+package net.sourceforge.cobertura.instrument.pass3;
+
+import net.sourceforge.cobertura.coveragedata.TouchCollector;
+import org.objectweb.asm.*;
+
+/**
+ * <p>The {@link CodeProvider} uses long[] to store counters.</p>
+ * <p/>
+ * <p>It is the same as {@link FastArrayCodeProvider} (including the possibility of losing some increments
+ * because of race conditions), but the counters cannot overflow. An int counter of a hot line can overflow
+ * between two harvests in a long running process.</p>
+ */
+public class LongArrayCodeProvider extends AbstractCodeProvider
+		implements
+			CodeProvider {
+
+	/**
+	 * Type of the generated field, that is used to store counters
+	 */
+	static final String COBERTURA_COUNTERS_FIELD_TYPE = "[J";
+
+	public void generateCodeThatIncrementsCoberturaCounterFromInternalVariable(
+			MethodVisitor nextMethodVisitor, int lastJumpIdVariableIndex,
+			String className) {
+		/*cobertura_counters[value('lastJumpIdVariableIndex')]++;*/
+		/*cobertura_counters.*/
+		generateLoadCounters(nextMethodVisitor, className);
+		/*index:*/
+		nextMethodVisitor.visitVarInsn(Opcodes.ILOAD, lastJumpIdVariableIndex);
+		generateIncrement(nextMethodVisitor);
+	}
+
+	public void generateCodeThatIncrementsCoberturaCounter(
+			MethodVisitor nextMethodVisitor, Integer counterId, String className) {
+		/*cobertura_counters[counterId]++;*/
+		/*cobertura_counters.*/
+		generateLoadCounters(nextMethodVisitor, className);
+		/*index:*/
+		nextMethodVisitor.visitLdcInsn((int) counterId);
+		generateIncrement(nextMethodVisitor);
+	}
+
+	/**
+	 * Increments the counter pointed by the array and the index on the stack.
+	 */
+	private void generateIncrement(MethodVisitor nextMethodVisitor) {
+		nextMethodVisitor.visitInsn(Opcodes.DUP2);
+		nextMethodVisitor.visitInsn(Opcodes.LALOAD);
+		nextMethodVisitor.visitInsn(Opcodes.LCONST_1);
+		nextMethodVisitor.visitInsn(Opcodes.LADD);
+		nextMethodVisitor.visitInsn(Opcodes.LASTORE);
+	}
+
+	protected String getCountersFieldType() {
+		return COBERTURA_COUNTERS_FIELD_TYPE;
+	}
+
+	protected void generateNewCounters(MethodVisitor mv, int counters_cnt) {
+		mv.visitLdcInsn(counters_cnt);
+		mv.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_LONG);
+	}
+
+	/**
+	 * <pre>
+	 * long[] __cobertura_get_and_reset_counters() {
+	 * return TouchCollector.getAndResetCounters(counters);
+	 * }
+	 * </pre>
+	 * The counters are reset in place, because the array is also registered in {@link TouchCollector}.
+	 */
+	public void generateCoberturaGetAndResetCountersMethod(ClassVisitor cv,
+			String className) {
+		MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC,
+				COBERTURA_GET_AND_RESET_COUNTERS_METHOD_NAME, "()[J", null,
+				null);
+		mv.visitCode();
+		/*cobertura_counters.*/
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, Type
+				.getInternalName(TouchCollector.class), "getAndResetCounters",
+				"([J)[J");
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(0, 0);//will be recalculated by writer
+		mv.visitEnd();
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+package net.sourceforge.cobertura.instrument.pass3;
+
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+/**
+ * <p>Splits the 'true' edge of conditional jumps, so the counter of the branch is incremented on the edge
+ * itself. The jump marked by {@link #splitNextJump(int)} is replaced by:</p>
+ * <pre>
+ * IF_not_condition notTaken
+ * __cobertura_counters[counterId]++
+ * GOTO destination
+ * notTaken:
+ * </pre>
+ * <p>Without splitting, the counterId is stored into the 'internal variable' before every jump and the counter
+ * pointed by the variable is incremented (and the variable cleaned) at every destination of a jump, also when
+ * the destination is reached without jumping.</p>
+ * <p/>
+ * <p>The trampoline incrementing the counter is placed just after the jump, so the GOTO goes in the same direction
+ * as the original jump and no new backward branch (that is not allowed with an uninitialized object on the stack
+ * by old verifiers) is created.</p>
+ */
+public class SplitJumpEdgesMethodVisitor extends MethodVisitor {
+	private final CodeProvider codeProvider;
+
+	private final String className;
+
+	/**
+	 * CounterId of the 'true' branch of the next visited jump, or null if the jump should be left as it is.
+	 */
+	private Integer nextJumpCounterId;
+
+	public SplitJumpEdgesMethodVisitor(MethodVisitor mv,
+			CodeProvider codeProvider, String className) {
+		super(Opcodes.ASM4, mv);
+		this.codeProvider = codeProvider;
+		this.className = className;
+	}
+
+	/**
+	 * The next conditional jump will increment the counter when the jump is taken.
+	 */
+	public void splitNextJump(int counterId) {
+		nextJumpCounterId = counterId;
+	}
+
+	@Override
+	public void visitJumpInsn(int opcode, Label label) {
+		if (nextJumpCounterId == null) {
+			super.visitJumpInsn(opcode, label);
+			return;
+		}
+		int counterId = nextJumpCounterId;
+		nextJumpCounterId = null;
+
+		Label notTaken = new Label();
+		mv.visitJumpInsn(negate(opcode), notTaken);
+		codeProvider.generateCodeThatIncrementsCoberturaCounter(mv, counterId,
+				className);
+		mv.visitJumpInsn(Opcodes.GOTO, label);
+		mv.visitLabel(notTaken);
+	}
+
+	/**
+	 * @return the conditional jump opcode with the opposite condition
+	 */
+	private static int negate(int opcode) {
+		switch (opcode) {
+			case Opcodes.IFNULL :
+				return Opcodes.IFNONNULL;
+			case Opcodes.IFNONNULL :
+				return Opcodes.IFNULL;
+			default :
+				if (opcode < Opcodes.IFEQ || opcode > Opcodes.IF_ACMPNE) {
+					throw new IllegalArgumentException(
+							"Not a conditional jump: " + opcode);
+				}
+				/* IFEQ/IFNE, IFLT/IFGE, IFGT/IFLE, IF_ICMPEQ/IF_ICMPNE, ... are pairs of subsequent opcodes */
+				return ((opcode - Opcodes.IFEQ) ^ 1) + Opcodes.IFEQ;
+		}
+	}
+}
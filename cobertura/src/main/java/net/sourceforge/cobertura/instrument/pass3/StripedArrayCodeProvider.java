@@ -0,0 +1,108 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument.pass3;
+
+import net.sourceforge.cobertura.coveragedata.StripedCounters;
+import org.objectweb.asm.*;
+
+/**
+ * <p>The {@link CodeProvider} uses {@link StripedCounters} to store counters.</p>
+ * <p/>
+ * <p>Like {@link AtomicArrayCodeProvider} this implementation counts every hit precisely, but
+ * threads are incrementing counters in separate (per-thread) stripes, so it scales much better when
+ * many threads are executing the same code. The stripes are summed up by
+ * {@link #COBERTURA_GET_AND_RESET_COUNTERS_METHOD_NAME}.</p>
+ */
+public class StripedArrayCodeProvider extends AbstractCodeProvider
+		implements
+			CodeProvider {
+	/**
+	 * Type of the generated field, that is used to store counters
+	 */
+	static final String COBERTURA_COUNTERS_FIELD_TYPE = Type.getType(
+			StripedCounters.class).toString();
+
+	static final String STRIPED_COUNTERS_INTERNALNAME = Type
+			.getInternalName(StripedCounters.class);
+
+	protected String getCountersFieldType() {
+		return COBERTURA_COUNTERS_FIELD_TYPE;
+	}
+
+	protected void generateNewCounters(MethodVisitor mv, int counters_cnt) {
+		mv.visitTypeInsn(Opcodes.NEW, STRIPED_COUNTERS_INTERNALNAME);
+		mv.visitInsn(Opcodes.DUP);
+		mv.visitLdcInsn(counters_cnt);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL,
+				STRIPED_COUNTERS_INTERNALNAME, "<init>", "(I)V");
+	}
+
+	public void generateCodeThatIncrementsCoberturaCounter(
+			MethodVisitor nextMethodVisitor, Integer counterId, String className) {
+		/*cobertura_counters.increment(i);*/
+		/*cobertura_counters.*/
+		generateLoadCounters(nextMethodVisitor, className);
+		/*index:*/
+		nextMethodVisitor.visitLdcInsn((int) counterId);
+		nextMethodVisitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL,
+				STRIPED_COUNTERS_INTERNALNAME, "increment", "(I)V");
+	}
+
+	public void generateCodeThatIncrementsCoberturaCounterFromInternalVariable(
+			MethodVisitor nextMethodVisitor, int lastJumpIdVariableIndex,
+			String className) {
+		/*cobertura_counters.increment(value('lastJumpIdVariableIndex'));*/
+		/*cobertura_counters.*/
+		generateLoadCounters(nextMethodVisitor, className);
+		/*index:*/
+		nextMethodVisitor.visitVarInsn(Opcodes.ILOAD, lastJumpIdVariableIndex);
+		nextMethodVisitor.visitMethodInsn(Opcodes.INVOKEVIRTUAL,
+				STRIPED_COUNTERS_INTERNALNAME, "increment", "(I)V");
+	}
+
+	/**
+	 * <pre>
+	 * long[] __cobertura_get_and_reset_counters() {
+	 * return counters.getAndReset();
+	 * }
+	 * </pre>
+	 */
+	public void generateCoberturaGetAndResetCountersMethod(ClassVisitor cv,
+			String className) {
+		MethodVisitor mv = cv.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC,
+				COBERTURA_GET_AND_RESET_COUNTERS_METHOD_NAME, "()[J", null,
+				null);
+
+		mv.visitCode();
+		mv.visitFieldInsn(Opcodes.GETSTATIC, className,
+				COBERTURA_COUNTERS_FIELD_NAME, COBERTURA_COUNTERS_FIELD_TYPE);
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL,
+				STRIPED_COUNTERS_INTERNALNAME, "getAndReset", "()[J");
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(0, 0);//will be recalculated by writer
+		mv.visitEnd();
+	}
+
+}
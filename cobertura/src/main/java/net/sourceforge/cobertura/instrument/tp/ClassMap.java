@@ -91,12 +91,37 @@ public class ClassMap {
 
 	private int maxCounterId = 0;
 
+	/**
+	 * See {@link #setBasicBlockCounters(boolean)}
+	 */
+	private boolean basicBlockCounters;
+
+	/**
+	 * See {@link #setDerivedJumpCounters(boolean)}
+	 */
+	private boolean derivedJumpCounters;
+
+	/**
+	 * Lines, jumps, labels and ends of basic blocks in the order they were found. It is collected only
+	 * in {@link #basicBlockCounters} mode and cleared by {@link #assignCounterIds()}.
+	 */
+	private List<BlockEvent> blockEvents = new ArrayList<BlockEvent>();
+
+	/**
+	 * Labels that are targets of any jump, switch or exception handler (or bounds of a try block), so they start
+	 * a new basic block.
+	 */
+	private final Set<Label> blockStartLabels = new HashSet<Label>();
+
 	public void setSource(String source) {
 		this.source = source;
 	}
 
 	public void registerNewJump(int eventId, int currentLine,
 			Label destinationLabel) {
+		if (basicBlockCounters) {
+			blockEvents.add(new BlockEvent(BlockEvent.JUMP, eventId, null));
+		}
 		if (alreadyRegisteredEvents.add(eventId)) {
 			logger.debug(className + ":" + currentLine + ": Registering JUMP ("
 					+ eventId + ") to " + destinationLabel);
@@ -134,6 +159,9 @@ public class ClassMap {
 	public void registerNewLabel(int eventId, int currentLine, Label label) {
 		logger.debug(className + ":" + currentLine + ": Registering label ("
 				+ eventId + ") " + label);
+		if (basicBlockCounters) {
+			blockEvents.add(new BlockEvent(BlockEvent.LABEL, eventId, label));
+		}
 		if (alreadyRegisteredEvents.add(eventId)) {
 			eventId2label.put(eventId, label);
 			putIntoDuplicatesMaps(label, label);
@@ -156,6 +184,9 @@ public class ClassMap {
 			String methodName, String methodSignature) {
 		logger.debug(className + ":" + currentLine + ": Registering line ("
 				+ eventId + ") " + label);
+		if (basicBlockCounters) {
+			blockEvents.add(new BlockEvent(BlockEvent.LINE, eventId, label));
+		}
 		if (alreadyRegisteredEvents.add(eventId)) {
 			if (!blockedLines.contains(currentLine)) {
 				LineTouchPointDescriptor line = new LineTouchPointDescriptor(
@@ -200,6 +231,26 @@ public class ClassMap {
 		}
 	}
 
+	/**
+	 * Informs the map that the basic block being analyzed ends here (after an instruction that does not
+	 * continue to the next one, or that may throw an exception).
+	 */
+	public void registerBlockEnd() {
+		if (basicBlockCounters) {
+			blockEvents.add(new BlockEvent(BlockEvent.BLOCK_END, 0, null));
+		}
+	}
+
+	/**
+	 * Informs the map that the label is a target of a jump, switch or exception handler (or a bound of
+	 * a try block), so a new basic block starts there.
+	 */
+	public void registerBlockStart(Label label) {
+		if (basicBlockCounters) {
+			blockStartLabels.add(label);
+		}
+	}
+
 	//======================= data retrieval =====================================================	
 
 	public Integer getCounterIdForJumpTrue(int eventId) {
@@ -217,7 +268,8 @@ public class ClassMap {
 		if (eventId2touchPointDescriptor.get(eventId) instanceof JumpTouchPointDescriptor) {
 			JumpTouchPointDescriptor jumpTouchPointDescriptor = (JumpTouchPointDescriptor) eventId2touchPointDescriptor
 					.get(eventId);
-			if (jumpTouchPointDescriptor != null) {
+			if (jumpTouchPointDescriptor != null
+					&& jumpTouchPointDescriptor.getSourceBlock() == null) {
 				return jumpTouchPointDescriptor.getCounterIdForFalse();
 			}
 		}
@@ -259,11 +311,15 @@ public class ClassMap {
 		return null;
 	}
 
+	/**
+	 * @return counter that should be incremented when the line is executed, or null if the line has no counter
+	 *         of its own (it shares the counter of the first line of its basic block)
+	 */
 	public Integer getCounterIdForLineEventId(int eventId) {
 		if (eventId2touchPointDescriptor.get(eventId) instanceof LineTouchPointDescriptor) {
 			LineTouchPointDescriptor point = (LineTouchPointDescriptor) eventId2touchPointDescriptor
 					.get(eventId);
-			if (point != null) {
+			if (point != null && point.getBlockLeader() == null) {
 				return point.getCounterId();
 			}
 		}
@@ -310,8 +366,14 @@ public class ClassMap {
 	 * <p/>
 	 * <p>This class assign hit-counter ids to each touch-point and upgrades maxCounterId to
 	 * reflect the greatest assigned Id.
+	 * <p/>
+	 * <p>In {@link #basicBlockCounters} mode, the lines that share the counter of their basic block don't get any
+	 * counter.</p>
 	 */
 	public void assignCounterIds() {
+		if (basicBlockCounters) {
+			shareBlockCounters();
+		}
 		AtomicInteger idGenerator = new AtomicInteger(0);
 		for (List<TouchPointDescriptor> tpd : line2touchPoints.values()) {
 			for (TouchPointDescriptor t : tpd) {
@@ -321,6 +383,59 @@ public class ClassMap {
 		maxCounterId = idGenerator.get();
 	}
 
+	/**
+	 * Walks through the basic blocks of the class and makes all the lines of a block, but the first one, share the
+	 * counter of the first line. If {@link #derivedJumpCounters} is set, the jump that ends a block does not get the
+	 * FALSE counter either.
+	 * <p/>
+	 * <p>Lines and jumps of duplicated code (finally blocks) are executed in more places, so they always keep
+	 * their own counters.</p>
+	 */
+	private void shareBlockCounters() {
+		Map<Integer, Integer> occurrences = new HashMap<Integer, Integer>();
+		for (BlockEvent event : blockEvents) {
+			if (event.kind == BlockEvent.LINE || event.kind == BlockEvent.JUMP) {
+				Integer count = occurrences.get(event.eventId);
+				occurrences.put(event.eventId, count == null ? 1 : count + 1);
+			}
+		}
+
+		LineTouchPointDescriptor leader = null;
+		for (BlockEvent event : blockEvents) {
+			TouchPointDescriptor tpd = eventId2touchPointDescriptor
+					.get(event.eventId);
+			switch (event.kind) {
+				case BlockEvent.BLOCK_END :
+					leader = null;
+					break;
+				case BlockEvent.LABEL :
+					if (blockStartLabels.contains(event.label)) {
+						leader = null;
+					}
+					break;
+				case BlockEvent.LINE :
+					if (!(tpd instanceof LineTouchPointDescriptor)) {
+						// ignored line
+					} else if (occurrences.get(event.eventId) > 1) {
+						leader = null;
+					} else if (leader == null) {
+						leader = (LineTouchPointDescriptor) tpd;
+					} else {
+						((LineTouchPointDescriptor) tpd).setBlockLeader(leader);
+					}
+					break;
+				case BlockEvent.JUMP :
+					if (derivedJumpCounters && leader != null
+							&& tpd instanceof JumpTouchPointDescriptor
+							&& occurrences.get(event.eventId) == 1) {
+						((JumpTouchPointDescriptor) tpd).setSourceBlock(leader);
+					}
+					break;
+			}
+		}
+		blockEvents = null;
+	}
+
 	public int getMaxCounterId() {
 		return maxCounterId;
 	}
@@ -337,6 +452,32 @@ public class ClassMap {
 		return source;
 	}
 
+	public boolean isBasicBlockCounters() {
+		return basicBlockCounters;
+	}
+
+	/**
+	 * Setting to true causes that only the first line of every basic block gets a counter, the rest of lines of
+	 * the block share it. The basic blocks must be reported to the map ({@link #registerBlockEnd()},
+	 * {@link #registerBlockStart(Label)}) during the analysis.
+	 * <p/>
+	 * <p>Blocks end after every method call, so a line following a call that has thrown an exception is never
+	 * reported as executed. Exceptions thrown by other instructions (like NullPointerException) might
+	 * make the rest of the block look executed.</p>
+	 */
+	public void setBasicBlockCounters(boolean basicBlockCounters) {
+		this.basicBlockCounters = basicBlockCounters;
+	}
+
+	/**
+	 * Setting to true (together with {@link #setBasicBlockCounters(boolean)}) causes that jumps ending a basic block
+	 * have no FALSE counter. Its hits are computed from the counter of the block and the TRUE counter, so the counters
+	 * have to count every hit (it does not work with probes).
+	 */
+	public void setDerivedJumpCounters(boolean derivedJumpCounters) {
+		this.derivedJumpCounters = derivedJumpCounters;
+	}
+
 	public List<TouchPointDescriptor> getTouchPointsInLineOrder() {
 		LinkedList<TouchPointDescriptor> res = new LinkedList<TouchPointDescriptor>();
 		for (List<TouchPointDescriptor> tpd : line2touchPoints.values()) {
@@ -401,4 +542,23 @@ public class ClassMap {
 		return classData;
 	}
 
+	/**
+	 * Event found during the analysis of the class, that is important for finding basic blocks.
+	 */
+	private static class BlockEvent {
+		static final int LINE = 0;
+		static final int JUMP = 1;
+		static final int LABEL = 2;
+		static final int BLOCK_END = 3;
+
+		final int kind;
+		final int eventId;
+		final Label label;
+
+		BlockEvent(int kind, int eventId, Label label) {
+			this.kind = kind;
+			this.eventId = eventId;
+			this.label = label;
+		}
+	}
 }
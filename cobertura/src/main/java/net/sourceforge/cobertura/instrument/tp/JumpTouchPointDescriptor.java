@@ -35,6 +35,9 @@ import java.util.concurrent.atomic.AtomicInteger;
  * <li>TRUE - touched in case when jump condition is meet</li>
  * <li>FALSE - touched when jump condition is not meet</li>
  * </ul></p>
+ * <p/>
+ * <p>If the jump belongs to a basic block with a counter ({@link #sourceBlock}), there is no FALSE counter.
+ * The FALSE branch is taken every time the block is executed and the jump is not.</p>
  *
  * @author piotr.tabor@gmail.com
  */
@@ -42,6 +45,12 @@ public class JumpTouchPointDescriptor extends TouchPointDescriptor {
 	private int counterIdForTrue;
 	private int counterIdForFalse;
 
+	/**
+	 * First line of the basic block that ends with the jump, if the hits of the FALSE branch are derived from
+	 * the counter of the block, otherwise null.
+	 */
+	private LineTouchPointDescriptor sourceBlock;
+
 	public JumpTouchPointDescriptor(int eventId, int currentLine) {
 		super(eventId, currentLine);
 	}
@@ -62,8 +71,20 @@ public class JumpTouchPointDescriptor extends TouchPointDescriptor {
 		this.counterIdForTrue = counterIdForTrue;
 	}
 
+	public LineTouchPointDescriptor getSourceBlock() {
+		return sourceBlock;
+	}
+
+	public void setSourceBlock(LineTouchPointDescriptor sourceBlock) {
+		this.sourceBlock = sourceBlock;
+	}
+
 	@Override
 	public int assignCounters(AtomicInteger idGenerator) {
+		if (sourceBlock != null) {
+			counterIdForTrue = idGenerator.incrementAndGet();
+			return 1;
+		}
 		counterIdForFalse = idGenerator.incrementAndGet();
 		counterIdForTrue = idGenerator.incrementAndGet();
 		return 2;
@@ -52,6 +52,12 @@ public class LineTouchPointDescriptor extends TouchPointDescriptor {
 	 */
 	private String methodSignature;
 
+	/**
+	 * First line of the basic block the line belongs to, if the line shares its counter (see
+	 * {@link ClassMap#setBasicBlockCounters(boolean)}), or null if the line has a counter of its own.
+	 */
+	private LineTouchPointDescriptor blockLeader;
+
 	public LineTouchPointDescriptor(int eventId, int lineNumber,
 			String methodName, String methodSignature) {
 		super(eventId, lineNumber);
@@ -61,12 +67,27 @@ public class LineTouchPointDescriptor extends TouchPointDescriptor {
 
 	@Override
 	public int assignCounters(AtomicInteger idGenerator) {
+		if (blockLeader != null) {
+			return 0;
+		}
 		counterId = idGenerator.incrementAndGet();
 		return 1;
 	}
 
+	/**
+	 * @return counter that is incremented when the line is executed. It is the counter of the {@link #blockLeader}
+	 *         if the line shares it.
+	 */
 	public Integer getCounterId() {
-		return counterId;
+		return blockLeader != null ? blockLeader.getCounterId() : counterId;
+	}
+
+	public LineTouchPointDescriptor getBlockLeader() {
+		return blockLeader;
+	}
+
+	public void setBlockLeader(LineTouchPointDescriptor blockLeader) {
+		this.blockLeader = blockLeader;
 	}
 
 	public String getMethodName() {
@@ -25,6 +25,7 @@
 
 package net.sourceforge.cobertura.merge;
 
+import net.sourceforge.cobertura.dsl.Arguments;
 import net.sourceforge.cobertura.dsl.ArgumentsBuilder;
 import net.sourceforge.cobertura.dsl.Cobertura;
 import net.sourceforge.cobertura.util.CommandLineBuilder;
@@ -43,6 +44,10 @@ public class MergeMain {
 		for (int i = 0; i < args.length; i++) {
 			if (args[i].equals("--datafile")) {
 				builder.setDataFile(args[++i]);
+			} else if (args[i].equals("--streaming")) {
+				builder.streamingMerge(true);
+			} else if (args[i].equals("--threads")) {
+				builder.setThreads(Integer.parseInt(args[++i]));
 			} else if (args[i].equals("--basedir")) {
 				baseDir = args[++i];
 				builder.setBaseDirectory(baseDir);
@@ -56,7 +61,12 @@ public class MergeMain {
 			}
 		}
 
-		new Cobertura(builder.build()).merge().saveProjectData();
+		Arguments arguments = builder.build();
+		if (arguments.isStreamingMerge()) {
+			new Cobertura(arguments).mergeStreaming();
+		} else {
+			new Cobertura(arguments).merge().saveProjectData();
+		}
 	}
 
 	public static void main(String[] args) {
@@ -7,7 +7,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class MergeProjectDataFilesTask {
 	private static final Logger logger = LoggerFactory
@@ -21,6 +29,14 @@ public class MergeProjectDataFilesTask {
 			logger.error("No files were specified for merging.");
 		}
 
+		int threads = Math.min(arguments.getThreads(), filesToMerge.size());
+		if (threads > 1) {
+			ProjectData merged = mergeInParallel(filesToMerge, threads);
+			if (merged != null)
+				projectData.merge(merged);
+			return;
+		}
+
 		// Merge everything
 		for (File newDataFile : filesToMerge) {
 			ProjectData projectDataNew = CoverageDataFileHandler
@@ -30,4 +46,111 @@ public class MergeProjectDataFilesTask {
 				projectData.merge(projectDataNew);
 		}
 	}
+
+	/**
+	 * Merges the files into the data file (including its current content) class by class,
+	 * without loading the compact ones into memory (see {@link StreamingMerge}). The data file is
+	 * written in the compact format.
+	 */
+	public void mergeProjectDataFilesStreaming(Arguments arguments) {
+		Set<File> filesToMerge = arguments.getFilesToMerge();
+
+		if (filesToMerge.isEmpty()) {
+			logger.error("No files were specified for merging.");
+		}
+
+		List<File> inputs = new ArrayList<File>();
+		if (arguments.getDataFile().isFile()) {
+			inputs.add(arguments.getDataFile());
+		}
+		inputs.addAll(filesToMerge);
+
+		try {
+			new StreamingMerge().merge(inputs, arguments.getDataFile());
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to merge data files: "
+					+ e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Loads the files on a pool of threads and merges them pairwise (as a tree),
+	 * so that independent pairs are merged at the same time.
+	 * <p/>
+	 * Every task depends only on tasks submitted before it and the pool takes
+	 * tasks in the order of submission, so waiting for the results inside
+	 * of the pool cannot deadlock.
+	 *
+	 * @return merged data of all the files, or null if no file could be loaded
+	 */
+	private ProjectData mergeInParallel(Set<File> filesToMerge, int threads) {
+		logger.debug("Merging " + filesToMerge.size() + " files using "
+				+ threads + " threads");
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<ProjectData>> level = new ArrayList<Future<ProjectData>>();
+			for (File file : filesToMerge) {
+				level.add(executor.submit(new LoadTask(file)));
+			}
+
+			while (level.size() > 1) {
+				List<Future<ProjectData>> nextLevel = new ArrayList<Future<ProjectData>>();
+				for (int i = 0; i + 1 < level.size(); i += 2) {
+					nextLevel.add(executor.submit(new MergePairTask(level
+							.get(i), level.get(i + 1))));
+				}
+				if (level.size() % 2 == 1) {
+					nextLevel.add(level.get(level.size() - 1));
+				}
+				level = nextLevel;
+			}
+
+			return level.get(0).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Merging was interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static class LoadTask implements Callable<ProjectData> {
+		private final File file;
+
+		LoadTask(File file) {
+			this.file = file;
+		}
+
+		public ProjectData call() {
+			return CoverageDataFileHandler.loadCoverageData(file);
+		}
+	}
+
+	/**
+	 * Merges the second result into the first one (a result is null when its file could not be loaded).
+	 */
+	private static class MergePairTask implements Callable<ProjectData> {
+		private final Future<ProjectData> first;
+		private final Future<ProjectData> second;
+
+		MergePairTask(Future<ProjectData> first, Future<ProjectData> second) {
+			this.first = first;
+			this.second = second;
+		}
+
+		public ProjectData call() throws Exception {
+			ProjectData firstData = first.get();
+			ProjectData secondData = second.get();
+			if (firstData == null) {
+				return secondData;
+			}
+			firstData.merge(secondData);
+			return firstData;
+		}
+	}
 }
@@ -0,0 +1,260 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.merge;
+
+import net.sourceforge.cobertura.coveragedata.ClassData;
+import net.sourceforge.cobertura.coveragedata.CompactCoverageDataReader;
+import net.sourceforge.cobertura.coveragedata.CompactCoverageDataWriter;
+import net.sourceforge.cobertura.coveragedata.CoverageDataFileHandler;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * <p>Merges data files class by class, without loading the compact ones into memory.</p>
+ * <p/>
+ * <p>Classes in a compact data file are stored in the order of their names, so
+ * the files can be read in parallel (like in merge sort): the next class to be written is
+ * the one with the smallest name among the next classes of all the inputs.
+ * Only a single class of every input is in memory at a time and the merged class is
+ * written immediately, so the memory doesn't depend on the number of inputs (and their size).</p>
+ * <p/>
+ * <p>The result is always written in the compact format. Inputs in other formats are
+ * supported, but they have to be loaded into memory: before the merge starts, each of them
+ * is loaded and converted into a temporary compact file, one at a time. So only a single
+ * such input is in memory at a time, and only while it is converted.</p>
+ */
+class StreamingMerge {
+	private static final Logger logger = LoggerFactory
+			.getLogger(StreamingMerge.class);
+
+	private static final int BUFFER_SIZE = 65536;
+
+	private static final Comparator<ClassCursor> BY_NEXT_CLASS_NAME = new Comparator<ClassCursor>() {
+		public int compare(ClassCursor c1, ClassCursor c2) {
+			return c1.getNextClassName().compareTo(c2.getNextClassName());
+		}
+	};
+
+	/**
+	 * @param inputs      - the files to merge
+	 * @param destination - the file to write the merged data to, it can be one of the inputs
+	 */
+	void merge(List<File> inputs, File destination) throws IOException {
+		File directory = destination.getAbsoluteFile().getParentFile();
+		if (!directory.exists()) {
+			directory.mkdirs();
+		}
+		File blocksFile = File.createTempFile("cobertura", ".blocks",
+				directory);
+		File mergedFile = File.createTempFile("cobertura", ".merged",
+				directory);
+
+		List<File> convertedFiles = new ArrayList<File>();
+		List<ClassCursor> cursors = new ArrayList<ClassCursor>();
+		try {
+			List<File> compactInputs = new ArrayList<File>();
+			for (File input : inputs) {
+				if (CoverageDataFileHandler.isCompactDataFile(input)) {
+					compactInputs.add(input);
+				} else {
+					File converted = convert(input, directory);
+					if (converted != null) {
+						convertedFiles.add(converted);
+						compactInputs.add(converted);
+					}
+				}
+			}
+
+			PriorityQueue<ClassCursor> queue = new PriorityQueue<ClassCursor>(
+					Math.max(1, compactInputs.size()), BY_NEXT_CLASS_NAME);
+			for (File input : compactInputs) {
+				ClassCursor cursor = new ClassCursor(input);
+				cursors.add(cursor);
+				if (cursor.hasNext()) {
+					queue.add(cursor);
+				}
+			}
+
+			/* The blocks go to a temporary file, because the header has to precede them. */
+			int classes = 0;
+			OutputStream blocks = new BufferedOutputStream(
+					new FileOutputStream(blocksFile), BUFFER_SIZE);
+			CompactCoverageDataWriter writer = new CompactCoverageDataWriter(
+					blocks);
+			try {
+				while (!queue.isEmpty()) {
+					ClassCursor cursor = queue.poll();
+					String name = cursor.getNextClassName();
+					ClassData merged = next(cursor, queue);
+					while (!queue.isEmpty()
+							&& queue.peek().getNextClassName().equals(name)) {
+						merged.merge(next(queue.poll(), queue));
+					}
+					writer.writeClass(merged);
+					classes++;
+				}
+			} finally {
+				blocks.close();
+			}
+
+			// the destination can be one of the inputs
+			close(cursors);
+
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(
+					mergedFile), BUFFER_SIZE);
+			try {
+				writer.writeHeader(out);
+				copy(blocksFile, out);
+			} finally {
+				out.close();
+			}
+			if (destination.exists() && !destination.delete()) {
+				throw new IOException("Unable to replace "
+						+ destination.getAbsolutePath());
+			}
+			if (!mergedFile.renameTo(destination)) {
+				throw new IOException("Unable to rename "
+						+ mergedFile.getAbsolutePath() + " to "
+						+ destination.getAbsolutePath());
+			}
+			logger.info("Merged " + inputs.size() + " files into "
+					+ destination.getAbsolutePath() + " (" + classes
+					+ " classes)");
+		} finally {
+			close(cursors);
+			for (File converted : convertedFiles) {
+				converted.delete();
+			}
+			blocksFile.delete();
+			mergedFile.delete();
+		}
+	}
+
+	/**
+	 * Reads the next class of the cursor and returns the cursor to the queue (if it has more classes).
+	 */
+	private static ClassData next(ClassCursor cursor,
+			PriorityQueue<ClassCursor> queue) throws IOException {
+		ClassData classData = cursor.next();
+		if (cursor.hasNext()) {
+			queue.add(cursor);
+		}
+		return classData;
+	}
+
+	/**
+	 * Loads the input, that is not in the compact format, and writes it into a temporary compact file.
+	 *
+	 * @return the temporary file, or null if the input cannot be loaded (it is skipped, as by the usual merge)
+	 */
+	private static File convert(File input, File directory) throws IOException {
+		logger.warn("File " + input.getAbsolutePath()
+				+ " is not in the compact format, it will be loaded into memory"
+				+ " and converted before the merge");
+		ProjectData projectData = CoverageDataFileHandler
+				.loadCoverageData(input);
+		if (projectData == null) {
+			logger.error("Unable to load " + input.getAbsolutePath()
+					+ ", it is not merged");
+			return null;
+		}
+		File converted = File.createTempFile("cobertura", ".compact",
+				directory);
+		try {
+			CoverageDataFileHandler.writeCoverageData(projectData, converted,
+					CoverageDataFileHandler.FORMAT_COMPACT);
+		} catch (IOException e) {
+			converted.delete();
+			throw e;
+		}
+		return converted;
+	}
+
+	private static void close(List<ClassCursor> cursors) {
+		for (ClassCursor cursor : cursors) {
+			try {
+				cursor.close();
+			} catch (IOException e) {
+				logger.error("Error closing data file", e);
+			}
+		}
+	}
+
+	private static void copy(File file, OutputStream out) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Classes of a single compact input, in the order of their names.
+	 */
+	private static class ClassCursor {
+		private final InputStream is;
+		private final CompactCoverageDataReader reader;
+
+		ClassCursor(File file) throws IOException {
+			is = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+			try {
+				reader = new CompactCoverageDataReader(is);
+			} catch (IOException e) {
+				is.close();
+				throw e;
+			}
+		}
+
+		boolean hasNext() {
+			return reader.hasNextClass();
+		}
+
+		String getNextClassName() {
+			return reader.getNextClassName();
+		}
+
+		ClassData next() throws IOException {
+			return reader.readNextClass();
+		}
+
+		void close() throws IOException {
+			is.close();
+		}
+	}
+}
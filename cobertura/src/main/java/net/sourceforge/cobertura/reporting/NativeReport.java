@@ -6,6 +6,10 @@ import net.sourceforge.cobertura.util.FileFinder;
 
 import java.io.File;
 
+/**
+ * The report of the coverage data. When the data have been frozen (see {@link ProjectData#freeze()}),
+ * the report formats read them without taking any lock.
+ */
 public class NativeReport implements Report {
 	private NullReport nullReport;
 	private ProjectData projectData;
@@ -86,7 +86,7 @@ public class ReportMain {
 					+ arguments.getDestinationDirectory().getAbsolutePath());
 		}
 
-		new Cobertura(arguments).report().export(
+		new Cobertura(arguments).freezeProjectData().report().export(
 				ReportFormat.getFromString(format));
 	}
 
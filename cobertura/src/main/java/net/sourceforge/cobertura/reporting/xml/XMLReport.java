@@ -241,13 +241,14 @@ public class XMLReport {
 		dumpLines(classData.getLines(methodNameAndSig));
 	}
 
+	/**
+	 * @param lines The lines, sorted by the line number.
+	 */
 	private void dumpLines(Collection lines) {
 		println("<lines>");
 		increaseIndentation();
 
-		SortedSet sortedLines = new TreeSet();
-		sortedLines.addAll(lines);
-		Iterator iter = sortedLines.iterator();
+		Iterator iter = lines.iterator();
 		while (iter.hasNext()) {
 			dumpLine((LineData) iter.next());
 		}
@@ -25,6 +25,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A Utility Class to load the configuration.
@@ -91,6 +92,37 @@ public class ConfigurationUtil {
 				"cobertura.ser");
 	}
 
+	/**
+	 * Format used to save the coverage data: "ser" (default, java serialization) or "compact".
+	 * Both formats are recognized when the data is loaded.
+	 */
+	public String getDatafileFormat() {
+		return getProperty("net.sourceforge.cobertura.datafile.format", "ser");
+	}
+
+	/**
+	 * Interval (in milliseconds) of periodic saving of the coverage data by instrumented application. The
+	 * "net.sourceforge.cobertura.flushinterval" property gives it in seconds, from 0 to {@link Integer#MAX_VALUE}
+	 * (larger intervals would overflow the time of the first save).
+	 * Zero (default) means that the data is saved only when the JVM exits, and so does an invalid value.
+	 */
+	public long getFlushInterval() {
+		String value = getProperty("net.sourceforge.cobertura.flushinterval",
+				"0");
+		long seconds;
+		try {
+			seconds = Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			seconds = -1;
+		}
+		if ((seconds < 0) || (seconds > Integer.MAX_VALUE)) {
+			System.err.println("ERROR: Invalid flush interval [" + value
+					+ "], the coverage data will be saved on exit only.");
+			return 0;
+		}
+		return TimeUnit.SECONDS.toMillis(seconds);
+	}
+
 	/**
 	 * Poor mans debugging.
 	 * Intentionally didn't use log4j, as we dont want to introduce that dependency on instrumented files.
@@ -0,0 +1,466 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Zip archive (jar, war, ear...) read from its central directory, that gives access to the
+ * compressed data of its entries.
+ * <p/>
+ * Unlike {@link java.util.zip.ZipFile} it allows to copy an entry to another archive without
+ * inflating and deflating it again (see {@link RawZipOutputStream#putRawEntry(RawZipFile, Entry)}).
+ * Only the STORED and DEFLATED entries can be read uncompressed. ZIP64 and multi-disk archives are
+ * not supported, {@link ZipException} is thrown when such an archive is opened.
+ * <p/>
+ * The data is read using positional reads, so the entries can be read by many threads at once.
+ */
+public class RawZipFile {
+	static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+	static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+	static final int LOCAL_HEADER_SIZE = 30;
+	static final int CENTRAL_HEADER_SIZE = 46;
+	static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+	static final int ZIP64_LOCATOR_SIZE = 20;
+
+	/**
+	 * General purpose flag of entries whose sizes are stored in a data descriptor after the data.
+	 */
+	static final int DATA_DESCRIPTOR_FLAG = 0x08;
+
+	/**
+	 * General purpose flag of entries whose name and comment are encoded in UTF-8.
+	 */
+	static final int UTF8_FLAG = 0x800;
+
+	private static final int MAX_COMMENT_SIZE = 0xffff;
+	private static final long ZIP64_MARKER = 0xffffffffL;
+	private static final int COPY_BUFFER_SIZE = 1 << 15;
+
+	private final DataSource source;
+	private final List<Entry> entries;
+	private byte[] comment;
+
+	/**
+	 * Opens the archive file. The file is kept open until {@link #close()}.
+	 */
+	public RawZipFile(File file) throws IOException {
+		this(new FileDataSource(file));
+	}
+
+	/**
+	 * Reads the archive from the memory (archives nested in other archives).
+	 */
+	public RawZipFile(byte[] bytes) throws IOException {
+		this(new ByteArrayDataSource(bytes));
+	}
+
+	private RawZipFile(DataSource source) throws IOException {
+		this.source = source;
+		try {
+			this.entries = Collections.unmodifiableList(readCentralDirectory());
+		} catch (IOException e) {
+			source.close();
+			throw e;
+		} catch (RuntimeException e) {
+			source.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return entries of the archive, in the order of its central directory
+	 */
+	public List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * @return comment of the archive (not decoded)
+	 */
+	public byte[] getComment() {
+		return comment;
+	}
+
+	/**
+	 * Reads the uncompressed content of the entry and checks its CRC.
+	 *
+	 * @throws ZipException if the compression method is not supported or the data are damaged
+	 */
+	public byte[] readContent(Entry entry) throws IOException {
+		if (entry.size > Integer.MAX_VALUE) {
+			throw new ZipException("Entry is too big: " + entry.getName());
+		}
+		byte[] content = new byte[(int) entry.size];
+		long dataOffset = getDataOffset(entry);
+		if (entry.method == ZipEntry.STORED) {
+			if (entry.compressedSize != entry.size) {
+				throw new ZipException("Invalid size of stored entry: "
+						+ entry.getName());
+			}
+			source.read(dataOffset, content, 0, content.length);
+		} else if (entry.method == ZipEntry.DEFLATED) {
+			if (entry.compressedSize > Integer.MAX_VALUE - 1) {
+				throw new ZipException("Entry is too big: " + entry.getName());
+			}
+			// An extra dummy byte is needed by the inflater in the 'nowrap' mode
+			byte[] compressed = new byte[(int) entry.compressedSize + 1];
+			source.read(dataOffset, compressed, 0, compressed.length - 1);
+			inflate(entry, compressed, content);
+		} else {
+			throw new ZipException("Unsupported compression method "
+					+ entry.method + ": " + entry.getName());
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		if (crc.getValue() != entry.crc) {
+			throw new ZipException("Invalid CRC of entry: " + entry.getName());
+		}
+		return content;
+	}
+
+	private static void inflate(Entry entry, byte[] compressed, byte[] content)
+			throws ZipException {
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(compressed);
+			int length = 0;
+			while (length < content.length) {
+				int n = inflater.inflate(content, length, content.length
+						- length);
+				if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+					break;
+				}
+				length += n;
+			}
+			if (length != content.length
+					|| inflater.getBytesWritten() != entry.size) {
+				throw new ZipException("Invalid size of entry: "
+						+ entry.getName());
+			}
+		} catch (DataFormatException e) {
+			throw new ZipException("Invalid compressed data of entry "
+					+ entry.getName() + ": " + e.getMessage());
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * Copies the compressed data of the entry (without the local header) to the stream.
+	 */
+	void copyRawData(Entry entry, OutputStream out) throws IOException {
+		long position = getDataOffset(entry);
+		long remaining = entry.compressedSize;
+		byte[] buffer = new byte[(int) Math.min(COPY_BUFFER_SIZE, remaining)];
+		while (remaining > 0) {
+			int n = (int) Math.min(buffer.length, remaining);
+			source.read(position, buffer, 0, n);
+			out.write(buffer, 0, n);
+			position += n;
+			remaining -= n;
+		}
+	}
+
+	/**
+	 * Returns the extra field from the local header of the entry (it can differ from the
+	 * one in the central directory).
+	 */
+	byte[] getLocalExtra(Entry entry) throws IOException {
+		readLocalHeader(entry);
+		return entry.localExtra;
+	}
+
+	private long getDataOffset(Entry entry) throws IOException {
+		readLocalHeader(entry);
+		return entry.dataOffset;
+	}
+
+	private void readLocalHeader(Entry entry) throws IOException {
+		synchronized (entry) {
+			if (entry.dataOffset >= 0) {
+				return;
+			}
+			byte[] header = new byte[LOCAL_HEADER_SIZE];
+			source.read(entry.localHeaderOffset, header, 0, header.length);
+			if (getInt(header, 0) != LOCAL_HEADER_SIGNATURE) {
+				throw new ZipException("Invalid local header of entry: "
+						+ entry.getName());
+			}
+			int nameLength = getShort(header, 26);
+			int extraLength = getShort(header, 28);
+			byte[] localExtra = new byte[extraLength];
+			source.read(entry.localHeaderOffset + LOCAL_HEADER_SIZE
+					+ nameLength, localExtra, 0, extraLength);
+			entry.localExtra = localExtra;
+			entry.dataOffset = entry.localHeaderOffset + LOCAL_HEADER_SIZE
+					+ nameLength + extraLength;
+		}
+	}
+
+	private List<Entry> readCentralDirectory() throws IOException {
+		long size = source.size();
+		int tailLength = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE
+				+ MAX_COMMENT_SIZE + ZIP64_LOCATOR_SIZE);
+		byte[] tail = new byte[tailLength];
+		source.read(size - tailLength, tail, 0, tailLength);
+
+		int end = tailLength - END_OF_CENTRAL_DIRECTORY_SIZE;
+		while (end >= 0
+				&& (getInt(tail, end) != END_OF_CENTRAL_DIRECTORY_SIGNATURE || end
+						+ END_OF_CENTRAL_DIRECTORY_SIZE + getShort(tail, end + 20) != tailLength)) {
+			end--;
+		}
+		if (end < 0) {
+			throw new ZipException("End of central directory not found");
+		}
+		if (end >= ZIP64_LOCATOR_SIZE
+				&& getInt(tail, end - ZIP64_LOCATOR_SIZE) == ZIP64_LOCATOR_SIGNATURE) {
+			throw new ZipException("ZIP64 archives are not supported");
+		}
+		if (getShort(tail, end + 4) != 0 || getShort(tail, end + 6) != 0) {
+			throw new ZipException("Multi-disk archives are not supported");
+		}
+		int count = getShort(tail, end + 10);
+		long directorySize = getInt(tail, end + 12) & ZIP64_MARKER;
+		long directoryOffset = getInt(tail, end + 16) & ZIP64_MARKER;
+		comment = new byte[getShort(tail, end + 20)];
+		System.arraycopy(tail, end + END_OF_CENTRAL_DIRECTORY_SIZE, comment,
+				0, comment.length);
+
+		// The archive can be preceded by other data (self-extracting archives)
+		long endOffset = size - tailLength + end;
+		long directoryStart = endOffset - directorySize;
+		long prefix = directoryStart - directoryOffset;
+		if (directorySize > Integer.MAX_VALUE || prefix < 0) {
+			throw new ZipException("Invalid central directory");
+		}
+
+		byte[] directory = new byte[(int) directorySize];
+		source.read(directoryStart, directory, 0, directory.length);
+		List<Entry> result = new ArrayList<Entry>(count);
+		int offset = 0;
+		while (offset + CENTRAL_HEADER_SIZE <= directory.length) {
+			if (getInt(directory, offset) != CENTRAL_HEADER_SIGNATURE) {
+				throw new ZipException("Invalid central directory");
+			}
+			Entry entry = new Entry();
+			entry.versionMadeBy = getShort(directory, offset + 4);
+			entry.versionNeeded = getShort(directory, offset + 6);
+			entry.flags = getShort(directory, offset + 8);
+			entry.method = getShort(directory, offset + 10);
+			entry.dosTime = getInt(directory, offset + 12);
+			entry.crc = getInt(directory, offset + 16) & ZIP64_MARKER;
+			entry.compressedSize = getInt(directory, offset + 20)
+					& ZIP64_MARKER;
+			entry.size = getInt(directory, offset + 24) & ZIP64_MARKER;
+			int nameLength = getShort(directory, offset + 28);
+			int extraLength = getShort(directory, offset + 30);
+			int commentLength = getShort(directory, offset + 32);
+			entry.internalAttributes = getShort(directory, offset + 36);
+			entry.externalAttributes = getInt(directory, offset + 38);
+			long localHeaderOffset = getInt(directory, offset + 42)
+					& ZIP64_MARKER;
+			if (entry.compressedSize == ZIP64_MARKER
+					|| entry.size == ZIP64_MARKER
+					|| localHeaderOffset == ZIP64_MARKER) {
+				throw new ZipException("ZIP64 archives are not supported");
+			}
+			entry.localHeaderOffset = prefix + localHeaderOffset;
+
+			offset += CENTRAL_HEADER_SIZE;
+			if (offset + nameLength + extraLength + commentLength > directory.length) {
+				throw new ZipException("Invalid central directory");
+			}
+			entry.rawName = copy(directory, offset, nameLength);
+			offset += nameLength;
+			entry.extra = copy(directory, offset, extraLength);
+			offset += extraLength;
+			entry.comment = copy(directory, offset, commentLength);
+			offset += commentLength;
+			// java.util.zip reads all the names as UTF-8 too
+			entry.name = new String(entry.rawName, "UTF-8");
+			result.add(entry);
+		}
+		if (result.size() != count) {
+			throw new ZipException("Invalid central directory");
+		}
+		return result;
+	}
+
+	private static byte[] copy(byte[] bytes, int offset, int length) {
+		byte[] result = new byte[length];
+		System.arraycopy(bytes, offset, result, 0, length);
+		return result;
+	}
+
+	static int getShort(byte[] b, int offset) {
+		return (b[offset] & 0xff) | ((b[offset + 1] & 0xff) << 8);
+	}
+
+	static int getInt(byte[] b, int offset) {
+		return getShort(b, offset) | (getShort(b, offset + 2) << 16);
+	}
+
+	public void close() throws IOException {
+		source.close();
+	}
+
+	/**
+	 * Entry of a {@link RawZipFile}, as described by the central directory of the archive.
+	 */
+	public static class Entry {
+		String name;
+		byte[] rawName;
+		int versionMadeBy;
+		int versionNeeded;
+		int flags;
+		int method;
+		int dosTime;
+		long crc;
+		long compressedSize;
+		long size;
+		byte[] extra;
+		byte[] comment;
+		int internalAttributes;
+		int externalAttributes;
+		long localHeaderOffset;
+
+		/**
+		 * Read from the local header when the entry is read for the first time.
+		 */
+		byte[] localExtra;
+		long dataOffset = -1;
+
+		public String getName() {
+			return name;
+		}
+
+		public boolean isDirectory() {
+			return name.endsWith("/");
+		}
+
+		/**
+		 * @return compression method ({@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED} for
+		 *         entries that can be read by {@link RawZipFile#readContent(Entry)})
+		 */
+		public int getMethod() {
+			return method;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public long getCompressedSize() {
+			return compressedSize;
+		}
+
+		public String toString() {
+			return name;
+		}
+	}
+
+	private static abstract class DataSource {
+		abstract long size() throws IOException;
+
+		/**
+		 * Reads exactly 'length' bytes at the position.
+		 */
+		abstract void read(long position, byte[] b, int offset, int length)
+				throws IOException;
+
+		abstract void close() throws IOException;
+	}
+
+	private static class FileDataSource extends DataSource {
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+
+		FileDataSource(File file) throws IOException {
+			this.file = new RandomAccessFile(file, "r");
+			this.channel = this.file.getChannel();
+		}
+
+		long size() throws IOException {
+			return channel.size();
+		}
+
+		void read(long position, byte[] b, int offset, int length)
+				throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(b, offset, length);
+			while (buffer.hasRemaining()) {
+				int n = channel.read(buffer, position + buffer.position()
+						- offset);
+				if (n < 0) {
+					throw new ZipException("Unexpected end of archive");
+				}
+			}
+		}
+
+		void close() throws IOException {
+			file.close();
+		}
+	}
+
+	private static class ByteArrayDataSource extends DataSource {
+		private final byte[] bytes;
+
+		ByteArrayDataSource(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		long size() {
+			return bytes.length;
+		}
+
+		void read(long position, byte[] b, int offset, int length)
+				throws IOException {
+			if (position < 0 || position + length > bytes.length) {
+				throw new ZipException("Unexpected end of archive");
+			}
+			System.arraycopy(bytes, (int) position, b, offset, length);
+		}
+
+		void close() {
+		}
+	}
+}
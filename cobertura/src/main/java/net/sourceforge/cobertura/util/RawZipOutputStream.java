@@ -0,0 +1,300 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Note: This file is dual licensed under the GPL and the Apache
+ * Source License (so that it can be used from both the main
+ * Cobertura classes and the ant tasks).
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a zip archive whose entries are either copied from a {@link RawZipFile} as they are
+ * (still compressed), or replaced by a new content that is deflated.
+ * <p/>
+ * The sizes and CRC of every entry are written to its local header, no data descriptors are used.
+ */
+public class RawZipOutputStream {
+	private static final int VERSION = 20;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final OutputStream out;
+	private long written;
+	private final List<CentralRecord> centralDirectory = new ArrayList<CentralRecord>();
+	private final Set<String> names = new HashSet<String>();
+	private byte[] comment = new byte[0];
+	private boolean finished;
+
+	public RawZipOutputStream(OutputStream out) {
+		this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+	}
+
+	/**
+	 * @param comment comment of the archive (not encoded again)
+	 */
+	public void setComment(byte[] comment) {
+		this.comment = comment;
+	}
+
+	/**
+	 * Copies the entry of the archive without inflating it.
+	 *
+	 * @throws ZipException if an entry with the same name has already been written
+	 */
+	public void putRawEntry(RawZipFile archive, RawZipFile.Entry entry)
+			throws IOException {
+		checkName(entry);
+		byte[] localExtra = archive.getLocalExtra(entry);
+
+		CentralRecord record = new CentralRecord(entry, written);
+		record.versionMadeBy = entry.versionMadeBy;
+		record.versionNeeded = entry.versionNeeded;
+		record.flags = entry.flags & ~RawZipFile.DATA_DESCRIPTOR_FLAG;
+		record.method = entry.method;
+		record.dosTime = entry.dosTime;
+		record.crc = entry.crc;
+		record.compressedSize = entry.compressedSize;
+		record.size = entry.size;
+		record.extra = entry.extra;
+
+		writeLocalHeader(record, localExtra);
+		archive.copyRawData(entry, new CountingOutputStream());
+		centralDirectory.add(record);
+	}
+
+	/**
+	 * Writes the entry of an archive with a new content. The name, extra field and comment of the entry
+	 * are kept.
+	 *
+	 * @param time modification time of the new content
+	 *
+	 * @throws ZipException if an entry with the same name has already been written
+	 */
+	public void putEntry(RawZipFile archive, RawZipFile.Entry entry,
+			byte[] content, long time) throws IOException {
+		checkName(entry);
+		byte[] localExtra = archive.getLocalExtra(entry);
+
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		byte[] compressed = deflate(content);
+
+		CentralRecord record = new CentralRecord(entry, written);
+		record.versionMadeBy = VERSION;
+		record.versionNeeded = VERSION;
+		record.flags = entry.flags & RawZipFile.UTF8_FLAG;
+		record.method = ZipEntry.DEFLATED;
+		record.dosTime = toDosTime(time);
+		record.crc = crc.getValue();
+		record.compressedSize = compressed.length;
+		record.size = content.length;
+		record.extra = localExtra;
+
+		writeLocalHeader(record, localExtra);
+		write(compressed);
+		centralDirectory.add(record);
+	}
+
+	private void checkName(RawZipFile.Entry entry) throws ZipException {
+		if (finished) {
+			throw new IllegalStateException("Archive is already finished");
+		}
+		if (!names.add(entry.getName())) {
+			throw new ZipException("duplicate entry: " + entry.getName());
+		}
+	}
+
+	private static byte[] deflate(byte[] content) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			deflater.setInput(content);
+			deflater.finish();
+			ByteArrayOutputStream compressed = new ByteArrayOutputStream(
+					content.length / 2 + 64);
+			byte[] buffer = new byte[8192];
+			while (!deflater.finished()) {
+				int n = deflater.deflate(buffer);
+				compressed.write(buffer, 0, n);
+			}
+			return compressed.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Converts the time to the MS-DOS format used by the zip archives (local time, 2 seconds precision).
+	 */
+	static int toDosTime(long time) {
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTimeInMillis(time);
+		int year = calendar.get(Calendar.YEAR);
+		if (year < 1980) {
+			return (1 << 21) | (1 << 16);
+		}
+		return ((year - 1980) << 25)
+				| ((calendar.get(Calendar.MONTH) + 1) << 21)
+				| (calendar.get(Calendar.DAY_OF_MONTH) << 16)
+				| (calendar.get(Calendar.HOUR_OF_DAY) << 11)
+				| (calendar.get(Calendar.MINUTE) << 5)
+				| (calendar.get(Calendar.SECOND) >> 1);
+	}
+
+	private void writeLocalHeader(CentralRecord record, byte[] localExtra)
+			throws IOException {
+		writeInt(RawZipFile.LOCAL_HEADER_SIGNATURE);
+		writeShort(record.versionNeeded);
+		writeShort(record.flags);
+		writeShort(record.method);
+		writeInt(record.dosTime);
+		writeInt((int) record.crc);
+		writeInt((int) record.compressedSize);
+		writeInt((int) record.size);
+		writeShort(record.entry.rawName.length);
+		writeShort(localExtra.length);
+		write(record.entry.rawName);
+		write(localExtra);
+	}
+
+	/**
+	 * Writes the central directory and flushes the archive. Nothing can be added to the archive
+	 * afterwards.
+	 */
+	public void finish() throws IOException {
+		if (finished) {
+			return;
+		}
+		finished = true;
+		long directoryOffset = written;
+		for (CentralRecord record : centralDirectory) {
+			RawZipFile.Entry entry = record.entry;
+			writeInt(RawZipFile.CENTRAL_HEADER_SIGNATURE);
+			writeShort(record.versionMadeBy);
+			writeShort(record.versionNeeded);
+			writeShort(record.flags);
+			writeShort(record.method);
+			writeInt(record.dosTime);
+			writeInt((int) record.crc);
+			writeInt((int) record.compressedSize);
+			writeInt((int) record.size);
+			writeShort(entry.rawName.length);
+			writeShort(record.extra.length);
+			writeShort(entry.comment.length);
+			writeShort(0);
+			writeShort(entry.internalAttributes);
+			writeInt(entry.externalAttributes);
+			writeInt((int) record.localHeaderOffset);
+			write(entry.rawName);
+			write(record.extra);
+			write(entry.comment);
+		}
+		long directorySize = written - directoryOffset;
+		if (centralDirectory.size() > 0xffff || written > 0xffffffffL) {
+			throw new ZipException("Archive is too big, ZIP64 is not supported");
+		}
+
+		writeInt(RawZipFile.END_OF_CENTRAL_DIRECTORY_SIGNATURE);
+		writeShort(0);
+		writeShort(0);
+		writeShort(centralDirectory.size());
+		writeShort(centralDirectory.size());
+		writeInt((int) directorySize);
+		writeInt((int) directoryOffset);
+		writeShort(comment.length);
+		write(comment);
+		out.flush();
+	}
+
+	/**
+	 * Finishes the archive and closes the underlying stream.
+	 */
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeShort(int value) throws IOException {
+		out.write(value & 0xff);
+		out.write((value >>> 8) & 0xff);
+		written += 2;
+	}
+
+	private void writeInt(int value) throws IOException {
+		writeShort(value & 0xffff);
+		writeShort((value >>> 16) & 0xffff);
+	}
+
+	private void write(byte[] bytes) throws IOException {
+		out.write(bytes);
+		written += bytes.length;
+	}
+
+	/**
+	 * Entry of the central directory, written by {@link #finish()}.
+	 */
+	private static class CentralRecord {
+		final RawZipFile.Entry entry;
+		final long localHeaderOffset;
+		int versionMadeBy;
+		int versionNeeded;
+		int flags;
+		int method;
+		int dosTime;
+		long crc;
+		long compressedSize;
+		long size;
+		byte[] extra;
+
+		CentralRecord(RawZipFile.Entry entry, long localHeaderOffset) {
+			this.entry = entry;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+	}
+
+	/**
+	 * Writes to the archive and counts the bytes (used to copy the raw data of entries).
+	 */
+	private class CountingOutputStream extends OutputStream {
+		public void write(int b) throws IOException {
+			out.write(b);
+			written++;
+		}
+
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			written += len;
+		}
+	}
+}
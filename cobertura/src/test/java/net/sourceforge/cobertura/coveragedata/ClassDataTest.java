@@ -26,7 +26,12 @@ package net.sourceforge.cobertura.coveragedata;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.Collection;
+import java.util.Iterator;
 
 import static org.junit.Assert.*;
 
@@ -258,4 +263,135 @@ public class ClassDataTest {
 		assertTrue(b.isValidSourceLineNumber(line));
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testLinesAddedOutOfOrder() {
+		int[] lineNumbers = {40, 10, 30, 20, 50, 15};
+		for (int i = 0; i < lineNumbers.length; i++) {
+			a.addLine(lineNumbers[i], "test", "()V");
+		}
+		a.addLineJump(30, 0);
+		a.addLine(25, "test", "()V");
+		a.removeLine(15);
+
+		int[] expected = {10, 20, 25, 30, 40, 50};
+		Iterator<CoverageData> iter = a.getLines().iterator();
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], ((LineData) iter.next()).getLineNumber());
+			assertEquals(expected[i], a.getLineData(expected[i])
+					.getLineNumber());
+		}
+		assertFalse(iter.hasNext());
+		assertNull(a.getLineData(15));
+		assertTrue(a.hasBranch(30));
+		assertFalse(a.hasBranch(25));
+		assertFalse(a.hasBranch(40));
+		assertEquals(6, a.getNumberOfValidLines());
+	}
+
+	@Test
+	public void testSerialization() throws Exception {
+		b.addLineJump(2, 0);
+		b.touchJump(2, 0, true, 3);
+		b.addLineSwitch(4, 0, 1, 9, Integer.MAX_VALUE);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(b);
+		out.close();
+		ClassData read = (ClassData) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+		assertEquals(b, read);
+		assertEquals(b.getBranches().size(), read.getBranches().size());
+		assertTrue(read.hasBranch(2));
+		assertTrue(read.hasBranch(4));
+		assertEquals(b.getNumberOfCoveredBranches(), read
+				.getNumberOfCoveredBranches());
+		assertEquals(2, read.getNumberOfCoveredLines());
+		// the lines can still be modified after reading
+		read.touch(6, 1);
+		assertEquals(3, read.getNumberOfCoveredLines());
+	}
+
+	@Test
+	public void testMethods() {
+		a.addLine(1, "run", "()V");
+		a.addLine(2, "run", "()V");
+		a.addLine(3, "run", "(I)V");
+		a.addLine(4, "stop", "()V");
+		a.addLineJump(2, 0);
+		a.touch(1, 1);
+		a.touchJump(2, 0, true, 1);
+		a.touch(3, 1);
+
+		assertEquals(3, a.getMethodNamesAndDescriptors().size());
+		assertEquals(2, a.getLines("run()V").size());
+		assertEquals(0.5d, a.getLineCoverageRate("run()V"), 0d);
+		assertEquals(0.5d, a.getBranchCoverageRate("run()V"), 0d);
+		assertEquals(1d, a.getLineCoverageRate("run(I)V"), 0d);
+		assertEquals(0d, a.getLineCoverageRate("stop()V"), 0d);
+		assertEquals(1d, a.getLineCoverageRate("unknown()V"), 0d);
+		assertTrue(a.getLines("unknown()V").isEmpty());
+
+		// a line moved to another method
+		a.addLine(2, "stop", "()V");
+		assertEquals(1d, a.getLineCoverageRate("run()V"), 0d);
+		assertEquals(2, a.getLines("stop()V").size());
+		assertEquals("stop", a.getLineData(2).getMethodName());
+		assertEquals("()V", a.getLineData(2).getMethodDescriptor());
+
+		ClassData other = new ClassData("com.example.HelloWorld");
+		other.addLine(5, "stop", "()V");
+		other.addLine(6, "start", "()V");
+		other.touch(5, 1);
+		a.merge(other);
+		assertEquals(4, a.getMethodNamesAndDescriptors().size());
+		assertEquals(3, a.getLines("stop()V").size());
+		assertEquals(1d / 3, a.getLineCoverageRate("stop()V"), 1e-9);
+		assertEquals(1, a.getLines("start()V").size());
+	}
+
+	@Test
+	public void testMethodMetrics() {
+		a.addLine(3, "run", "()V");
+		a.addLine(1, "run", "()V");
+		a.addLine(2, "stop", "()V");
+		a.addLineJump(3, 0);
+		a.addLineSwitch(2, 0, 1, 3, Integer.MAX_VALUE);
+		a.touch(1, 1);
+		a.touchJump(3, 0, false, 1);
+
+		assertEquals(2, a.getNumberOfValidLines("run()V"));
+		assertEquals(1, a.getNumberOfCoveredLines("run()V"));
+		assertEquals(2, a.getNumberOfValidBranches("run()V"));
+		assertEquals(1, a.getNumberOfCoveredBranches("run()V"));
+		assertEquals(1, a.getNumberOfValidLines("stop()V"));
+		assertEquals(0, a.getNumberOfCoveredLines("stop()V"));
+		assertEquals(4, a.getNumberOfValidBranches("stop()V"));
+		assertEquals(0, a.getNumberOfValidLines("unknown()V"));
+
+		// the lines of a method are sorted
+		Iterator<CoverageData> lines = a.getLines("run()V").iterator();
+		assertEquals(1, ((LineData) lines.next()).getLineNumber());
+		assertEquals(3, ((LineData) lines.next()).getLineNumber());
+
+		// the metrics follow the hits and the lines
+		a.touch(2, 1);
+		assertEquals(1, a.getNumberOfCoveredLines("stop()V"));
+		a.addLine(4, "stop", "()V");
+		assertEquals(2, a.getNumberOfValidLines("stop()V"));
+		a.addLine(1, "stop", "()V");
+		assertEquals(1, a.getNumberOfValidLines("run()V"));
+		assertEquals(0, a.getNumberOfCoveredLines("run()V"));
+		assertEquals(2, a.getNumberOfCoveredLines("stop()V"));
+
+		// a method without lines
+		a.addMethodNameAndDescriptor("init()V");
+		assertEquals(0, a.getNumberOfValidLines("init()V"));
+		assertEquals(1d, a.getLineCoverageRate("init()V"), 0d);
+
+		a.freeze();
+		assertEquals(3, a.getNumberOfValidLines("stop()V"));
+		assertEquals(0.5d, a.getBranchCoverageRate("run()V"), 0d);
+	}
+}
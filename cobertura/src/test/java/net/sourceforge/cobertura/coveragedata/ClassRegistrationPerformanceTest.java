@@ -0,0 +1,124 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.instrument.ByteArrayClassLoader;
+import net.sourceforge.cobertura.instrument.CoberturaInstrumenter;
+import net.sourceforge.cobertura.instrument.InstrumentTestUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Startup benchmark: loads (and initializes) many instrumented classes from several threads at once.
+ * Every static initializer registers its class in {@link TouchCollector}, so the time shows how much the
+ * registration costs when classes are loaded in parallel.
+ */
+public class ClassRegistrationPerformanceTest {
+	private static final int THREADS = 8;
+	private static final int CLASSES_PER_THREAD = 500;
+
+	@BeforeClass
+	public static void turnOffAutoSave() {
+		InstrumentTestUtils.turnOffAutoSave();
+	}
+
+	@Test
+	public void testParallelRegistration() throws Exception {
+		CoberturaInstrumenter instrumenter = new CoberturaInstrumenter();
+		instrumenter.setProjectData(new ProjectData());
+
+		final Map<String, byte[]>[] slices = new Map[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			slices[t] = new HashMap<String, byte[]>();
+			for (int i = 0; i < CLASSES_PER_THREAD; i++) {
+				String name = "registration/benchmark/C" + t + "_" + i;
+				slices[t].put(name.replace('/', '.'), InstrumentTestUtils
+						.instrument(instrumenter, generateClass(name)));
+			}
+		}
+
+		final CountDownLatch start = new CountDownLatch(1);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			final ByteArrayClassLoader loader = new ByteArrayClassLoader(
+					slices[t]);
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						start.await();
+						for (String name : loader.getClassNames()) {
+							Class.forName(name, true, loader);
+						}
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				}
+			};
+			threads[t].start();
+		}
+
+		long startTime = System.nanoTime();
+		start.countDown();
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long elapsed = System.nanoTime() - startTime;
+		assertNull(failure.get());
+
+		System.out.println("Initialized " + THREADS * CLASSES_PER_THREAD
+				+ " instrumented classes from " + THREADS + " threads in "
+				+ elapsed / 1000000 + " ms");
+
+		ProjectData projectData = new ProjectData();
+		TouchCollector.applyTouchesOnProjectData(projectData);
+		for (Map<String, byte[]> slice : slices) {
+			for (String name : slice.keySet()) {
+				assertNotNull(name, projectData.getClassData(name));
+			}
+		}
+	}
+
+	private static byte[] generateClass(String internalName) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, internalName, null,
+				"java/lang/Object", null);
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "<clinit>",
+				"()V", null, null);
+		mv.visitCode();
+		InstrumentTestUtils.line(mv, 1);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+}
@@ -26,8 +26,12 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.NotSerializableException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class CoverageDataFileHandlerTest {
 
@@ -84,4 +88,128 @@ public class CoverageDataFileHandlerTest {
 		assertEquals(a, b);
 	}
 
+	@Test
+	public void testFailedSaveKeepsThePreviousFile() throws Exception {
+		File dataFile = new File(tmpDir, "cobertura.ser");
+		CoverageDataFileHandler.saveCoverageData(a, dataFile);
+
+		ProjectData broken = new ProjectData();
+		// refers to the test, that is not serializable
+		broken.addClassData(new ClassData("Broken") {
+		});
+		try {
+			CoverageDataFileHandler.writeCoverageData(broken, dataFile,
+					CoverageDataFileHandler.FORMAT_SERIALIZED);
+			fail("The data should not be serializable");
+		} catch (NotSerializableException expected) {
+		}
+		CoverageDataFileHandler.saveCoverageData(broken, dataFile);
+
+		assertEquals(a, CoverageDataFileHandler.loadCoverageData(dataFile));
+		// no temporary file is left
+		assertEquals(1, tmpDir.listFiles().length);
+	}
+
+	@Test
+	public void testSaveAndRestoreCompact() {
+		ClassData classData = new ClassData("com.example.Branches");
+		classData.setSourceFileName("Branches.java");
+		classData.setContainsInstrumentationInfo();
+		classData.addLine(5, "run", "()V");
+		classData.addLine(300, "run", "()V");
+		classData.addLine(301, "other", "(I)I");
+		classData.addLineJump(300, 0);
+		classData.addLineJump(300, 1);
+		classData.addLineSwitch(301, 0, -2, 2, Integer.MAX_VALUE);
+		classData.touch(5, 1);
+		classData.touch(300, 100000);
+		classData.touchJump(300, 1, true, 7);
+		classData.touchSwitch(301, 0, -1, 3);
+		classData.touchSwitch(301, 0, 4, 2);
+		a.addClassData(classData);
+
+		File dataFile = new File(tmpDir, "cobertura.ser");
+		CoverageDataFileHandler.saveCoverageData(a, dataFile,
+				CoverageDataFileHandler.FORMAT_COMPACT);
+
+		ProjectData b = CoverageDataFileHandler.loadCoverageData(dataFile);
+		assertEquals(a, b);
+
+		ClassData restored = b.getClassData("com.example.Branches");
+		assertEquals(classData.getSourceFileName(), restored
+				.getSourceFileName());
+		assertTrue(restored.containsInstrumentationInfo());
+		assertEquals(classData.getMethodNamesAndDescriptors(), restored
+				.getMethodNamesAndDescriptors());
+		assertEquals(classData.getNumberOfValidBranches(), restored
+				.getNumberOfValidBranches());
+		assertEquals(classData.getNumberOfCoveredBranches(), restored
+				.getNumberOfCoveredBranches());
+		assertEquals(100000, restored.getLineCoverage(300).getHits());
+		assertEquals("run", restored.getLineCoverage(300).getMethodName());
+		assertEquals("com/example/HelloWorld.java", b.getClassData(
+				"HelloWorld").getRawSourceFileName());
+
+		a.addClassData(new ClassData("NoSource"));
+		CoverageDataFileHandler.saveCoverageData(a, dataFile,
+				CoverageDataFileHandler.FORMAT_COMPACT);
+		b = CoverageDataFileHandler.loadCoverageData(dataFile);
+		assertNull(b.getClassData("NoSource").getRawSourceFileName());
+	}
+
+	@Test
+	public void testCompactIsSmaller() {
+		File serialized = new File(tmpDir, "cobertura.ser");
+		File compact = new File(tmpDir, "cobertura.compact");
+		CoverageDataFileHandler.saveCoverageData(a, serialized,
+				CoverageDataFileHandler.FORMAT_SERIALIZED);
+		CoverageDataFileHandler.saveCoverageData(a, compact,
+				CoverageDataFileHandler.FORMAT_COMPACT);
+
+		assertTrue(compact.length() < serialized.length());
+		assertEquals(CoverageDataFileHandler.loadCoverageData(serialized),
+				CoverageDataFileHandler.loadCoverageData(compact));
+	}
+
+	@Test
+	public void testMapCompact() {
+		ClassData classData = new ClassData("com.example.Branches");
+		classData.setSourceFileName("Branches.java");
+		classData.addLine(10, "run", "()V");
+		classData.addLine(11, "run", "()V");
+		classData.addLineJump(11, 0);
+		classData.touch(10, 3);
+		classData.touchJump(11, 0, false, 1);
+		a.addClassData(classData);
+
+		File dataFile = new File(tmpDir, "cobertura.ser");
+		CoverageDataFileHandler.saveCoverageData(a, dataFile,
+				CoverageDataFileHandler.FORMAT_COMPACT);
+
+		ProjectData mapped = CoverageDataFileHandler.mapCoverageData(dataFile);
+		assertEquals(a, mapped);
+		assertEquals(a.getLineCoverageRate(), mapped.getLineCoverageRate(),
+				0.0);
+		assertEquals(a.getBranchCoverageRate(),
+				mapped.getBranchCoverageRate(), 0.0);
+
+		ClassData view = mapped.getClassData("com.example.Branches");
+		assertTrue(view instanceof MappedClassData);
+		assertEquals(2, view.getNumberOfValidBranches());
+		assertEquals(3, view.getLineCoverage(10).getHits());
+		assertTrue(view.hasBranch(11));
+		assertEquals(classData, view);
+
+		try {
+			view.touch(10, 1);
+			fail("The view should be read-only");
+		} catch (UnsupportedOperationException e) {
+		}
+
+		/* The serialized format is loaded as usual. */
+		CoverageDataFileHandler.saveCoverageData(a, dataFile,
+				CoverageDataFileHandler.FORMAT_SERIALIZED);
+		assertEquals(a, CoverageDataFileHandler.mapCoverageData(dataFile));
+	}
+
 }
@@ -0,0 +1,221 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.instrument.CoberturaInstrumenter;
+import net.sourceforge.cobertura.instrument.InstrumentTestUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Saves of the global project data into the default datafile. An existing datafile is kept aside during
+ * the tests.
+ */
+public class GlobalProjectDataTest {
+	private static final long TIMEOUT = 10000;
+	private static final int THREADS = 4;
+	private static final int SAVES = 5;
+
+	private File dataFile;
+	private File keptDataFile;
+
+	@Before
+	public void setUp() {
+		ProjectData.getGlobalProjectData();
+		ProjectData.turnOffAutoSave();
+		dataFile = CoverageDataFileHandler.getDefaultDataFile();
+		if (dataFile.exists()) {
+			keptDataFile = new File(dataFile.getPath() + ".kept");
+			assertTrue(dataFile.renameTo(keptDataFile));
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		ProjectData.turnOffAutoSave();
+		dataFile.delete();
+		new File(dataFile.getPath() + ".lock").delete();
+		if (keptDataFile != null) {
+			keptDataFile.renameTo(dataFile);
+		}
+	}
+
+	@Test
+	public void testFlushTimerSavesTheData() throws Exception {
+		ProjectData before = ProjectData.getGlobalProjectData();
+		ProjectData.startFlushTimer(10);
+
+		waitForDataFile();
+		// every save starts a new epoch
+		assertNotSame(before, ProjectData.getGlobalProjectData());
+
+		// waits for a running save
+		ProjectData.turnOffAutoSave();
+		assertNotNull(CoverageDataFileHandler.loadCoverageData(dataFile));
+	}
+
+	@Test
+	public void testSaveOnExitStopsTheFlushTimer() throws Exception {
+		ProjectData.startFlushTimer(1);
+		waitForDataFile();
+
+		ProjectData.saveGlobalProjectDataOnExit();
+		ProjectData last = ProjectData.getGlobalProjectData();
+		Thread.sleep(100);
+		// no periodic save could start rewriting the datafile while the JVM exits
+		assertSame(last, ProjectData.getGlobalProjectData());
+		assertNotNull(CoverageDataFileHandler.loadCoverageData(dataFile));
+
+		// the saves write temporary files, renamed to the datafile
+		File[] files = dataFile.getAbsoluteFile().getParentFile().listFiles();
+		for (File file : files) {
+			assertFalse(file.getName(), file.getName().startsWith(
+					dataFile.getName() + ".")
+					&& file.getName().endsWith(".tmp"));
+		}
+	}
+
+	@Test
+	public void testSaveDoesNotWait() throws Exception {
+		// the first save loads the classes needed to write the datafile
+		ProjectData.saveGlobalProjectData();
+
+		long start = System.nanoTime();
+		ProjectData.saveGlobalProjectData();
+		long elapsed = (System.nanoTime() - start) / 1000000;
+		// saves used to sleep for a second, waiting for the instrumented code
+		assertTrue("The save took " + elapsed + " ms", elapsed < 1000);
+	}
+
+	@Test
+	public void testAtomicHitsSurviveConcurrentSaves() throws Exception {
+		CoberturaInstrumenter rigorous = new CoberturaInstrumenter();
+		rigorous.setThreadsafeRigorous(true);
+		assertHitsSurviveConcurrentSaves("concurrent/test/Atomic", rigorous);
+
+		CoberturaInstrumenter striped = new CoberturaInstrumenter();
+		striped.setThreadsafeStriped(true);
+		assertHitsSurviveConcurrentSaves("concurrent/test/Striped", striped);
+
+		CoberturaInstrumenter atomicLong = new CoberturaInstrumenter();
+		atomicLong.setThreadsafeRigorous(true);
+		atomicLong.setLongCounters(true);
+		assertHitsSurviveConcurrentSaves("concurrent/test/AtomicLong",
+				atomicLong);
+	}
+
+	/**
+	 * Runs the instrumented class from several threads while the data is saved, and checks that the datafile
+	 * counts every invocation once.
+	 */
+	private void assertHitsSurviveConcurrentSaves(String internalName,
+			CoberturaInstrumenter instrumenter) throws Exception {
+		instrumenter.setProjectData(new ProjectData());
+		Class<?> c = InstrumentTestUtils.instrumentAndLoad(instrumenter,
+				internalName, generateClass(internalName));
+		final Method run = c.getMethod("run");
+		run.invoke(null);
+		final AtomicLong invocations = new AtomicLong(1);
+		final AtomicLong failures = new AtomicLong();
+		final AtomicBoolean stop = new AtomicBoolean();
+
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			threads[t] = new Thread() {
+				public void run() {
+					long count = 0;
+					try {
+						while (!stop.get()) {
+							run.invoke(null);
+							count++;
+						}
+					} catch (Exception e) {
+						failures.incrementAndGet();
+					}
+					invocations.addAndGet(count);
+				}
+			};
+			threads[t].start();
+		}
+		try {
+			for (int i = 0; i < SAVES; i++) {
+				ProjectData.saveGlobalProjectData();
+			}
+		} finally {
+			stop.set(true);
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+		ProjectData.saveGlobalProjectData();
+
+		assertEquals(0, failures.get());
+		ClassData classData = CoverageDataFileHandler.loadCoverageData(
+				dataFile).getClassData(c.getName());
+		assertEquals(internalName, invocations.get(), classData
+				.getLineData(1).getHits());
+	}
+
+	/**
+	 * <pre>
+	 * public static void run() {
+	 * 1:  return;
+	 * }
+	 * </pre>
+	 */
+	private static byte[] generateClass(String internalName) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, internalName, null,
+				"java/lang/Object", null);
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "run", "()V", null, null);
+		mv.visitCode();
+		InstrumentTestUtils.line(mv, 1);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	private void waitForDataFile() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + TIMEOUT;
+		while (!dataFile.exists() && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		assertTrue("The timer has not saved the data", dataFile.exists());
+	}
+}
@@ -31,6 +31,7 @@ import java.util.SortedSet;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ProjectDataTest {
 
@@ -170,4 +171,111 @@ public class ProjectDataTest {
 		assertEquals("com.example.test", ((PackageData) subPackages.next())
 				.getName());
 	}
+
+	@Test
+	public void testMetricsFollowChanges() {
+		ClassData classData = coverageData
+				.getOrCreateClassData("com.example.HelloWorld");
+		for (int i = 1; i <= 4; i++)
+			classData.addLine(i, "test", "(I)B");
+		PackageData packageData = (PackageData) coverageData
+				.getChild("com.example");
+
+		assertEquals(4, coverageData.getNumberOfValidLines());
+		assertEquals(0, coverageData.getNumberOfCoveredLines());
+		assertEquals(0d, packageData.getLineCoverageRate(), 0d);
+
+		// the metrics computed above must not be reused after these changes
+		classData.touch(1, 1);
+		assertEquals(1, coverageData.getNumberOfCoveredLines());
+		assertEquals(0.25d, packageData.getLineCoverageRate(), 0d);
+
+		classData.addLineJump(2, 0);
+		classData.touchJump(2, 0, true, 1);
+		assertEquals(2, coverageData.getNumberOfValidBranches());
+		assertEquals(1, coverageData.getNumberOfCoveredBranches());
+
+		classData.getLineData(2).touchJump(0, false, 1);
+		assertEquals(1d, packageData.getBranchCoverageRate(), 0d);
+
+		ClassData other = new ClassData("com.example.HelloWorld");
+		other.addLine(3, "test", "(I)B");
+		other.touch(3, 5);
+		classData.merge(other);
+		assertEquals(2, coverageData.getNumberOfCoveredLines());
+
+		classData.removeLine(4);
+		assertEquals(3, coverageData.getNumberOfValidLines());
+		assertEquals(2d / 3, coverageData.getLineCoverageRate(), 0d);
+	}
+
+	@Test
+	public void testFreeze() {
+		ClassData classData = coverageData
+				.getOrCreateClassData("com.example.HelloWorld");
+		for (int i = 1; i <= 4; i++)
+			classData.addLine(i, "test", "(I)B");
+		classData.addLineJump(2, 0);
+		classData.touch(1, 1);
+		classData.touchJump(2, 0, true, 1);
+
+		coverageData.freeze();
+		assertTrue(coverageData.isFrozen());
+		assertTrue(classData.isFrozen());
+		assertTrue(((PackageData) coverageData.getChild("com.example"))
+				.isFrozen());
+		SourceFileData sourceFileData = (SourceFileData) coverageData
+				.getSourceFiles().iterator().next();
+		assertTrue(sourceFileData.isFrozen());
+
+		// the data can still be read
+		assertEquals(4, coverageData.getNumberOfValidLines());
+		assertEquals(1, coverageData.getNumberOfCoveredLines());
+		assertEquals(0.5d, sourceFileData.getBranchCoverageRate(), 0d);
+		assertEquals(1, ((JumpData) classData.getLineData(2)
+				.getConditionData(0)).getTrueHits());
+		assertEquals(classData, coverageData.getClassData(classData.getName()));
+
+		try {
+			classData.touch(3, 1);
+			fail("Frozen data must not be modified");
+		} catch (IllegalStateException expected) {
+		}
+		try {
+			coverageData.addClassData(new ClassData("com.example.Other"));
+			fail("Frozen data must not be modified");
+		} catch (IllegalStateException expected) {
+		}
+		try {
+			coverageData.merge(new ProjectData());
+			fail("Frozen data must not be modified");
+		} catch (IllegalStateException expected) {
+		}
+
+		// nor through the lines and the branches
+		LineData lineData = classData.getLineData(2);
+		try {
+			lineData.touch(1);
+			fail("Frozen data must not be modified");
+		} catch (IllegalStateException expected) {
+		}
+		try {
+			lineData.touchJump(0, false, 1);
+			fail("Frozen data must not be modified");
+		} catch (IllegalStateException expected) {
+		}
+		try {
+			lineData.touchJump(1, true, 1);
+			fail("Frozen data must not be modified");
+		} catch (IllegalStateException expected) {
+		}
+		try {
+			((JumpData) lineData.getConditionData(0)).touchBranch(true, 1);
+			fail("Frozen data must not be modified");
+		} catch (IllegalStateException expected) {
+		}
+		assertEquals(1, lineData.getConditionSize());
+		assertEquals(1, coverageData.getNumberOfCoveredLines());
+		assertEquals(1, classData.getNumberOfCoveredBranches());
+	}
 }
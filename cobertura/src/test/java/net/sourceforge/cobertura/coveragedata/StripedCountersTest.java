@@ -0,0 +1,77 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class StripedCountersTest {
+
+	@Test
+	public void testStripesCount() {
+		assertEquals(1, StripedCounters.stripesCount(0));
+		assertEquals(1, StripedCounters.stripesCount(1));
+		assertEquals(4, StripedCounters.stripesCount(3));
+		assertEquals(8, StripedCounters.stripesCount(8));
+		assertEquals(64, StripedCounters.stripesCount(1000));
+		assertEquals(4, new StripedCounters(10, 3).stripesLength());
+	}
+
+	@Test
+	public void testGetAndReset() {
+		StripedCounters counters = new StripedCounters(3);
+		counters.increment(1);
+		counters.increment(1);
+		counters.increment(2);
+
+		long[] res = counters.getAndReset();
+		assertEquals(3, res.length);
+		assertEquals(0, res[0]);
+		assertEquals(2, res[1]);
+		assertEquals(1, res[2]);
+
+		res = counters.getAndReset();
+		assertEquals(0, res[1]);
+		assertEquals(0, res[2]);
+	}
+
+	@Test
+	public void testConcurrentIncrementsAreNotLost() throws Exception {
+		final StripedCounters counters = new StripedCounters(2, 4);
+		final int increments = 100000;
+		Thread[] threads = new Thread[8];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					for (int j = 0; j < increments; j++) {
+						counters.increment(1);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		assertEquals(threads.length * increments, counters.getAndReset()[1]);
+	}
+}
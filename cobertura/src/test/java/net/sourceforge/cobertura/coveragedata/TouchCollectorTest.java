@@ -0,0 +1,174 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.coveragedata;
+
+import net.sourceforge.cobertura.instrument.CoberturaInstrumenter;
+import net.sourceforge.cobertura.instrument.InstrumentTestUtils;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+
+import static net.sourceforge.cobertura.instrument.InstrumentTestUtils.describeCoverage;
+import static net.sourceforge.cobertura.instrument.InstrumentTestUtils.harvest;
+import static net.sourceforge.cobertura.instrument.InstrumentTestUtils.line;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Instrumented classes register their counters with {@link TouchCollector} when they are initialized, and
+ * every harvest reads and resets them. Classes older than Java 5 (version 49) cannot reference themselves
+ * with a class literal, so they are checked with every counters type as well.
+ */
+public class TouchCollectorTest {
+	private static final String COUNTS = "1:1 2:4[1/3] 3:3 4:1 ";
+	private static final String PROBES = "1:1 2:1[1/1] 3:1 4:1 ";
+	private static final String RESET = "1:0 2:0[0/0] 3:0 4:0 ";
+
+	@BeforeClass
+	public static void turnOffAutoSave() {
+		InstrumentTestUtils.turnOffAutoSave();
+	}
+
+	@Test
+	public void testIntArrayCounters() throws Exception {
+		assertHarvests("Int", new CoberturaInstrumenter(), COUNTS);
+	}
+
+	@Test
+	public void testAtomicIntCounters() throws Exception {
+		CoberturaInstrumenter instrumenter = new CoberturaInstrumenter();
+		instrumenter.setThreadsafeRigorous(true);
+		assertHarvests("AtomicInt", instrumenter, COUNTS);
+	}
+
+	@Test
+	public void testStripedCounters() throws Exception {
+		CoberturaInstrumenter instrumenter = new CoberturaInstrumenter();
+		instrumenter.setThreadsafeStriped(true);
+		assertHarvests("Striped", instrumenter, COUNTS);
+	}
+
+	@Test
+	public void testLongCounters() throws Exception {
+		CoberturaInstrumenter instrumenter = new CoberturaInstrumenter();
+		instrumenter.setLongCounters(true);
+		assertHarvests("Long", instrumenter, COUNTS);
+	}
+
+	@Test
+	public void testAtomicLongCounters() throws Exception {
+		CoberturaInstrumenter instrumenter = new CoberturaInstrumenter();
+		instrumenter.setLongCounters(true);
+		instrumenter.setThreadsafeRigorous(true);
+		assertHarvests("AtomicLong", instrumenter, COUNTS);
+	}
+
+	@Test
+	public void testProbes() throws Exception {
+		CoberturaInstrumenter instrumenter = new CoberturaInstrumenter();
+		instrumenter.setProbeOnly(true);
+		assertHarvests("Probes", instrumenter, PROBES);
+	}
+
+	@Test
+	public void testLazyCounters() throws Exception {
+		CoberturaInstrumenter instrumenter = new CoberturaInstrumenter();
+		instrumenter.setLazyCounters(true);
+		assertHarvests("Lazy", instrumenter, COUNTS);
+	}
+
+	/**
+	 * Instruments a Java 1.4 and a Java 5 version of the class, runs both of them and harvests their
+	 * counters twice.
+	 */
+	private static void assertHarvests(String name,
+			CoberturaInstrumenter instrumenter, String expected)
+			throws Exception {
+		instrumenter.setProjectData(new ProjectData());
+		for (int version : new int[]{Opcodes.V1_4, Opcodes.V1_5}) {
+			String internalName = "harvest/test/" + name
+					+ (version == Opcodes.V1_4 ? "14" : "15");
+			Class<?> c = InstrumentTestUtils.instrumentAndLoad(instrumenter,
+					internalName, generateClass(internalName, version));
+			Method run = c.getMethod("run", int.class);
+			assertEquals(6, run.invoke(null, 3));
+
+			ClassData classData = harvest(c);
+			assertNotNull(internalName + " is not registered", classData);
+			assertEquals(internalName, expected, describeCoverage(classData));
+			// the first harvest has reset the counters
+			assertEquals(internalName, RESET, describeCoverage(harvest(c)));
+
+			// the class keeps touching the same counters
+			run.invoke(null, 3);
+			assertEquals(internalName, expected, describeCoverage(harvest(c)));
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public static int run(int n) {
+	 * 1:  int s = 0;
+	 * 2:  while (n > 0) {
+	 * 3:    s += n--;
+	 *     }
+	 * 4:  return s;
+	 * }
+	 * </pre>
+	 */
+	private static byte[] generateClass(String internalName, int version) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS
+				| ClassWriter.COMPUTE_FRAMES);
+		cw.visit(version, Opcodes.ACC_PUBLIC, internalName, null,
+				"java/lang/Object", null);
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "run", "(I)I", null, null);
+		mv.visitCode();
+		line(mv, 1);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitVarInsn(Opcodes.ISTORE, 1);
+		Label loop = new Label();
+		mv.visitLabel(loop);
+		mv.visitLineNumber(2, loop);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		Label end = new Label();
+		mv.visitJumpInsn(Opcodes.IFLE, end);
+		line(mv, 3);
+		mv.visitVarInsn(Opcodes.ILOAD, 1);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.IADD);
+		mv.visitVarInsn(Opcodes.ISTORE, 1);
+		mv.visitIincInsn(0, -1);
+		mv.visitJumpInsn(Opcodes.GOTO, loop);
+		mv.visitLabel(end);
+		mv.visitLineNumber(4, end);
+		mv.visitVarInsn(Opcodes.ILOAD, 1);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+}
@@ -46,6 +46,13 @@ public class ArgumentsBuilderTest {
 				commandsFile).build().getCommandsFile().getPath());
 	}
 
+	@Test
+	public void testSetCacheDirectory() throws Exception {
+		String cacheDirectory = "somedir";
+		assertEquals(cacheDirectory, new ArgumentsBuilder().setCacheDirectory(
+				cacheDirectory).build().getCacheDirectory().getPath());
+	}
+
 	@Test
 	public void testAddIgnoreRegex() throws Exception {
 		String someRegex = "someRegex";
@@ -110,6 +117,76 @@ public class ArgumentsBuilderTest {
 				.isThreadsafeRigorous());
 	}
 
+	@Test
+	public void testThreadsafeStriped() throws Exception {
+		boolean threadSafeStriped = true;
+		assertEquals(threadSafeStriped, new ArgumentsBuilder()
+				.threadsafeStriped(threadSafeStriped).build()
+				.isThreadsafeStriped());
+	}
+
+	@Test
+	public void testProbeOnly() throws Exception {
+		boolean probeOnly = true;
+		assertEquals(probeOnly, new ArgumentsBuilder().probeOnly(probeOnly)
+				.build().isProbeOnly());
+	}
+
+	@Test
+	public void testVerifyInstrumentation() throws Exception {
+		boolean verifyInstrumentation = true;
+		assertEquals(verifyInstrumentation, new ArgumentsBuilder()
+				.verifyInstrumentation(verifyInstrumentation).build()
+				.isVerifyInstrumentation());
+	}
+
+	@Test
+	public void testLazyCounters() throws Exception {
+		boolean lazyCounters = true;
+		assertEquals(lazyCounters, new ArgumentsBuilder().lazyCounters(
+				lazyCounters).build().isLazyCounters());
+	}
+
+	@Test
+	public void testBasicBlockCounters() throws Exception {
+		boolean basicBlockCounters = true;
+		assertEquals(basicBlockCounters, new ArgumentsBuilder()
+				.basicBlockCounters(basicBlockCounters).build()
+				.isBasicBlockCounters());
+	}
+
+	@Test
+	public void testSplitJumpEdges() throws Exception {
+		boolean splitJumpEdges = true;
+		assertEquals(splitJumpEdges, new ArgumentsBuilder().splitJumpEdges(
+				splitJumpEdges).build().isSplitJumpEdges());
+	}
+
+	@Test
+	public void testLongCounters() throws Exception {
+		boolean longCounters = true;
+		assertEquals(longCounters, new ArgumentsBuilder().longCounters(
+				longCounters).build().isLongCounters());
+	}
+
+	@Test
+	public void testSetThreads() throws Exception {
+		assertEquals(4, new ArgumentsBuilder().setThreads(4).build()
+				.getThreads());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testSetZeroThreads() throws Exception {
+		new ArgumentsBuilder().setThreads(0);
+	}
+
+	@Test
+	public void testStreamingMerge() throws Exception {
+		boolean streamingMerge = true;
+		assertEquals(streamingMerge, new ArgumentsBuilder().streamingMerge(
+				streamingMerge).build().isStreamingMerge());
+	}
+
 	@Test
 	public void testSetFormat() throws Exception {
 		boolean failOnError = true;
@@ -316,6 +393,24 @@ public class ArgumentsBuilderTest {
 				.isIgnoreTrivial());
 		assertEquals(ArgumentsBuilder.DEFAULT_THREADSAFE_RIGOROUS, defaultArgs
 				.isThreadsafeRigorous());
+		assertEquals(ArgumentsBuilder.DEFAULT_THREADSAFE_STRIPED, defaultArgs
+				.isThreadsafeStriped());
+		assertEquals(ArgumentsBuilder.DEFAULT_PROBE_ONLY, defaultArgs
+				.isProbeOnly());
+		assertEquals(ArgumentsBuilder.DEFAULT_VERIFY_INSTRUMENTATION,
+				defaultArgs.isVerifyInstrumentation());
+		assertEquals(ArgumentsBuilder.DEFAULT_LAZY_COUNTERS, defaultArgs
+				.isLazyCounters());
+		assertEquals(ArgumentsBuilder.DEFAULT_BASIC_BLOCK_COUNTERS,
+				defaultArgs.isBasicBlockCounters());
+		assertEquals(ArgumentsBuilder.DEFAULT_SPLIT_JUMP_EDGES, defaultArgs
+				.isSplitJumpEdges());
+		assertEquals(ArgumentsBuilder.DEFAULT_LONG_COUNTERS, defaultArgs
+				.isLongCounters());
+		assertEquals(ArgumentsBuilder.DEFAULT_THREADS, defaultArgs
+				.getThreads());
+		assertEquals(ArgumentsBuilder.DEFAULT_STREAMING_MERGE, defaultArgs
+				.isStreamingMerge());
 		assertEquals(ArgumentsBuilder.DEFAULT_ENCODING, defaultArgs
 				.getEncoding());
 	}
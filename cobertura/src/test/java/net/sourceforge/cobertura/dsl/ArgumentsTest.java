@@ -29,9 +29,19 @@ public class ArgumentsTest {
 	private static final File DESTINATION_DIRECTORY = new File(
 			"destinationDirectory");
 	private static final File COMMANDS_FILE = new File("commandsFile");
+	private static final File CACHE_DIRECTORY = new File("cacheDirectory");
 	private static final boolean FAIL_ON_ERROR = false;
 	private static final boolean IGNORE_TRIVIAL = true;
 	private static final boolean THREADSAFE_RIGOROUS = true;
+	private static final boolean THREADSAFE_STRIPED = true;
+	private static final boolean PROBE_ONLY = true;
+	private static final boolean VERIFY_INSTRUMENTATION = true;
+	private static final boolean LAZY_COUNTERS = true;
+	private static final boolean BASIC_BLOCK_COUNTERS = true;
+	private static final boolean SPLIT_JUMP_EDGES = true;
+	private static final boolean LONG_COUNTERS = true;
+	private static final int THREADS = 3;
+	private static final boolean STREAMING_MERGE = true;
 	private static final String ENCODING = "UTF-8";
 	private static final String IGNORE_REGEX_PATTERN = "ignoreRegexPattern";
 	private static final String IGNORE_BRANCHES_REGEXES = "ignoreBranchesRegexes";
@@ -73,13 +83,18 @@ public class ArgumentsTest {
 		ignoreMethodAnnotations.add(IGNORE_METHOD_ANNOTATIONS);
 
 		this.arguments = new Arguments(BASEDIR, DATA_FILE,
-				DESTINATION_DIRECTORY, COMMANDS_FILE, ignoreRegexes,
-				ignoreBranchesRegexes, classPatternIncludeClassesRegexes,
+				DESTINATION_DIRECTORY, COMMANDS_FILE, CACHE_DIRECTORY,
+				ignoreRegexes, ignoreBranchesRegexes,
+				classPatternIncludeClassesRegexes,
 				classPatternExcludeClassesRegexes, FAIL_ON_ERROR,
-				IGNORE_TRIVIAL, THREADSAFE_RIGOROUS, ENCODING,
-				minimumCoverageThresholds, CLASS_LINE_THRESHOLD,
-				CLASS_BRANCH_THRESHOLD, PACKAGE_LINE_THRESHOLD,
-				PACKAGE_BRANCH_THRESHOLD, TOTAL_LINE_THRESHOLD,
+				IGNORE_TRIVIAL, THREADSAFE_RIGOROUS, THREADSAFE_STRIPED,
+				PROBE_ONLY, VERIFY_INSTRUMENTATION, LAZY_COUNTERS,
+				BASIC_BLOCK_COUNTERS, SPLIT_JUMP_EDGES, LONG_COUNTERS,
+				THREADS, STREAMING_MERGE, ENCODING,
+				minimumCoverageThresholds,
+				CLASS_LINE_THRESHOLD, CLASS_BRANCH_THRESHOLD,
+				PACKAGE_LINE_THRESHOLD, PACKAGE_BRANCH_THRESHOLD,
+				TOTAL_LINE_THRESHOLD,
 				TOTAL_BRANCH_THRESHOLD, filesToInstrument, filesToMerge,
 				ignoreMethodAnnotations, SOURCES);
 	}
@@ -104,6 +119,11 @@ public class ArgumentsTest {
 		assertEquals(COMMANDS_FILE, arguments.getCommandsFile());
 	}
 
+	@Test
+	public void testGetCacheDirectory() throws Exception {
+		assertEquals(CACHE_DIRECTORY, arguments.getCacheDirectory());
+	}
+
 	@Test
 	public void testGetIgnoreRegexes() throws Exception {
 		assertTrue(arguments.getIgnoreRegexes().contains(IGNORE_REGEX_PATTERN));
@@ -149,6 +169,52 @@ public class ArgumentsTest {
 		assertEquals(THREADSAFE_RIGOROUS, arguments.isThreadsafeRigorous());
 	}
 
+	@Test
+	public void testIsThreadsafeStriped() throws Exception {
+		assertEquals(THREADSAFE_STRIPED, arguments.isThreadsafeStriped());
+	}
+
+	@Test
+	public void testIsProbeOnly() throws Exception {
+		assertEquals(PROBE_ONLY, arguments.isProbeOnly());
+	}
+
+	@Test
+	public void testIsVerifyInstrumentation() throws Exception {
+		assertEquals(VERIFY_INSTRUMENTATION, arguments
+				.isVerifyInstrumentation());
+	}
+
+	@Test
+	public void testIsLazyCounters() throws Exception {
+		assertEquals(LAZY_COUNTERS, arguments.isLazyCounters());
+	}
+
+	@Test
+	public void testIsBasicBlockCounters() throws Exception {
+		assertEquals(BASIC_BLOCK_COUNTERS, arguments.isBasicBlockCounters());
+	}
+
+	@Test
+	public void testIsSplitJumpEdges() throws Exception {
+		assertEquals(SPLIT_JUMP_EDGES, arguments.isSplitJumpEdges());
+	}
+
+	@Test
+	public void testIsLongCounters() throws Exception {
+		assertEquals(LONG_COUNTERS, arguments.isLongCounters());
+	}
+
+	@Test
+	public void testGetThreads() throws Exception {
+		assertEquals(THREADS, arguments.getThreads());
+	}
+
+	@Test
+	public void testIsStreamingMerge() throws Exception {
+		assertEquals(STREAMING_MERGE, arguments.isStreamingMerge());
+	}
+
 	@Test
 	public void testGetEncoding() throws Exception {
 		assertEquals(ENCODING, arguments.getEncoding());
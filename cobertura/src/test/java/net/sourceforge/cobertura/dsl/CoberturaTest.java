@@ -0,0 +1,70 @@
+package net.sourceforge.cobertura.dsl;
+
+import net.sourceforge.cobertura.coveragedata.ClassData;
+import net.sourceforge.cobertura.coveragedata.CoverageDataFileHandler;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class CoberturaTest {
+
+	private File dataFile;
+	private File otherDataFile;
+
+	@Before
+	public void setUp() throws Exception {
+		dataFile = File.createTempFile("cobertura", ".ser");
+		otherDataFile = File.createTempFile("cobertura", ".ser");
+		CoverageDataFileHandler.saveCoverageData(createProjectData(1),
+				dataFile);
+		CoverageDataFileHandler.saveCoverageData(createProjectData(2),
+				otherDataFile);
+	}
+
+	@After
+	public void tearDown() {
+		dataFile.delete();
+		otherDataFile.delete();
+	}
+
+	@Test
+	public void testMergeAfterCheckThresholds() throws Exception {
+		new Cobertura(createArguments()).checkThresholds().merge()
+				.saveProjectData();
+
+		ProjectData merged = CoverageDataFileHandler
+				.loadCoverageData(dataFile);
+		assertEquals(2, merged.getNumberOfValidLines());
+		assertEquals(2, merged.getNumberOfCoveredLines());
+	}
+
+	@Test
+	public void testFreezeProjectData() throws Exception {
+		Cobertura cobertura = new Cobertura(createArguments())
+				.freezeProjectData().checkThresholds();
+		try {
+			cobertura.merge();
+			fail("Frozen data must not be modified");
+		} catch (IllegalStateException expected) {
+		}
+	}
+
+	private Arguments createArguments() {
+		return new ArgumentsBuilder().setDataFile(dataFile.getPath())
+				.addFileToMerge(otherDataFile.getPath()).build();
+	}
+
+	private static ProjectData createProjectData(int line) {
+		ProjectData projectData = new ProjectData();
+		ClassData classData = projectData
+				.getOrCreateClassData("com.example.HelloWorld");
+		classData.addLine(line, "test", "()V");
+		classData.touch(line, 1);
+		return projectData;
+	}
+}
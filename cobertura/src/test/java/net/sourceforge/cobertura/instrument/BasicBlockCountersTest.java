@@ -0,0 +1,192 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+
+import static net.sourceforge.cobertura.instrument.InstrumentTestUtils.line;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BasicBlockCountersTest {
+
+	@BeforeClass
+	public static void turnOffAutoSave() {
+		InstrumentTestUtils.turnOffAutoSave();
+	}
+
+	@Test
+	public void testSameCoverageWithLessCounters() throws Exception {
+		Class<?> lineCounters = load("blocks/test/Lines", false, false);
+		Class<?> blockCounters = load("blocks/test/Blocks", true, false);
+
+		assertEquals(describeCoverage(lineCounters),
+				describeCoverage(blockCounters));
+		// 11 lines and 2 jumps
+		assertEquals(1 + 11 + 2 * 2, countersLength(lineCounters));
+		// 8 blocks and the 'true' branches of the jumps
+		assertEquals(1 + 8 + 2, countersLength(blockCounters));
+	}
+
+	@Test
+	public void testProbes() throws Exception {
+		Class<?> lineProbes = load("blocks/test/LineProbes", false, true);
+		Class<?> blockProbes = load("blocks/test/BlockProbes", true, true);
+
+		String coverage = describeCoverage(lineProbes);
+		assertEquals(coverage, describeCoverage(blockProbes));
+		// both branches of the jumps are covered
+		assertTrue(coverage, coverage.contains("3:1[1/1]"));
+		// probes cannot be subtracted, so the jumps keep their 'false' probes
+		assertEquals(1 + 8 + 2 * 2, countersLength(blockProbes));
+	}
+
+	private static Class<?> load(String internalName,
+			boolean basicBlockCounters, boolean probeOnly) throws Exception {
+		CoberturaInstrumenter instrumenter = new CoberturaInstrumenter();
+		instrumenter.setProjectData(new ProjectData());
+		instrumenter.setBasicBlockCounters(basicBlockCounters);
+		instrumenter.setProbeOnly(probeOnly);
+		return InstrumentTestUtils.instrumentAndLoad(instrumenter,
+				internalName, generateClass(internalName));
+	}
+
+	/**
+	 * Runs the generated methods and describes the collected hits of all lines and jumps.
+	 */
+	private static String describeCoverage(Class<?> c) throws Exception {
+		Method run = c.getMethod("run", int.class);
+		assertEquals(6, run.invoke(null, 2));
+		assertEquals(8, run.invoke(null, 3));
+		assertEquals(8, run.invoke(null, -5));
+		Method sum = c.getMethod("sum", int.class);
+		assertEquals(10, sum.invoke(null, 5));
+
+		return InstrumentTestUtils.describeCoverage(InstrumentTestUtils
+				.harvest(c));
+	}
+
+	private static int countersLength(Class<?> c) throws Exception {
+		Object counters = InstrumentTestUtils.getCounters(c);
+		return counters instanceof int[]
+				? ((int[]) counters).length
+				: ((boolean[]) counters).length;
+	}
+
+	/**
+	 * <pre>
+	 * public static int run(int x) {
+	 * 1:  x = x + 1;
+	 * 2:  x = x * 2;
+	 * 3:  if (x >= 0) {
+	 * 4:    x = Math.abs(x);
+	 * 5:    return x;
+	 *     }
+	 * 6:  return -x;
+	 * }
+	 *
+	 * public static int sum(int n) {
+	 * 10: int s = 0, i = 0;
+	 * 11: while (i < n) {
+	 * 12:   s += i;
+	 * 13:   i++;
+	 *     }
+	 * 14: return s;
+	 * }
+	 * </pre>
+	 */
+	private static byte[] generateClass(String internalName) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS
+				| ClassWriter.COMPUTE_FRAMES);
+		cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, internalName, null,
+				"java/lang/Object", null);
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "run", "(I)I", null, null);
+		mv.visitCode();
+		line(mv, 1);
+		mv.visitIincInsn(0, 1);
+		line(mv, 2);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.ICONST_2);
+		mv.visitInsn(Opcodes.IMUL);
+		mv.visitVarInsn(Opcodes.ISTORE, 0);
+		line(mv, 3);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		Label negative = new Label();
+		mv.visitJumpInsn(Opcodes.IFLT, negative);
+		line(mv, 4);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESTATIC, "java/lang/Math", "abs",
+				"(I)I");
+		mv.visitVarInsn(Opcodes.ISTORE, 0);
+		line(mv, 5);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitLabel(negative);
+		mv.visitLineNumber(6, negative);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.INEG);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "sum",
+				"(I)I", null, null);
+		mv.visitCode();
+		line(mv, 10);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitVarInsn(Opcodes.ISTORE, 1);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitVarInsn(Opcodes.ISTORE, 2);
+		Label loop = new Label();
+		mv.visitLabel(loop);
+		mv.visitLineNumber(11, loop);
+		mv.visitVarInsn(Opcodes.ILOAD, 2);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		Label end = new Label();
+		mv.visitJumpInsn(Opcodes.IF_ICMPGE, end);
+		line(mv, 12);
+		mv.visitVarInsn(Opcodes.ILOAD, 1);
+		mv.visitVarInsn(Opcodes.ILOAD, 2);
+		mv.visitInsn(Opcodes.IADD);
+		mv.visitVarInsn(Opcodes.ISTORE, 1);
+		line(mv, 13);
+		mv.visitIincInsn(2, 1);
+		mv.visitJumpInsn(Opcodes.GOTO, loop);
+		mv.visitLabel(end);
+		mv.visitLineNumber(14, end);
+		mv.visitVarInsn(Opcodes.ILOAD, 1);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Defines classes from their bytes, for the tests of generated and instrumented classes. Every test
+ * uses a new loader, so the same class name can be defined again (instrumented differently).
+ */
+public class ByteArrayClassLoader extends ClassLoader {
+	private final Map<String, byte[]> classes;
+
+	public ByteArrayClassLoader() {
+		this(new HashMap<String, byte[]>());
+	}
+
+	/**
+	 * @param classes - the bytes of the classes found by this loader (and loaded when they are needed),
+	 *                by the binary names of the classes
+	 */
+	public ByteArrayClassLoader(Map<String, byte[]> classes) {
+		super(ByteArrayClassLoader.class.getClassLoader());
+		this.classes = classes;
+	}
+
+	/**
+	 * @return the names of the classes that can be found by this loader
+	 */
+	public Iterable<String> getClassNames() {
+		return classes.keySet();
+	}
+
+	public Class<?> define(String name, byte[] bytes) {
+		return defineClass(name, bytes, 0, bytes.length);
+	}
+
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		byte[] bytes = classes.get(name);
+		if (bytes == null) {
+			throw new ClassNotFoundException(name);
+		}
+		return define(name, bytes);
+	}
+}
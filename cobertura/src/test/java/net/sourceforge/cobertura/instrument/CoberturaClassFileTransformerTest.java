@@ -0,0 +1,316 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.ClassData;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.coveragedata.TouchCollector;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class CoberturaClassFileTransformerTest {
+	private static final String CLASS_NAME = "agent/test/Abs";
+
+	@BeforeClass
+	public static void turnOffAutoSave() {
+		InstrumentTestUtils.turnOffAutoSave();
+	}
+
+	@Test
+	public void testTransformedClassIsCovered() throws Exception {
+		CoberturaClassFileTransformer transformer = CoberturaAgent
+				.createTransformer("--ignoreTrivial");
+		byte[] original = generateClass(CLASS_NAME);
+		ByteArrayClassLoader loader = new ByteArrayClassLoader();
+
+		byte[] instrumented = transformer.transform(loader, CLASS_NAME, null,
+				null, original);
+		assertNotNull(instrumented);
+		assertTrue(instrumented.length > original.length);
+
+		Class<?> c = loader.define(CLASS_NAME.replace('/', '.'), instrumented);
+		Method abs = c.getMethod("abs", int.class);
+		assertEquals(5, abs.invoke(null, -5));
+
+		ClassData classData = InstrumentTestUtils.harvest(c);
+		assertEquals(3, classData.getNumberOfValidLines());
+		// lines 1 and 3
+		assertEquals(2, classData.getNumberOfCoveredLines());
+	}
+
+	@Test
+	public void testTransformedClassesAreCached() throws Exception {
+		CoberturaClassFileTransformer transformer = CoberturaAgent
+				.createTransformer(null);
+		byte[] original = generateClass("agent/test/Cached");
+
+		byte[] first = transformer.transform(new ByteArrayClassLoader(),
+				"agent/test/Cached", null, null, original);
+		byte[] second = transformer.transform(new ByteArrayClassLoader(),
+				"agent/test/Cached", null, null, original.clone());
+		assertNotNull(first);
+		assertSame(first, second);
+		assertEquals(1, transformer.getTransformedClassesCount());
+	}
+
+	@Test
+	public void testClassesThatAreNotTransformed() throws Exception {
+		CoberturaClassFileTransformer transformer = CoberturaAgent
+				.createTransformer("");
+		byte[] original = generateClass("agent/test/NotTransformed");
+
+		// bootstrap class loader
+		assertNull(transformer.transform(null, "agent/test/NotTransformed",
+				null, null, original));
+		// redefinition
+		assertNull(transformer.transform(new ByteArrayClassLoader(),
+				"agent/test/NotTransformed", Object.class, null, original));
+		// classes of Cobertura
+		assertNull(transformer.transform(new ByteArrayClassLoader(),
+				"net/sourceforge/cobertura/Test", null, null,
+				generateClass("net/sourceforge/cobertura/Test")));
+		// not a class
+		assertNull(transformer.transform(new ByteArrayClassLoader(),
+				"agent/test/Broken", null, null, new byte[]{1, 2, 3}));
+		assertEquals(1, transformer.getTransformedClassesCount());
+	}
+
+	@Test
+	public void testLazyCounters() throws Exception {
+		assertLazyCounters("--lazyCounters", "agent/test/LazyFast");
+		assertLazyCounters("--lazyCounters --threadsafeRigorous",
+				"agent/test/LazyAtomic");
+		assertLazyCounters("--lazyCounters --threadsafeStriped",
+				"agent/test/LazyStriped");
+		assertLazyCounters("--lazyCounters --probeOnly",
+				"agent/test/LazyProbes");
+	}
+
+	private static void assertLazyCounters(String agentArgs,
+			String internalName) throws Exception {
+		CoberturaClassFileTransformer transformer = CoberturaAgent
+				.createTransformer(agentArgs);
+		ByteArrayClassLoader loader = new ByteArrayClassLoader();
+		String className = internalName.replace('/', '.');
+		Class<?> c = loader.define(className, transformer.transform(loader,
+				internalName, null, null, generateClass(internalName)));
+		Class.forName(className, true, loader);
+
+		ProjectData projectData = new ProjectData();
+		TouchCollector.applyTouchesOnProjectData(projectData);
+		assertNull(agentArgs, projectData.getClassData(className));
+
+		Method abs = c.getMethod("abs", int.class);
+		assertEquals(5, abs.invoke(null, 5));
+		assertEquals(5, abs.invoke(null, -5));
+
+		TouchCollector.applyTouchesOnProjectData(projectData);
+		ClassData classData = projectData.getClassData(className);
+		assertNotNull(agentArgs, classData);
+		assertEquals(agentArgs, 3, classData.getNumberOfCoveredLines());
+	}
+
+	/**
+	 * The frames of the instrumented class need the common superclass of the class itself and of
+	 * its subclass. The class is transformed while it is being defined, so none of them can be loaded.
+	 */
+	@Test
+	public void testCommonSuperClassOfTransformedClass() throws Exception {
+		CoberturaClassFileTransformer transformer = CoberturaAgent
+				.createTransformer("");
+		TransformingClassLoader loader = new TransformingClassLoader(
+				transformer);
+		loader.add(BASE_NAME, generateBaseClass());
+		loader.add(DERIVED_NAME, generateDerivedClass());
+
+		Class<?> c = loader.loadClass(BASE_NAME.replace('/', '.'));
+		assertTrue(loader.transformed.contains(BASE_NAME));
+		Method pick = c.getMethod("pick", boolean.class);
+		assertEquals(c, pick.invoke(null, false).getClass());
+		assertEquals(DERIVED_NAME.replace('/', '.'), pick.invoke(null, true)
+				.getClass().getName());
+		assertTrue(loader.transformed.contains(DERIVED_NAME));
+
+		ClassData classData = InstrumentTestUtils.harvest(c);
+		assertNotNull(classData);
+		assertEquals(4, classData.getNumberOfCoveredLines());
+	}
+
+	private static final String BASE_NAME = "agent/test/frames/Base";
+	private static final String DERIVED_NAME = "agent/test/frames/Derived";
+
+	/**
+	 * <pre>
+	 * public class Base {
+	 *     public static Base pick(boolean derived) {
+	 *         return derived ? new Derived() : new Base();
+	 *     }
+	 * }
+	 * </pre>
+	 */
+	private static byte[] generateBaseClass() {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, BASE_NAME, null,
+				"java/lang/Object", null);
+		generateConstructor(cw, "java/lang/Object");
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "pick", "(Z)L" + BASE_NAME + ";", null,
+				null);
+		mv.visitCode();
+		Label line1 = new Label();
+		mv.visitLabel(line1);
+		mv.visitLineNumber(1, line1);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		Label base = new Label();
+		mv.visitJumpInsn(Opcodes.IFEQ, base);
+		Label line2 = new Label();
+		mv.visitLabel(line2);
+		mv.visitLineNumber(2, line2);
+		mv.visitTypeInsn(Opcodes.NEW, DERIVED_NAME);
+		mv.visitInsn(Opcodes.DUP);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, DERIVED_NAME, "<init>",
+				"()V");
+		Label done = new Label();
+		mv.visitJumpInsn(Opcodes.GOTO, done);
+		mv.visitLabel(base);
+		mv.visitLineNumber(3, base);
+		mv.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+		mv.visitTypeInsn(Opcodes.NEW, BASE_NAME);
+		mv.visitInsn(Opcodes.DUP);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, BASE_NAME, "<init>", "()V");
+		mv.visitLabel(done);
+		mv.visitLineNumber(4, done);
+		mv.visitFrame(Opcodes.F_SAME1, 0, null, 1, new Object[]{BASE_NAME});
+		mv.visitInsn(Opcodes.ARETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	private static byte[] generateDerivedClass() {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_7, Opcodes.ACC_PUBLIC, DERIVED_NAME, null,
+				BASE_NAME, null);
+		generateConstructor(cw, BASE_NAME);
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	private static void generateConstructor(ClassWriter cw, String superName) {
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V",
+				null, null);
+		mv.visitCode();
+		mv.visitVarInsn(Opcodes.ALOAD, 0);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V");
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+	}
+
+	private static byte[] generateClass(String internalName) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS
+				| ClassWriter.COMPUTE_FRAMES);
+		cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, internalName, null,
+				"java/lang/Object", null);
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "abs", "(I)I", null, null);
+		mv.visitCode();
+		Label line1 = new Label();
+		mv.visitLabel(line1);
+		mv.visitLineNumber(1, line1);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		Label negative = new Label();
+		mv.visitJumpInsn(Opcodes.IFLT, negative);
+		Label line2 = new Label();
+		mv.visitLabel(line2);
+		mv.visitLineNumber(2, line2);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitLabel(negative);
+		mv.visitLineNumber(3, negative);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.INEG);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+
+	/**
+	 * Transforms the classes when it defines them, as the JVM does with an agent. The class files can
+	 * be read as resources.
+	 */
+	private static class TransformingClassLoader extends ClassLoader {
+		private final CoberturaClassFileTransformer transformer;
+		private final Map<String, byte[]> classFiles = new HashMap<String, byte[]>();
+		final Set<String> transformed = new HashSet<String>();
+
+		TransformingClassLoader(CoberturaClassFileTransformer transformer) {
+			super(CoberturaClassFileTransformerTest.class.getClassLoader());
+			this.transformer = transformer;
+		}
+
+		void add(String internalName, byte[] bytes) {
+			classFiles.put(internalName + ".class", bytes);
+		}
+
+		protected Class<?> findClass(String name)
+				throws ClassNotFoundException {
+			String internalName = name.replace('.', '/');
+			byte[] bytes = classFiles.get(internalName + ".class");
+			if (bytes == null) {
+				throw new ClassNotFoundException(name);
+			}
+			byte[] instrumented = transformer.transform(this, internalName,
+					null, null, bytes);
+			if (instrumented != null) {
+				transformed.add(internalName);
+				bytes = instrumented;
+			}
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+
+		public InputStream getResourceAsStream(String name) {
+			byte[] bytes = classFiles.get(name);
+			return (bytes == null) ? super.getResourceAsStream(name)
+					: new ByteArrayInputStream(bytes);
+		}
+	}
+}
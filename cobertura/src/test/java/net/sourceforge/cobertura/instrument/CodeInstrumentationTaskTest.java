@@ -0,0 +1,277 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.dsl.ArgumentsBuilder;
+import net.sourceforge.cobertura.util.IOUtil;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Instruments the same classes (in a directory and in an archive) sequentially, in parallel and
+ * using the instrumentation cache, the results have to be the same. The entries of the archive
+ * that are not instrumented are copied as they are.
+ */
+public class CodeInstrumentationTaskTest {
+	private static final int CLASSES = 200;
+
+	private final File testDir = new File("target/test/CodeInstrumentationTaskTest")
+			.getAbsoluteFile();
+
+	@Before
+	public void createClasses() throws IOException {
+		File classesDir = new File(testDir, "classes");
+		testDir.mkdirs();
+		ZipOutputStream jar = new ZipOutputStream(new FileOutputStream(
+				new File(testDir, "classes.jar")));
+		try {
+			for (int i = 0; i < CLASSES; i++) {
+				String name = "parallel/p" + (i % 10) + "/C" + i;
+				byte[] bytes = generateClass(name);
+
+				File classFile = new File(classesDir, name + ".class");
+				classFile.getParentFile().mkdirs();
+				FileOutputStream out = new FileOutputStream(classFile);
+				try {
+					out.write(bytes);
+				} finally {
+					out.close();
+				}
+
+				jar.putNextEntry(new ZipEntry(name + ".class"));
+				jar.write(bytes);
+				jar.closeEntry();
+				if (i % 50 == 0) {
+					jar.putNextEntry(new ZipEntry("resource" + i + ".txt"));
+					jar.write(("resource " + i).getBytes());
+					jar.closeEntry();
+				}
+			}
+		} finally {
+			jar.close();
+		}
+	}
+
+	@After
+	public void removeClasses() throws IOException {
+		FileUtils.deleteDirectory(testDir);
+	}
+
+	@Test
+	public void testParallelInstrumentation() throws Throwable {
+		ProjectData sequential = instrument(1);
+		ProjectData parallel = instrument(4);
+
+		assertEquals(CLASSES, parallel.getNumberOfClasses());
+		assertEquals(sequential, parallel);
+		assertSameOutput("out1", "out4");
+	}
+
+	@Test
+	public void testInstrumentationCache() throws Throwable {
+		String cacheDir = new File(testDir, "cache").getPath();
+		ProjectData uncached = new ProjectData();
+		instrument("uncached", new ArgumentsBuilder(), uncached);
+
+		ProjectData firstRun = new ProjectData();
+		InstrumentationCache cache = instrument("first",
+				new ArgumentsBuilder().setCacheDirectory(cacheDir), firstRun)
+				.getInstrumentationCache();
+		// the archive contains the same classes as the directory
+		assertEquals(CLASSES, cache.getMisses());
+		assertEquals(CLASSES, cache.getHits());
+
+		ProjectData secondRun = new ProjectData();
+		cache = instrument("second",
+				new ArgumentsBuilder().setCacheDirectory(cacheDir), secondRun)
+				.getInstrumentationCache();
+		assertEquals(0, cache.getMisses());
+		assertEquals(2 * CLASSES, cache.getHits());
+
+		assertEquals(uncached, firstRun);
+		assertEquals(uncached, secondRun);
+		assertSameOutput("uncached", "second");
+
+		// the entries can't be used when the instrumentation settings change
+		cache = instrument("ignoreTrivial",
+				new ArgumentsBuilder().setCacheDirectory(cacheDir)
+						.ignoreTrivial(true), new ProjectData())
+				.getInstrumentationCache();
+		assertEquals(CLASSES, cache.getMisses());
+	}
+
+	@Test
+	public void testCacheKeyDependsOnImplementation() {
+		byte[] classBytes = {1, 2, 3};
+		String implementation = InstrumentationCache.findImplementation();
+		// the class file (or the jar) of the running Cobertura was found
+		assertTrue(implementation, implementation.indexOf(';') != -1);
+		assertEquals(InstrumentationCache.getKey(implementation, "settings",
+				classBytes), InstrumentationCache.getKey("settings",
+				classBytes));
+		assertFalse(InstrumentationCache.getKey("2.0.3", "settings",
+				classBytes).equals(
+				InstrumentationCache.getKey("2.0.4", "settings", classBytes)));
+	}
+
+	@Test
+	public void testUnmodifiedEntriesAreCopied() throws Throwable {
+		instrument(4);
+
+		ZipFile original = new ZipFile(new File(testDir, "classes.jar"));
+		ZipFile instrumented = new ZipFile(new File(testDir, "out4/classes.jar"));
+		try {
+			for (int i = 0; i < CLASSES; i += 50) {
+				ZipEntry originalEntry = original.getEntry("resource" + i
+						+ ".txt");
+				ZipEntry entry = instrumented.getEntry("resource" + i + ".txt");
+				assertEquals(originalEntry.getCrc(), entry.getCrc());
+				assertEquals(originalEntry.getCompressedSize(), entry
+						.getCompressedSize());
+				assertEquals(originalEntry.getTime(), entry.getTime());
+			}
+			ZipEntry classEntry = instrumented.getEntry("parallel/p0/C0.class");
+			assertTrue(classEntry.getSize() > original.getEntry(
+					"parallel/p0/C0.class").getSize());
+		} finally {
+			original.close();
+			instrumented.close();
+		}
+	}
+
+	private void assertSameOutput(String expected, String actual)
+			throws IOException {
+		for (int i = 0; i < CLASSES; i++) {
+			String name = "parallel/p" + (i % 10) + "/C" + i + ".class";
+			assertArrayEquals(name, FileUtils.readFileToByteArray(new File(
+					testDir, expected + "/" + name)), FileUtils
+					.readFileToByteArray(new File(testDir, actual + "/" + name)));
+		}
+
+		List<String> expectedEntries = readEntries(new File(testDir, expected
+				+ "/classes.jar"));
+		List<String> actualEntries = readEntries(new File(testDir, actual
+				+ "/classes.jar"));
+		assertEquals(CLASSES + CLASSES / 50, actualEntries.size());
+		assertEquals(expectedEntries, actualEntries);
+	}
+
+	private ProjectData instrument(int threads) throws Throwable {
+		ProjectData projectData = new ProjectData();
+		instrument("out" + threads, new ArgumentsBuilder().setThreads(threads),
+				projectData);
+		return projectData;
+	}
+
+	private CodeInstrumentationTask instrument(String output,
+			ArgumentsBuilder builder, ProjectData projectData) throws Throwable {
+		File destinationDir = new File(testDir, output);
+		destinationDir.mkdirs();
+		builder.setBaseDirectory(testDir.getPath())
+				.setDataFile(new File(testDir, output + ".ser").getPath())
+				.setDestinationDirectory(destinationDir.getPath());
+		builder.addFileToInstrument("classes");
+		builder.addFileToInstrument("classes.jar");
+
+		long start = System.nanoTime();
+		CodeInstrumentationTask task = new CodeInstrumentationTask()
+				.instrument(builder.build(), projectData);
+		System.out.println("Instrumented " + 2 * CLASSES + " classes into "
+				+ output + " in " + (System.nanoTime() - start) / 1000000
+				+ " ms");
+		return task;
+	}
+
+	/**
+	 * @return names and digests of the entries, in order of the archive
+	 */
+	private static List<String> readEntries(File archive) throws IOException {
+		List<String> entries = new ArrayList<String>();
+		ZipInputStream zis = new ZipInputStream(new FileInputStream(archive));
+		try {
+			ZipEntry entry;
+			while ((entry = zis.getNextEntry()) != null) {
+				entries.add(entry.getName()
+						+ ":"
+						+ Arrays.hashCode(IOUtil
+								.createByteArrayFromInputStream(zis)));
+			}
+		} finally {
+			zis.close();
+		}
+		return entries;
+	}
+
+	private static byte[] generateClass(String internalName) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS
+				| ClassWriter.COMPUTE_FRAMES);
+		cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, internalName, null,
+				"java/lang/Object", null);
+		cw.visitSource(internalName.substring(internalName.lastIndexOf('/') + 1)
+				+ ".java", null);
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "abs", "(I)I", null, null);
+		mv.visitCode();
+		Label line1 = new Label();
+		mv.visitLabel(line1);
+		mv.visitLineNumber(1, line1);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		Label negative = new Label();
+		mv.visitJumpInsn(Opcodes.IFLT, negative);
+		Label line2 = new Label();
+		mv.visitLabel(line2);
+		mv.visitLineNumber(2, line2);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitLabel(negative);
+		mv.visitLineNumber(3, negative);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.INEG);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+}
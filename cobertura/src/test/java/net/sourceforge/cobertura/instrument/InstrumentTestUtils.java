@@ -0,0 +1,126 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.ClassData;
+import net.sourceforge.cobertura.coveragedata.CoverageData;
+import net.sourceforge.cobertura.coveragedata.JumpData;
+import net.sourceforge.cobertura.coveragedata.LineData;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.coveragedata.TouchCollector;
+import net.sourceforge.cobertura.instrument.pass3.CodeProvider;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Instruments generated classes, loads them and harvests their coverage, for the tests of the code
+ * generated by {@link CoberturaInstrumenter}.
+ */
+public final class InstrumentTestUtils {
+
+	private InstrumentTestUtils() {
+	}
+
+	/**
+	 * The harvested coverage data must not be saved when the tests end. Call it before any
+	 * instrumented class is loaded (from a @BeforeClass method).
+	 */
+	public static void turnOffAutoSave() {
+		ProjectData.getGlobalProjectData();
+		ProjectData.turnOffAutoSave();
+	}
+
+	/**
+	 * @return the bytes of the instrumented class
+	 */
+	public static byte[] instrument(CoberturaInstrumenter instrumenter,
+			byte[] classBytes) throws IOException {
+		return instrumenter.instrumentClass(
+				new ByteArrayInputStream(classBytes)).getContent();
+	}
+
+	/**
+	 * Defines the class by a new {@link ByteArrayClassLoader}.
+	 */
+	public static Class<?> load(String internalName, byte[] classBytes) {
+		return new ByteArrayClassLoader().define(internalName.replace('/',
+				'.'), classBytes);
+	}
+
+	public static Class<?> instrumentAndLoad(
+			CoberturaInstrumenter instrumenter, String internalName,
+			byte[] classBytes) throws IOException {
+		return load(internalName, instrument(instrumenter, classBytes));
+	}
+
+	/**
+	 * Harvests (and resets) the counters of all the instrumented classes.
+	 *
+	 * @return the coverage data of the class collected since the last harvest, or null if the class
+	 *         has no counters yet
+	 */
+	public static ClassData harvest(Class<?> c) {
+		ProjectData projectData = new ProjectData();
+		TouchCollector.applyTouchesOnProjectData(projectData);
+		return projectData.getClassData(c.getName());
+	}
+
+	/**
+	 * @return the hits of all lines and jumps of the class, as "line:hits[trueHits/falseHits] ..."
+	 */
+	public static String describeCoverage(ClassData classData) {
+		StringBuilder sb = new StringBuilder();
+		for (CoverageData coverageData : classData.getLines()) {
+			LineData lineData = (LineData) coverageData;
+			sb.append(lineData.getLineNumber()).append(':').append(
+					lineData.getHits());
+			for (int i = 0; i < lineData.getConditionSize(); i++) {
+				Object condition = lineData.getConditionData(i);
+				if (condition instanceof JumpData) {
+					JumpData jumpData = (JumpData) condition;
+					sb.append('[').append(jumpData.getTrueHits()).append('/')
+							.append(jumpData.getFalseHits()).append(']');
+				}
+			}
+			sb.append(' ');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the counters (or the probes) of the instrumented class
+	 */
+	public static Object getCounters(Class<?> c) throws Exception {
+		return c.getField(CodeProvider.COBERTURA_COUNTERS_FIELD_NAME).get(
+				null);
+	}
+
+	/**
+	 * Starts a new line of the generated method.
+	 */
+	public static void line(MethodVisitor mv, int line) {
+		Label label = new Label();
+		mv.visitLabel(label);
+		mv.visitLineNumber(line, label);
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static net.sourceforge.cobertura.instrument.InstrumentTestUtils.getCounters;
+import static net.sourceforge.cobertura.instrument.InstrumentTestUtils.line;
+import static org.junit.Assert.assertEquals;
+
+public class LongCountersTest {
+
+	@BeforeClass
+	public static void turnOffAutoSave() {
+		InstrumentTestUtils.turnOffAutoSave();
+	}
+
+	@Test
+	public void testOverflowedIntCounters() throws Exception {
+		Class<?> c = load("counters/test/Int", false, false);
+		Arrays.fill((int[]) getCounters(c), Integer.MAX_VALUE);
+		// overflows to Integer.MIN_VALUE
+		assertEquals((long) Integer.MAX_VALUE + 1, runAndHarvest(c));
+	}
+
+	@Test
+	public void testOverflowedAtomicIntCounters() throws Exception {
+		Class<?> c = load("counters/test/AtomicInt", false, true);
+		AtomicIntegerArray counters = (AtomicIntegerArray) getCounters(c);
+		for (int i = 0; i < counters.length(); i++) {
+			counters.set(i, Integer.MAX_VALUE);
+		}
+		assertEquals((long) Integer.MAX_VALUE + 1, runAndHarvest(c));
+	}
+
+	@Test
+	public void testLongCounters() throws Exception {
+		Class<?> c = load("counters/test/Long", true, false);
+		Arrays.fill((long[]) getCounters(c), 3L * Integer.MAX_VALUE);
+		assertEquals(3L * Integer.MAX_VALUE + 1, runAndHarvest(c));
+	}
+
+	@Test
+	public void testAtomicLongCounters() throws Exception {
+		Class<?> c = load("counters/test/AtomicLong", true, true);
+		AtomicLongArray counters = (AtomicLongArray) getCounters(c);
+		for (int i = 0; i < counters.length(); i++) {
+			counters.set(i, 3L * Integer.MAX_VALUE);
+		}
+		assertEquals(3L * Integer.MAX_VALUE + 1, runAndHarvest(c));
+	}
+
+	private static Class<?> load(String internalName, boolean longCounters,
+			boolean threadsafeRigorous) throws Exception {
+		CoberturaInstrumenter instrumenter = new CoberturaInstrumenter();
+		instrumenter.setProjectData(new ProjectData());
+		instrumenter.setLongCounters(longCounters);
+		instrumenter.setThreadsafeRigorous(threadsafeRigorous);
+		return InstrumentTestUtils.instrumentAndLoad(instrumenter,
+				internalName, generateClass(internalName));
+	}
+
+	/**
+	 * @return number of hits of the only line of the class after calling it once
+	 */
+	private static long runAndHarvest(Class<?> c) throws Exception {
+		c.getMethod("run").invoke(null);
+		return InstrumentTestUtils.harvest(c).getLineData(1).getHits();
+	}
+
+	/**
+	 * <pre>
+	 * public static void run() {
+	 * 1:  return;
+	 * }
+	 * </pre>
+	 */
+	private static byte[] generateClass(String internalName) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, internalName, null,
+				"java/lang/Object", null);
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "run", "()V", null, null);
+		mv.visitCode();
+		line(mv, 1);
+		mv.visitInsn(Opcodes.RETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.ClassData;
+import net.sourceforge.cobertura.coveragedata.CoverageData;
+import net.sourceforge.cobertura.coveragedata.JumpData;
+import net.sourceforge.cobertura.coveragedata.LineData;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+
+import static net.sourceforge.cobertura.instrument.InstrumentTestUtils.describeCoverage;
+import static net.sourceforge.cobertura.instrument.InstrumentTestUtils.harvest;
+import static net.sourceforge.cobertura.instrument.InstrumentTestUtils.line;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProbeOnlyTest {
+
+	@BeforeClass
+	public static void turnOffAutoSave() {
+		InstrumentTestUtils.turnOffAutoSave();
+	}
+
+	@Test
+	public void testHitsAreZeroOrOne() throws Exception {
+		CoberturaInstrumenter instrumenter = new CoberturaInstrumenter();
+		instrumenter.setProjectData(new ProjectData());
+		instrumenter.setProbeOnly(true);
+		Class<?> c = InstrumentTestUtils.instrumentAndLoad(instrumenter,
+				"probes/test/Loop", generateClass("probes/test/Loop"));
+		assertTrue(InstrumentTestUtils.getCounters(c) instanceof boolean[]);
+
+		Method run = c.getMethod("run", int.class);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(5050, run.invoke(null, 100));
+		}
+		ClassData classData = harvest(c);
+		assertProbes(classData);
+		// line 5 is never executed
+		assertEquals("1:1 2:1[1/1] 3:1 4:1[1/0] 5:0 6:1 ",
+				describeCoverage(classData));
+
+		// at most once per save: the probes are set again after the harvest
+		run.invoke(null, 100);
+		run.invoke(null, 100);
+		classData = harvest(c);
+		assertProbes(classData);
+		assertEquals("1:1 2:1[1/1] 3:1 4:1[1/0] 5:0 6:1 ",
+				describeCoverage(classData));
+	}
+
+	private static void assertProbes(ClassData classData) {
+		for (CoverageData coverageData : classData.getLines()) {
+			LineData lineData = (LineData) coverageData;
+			assertTrue(lineData.getHits() <= 1);
+			for (int i = 0; i < lineData.getConditionSize(); i++) {
+				JumpData jumpData = (JumpData) lineData.getConditionData(i);
+				assertTrue(jumpData.getTrueHits() <= 1);
+				assertTrue(jumpData.getFalseHits() <= 1);
+			}
+		}
+	}
+
+	/**
+	 * <pre>
+	 * public static int run(int n) {
+	 * 1:  int s = 0;
+	 * 2:  while (n > 0) {
+	 * 3:    s += n--;
+	 *     }
+	 * 4:  if (s < 0)
+	 * 5:    return -1;
+	 * 6:  return s;
+	 * }
+	 * </pre>
+	 */
+	private static byte[] generateClass(String internalName) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS
+				| ClassWriter.COMPUTE_FRAMES);
+		cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, internalName, null,
+				"java/lang/Object", null);
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "run", "(I)I", null, null);
+		mv.visitCode();
+		line(mv, 1);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitVarInsn(Opcodes.ISTORE, 1);
+		Label loop = new Label();
+		mv.visitLabel(loop);
+		mv.visitLineNumber(2, loop);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		Label end = new Label();
+		mv.visitJumpInsn(Opcodes.IFLE, end);
+		line(mv, 3);
+		mv.visitVarInsn(Opcodes.ILOAD, 1);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		mv.visitInsn(Opcodes.IADD);
+		mv.visitVarInsn(Opcodes.ISTORE, 1);
+		mv.visitIincInsn(0, -1);
+		mv.visitJumpInsn(Opcodes.GOTO, loop);
+		mv.visitLabel(end);
+		mv.visitLineNumber(4, end);
+		mv.visitVarInsn(Opcodes.ILOAD, 1);
+		Label positive = new Label();
+		mv.visitJumpInsn(Opcodes.IFGE, positive);
+		line(mv, 5);
+		mv.visitInsn(Opcodes.ICONST_M1);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitLabel(positive);
+		mv.visitLineNumber(6, positive);
+		mv.visitVarInsn(Opcodes.ILOAD, 1);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+}
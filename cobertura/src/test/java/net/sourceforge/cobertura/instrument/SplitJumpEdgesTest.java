@@ -0,0 +1,198 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.instrument;
+
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.sourceforge.cobertura.instrument.InstrumentTestUtils.line;
+import static net.sourceforge.cobertura.instrument.InstrumentTestUtils.load;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SplitJumpEdgesTest {
+
+	@BeforeClass
+	public static void turnOffAutoSave() {
+		InstrumentTestUtils.turnOffAutoSave();
+	}
+
+	@Test
+	public void testSameCoverageWithoutVariable() throws Exception {
+		byte[] variable = instrument("split/test/Variable", false, false);
+		byte[] split = instrument("split/test/Split", true, false);
+
+		String coverage = describeCoverage(load("split/test/Variable",
+				variable));
+		assertEquals("1:3[2/1] 2:1 3:2[1/1] 4:2 5:7[2/5] 6:5 7:2 ", coverage);
+		assertEquals(coverage, describeCoverage(load("split/test/Split",
+				split)));
+
+		// the only ILOADs left are the ones of the original code
+		assertTrue(countLoads(variable) > 5);
+		assertEquals(5, countLoads(split));
+	}
+
+	@Test
+	public void testProbes() throws Exception {
+		String coverage = describeCoverage(load("split/test/VariableProbes",
+				instrument("split/test/VariableProbes", false, true)));
+		assertEquals(coverage, describeCoverage(load(
+				"split/test/SplitProbes", instrument("split/test/SplitProbes",
+						true, true))));
+	}
+
+	private static byte[] instrument(String internalName,
+			boolean splitJumpEdges, boolean probeOnly) throws Exception {
+		CoberturaInstrumenter instrumenter = new CoberturaInstrumenter();
+		instrumenter.setProjectData(new ProjectData());
+		instrumenter.setSplitJumpEdges(splitJumpEdges);
+		instrumenter.setProbeOnly(probeOnly);
+		return InstrumentTestUtils.instrument(instrumenter,
+				generateClass(internalName));
+	}
+
+	/**
+	 * Runs the generated method and describes the collected hits of all lines and jumps.
+	 */
+	private static String describeCoverage(Class<?> c) throws Exception {
+		Method run = c.getMethod("run", int.class, Object.class);
+		assertEquals(-1, run.invoke(null, -1, null));
+		assertEquals(8, run.invoke(null, 2, null));
+		assertEquals(9, run.invoke(null, 3, "x"));
+
+		return InstrumentTestUtils.describeCoverage(InstrumentTestUtils
+				.harvest(c));
+	}
+
+	/**
+	 * @return number of ILOAD instructions in the 'run' method
+	 */
+	private static int countLoads(byte[] bytes) {
+		final AtomicInteger loads = new AtomicInteger();
+		new ClassReader(bytes).accept(new ClassVisitor(Opcodes.ASM4) {
+			@Override
+			public MethodVisitor visitMethod(int access, String name,
+					String desc, String signature, String[] exceptions) {
+				if (!"run".equals(name)) {
+					return null;
+				}
+				return new MethodVisitor(Opcodes.ASM4) {
+					@Override
+					public void visitVarInsn(int opcode, int var) {
+						if (opcode == Opcodes.ILOAD) {
+							loads.incrementAndGet();
+						}
+					}
+				};
+			}
+		}, 0);
+		return loads.get();
+	}
+
+	/**
+	 * A Java 5 class (checked by the old verifier), with an uninitialized object on the stack during a jump:
+	 * <pre>
+	 * public static int run(int x, Object o) {
+	 * 1:  if (x < 0)
+	 * 2:    return -1;
+	 * 3:  String s = new String(o != null ? "set" : "null");
+	 * 4:  int n = 0, i = 0;
+	 * 5:  while (i < x) {
+	 * 6:    n += s.length(); i++;
+	 *     }
+	 * 7:  return n;
+	 * }
+	 * </pre>
+	 */
+	private static byte[] generateClass(String internalName) {
+		ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+		cw.visit(Opcodes.V1_5, Opcodes.ACC_PUBLIC, internalName, null,
+				"java/lang/Object", null);
+
+		MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC
+				| Opcodes.ACC_STATIC, "run", "(ILjava/lang/Object;)I", null,
+				null);
+		mv.visitCode();
+		line(mv, 1);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		Label positive = new Label();
+		mv.visitJumpInsn(Opcodes.IFGE, positive);
+		line(mv, 2);
+		mv.visitInsn(Opcodes.ICONST_M1);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitLabel(positive);
+		mv.visitLineNumber(3, positive);
+		mv.visitTypeInsn(Opcodes.NEW, "java/lang/String");
+		mv.visitInsn(Opcodes.DUP);
+		mv.visitVarInsn(Opcodes.ALOAD, 1);
+		Label set = new Label();
+		mv.visitJumpInsn(Opcodes.IFNONNULL, set);
+		mv.visitLdcInsn("null");
+		Label init = new Label();
+		mv.visitJumpInsn(Opcodes.GOTO, init);
+		mv.visitLabel(set);
+		mv.visitLdcInsn("set");
+		mv.visitLabel(init);
+		mv.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/String",
+				"<init>", "(Ljava/lang/String;)V");
+		mv.visitVarInsn(Opcodes.ASTORE, 2);
+		line(mv, 4);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitVarInsn(Opcodes.ISTORE, 3);
+		mv.visitInsn(Opcodes.ICONST_0);
+		mv.visitVarInsn(Opcodes.ISTORE, 4);
+		Label loop = new Label();
+		mv.visitLabel(loop);
+		mv.visitLineNumber(5, loop);
+		mv.visitVarInsn(Opcodes.ILOAD, 4);
+		mv.visitVarInsn(Opcodes.ILOAD, 0);
+		Label end = new Label();
+		mv.visitJumpInsn(Opcodes.IF_ICMPGE, end);
+		line(mv, 6);
+		mv.visitVarInsn(Opcodes.ILOAD, 3);
+		mv.visitVarInsn(Opcodes.ALOAD, 2);
+		mv.visitMethodInsn(Opcodes.INVOKEVIRTUAL, "java/lang/String",
+				"length", "()I");
+		mv.visitInsn(Opcodes.IADD);
+		mv.visitVarInsn(Opcodes.ISTORE, 3);
+		mv.visitIincInsn(4, 1);
+		mv.visitJumpInsn(Opcodes.GOTO, loop);
+		mv.visitLabel(end);
+		mv.visitLineNumber(7, end);
+		mv.visitVarInsn(Opcodes.ILOAD, 3);
+		mv.visitInsn(Opcodes.IRETURN);
+		mv.visitMaxs(0, 0);
+		mv.visitEnd();
+
+		cw.visitEnd();
+		return cw.toByteArray();
+	}
+}
@@ -157,4 +157,127 @@ public class MergeMainTest extends TestCase {
 		assertNotNull(merged.getClassData("test.Second"));
 		assertNotNull(merged.getClassData("Seventh"));
 	}
+
+	public void testThreads() throws IOException {
+		// Create some coverage data
+		firstClass.setSourceFileName("First.java");
+		firstClass.addLine(3, "test", "()V");
+		firstClass.touch(3, 2);
+		greenProject.addClassData(firstClass);
+		redProject.addClassData(secondClass);
+		ClassData firstClassAgain = new ClassData("test.First");
+		firstClassAgain.touch(3, 5);
+		blueProject.addClassData(firstClassAgain);
+
+		// Generate filenames for serialized data
+		File greenFile = createTempSerFile();
+		File redFile = createTempSerFile();
+		File blueFile = createTempSerFile();
+		File dataFile = createTempSerFile();
+
+		// Save coverage data for created data
+		CoverageDataFileHandler.saveCoverageData(greenProject, greenFile);
+		CoverageDataFileHandler.saveCoverageData(redProject, redFile);
+		CoverageDataFileHandler.saveCoverageData(blueProject, blueFile);
+
+		// Run merge task
+		String[] args = {"--datafile", dataFile.getAbsolutePath(),
+				"--threads", "2", greenFile.getAbsolutePath(),
+				redFile.getAbsolutePath(), blueFile.getAbsolutePath()};
+
+		MergeMain.main(args);
+
+		// Read merged data
+		ProjectData merged = CoverageDataFileHandler.loadCoverageData(dataFile);
+
+		// Check if everything is ok
+		assertEquals(2, merged.getNumberOfClasses());
+		assertEquals(7, merged.getClassData("test.First").getLineCoverage(3)
+				.getHits());
+		assertNotNull(merged.getClassData("test.Second"));
+	}
+
+	public void testStreaming() throws IOException {
+		// Create some coverage data
+		firstClass.setSourceFileName("First.java");
+		firstClass.addLine(3, "test", "()V");
+		firstClass.touch(3, 2);
+		greenProject.addClassData(firstClass);
+		redProject.addClassData(secondClass);
+		ClassData firstClassAgain = new ClassData("test.First");
+		firstClassAgain.touch(3, 5);
+		blueProject.addClassData(firstClassAgain);
+		blueProject.addClassData(seventhClass);
+
+		// Generate filenames for serialized data
+		File greenFile = createTempSerFile();
+		File redFile = createTempSerFile();
+		File dataFile = createTempSerFile();
+
+		// Save coverage data for created data (in both formats)
+		CoverageDataFileHandler.saveCoverageData(greenProject, greenFile,
+				CoverageDataFileHandler.FORMAT_COMPACT);
+		CoverageDataFileHandler.saveCoverageData(redProject, redFile,
+				CoverageDataFileHandler.FORMAT_SERIALIZED);
+		CoverageDataFileHandler.saveCoverageData(blueProject, dataFile,
+				CoverageDataFileHandler.FORMAT_COMPACT);
+
+		// Run merge task
+		String[] args = {"--datafile", dataFile.getAbsolutePath(),
+				"--streaming", greenFile.getAbsolutePath(),
+				redFile.getAbsolutePath()};
+
+		MergeMain.main(args);
+
+		// Read merged data
+		assertTrue(CoverageDataFileHandler.isCompactDataFile(dataFile));
+		ProjectData merged = CoverageDataFileHandler.loadCoverageData(dataFile);
+
+		// Check if everything is ok
+		assertEquals(3, merged.getNumberOfClasses());
+		assertEquals(7, merged.getClassData("test.First").getLineCoverage(3)
+				.getHits());
+		assertNotNull(merged.getClassData("test.Second"));
+		assertNotNull(merged.getClassData("Seventh"));
+	}
+
+	public void testStreamingSerializedFiles() throws IOException {
+		File directory = createTempSerFile();
+		assertTrue(directory.mkdir());
+
+		firstClass.addLine(3, "test", "()V");
+		firstClass.touch(3, 2);
+		greenProject.addClassData(firstClass);
+		redProject.addClassData(secondClass);
+		ClassData firstClassAgain = new ClassData("test.First");
+		firstClassAgain.touch(3, 5);
+		blueProject.addClassData(firstClassAgain);
+
+		File greenFile = new File(directory, "green.ser");
+		File redFile = new File(directory, "red.ser");
+		File dataFile = new File(directory, "cobertura.ser");
+		filesToRemove.add(0, greenFile);
+		filesToRemove.add(0, redFile);
+		filesToRemove.add(0, dataFile);
+		CoverageDataFileHandler.saveCoverageData(greenProject, greenFile,
+				CoverageDataFileHandler.FORMAT_SERIALIZED);
+		CoverageDataFileHandler.saveCoverageData(redProject, redFile,
+				CoverageDataFileHandler.FORMAT_SERIALIZED);
+		CoverageDataFileHandler.saveCoverageData(blueProject, dataFile,
+				CoverageDataFileHandler.FORMAT_SERIALIZED);
+
+		MergeMain.main(new String[]{"--datafile", dataFile.getAbsolutePath(),
+				"--streaming", greenFile.getAbsolutePath(),
+				redFile.getAbsolutePath()});
+
+		assertTrue(CoverageDataFileHandler.isCompactDataFile(dataFile));
+		ProjectData merged = CoverageDataFileHandler.loadCoverageData(dataFile);
+		assertEquals(2, merged.getNumberOfClasses());
+		assertEquals(7, merged.getClassData("test.First").getLineCoverage(3)
+				.getHits());
+		assertNotNull(merged.getClassData("test.Second"));
+
+		// the inputs were converted into temporary files, that are deleted
+		assertEquals(3, directory.listFiles().length);
+	}
 }
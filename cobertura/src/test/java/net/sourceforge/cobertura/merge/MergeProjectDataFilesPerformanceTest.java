@@ -0,0 +1,142 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.merge;
+
+import net.sourceforge.cobertura.coveragedata.ClassData;
+import net.sourceforge.cobertura.coveragedata.CoverageDataFileHandler;
+import net.sourceforge.cobertura.coveragedata.ProjectData;
+import net.sourceforge.cobertura.dsl.ArgumentsBuilder;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Benchmark of merging many data files (shards of a single test run split over many machines).
+ * Every shard contains the same classes with different hits, the shards are merged sequentially
+ * and in parallel.
+ */
+public class MergeProjectDataFilesPerformanceTest {
+	private static final int SHARDS = 48;
+	private static final int CLASSES = 200;
+	private static final int LINES_PER_CLASS = 40;
+
+	private static final File shardsDir = new File(
+			"target/test/MergeProjectDataFilesPerformanceTest");
+
+	private static final File compactShardsDir = new File(shardsDir,
+			"compact");
+
+	@BeforeClass
+	public static void createShards() {
+		compactShardsDir.mkdirs();
+		Random random = new Random(1);
+		for (int s = 0; s < SHARDS; s++) {
+			ProjectData shard = new ProjectData();
+			for (int c = 0; c < CLASSES; c++) {
+				ClassData classData = new ClassData("shard.p" + (c % 10) + ".C"
+						+ c);
+				classData.setSourceFileName("C" + c + ".java");
+				for (int l = 1; l <= LINES_PER_CLASS; l++) {
+					classData.addLine(l, "m" + (l % 5), "()V");
+					if (l % 7 == 0) {
+						classData.addLineJump(l, 0);
+						classData.touchJump(l, 0, random.nextBoolean(), 1);
+					}
+					classData.touch(l, random.nextInt(3));
+				}
+				shard.addClassData(classData);
+			}
+			CoverageDataFileHandler.saveCoverageData(shard, new File(
+					shardsDir, "shard" + s + ".ser"),
+					CoverageDataFileHandler.FORMAT_SERIALIZED);
+			CoverageDataFileHandler.saveCoverageData(shard, new File(
+					compactShardsDir, "shard" + s + ".compact"),
+					CoverageDataFileHandler.FORMAT_COMPACT);
+		}
+	}
+
+	@AfterClass
+	public static void removeShards() {
+		for (File dir : new File[]{compactShardsDir, shardsDir}) {
+			File[] files = dir.listFiles();
+			for (int i = 0; i < files.length; i++) {
+				files[i].delete();
+			}
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testParallelMerge() {
+		ProjectData sequential = merge(1);
+		ProjectData parallel = merge(4);
+
+		assertEquals(CLASSES, parallel.getNumberOfClasses());
+		assertEquals(sequential.getNumberOfCoveredLines(), parallel
+				.getNumberOfCoveredLines());
+		assertEquals(sequential.getNumberOfCoveredBranches(), parallel
+				.getNumberOfCoveredBranches());
+		assertEquals(sequential, parallel);
+	}
+
+	@Test
+	public void testStreamingMerge() {
+		File dataFile = new File(shardsDir, "merged.compact");
+		ArgumentsBuilder builder = new ArgumentsBuilder().setDataFile(
+				dataFile.getAbsolutePath()).streamingMerge(true);
+		for (File shard : compactShardsDir.listFiles()) {
+			builder.addFileToMerge(shard.getAbsolutePath());
+		}
+
+		long start = System.nanoTime();
+		new MergeProjectDataFilesTask().mergeProjectDataFilesStreaming(builder
+				.build());
+		System.out.println("Merged " + SHARDS + " shards by streaming in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+
+		ProjectData streamed = CoverageDataFileHandler
+				.loadCoverageData(dataFile);
+		dataFile.delete();
+		assertEquals(merge(1), streamed);
+	}
+
+	private ProjectData merge(int threads) {
+		ArgumentsBuilder builder = new ArgumentsBuilder().setThreads(threads);
+		for (File shard : shardsDir.listFiles()) {
+			if (shard.isFile()) {
+				builder.addFileToMerge(shard.getAbsolutePath());
+			}
+		}
+
+		ProjectData projectData = new ProjectData();
+		long start = System.nanoTime();
+		new MergeProjectDataFilesTask().mergeProjectDataFiles(builder.build(),
+				projectData);
+		System.out.println("Merged " + SHARDS + " shards using " + threads
+				+ " threads in " + (System.nanoTime() - start) / 1000000
+				+ " ms");
+		return projectData;
+	}
+}
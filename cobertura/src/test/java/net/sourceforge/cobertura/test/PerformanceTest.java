@@ -183,6 +183,29 @@ public class PerformanceTest {
 		java.execute();
 		System.out.println(FileUtils.readFileToString(new File(tempDir,
 				"PT_instrumentedThreadSafe.log")));
+
+		TestUtils.compileSource(ant, srcDir);
+
+		TestUtils.instrumentClasses(ant, srcDir, datafile, instrumentDir,
+				new HashMap() {
+					{
+						put("threadsafeStriped", true);
+					}
+				});
+
+		System.out.println("Run with instrumentation (threadsafe-striped):\n");
+
+		java = new Java();
+		java.setClassname("mypackage.Main");
+		java.setDir(srcDir);
+		java.setFork(true);
+		java.setFailonerror(true);
+		java.setClasspath(classpath);
+		java.setProject(TestUtils.project);
+		java.setOutput(new File(tempDir, "PT_instrumentedStriped.log"));
+		java.execute();
+		System.out.println(FileUtils.readFileToString(new File(tempDir,
+				"PT_instrumentedStriped.log")));
 		/*
 		 * Now create a cobertura xml file and make sure the correct counts are in it.
 		 */
@@ -277,6 +277,10 @@ public class TestUtils {
 				&& arguments.containsKey("threadsafeRigorous")
 				? (Boolean) arguments.get("threadsafeRigorous")
 				: false);
+		instrumentTask.setThreadsafeStriped(arguments != null
+				&& arguments.containsKey("threadsafeStriped")
+				? (Boolean) arguments.get("threadsafeStriped")
+				: false);
 		instrumentTask.setIgnoreTrivial(arguments != null
 				&& arguments.containsKey("ignoretrivial") ? (Boolean) arguments
 				.get("ignoretrivial") : false);
@@ -0,0 +1,59 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.util;
+
+import junit.framework.TestCase;
+
+public class ConfigurationUtilTest extends TestCase {
+	private static final String FLUSH_INTERVAL = "net.sourceforge.cobertura.flushinterval";
+
+	protected void tearDown() {
+		System.getProperties().remove(FLUSH_INTERVAL);
+	}
+
+	public void testDefaultFlushInterval() {
+		assertEquals(0, new ConfigurationUtil().getFlushInterval());
+	}
+
+	public void testFlushIntervalInSeconds() {
+		assertEquals(5000, getFlushInterval("5"));
+		assertEquals(2000, getFlushInterval(" 2 "));
+		assertEquals(0, getFlushInterval("0"));
+		assertEquals(Integer.MAX_VALUE * 1000L, getFlushInterval(String
+				.valueOf(Integer.MAX_VALUE)));
+	}
+
+	public void testInvalidFlushInterval() {
+		assertEquals(0, getFlushInterval("-1"));
+		assertEquals(0, getFlushInterval("often"));
+		assertEquals(0, getFlushInterval(""));
+		assertEquals(0, getFlushInterval("1.5"));
+		// too long for the timer, and the milliseconds would overflow
+		assertEquals(0, getFlushInterval(String
+				.valueOf(Integer.MAX_VALUE + 1L)));
+		assertEquals(0, getFlushInterval(String.valueOf(Long.MAX_VALUE)));
+		assertEquals(0, getFlushInterval("99999999999999999999"));
+	}
+
+	private static long getFlushInterval(String value) {
+		System.setProperty(FLUSH_INTERVAL, value);
+		return new ConfigurationUtil().getFlushInterval();
+	}
+}
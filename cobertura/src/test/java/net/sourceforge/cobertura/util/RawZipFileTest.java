@@ -0,0 +1,197 @@
+/*
+ * Cobertura - http://cobertura.sourceforge.net/
+ *
+ * Cobertura is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published
+ * by the Free Software Foundation; either version 2 of the License,
+ * or (at your option) any later version.
+ *
+ * Cobertura is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with Cobertura; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA 02111-1307
+ * USA
+ */
+
+package net.sourceforge.cobertura.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class RawZipFileTest {
+
+	@Test
+	public void testReadEntries() throws IOException {
+		Map<String, byte[]> contents = createContents();
+		RawZipFile archive = new RawZipFile(createArchive(contents, true));
+		try {
+			List<RawZipFile.Entry> entries = archive.getEntries();
+			assertEquals(contents.size(), entries.size());
+			int i = 0;
+			for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+				RawZipFile.Entry entry = entries.get(i++);
+				assertEquals(content.getKey(), entry.getName());
+				assertArrayEquals(content.getValue(), archive
+						.readContent(entry));
+			}
+			assertEquals(ZipEntry.STORED, entries.get(0).getMethod());
+			assertEquals(ZipEntry.DEFLATED, entries.get(1).getMethod());
+			assertEquals("comment", new String(archive.getComment(), "UTF-8"));
+		} finally {
+			archive.close();
+		}
+	}
+
+	@Test
+	public void testCopyAndReplaceEntries() throws IOException {
+		Map<String, byte[]> contents = createContents();
+		// the entries written by ZipOutputStream have data descriptors
+		RawZipFile archive = new RawZipFile(createArchive(contents, false));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		RawZipOutputStream output = new RawZipOutputStream(out);
+		byte[] replaced = "replaced content".getBytes("UTF-8");
+		for (RawZipFile.Entry entry : archive.getEntries()) {
+			if (entry.getName().equals("dir/replaced.txt")) {
+				output.putEntry(archive, entry, replaced, System
+						.currentTimeMillis());
+			} else {
+				output.putRawEntry(archive, entry);
+			}
+		}
+		output.setComment(archive.getComment());
+		output.close();
+		archive.close();
+		contents.put("dir/replaced.txt", replaced);
+
+		// read by java.util.zip
+		ZipInputStream zis = new ZipInputStream(new ByteArrayInputStream(out
+				.toByteArray()));
+		try {
+			for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+				ZipEntry entry = zis.getNextEntry();
+				assertEquals(content.getKey(), entry.getName());
+				assertArrayEquals(content.getValue(), IOUtil
+						.createByteArrayFromInputStream(zis));
+			}
+		} finally {
+			zis.close();
+		}
+
+		// read again
+		archive = new RawZipFile(out.toByteArray());
+		try {
+			int i = 0;
+			for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+				RawZipFile.Entry entry = archive.getEntries().get(i++);
+				assertEquals(content.getKey(), entry.getName());
+				assertArrayEquals(content.getValue(), archive
+						.readContent(entry));
+			}
+			assertEquals("comment", new String(archive.getComment(), "UTF-8"));
+		} finally {
+			archive.close();
+		}
+	}
+
+	@Test
+	public void testArchiveWithPrefix() throws IOException {
+		Map<String, byte[]> contents = createContents();
+		byte[] archive = createArchive(contents, false);
+		byte[] prefixed = new byte[archive.length + 100];
+		System.arraycopy(archive, 0, prefixed, 100, archive.length);
+
+		RawZipFile rawZipFile = new RawZipFile(prefixed);
+		try {
+			RawZipFile.Entry last = rawZipFile.getEntries().get(
+					contents.size() - 1);
+			assertArrayEquals(contents.get(last.getName()), rawZipFile
+					.readContent(last));
+		} finally {
+			rawZipFile.close();
+		}
+	}
+
+	@Test
+	public void testDuplicateEntry() throws IOException {
+		RawZipFile archive = new RawZipFile(createArchive(createContents(),
+				false));
+		RawZipOutputStream output = new RawZipOutputStream(
+				new ByteArrayOutputStream());
+		RawZipFile.Entry entry = archive.getEntries().get(0);
+		output.putRawEntry(archive, entry);
+		try {
+			output.putRawEntry(archive, entry);
+			fail("Duplicate entry written");
+		} catch (ZipException e) {
+		}
+	}
+
+	@Test(expected = ZipException.class)
+	public void testNotAnArchive() throws IOException {
+		new RawZipFile("not an archive".getBytes("UTF-8"));
+	}
+
+	private static Map<String, byte[]> createContents() throws IOException {
+		Map<String, byte[]> contents = new LinkedHashMap<String, byte[]>();
+		contents.put("stored.txt", "stored".getBytes("UTF-8"));
+		contents.put("dir/", new byte[0]);
+		contents.put("dir/replaced.txt", "to be replaced".getBytes("UTF-8"));
+		byte[] random = new byte[100000];
+		new Random(0).nextBytes(random);
+		contents.put("dir/random.bin", random);
+		contents.put("dir/\u017elu\u0165ou\u010dk\u00fd.txt", new byte[1000]);
+		return contents;
+	}
+
+	/**
+	 * @param sizesInHeaders if false, sizes of the deflated entries are written to data descriptors
+	 */
+	private static byte[] createArchive(Map<String, byte[]> contents,
+			boolean sizesInHeaders) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ZipOutputStream zos = new ZipOutputStream(out);
+		zos.setComment("comment");
+		boolean first = true;
+		for (Map.Entry<String, byte[]> content : contents.entrySet()) {
+			ZipEntry entry = new ZipEntry(content.getKey());
+			if (first || sizesInHeaders) {
+				CRC32 crc = new CRC32();
+				crc.update(content.getValue());
+				entry.setCrc(crc.getValue());
+				entry.setSize(content.getValue().length);
+				entry.setCompressedSize(first
+						? content.getValue().length
+						: -1);
+			}
+			if (first) {
+				entry.setMethod(ZipEntry.STORED);
+			}
+			first = false;
+			zos.putNextEntry(entry);
+			zos.write(content.getValue());
+			zos.closeEntry();
+		}
+		zos.close();
+		return out.toByteArray();
+	}
+}